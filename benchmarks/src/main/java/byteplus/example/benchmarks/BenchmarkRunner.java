@@ -0,0 +1,50 @@
+package byteplus.example.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * The entry of "benchmarks.jar", it accepts the same arguments as the JMH main,
+ * but writes the results as json by default, named by the version of examples,
+ * such as "jmh-result-1.0.7.json", so that the results of releases can be compared.
+ * <p>
+ * "-rf" and "-rff" still override the format and the file.
+ */
+public class BenchmarkRunner {
+    private final static String RESULT_FILE_PREFIX = "jmh-result-";
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException {
+        CommandLineOptions cmdOptions = new CommandLineOptions(args);
+        if (cmdOptions.shouldHelp()) {
+            cmdOptions.showHelp();
+            return;
+        }
+        if (cmdOptions.shouldList()) {
+            new Runner(cmdOptions).list();
+            return;
+        }
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(cmdOptions);
+        ResultFormatType format = cmdOptions.getResultFormat().orElse(ResultFormatType.JSON);
+        builder.resultFormat(format);
+        if (!cmdOptions.getResult().hasValue()) {
+            builder.result(RESULT_FILE_PREFIX + version() + "." + format.toString().toLowerCase());
+        }
+        Options options = builder.build();
+        new Runner(options).run();
+    }
+
+    // The version is written into the manifest of "benchmarks.jar"
+    private static String version() {
+        String version = BenchmarkRunner.class.getPackage().getImplementationVersion();
+        return Objects.isNull(version) ? "dev" : version;
+    }
+}
@@ -0,0 +1,101 @@
+package byteplus.example.benchmarks;
+
+import byteplus.example.common.MockServer;
+import byteplus.example.byteair.ConcurrentHelper;
+import byteplus.example.byteair.Main;
+import byteplus.example.byteair.MockHelper;
+import byteplus.example.byteair.MockServerHelper;
+import byteplus.sdk.core.Region;
+import byteplus.sdk.byteair.ByteairClient;
+import byteplus.sdk.byteair.ByteairClientBuilder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The corpus of byteair: the behaviors of the "behavior" topic, built from
+ * the mock data of {@link MockHelper} with a distinct user and timestamp for every item.
+ */
+class ByteairThroughputWorkload implements ThroughputSuite.Workload {
+    private final static String TOPIC = Main.TOPIC_BEHAVIOR;
+
+    private final static int BASE_TIMESTAMP = 1622505600;
+
+    private final List<List<Map<String, Object>>> dataLists = new ArrayList<>();
+
+    // Shared by the helpers renewed
+    private ByteairClient client;
+
+    // Renewed by the submitter, while its queue is sampled by another thread
+    private volatile ConcurrentHelper concurrentHelper;
+
+    @Override
+    public MockServer.Vertical vertical() {
+        return MockServerHelper.vertical();
+    }
+
+    @Override
+    public long setup(String host, int itemCount, int batchSize) {
+        client = new ByteairClientBuilder()
+                .projectId(Main.PROJECT_ID)
+                .tenantId(Main.TENANT_ID)
+                .ak(Main.AK)
+                .sk(Main.SK)
+                .region(Region.AIR_CN)
+                .schema("http")
+                .hosts(Collections.singletonList(host))
+                .build();
+        concurrentHelper = new ConcurrentHelper(client);
+
+        for (int first = 0; first < itemCount; first += batchSize) {
+            List<Map<String, Object>> dataList = MockHelper.mockDataList(Math.min(batchSize, itemCount - first));
+            for (int i = 0; i < dataList.size(); i++) {
+                Map<String, Object> data = dataList.get(i);
+                data.put("user_id", "user_" + (first + i));
+                data.put("event_timestamp", BASE_TIMESTAMP + first + i);
+            }
+            dataLists.add(dataList);
+        }
+        return itemCount;
+    }
+
+    @Override
+    public int requestCount() {
+        return dataLists.size();
+    }
+
+    @Override
+    public void submit(int index) {
+        concurrentHelper.submitWriteRequest(dataLists.get(index), TOPIC, ThroughputSuite.options());
+    }
+
+    @Override
+    public int queueSize() {
+        return concurrentHelper.getQueueSize();
+    }
+
+    @Override
+    public int pendingCount() {
+        return concurrentHelper.getPendingTaskCount();
+    }
+
+    @Override
+    public boolean awaitIdle(Duration timeout) throws InterruptedException {
+        return concurrentHelper.awaitIdle(timeout);
+    }
+
+    @Override
+    public void renewHelper() {
+        ConcurrentHelper oldHelper = concurrentHelper;
+        concurrentHelper = new ConcurrentHelper(client);
+        oldHelper.close();
+    }
+
+    @Override
+    public void close() {
+        concurrentHelper.close();
+    }
+}
@@ -0,0 +1,105 @@
+package byteplus.example.benchmarks;
+
+import byteplus.example.retail.ConcurrentHelper;
+import byteplus.example.retail.MockHelper;
+import byteplus.sdk.core.Option;
+import byteplus.sdk.retail.RetailClient;
+import byteplus.sdk.retail.protocol.ByteplusRetail.WriteUsersRequest;
+import com.google.protobuf.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The cost of {@link ConcurrentHelper#submitRequest} on the caller thread,
+ * including validation, splitting and handing the task to the executor.
+ * <p>
+ * The client answers every request with the default response at once, which is a success.
+ * Still the caller submits faster than the executor runs, so its queue of 20 tasks stays full
+ * and CallerRunsPolicy runs a part of the tasks on the caller, as it does in a real upload.
+ * The score is the dispatch mixed with the sending of those tasks, not the dispatch alone, and
+ * the share of tasks run on the caller is logged at the end of every trial to read it with.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentHelperBenchmark {
+    private final static Logger log = LoggerFactory.getLogger(ConcurrentHelperBenchmark.class);
+
+    @Param({"1", "100"})
+    private int itemCount;
+
+    private ConcurrentHelper concurrentHelper;
+
+    private WriteUsersRequest request;
+
+    private Option[] opts;
+
+    // Set in setup, which runs on the thread calling the benchmark method
+    private volatile Thread benchmarkThread;
+
+    private final LongAdder taskCount = new LongAdder();
+
+    // The tasks run on the benchmark thread as the queue of executor is full
+    private final LongAdder callerRunCount = new LongAdder();
+
+    @Setup
+    public void setup() {
+        benchmarkThread = Thread.currentThread();
+        concurrentHelper = new ConcurrentHelper(noOpClient());
+        request = WriteUsersRequest.newBuilder()
+                .addAllUsers(MockHelper.mockUsers(itemCount))
+                .build();
+        opts = new Option[]{
+                Option.withTimeout(Duration.ofMillis(800)),
+        };
+    }
+
+    @Benchmark
+    public void submitWriteUsers() {
+        concurrentHelper.submitRequest(request, opts);
+    }
+
+    @TearDown
+    public void tearDown() {
+        concurrentHelper.close();
+        long tasks = taskCount.sum();
+        log.info("[ConcurrentHelperBenchmark] {} of {} tasks ran on the caller ({}%)", callerRunCount.sum(), tasks,
+                tasks == 0 ? 0 : callerRunCount.sum() * 100 / tasks);
+    }
+
+    // Every request of client returns the default instance of its response type
+    private RetailClient noOpClient() {
+        return (RetailClient) Proxy.newProxyInstance(RetailClient.class.getClassLoader(),
+                new Class<?>[]{RetailClient.class},
+                (proxy, method, args) -> {
+                    if (!Message.class.isAssignableFrom(method.getReturnType())) {
+                        return null;
+                    }
+                    taskCount.increment();
+                    if (Thread.currentThread() == benchmarkThread) {
+                        callerRunCount.increment();
+                    }
+                    return method.getReturnType().getMethod("getDefaultInstance").invoke(null);
+                });
+    }
+}
@@ -0,0 +1,66 @@
+package byteplus.example.benchmarks;
+
+import byteplus.example.common.ExtraHelper;
+import com.alibaba.fastjson.JSON;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost to encode the "extra" json strings of items and predict results,
+ * by fastjson compared with {@link ExtraHelper}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtraEncodeBenchmark {
+    private Map<String, Object> flatExtra;
+
+    private Map<String, Object> reasonExtra;
+
+    @Setup
+    public void setup() {
+        // The same shape as the "extra_info" of MockHelper
+        flatExtra = new HashMap<>();
+        flatExtra.put("session_id", "sess_89j9ifuqrbplk0rti2va2k1ha0");
+        flatExtra.put("store_num", 12);
+        flatExtra.put("is_new_user", true);
+        flatExtra.put("page", "home \"feed\"");
+        reasonExtra = Collections.singletonMap(ExtraHelper.REASON_KEY, ExtraHelper.REASON_KEPT);
+    }
+
+    @Benchmark
+    public String flatByFastjson() {
+        return JSON.toJSONString(flatExtra);
+    }
+
+    @Benchmark
+    public String flatByExtraHelper() {
+        return ExtraHelper.encode(flatExtra);
+    }
+
+    @Benchmark
+    public String reasonByFastjson() {
+        return JSON.toJSONString(reasonExtra);
+    }
+
+    @Benchmark
+    public String reasonByExtraHelper() {
+        return ExtraHelper.reasonExtra(ExtraHelper.REASON_KEPT);
+    }
+}
@@ -0,0 +1,111 @@
+package byteplus.example.benchmarks;
+
+import byteplus.example.common.MockServer;
+import byteplus.example.media.ConcurrentHelper;
+import byteplus.example.media.Main;
+import byteplus.example.media.MockServerHelper;
+import byteplus.example.media.SyntheticHelper;
+import byteplus.sdk.core.Region;
+import byteplus.sdk.media.MediaClient;
+import byteplus.sdk.media.MediaClientBuilder;
+import byteplus.sdk.media.protocol.ByteplusMedia.Content;
+import byteplus.sdk.media.protocol.ByteplusMedia.User;
+import byteplus.sdk.media.protocol.ByteplusMedia.UserEvent;
+import byteplus.sdk.media.protocol.ByteplusMedia.WriteContentsRequest;
+import byteplus.sdk.media.protocol.ByteplusMedia.WriteUserEventsRequest;
+import byteplus.sdk.media.protocol.ByteplusMedia.WriteUsersRequest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The corpus of media: 10% users, 10% contents and 80% user events,
+ * generated by {@link SyntheticHelper} from the default seed and the fixed base timestamp.
+ */
+class MediaThroughputWorkload implements ThroughputSuite.Workload {
+    private final List<Object> requests = new ArrayList<>();
+
+    // Shared by the helpers renewed
+    private MediaClient client;
+
+    // Renewed by the submitter, while its queue is sampled by another thread
+    private volatile ConcurrentHelper concurrentHelper;
+
+    @Override
+    public MockServer.Vertical vertical() {
+        return MockServerHelper.vertical();
+    }
+
+    @Override
+    public long setup(String host, int itemCount, int batchSize) {
+        client = new MediaClientBuilder()
+                .tenant(Main.TENANT)
+                .tenantId(Main.TENANT_ID)
+                .token(Main.TOKEN)
+                .region(Region.SG)
+                .schema("http")
+                .hosts(Collections.singletonList(host))
+                .build();
+        concurrentHelper = new ConcurrentHelper(client);
+
+        SyntheticHelper syntheticHelper = SyntheticHelper.benchmarkHelper();
+        int entityCount = itemCount / 10;
+        long items = 0;
+        for (int first = 0; first < entityCount; first += batchSize) {
+            List<User> users = syntheticHelper.users(first, Math.min(batchSize, entityCount - first));
+            requests.add(WriteUsersRequest.newBuilder().addAllUsers(users).build());
+            items += users.size();
+        }
+        for (int first = 0; first < entityCount; first += batchSize) {
+            List<Content> contents = syntheticHelper.contents(first, Math.min(batchSize, entityCount - first));
+            requests.add(WriteContentsRequest.newBuilder().addAllContents(contents).build());
+            items += contents.size();
+        }
+        List<UserEvent> userEvents = syntheticHelper.userEvents(0, itemCount - 2 * entityCount);
+        for (int first = 0; first < userEvents.size(); first += batchSize) {
+            List<UserEvent> batch = userEvents.subList(first, Math.min(first + batchSize, userEvents.size()));
+            requests.add(WriteUserEventsRequest.newBuilder().addAllUserEvents(batch).build());
+            items += batch.size();
+        }
+        return items;
+    }
+
+    @Override
+    public int requestCount() {
+        return requests.size();
+    }
+
+    @Override
+    public void submit(int index) {
+        concurrentHelper.submitRequest(requests.get(index), ThroughputSuite.options());
+    }
+
+    @Override
+    public int queueSize() {
+        return concurrentHelper.getQueueSize();
+    }
+
+    @Override
+    public int pendingCount() {
+        return concurrentHelper.getPendingTaskCount();
+    }
+
+    @Override
+    public boolean awaitIdle(Duration timeout) throws InterruptedException {
+        return concurrentHelper.awaitIdle(timeout);
+    }
+
+    @Override
+    public void renewHelper() {
+        ConcurrentHelper oldHelper = concurrentHelper;
+        concurrentHelper = new ConcurrentHelper(client);
+        oldHelper.close();
+    }
+
+    @Override
+    public void close() {
+        concurrentHelper.close();
+    }
+}
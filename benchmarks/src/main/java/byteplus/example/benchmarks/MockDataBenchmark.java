@@ -0,0 +1,82 @@
+package byteplus.example.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost to build one item by the "MockHelper" of every vertical,
+ * which is close to what a caller pays to convert its own data into
+ * the protobuf messages (or the maps of general and byteair) before writing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MockDataBenchmark {
+    @Benchmark
+    public byteplus.sdk.retail.protocol.ByteplusRetail.User retailUser() {
+        return byteplus.example.retail.MockHelper.mockUser();
+    }
+
+    @Benchmark
+    public byteplus.sdk.retail.protocol.ByteplusRetail.Product retailProduct() {
+        return byteplus.example.retail.MockHelper.mockProduct();
+    }
+
+    @Benchmark
+    public byteplus.sdk.retail.protocol.ByteplusRetail.UserEvent retailUserEvent() {
+        return byteplus.example.retail.MockHelper.mockUserEvent();
+    }
+
+    @Benchmark
+    public byteplus.sdk.retailv2.protocol.ByteplusRetailv2.User retailv2User() {
+        return byteplus.example.retailv2.MockHelper.mockUser();
+    }
+
+    @Benchmark
+    public byteplus.sdk.retailv2.protocol.ByteplusRetailv2.Product retailv2Product() {
+        return byteplus.example.retailv2.MockHelper.mockProduct();
+    }
+
+    @Benchmark
+    public byteplus.sdk.retailv2.protocol.ByteplusRetailv2.UserEvent retailv2UserEvent() {
+        return byteplus.example.retailv2.MockHelper.mockUserEvent();
+    }
+
+    @Benchmark
+    public byteplus.sdk.media.protocol.ByteplusMedia.User mediaUser() {
+        return byteplus.example.media.MockHelper.mockUser();
+    }
+
+    @Benchmark
+    public byteplus.sdk.media.protocol.ByteplusMedia.Content mediaContent() {
+        return byteplus.example.media.MockHelper.mockContent();
+    }
+
+    @Benchmark
+    public byteplus.sdk.media.protocol.ByteplusMedia.UserEvent mediaUserEvent() {
+        return byteplus.example.media.MockHelper.mockUserEvent();
+    }
+
+    @Benchmark
+    public Map<String, Object> generalData() {
+        return byteplus.example.general.MockHelper.mockData();
+    }
+
+    @Benchmark
+    public Map<String, Object> byteairData() {
+        return byteplus.example.byteair.MockHelper.mockData();
+    }
+}
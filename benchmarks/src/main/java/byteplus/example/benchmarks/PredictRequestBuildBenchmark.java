@@ -0,0 +1,154 @@
+package byteplus.example.benchmarks;
+
+import byteplus.example.common.RequestTemplate;
+import byteplus.example.retail.MockHelper;
+import byteplus.sdk.retail.protocol.ByteplusRetail.PredictRequest;
+import byteplus.sdk.retail.protocol.ByteplusRetail.Product;
+import byteplus.sdk.retail.protocol.ByteplusRetail.UserEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost to build a predict request per call, rebuilding the scene, device
+ * and context every time, compared with building from a {@link RequestTemplate}.
+ * "templateBuild" sets user id, size and candidates on the builder of template,
+ * as buildPredictRequest of the examples does. "templateMerge" builds them into
+ * a message first and merges it into the template.
+ * <p>
+ * The "...Bytes" benchmarks include serialization, which is what a request
+ * really costs before being sent.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PredictRequestBuildBenchmark {
+    @Param({"0", "20", "200"})
+    private int candidateCount;
+
+    private List<String> candidateIds;
+
+    private Product rootProduct;
+
+    private RequestTemplate<PredictRequest> template;
+
+    private int userIndex;
+
+    @Setup
+    public void setup() {
+        candidateIds = new ArrayList<>(candidateCount);
+        for (int i = 0; i < candidateCount; i++) {
+            candidateIds.add("product_id_" + i);
+        }
+        // The root product is given by the page, it is not a part of the build cost
+        rootProduct = MockHelper.mockProduct();
+        template = new RequestTemplate<>(buildTemplate());
+    }
+
+    @Benchmark
+    public PredictRequest fullBuild() {
+        return buildFull(nextUserId());
+    }
+
+    @Benchmark
+    public PredictRequest templateBuild() {
+        return buildFromTemplate(nextUserId());
+    }
+
+    @Benchmark
+    public PredictRequest templateMerge() {
+        return template.merge(buildPerRequest(nextUserId()));
+    }
+
+    @Benchmark
+    public byte[] fullBuildBytes() {
+        return buildFull(nextUserId()).toByteArray();
+    }
+
+    @Benchmark
+    public byte[] templateBuildBytes() {
+        return buildFromTemplate(nextUserId()).toByteArray();
+    }
+
+    @Benchmark
+    public byte[] templateMergeBytes() {
+        return template.merge(buildPerRequest(nextUserId())).toByteArray();
+    }
+
+    @Benchmark
+    public byte[] templateSpliceBytes() {
+        return template.mergeBytes(buildPerRequest(nextUserId()));
+    }
+
+    private String nextUserId() {
+        userIndex = (userIndex + 1) & 1023;
+        return "user_id_" + userIndex;
+    }
+
+    private PredictRequest buildFull(String userId) {
+        UserEvent.Scene scene = UserEvent.Scene.newBuilder()
+                .setSceneName("home")
+                .build();
+        PredictRequest.Context context = PredictRequest.Context.newBuilder()
+                .setRootProduct(rootProduct)
+                .setDevice(MockHelper.mockDevice())
+                .addAllCandidateProductIds(candidateIds)
+                .build();
+        return PredictRequest.newBuilder()
+                .setUserId(userId)
+                .setSize(20)
+                .setScene(scene)
+                .setContext(context)
+                .putExtra("clear_impression", "true")
+                .build();
+    }
+
+    private PredictRequest buildFromTemplate(String userId) {
+        PredictRequest.Builder builder = template.getTemplate().toBuilder()
+                .setUserId(userId)
+                .setSize(20);
+        builder.getContextBuilder().addAllCandidateProductIds(candidateIds);
+        return builder.build();
+    }
+
+    private PredictRequest buildTemplate() {
+        UserEvent.Scene scene = UserEvent.Scene.newBuilder()
+                .setSceneName("home")
+                .build();
+        PredictRequest.Context context = PredictRequest.Context.newBuilder()
+                .setRootProduct(rootProduct)
+                .setDevice(MockHelper.mockDevice())
+                .build();
+        return PredictRequest.newBuilder()
+                .setScene(scene)
+                .setContext(context)
+                .putExtra("clear_impression", "true")
+                .build();
+    }
+
+    private PredictRequest buildPerRequest(String userId) {
+        PredictRequest.Context context = PredictRequest.Context.newBuilder()
+                .addAllCandidateProductIds(candidateIds)
+                .build();
+        return PredictRequest.newBuilder()
+                .setUserId(userId)
+                .setSize(20)
+                .setContext(context)
+                .build();
+    }
+}
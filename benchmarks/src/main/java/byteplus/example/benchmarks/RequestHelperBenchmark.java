@@ -0,0 +1,104 @@
+package byteplus.example.benchmarks;
+
+import byteplus.example.common.RequestHelper;
+import byteplus.example.common.StatusHelper;
+import byteplus.sdk.common.protocol.ByteplusCommon.Status;
+import byteplus.sdk.core.BizException;
+import byteplus.sdk.core.Option;
+import byteplus.sdk.retail.protocol.ByteplusRetail.WriteUsersRequest;
+import byteplus.sdk.retail.protocol.ByteplusRetail.WriteUsersResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.InvocationTargetException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The overhead added by {@link RequestHelper} around every request,
+ * measured with a no-op callable which returns a prepared response at once.
+ * <p>
+ * "getStatus" and "withRequestId" are private in RequestHelper, they are measured by
+ * the difference between "doWithRetryAlthoughOverload" and "doWithRetry", by the same
+ * reflective lookup in "statusByReflection", and by the public "withNewRequestId",
+ * which does the same array copy and UUID generation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestHelperBenchmark {
+    private final static int RETRY_TIMES = 2;
+
+    private RequestHelper requestHelper;
+
+    private RequestHelper.Callable<WriteUsersResponse, WriteUsersRequest> noOpCallable;
+
+    private WriteUsersRequest request;
+
+    private WriteUsersResponse response;
+
+    private Option[] opts;
+
+    @Setup
+    public void setup() {
+        // The client is only used to poll import operations, which is not measured here
+        requestHelper = new RequestHelper(null);
+        request = WriteUsersRequest.getDefaultInstance();
+        response = WriteUsersResponse.newBuilder()
+                .setStatus(Status.newBuilder().setCode(0).setMessage("success"))
+                .build();
+        noOpCallable = (req, options) -> response;
+        opts = new Option[]{
+                Option.withTimeout(Duration.ofMillis(800)),
+        };
+    }
+
+    @Benchmark
+    public WriteUsersResponse directCall() throws Exception {
+        return noOpCallable.call(request, opts);
+    }
+
+    @Benchmark
+    public WriteUsersResponse doWithRetry() throws BizException {
+        return requestHelper.doWithRetry(noOpCallable, request, opts, RETRY_TIMES);
+    }
+
+    @Benchmark
+    public WriteUsersResponse doWithRetryAlthoughOverload() throws BizException {
+        return requestHelper.doWithRetryAlthoughOverload(noOpCallable, request, opts, RETRY_TIMES);
+    }
+
+    // The same lookup as RequestHelper.getStatus
+    @Benchmark
+    public Status statusByReflection() throws NoSuchMethodException, InvocationTargetException,
+            IllegalAccessException {
+        Object rsp = response;
+        return (Status) rsp.getClass().getMethod("getStatus").invoke(rsp);
+    }
+
+    @Benchmark
+    public boolean statusByDescriptor() {
+        return StatusHelper.isResponseSuccess(response);
+    }
+
+    @Benchmark
+    public Status statusDirect() {
+        return response.getStatus();
+    }
+
+    @Benchmark
+    public Option[] withNewRequestId() {
+        return RequestHelper.withNewRequestId(opts);
+    }
+}
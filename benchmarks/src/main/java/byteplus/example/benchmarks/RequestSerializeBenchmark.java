@@ -0,0 +1,126 @@
+package byteplus.example.benchmarks;
+
+import byteplus.example.retail.MockHelper;
+import byteplus.sdk.retail.protocol.ByteplusRetail.DateConfig;
+import byteplus.sdk.retail.protocol.ByteplusRetail.ImportProductsRequest;
+import byteplus.sdk.retail.protocol.ByteplusRetail.ImportUserEventsRequest;
+import byteplus.sdk.retail.protocol.ByteplusRetail.ImportUsersRequest;
+import byteplus.sdk.retail.protocol.ByteplusRetail.ProductsInlineSource;
+import byteplus.sdk.retail.protocol.ByteplusRetail.ProductsInputConfig;
+import byteplus.sdk.retail.protocol.ByteplusRetail.UserEventsInlineSource;
+import byteplus.sdk.retail.protocol.ByteplusRetail.UserEventsInputConfig;
+import byteplus.sdk.retail.protocol.ByteplusRetail.UsersInlineSource;
+import byteplus.sdk.retail.protocol.ByteplusRetail.UsersInputConfig;
+import byteplus.sdk.retail.protocol.ByteplusRetail.WriteProductsRequest;
+import byteplus.sdk.retail.protocol.ByteplusRetail.WriteUserEventsRequest;
+import byteplus.sdk.retail.protocol.ByteplusRetail.WriteUsersRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost to serialize the "WriteXXX" and "ImportXXX" requests of retail,
+ * from one item up to the max item count of one request
+ * (2000 for "WriteXXX" and 10k for "ImportXXX").
+ * <p>
+ * The requests are prepared once, so only the encoding is measured, the cost
+ * to build the items is measured by {@link MockDataBenchmark}. Protobuf keeps
+ * the serialized size in every message, so computing the sizes is paid only once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestSerializeBenchmark {
+    @Param({"1", "100", "2000", "10000"})
+    private int itemCount;
+
+    private WriteUsersRequest writeUsersRequest;
+
+    private WriteProductsRequest writeProductsRequest;
+
+    private WriteUserEventsRequest writeUserEventsRequest;
+
+    private ImportUsersRequest importUsersRequest;
+
+    private ImportProductsRequest importProductsRequest;
+
+    private ImportUserEventsRequest importUserEventsRequest;
+
+    @Setup
+    public void setup() {
+        writeUsersRequest = WriteUsersRequest.newBuilder()
+                .addAllUsers(MockHelper.mockUsers(itemCount))
+                .build();
+        writeProductsRequest = WriteProductsRequest.newBuilder()
+                .addAllProducts(MockHelper.mockProducts(itemCount))
+                .build();
+        writeUserEventsRequest = WriteUserEventsRequest.newBuilder()
+                .addAllUserEvents(MockHelper.mockUserEvents(itemCount))
+                .build();
+        DateConfig dateConfig = DateConfig.newBuilder()
+                .setDate("2021-06-15T00:00:00+08:00")
+                .setIsEnd(false)
+                .build();
+        importUsersRequest = ImportUsersRequest.newBuilder()
+                .setInputConfig(UsersInputConfig.newBuilder()
+                        .setUsersInlineSource(UsersInlineSource.newBuilder()
+                                .addAllUsers(writeUsersRequest.getUsersList())))
+                .setDateConfig(dateConfig)
+                .build();
+        importProductsRequest = ImportProductsRequest.newBuilder()
+                .setInputConfig(ProductsInputConfig.newBuilder()
+                        .setProductsInlineSource(ProductsInlineSource.newBuilder()
+                                .addAllProducts(writeProductsRequest.getProductsList())))
+                .setDateConfig(dateConfig)
+                .build();
+        importUserEventsRequest = ImportUserEventsRequest.newBuilder()
+                .setInputConfig(UserEventsInputConfig.newBuilder()
+                        .setUserEventsInlineSource(UserEventsInlineSource.newBuilder()
+                                .addAllUserEvents(writeUserEventsRequest.getUserEventsList())))
+                .setDateConfig(dateConfig)
+                .build();
+    }
+
+    @Benchmark
+    public byte[] writeUsers() {
+        return writeUsersRequest.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] writeProducts() {
+        return writeProductsRequest.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] writeUserEvents() {
+        return writeUserEventsRequest.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] importUsers() {
+        return importUsersRequest.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] importProducts() {
+        return importProductsRequest.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] importUserEvents() {
+        return importUserEventsRequest.toByteArray();
+    }
+}
@@ -0,0 +1,114 @@
+package byteplus.example.benchmarks;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The resources used by the process at a moment, the difference of two snapshots
+ * is the cost of the work between them. The threads of the stand-in server are
+ * excluded, so only the client side, including the caller thread, the executor of
+ * ConcurrentHelper and the http client of sdk, is measured.
+ * <p>
+ * The CPU and allocation of a thread are lost if it dies between the snapshots, the
+ * threads of both the server and the client are pooled for minutes, so they are
+ * alive during a run of seconds.
+ */
+class ResourceSnapshot {
+    // The handler threads of MockServer and the dispatcher of jdk http server
+    private final static String[] SERVER_THREAD_PREFIXES = {"mock-server-", "HTTP-Dispatcher"};
+
+    private final static Path PROC_STATUS = Paths.get("/proc/self/status");
+
+    // The line of peak resident set size in PROC_STATUS, such as "VmHWM:   123456 kB"
+    private final static String PEAK_RSS_PREFIX = "VmHWM:";
+
+    private final long nanos;
+
+    private final long clientCpuNanos;
+
+    // The bytes allocated by every client thread, by thread id
+    private final Map<Long, Long> allocatedBytes;
+
+    private ResourceSnapshot(long nanos, long clientCpuNanos, Map<Long, Long> allocatedBytes) {
+        this.nanos = nanos;
+        this.clientCpuNanos = clientCpuNanos;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    static ResourceSnapshot take() {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        com.sun.management.OperatingSystemMXBean osBean =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        long serverCpuNanos = 0;
+        Map<Long, Long> allocatedBytes = new HashMap<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            long id = thread.getId();
+            if (isServerThread(thread)) {
+                serverCpuNanos += Math.max(0, threadBean.getThreadCpuTime(id));
+                continue;
+            }
+            long bytes = threadBean.getThreadAllocatedBytes(id);
+            if (bytes >= 0) {
+                allocatedBytes.put(id, bytes);
+            }
+        }
+        long processCpuNanos = osBean.getProcessCpuTime();
+        return new ResourceSnapshot(System.nanoTime(), processCpuNanos - serverCpuNanos, allocatedBytes);
+    }
+
+    long nanosSince(ResourceSnapshot start) {
+        return nanos - start.nanos;
+    }
+
+    long cpuNanosSince(ResourceSnapshot start) {
+        return clientCpuNanos - start.clientCpuNanos;
+    }
+
+    // The threads created after the start are counted from zero
+    long allocatedBytesSince(ResourceSnapshot start) {
+        long bytes = 0;
+        for (Map.Entry<Long, Long> entry : allocatedBytes.entrySet()) {
+            bytes += entry.getValue() - start.allocatedBytes.getOrDefault(entry.getKey(), 0L);
+        }
+        return bytes;
+    }
+
+    /**
+     * The peak resident set size of the process in bytes, -1 if it is unknown,
+     * such as on the systems other than linux.
+     */
+    static long peakRssBytes() {
+        if (!Files.isReadable(PROC_STATUS)) {
+            return -1;
+        }
+        try {
+            List<String> lines = Files.readAllLines(PROC_STATUS, StandardCharsets.UTF_8);
+            for (String line : lines) {
+                if (line.startsWith(PEAK_RSS_PREFIX)) {
+                    String kb = line.substring(PEAK_RSS_PREFIX.length()).replace("kB", "").trim();
+                    return Long.parseLong(kb) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+        return -1;
+    }
+
+    static boolean isServerThread(Thread thread) {
+        for (String prefix : SERVER_THREAD_PREFIXES) {
+            if (thread.getName().startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,111 @@
+package byteplus.example.benchmarks;
+
+import byteplus.example.common.MockServer;
+import byteplus.example.retail.ConcurrentHelper;
+import byteplus.example.retail.Main;
+import byteplus.example.retail.MockServerHelper;
+import byteplus.example.retail.SyntheticHelper;
+import byteplus.sdk.core.Region;
+import byteplus.sdk.retail.RetailClient;
+import byteplus.sdk.retail.RetailClientBuilder;
+import byteplus.sdk.retail.protocol.ByteplusRetail.Product;
+import byteplus.sdk.retail.protocol.ByteplusRetail.User;
+import byteplus.sdk.retail.protocol.ByteplusRetail.UserEvent;
+import byteplus.sdk.retail.protocol.ByteplusRetail.WriteProductsRequest;
+import byteplus.sdk.retail.protocol.ByteplusRetail.WriteUserEventsRequest;
+import byteplus.sdk.retail.protocol.ByteplusRetail.WriteUsersRequest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The corpus of retail: 10% users, 10% products and 80% user events,
+ * generated by {@link SyntheticHelper} from the default seed and the fixed base timestamp.
+ */
+class RetailThroughputWorkload implements ThroughputSuite.Workload {
+    private final List<Object> requests = new ArrayList<>();
+
+    // Shared by the helpers renewed
+    private RetailClient client;
+
+    // Renewed by the submitter, while its queue is sampled by another thread
+    private volatile ConcurrentHelper concurrentHelper;
+
+    @Override
+    public MockServer.Vertical vertical() {
+        return MockServerHelper.vertical();
+    }
+
+    @Override
+    public long setup(String host, int itemCount, int batchSize) {
+        client = new RetailClientBuilder()
+                .tenant(Main.TENANT)
+                .tenantId(Main.TENANT_ID)
+                .token(Main.TOKEN)
+                .region(Region.SG)
+                .schema("http")
+                .hosts(Collections.singletonList(host))
+                .build();
+        concurrentHelper = new ConcurrentHelper(client);
+
+        SyntheticHelper syntheticHelper = SyntheticHelper.benchmarkHelper();
+        int entityCount = itemCount / 10;
+        long items = 0;
+        for (int first = 0; first < entityCount; first += batchSize) {
+            List<User> users = syntheticHelper.users(first, Math.min(batchSize, entityCount - first));
+            requests.add(WriteUsersRequest.newBuilder().addAllUsers(users).build());
+            items += users.size();
+        }
+        for (int first = 0; first < entityCount; first += batchSize) {
+            List<Product> products = syntheticHelper.products(first, Math.min(batchSize, entityCount - first));
+            requests.add(WriteProductsRequest.newBuilder().addAllProducts(products).build());
+            items += products.size();
+        }
+        List<UserEvent> userEvents = syntheticHelper.userEvents(0, itemCount - 2 * entityCount);
+        for (int first = 0; first < userEvents.size(); first += batchSize) {
+            List<UserEvent> batch = userEvents.subList(first, Math.min(first + batchSize, userEvents.size()));
+            requests.add(WriteUserEventsRequest.newBuilder().addAllUserEvents(batch).build());
+            items += batch.size();
+        }
+        return items;
+    }
+
+    @Override
+    public int requestCount() {
+        return requests.size();
+    }
+
+    @Override
+    public void submit(int index) {
+        concurrentHelper.submitRequest(requests.get(index), ThroughputSuite.options());
+    }
+
+    @Override
+    public int queueSize() {
+        return concurrentHelper.getQueueSize();
+    }
+
+    @Override
+    public int pendingCount() {
+        return concurrentHelper.getPendingTaskCount();
+    }
+
+    @Override
+    public boolean awaitIdle(Duration timeout) throws InterruptedException {
+        return concurrentHelper.awaitIdle(timeout);
+    }
+
+    @Override
+    public void renewHelper() {
+        ConcurrentHelper oldHelper = concurrentHelper;
+        concurrentHelper = new ConcurrentHelper(client);
+        oldHelper.close();
+    }
+
+    @Override
+    public void close() {
+        concurrentHelper.close();
+    }
+}
@@ -0,0 +1,111 @@
+package byteplus.example.benchmarks;
+
+import byteplus.example.common.MockServer;
+import byteplus.example.retailv2.ConcurrentHelper;
+import byteplus.example.retailv2.Main;
+import byteplus.example.retailv2.MockServerHelper;
+import byteplus.example.retailv2.SyntheticHelper;
+import byteplus.sdk.core.Region;
+import byteplus.sdk.retailv2.RetailClient;
+import byteplus.sdk.retailv2.RetailClientBuilder;
+import byteplus.sdk.retailv2.protocol.ByteplusRetailv2.Product;
+import byteplus.sdk.retailv2.protocol.ByteplusRetailv2.User;
+import byteplus.sdk.retailv2.protocol.ByteplusRetailv2.UserEvent;
+import byteplus.sdk.retailv2.protocol.ByteplusRetailv2.WriteProductsRequest;
+import byteplus.sdk.retailv2.protocol.ByteplusRetailv2.WriteUserEventsRequest;
+import byteplus.sdk.retailv2.protocol.ByteplusRetailv2.WriteUsersRequest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The corpus of retailv2: 10% users, 10% products and 80% user events,
+ * generated by {@link SyntheticHelper} from the default seed and the fixed base timestamp.
+ */
+class Retailv2ThroughputWorkload implements ThroughputSuite.Workload {
+    private final List<Object> requests = new ArrayList<>();
+
+    // Shared by the helpers renewed
+    private RetailClient client;
+
+    // Renewed by the submitter, while its queue is sampled by another thread
+    private volatile ConcurrentHelper concurrentHelper;
+
+    @Override
+    public MockServer.Vertical vertical() {
+        return MockServerHelper.vertical();
+    }
+
+    @Override
+    public long setup(String host, int itemCount, int batchSize) {
+        client = new RetailClientBuilder()
+                .tenant(Main.TENANT)
+                .tenantId(Main.TENANT_ID)
+                .token(Main.TOKEN)
+                .region(Region.SG)
+                .schema("http")
+                .hosts(Collections.singletonList(host))
+                .build();
+        concurrentHelper = new ConcurrentHelper(client);
+
+        SyntheticHelper syntheticHelper = SyntheticHelper.benchmarkHelper();
+        int entityCount = itemCount / 10;
+        long items = 0;
+        for (int first = 0; first < entityCount; first += batchSize) {
+            List<User> users = syntheticHelper.users(first, Math.min(batchSize, entityCount - first));
+            requests.add(WriteUsersRequest.newBuilder().addAllUsers(users).build());
+            items += users.size();
+        }
+        for (int first = 0; first < entityCount; first += batchSize) {
+            List<Product> products = syntheticHelper.products(first, Math.min(batchSize, entityCount - first));
+            requests.add(WriteProductsRequest.newBuilder().addAllProducts(products).build());
+            items += products.size();
+        }
+        List<UserEvent> userEvents = syntheticHelper.userEvents(0, itemCount - 2 * entityCount);
+        for (int first = 0; first < userEvents.size(); first += batchSize) {
+            List<UserEvent> batch = userEvents.subList(first, Math.min(first + batchSize, userEvents.size()));
+            requests.add(WriteUserEventsRequest.newBuilder().addAllUserEvents(batch).build());
+            items += batch.size();
+        }
+        return items;
+    }
+
+    @Override
+    public int requestCount() {
+        return requests.size();
+    }
+
+    @Override
+    public void submit(int index) {
+        concurrentHelper.submitRequest(requests.get(index), ThroughputSuite.options());
+    }
+
+    @Override
+    public int queueSize() {
+        return concurrentHelper.getQueueSize();
+    }
+
+    @Override
+    public int pendingCount() {
+        return concurrentHelper.getPendingTaskCount();
+    }
+
+    @Override
+    public boolean awaitIdle(Duration timeout) throws InterruptedException {
+        return concurrentHelper.awaitIdle(timeout);
+    }
+
+    @Override
+    public void renewHelper() {
+        ConcurrentHelper oldHelper = concurrentHelper;
+        concurrentHelper = new ConcurrentHelper(client);
+        oldHelper.close();
+    }
+
+    @Override
+    public void close() {
+        concurrentHelper.close();
+    }
+}
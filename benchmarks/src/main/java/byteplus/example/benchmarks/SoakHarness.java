@@ -0,0 +1,322 @@
+package byteplus.example.benchmarks;
+
+import byteplus.example.common.LoadGenerator;
+import byteplus.example.common.MockServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Run the concurrent helpers of several verticals with mixed traffic for hours, and find the
+ * resources leaking slowly, which a run of seconds never shows, such as executors never shut
+ * down, connections never closed, caches never evicted and sending slowing down over time.
+ * <pre>
+ *     java -cp target/benchmarks.jar byteplus.example.benchmarks.SoakHarness \
+ *         --duration 14400 --warmup 600 --rate 20 --verticals retail,general
+ * </pre>
+ * Every vertical has a ConcurrentHelper, fed with the corpus of {@link ThroughputSuite} at "--rate"
+ * requests per second, and an embedded {@link MockServer} answering with the latency of
+ * "--mock_median_ms" and "--mock_p99_ms", and overloaded by "--mock_overload_rate", so the retries
+ * of RequestHelper are exercised too. Every "--helper_lifetime" seconds, the helper is replaced by
+ * a new one and the old one is closed, so the helpers not releasing their threads show in the
+ * live threads.
+ * <p>
+ * Every "--sample_interval" seconds, the heap used after a full GC, the live threads, the queue
+ * depth of the executors, the open file descriptors, the backlog of submitting and the pending tasks
+ * of the helpers are sampled, logged and appended to "--samples_file" (csv). The threads of the stand-in
+ * server are not counted. The queue depth never exceeds the capacity of the executors, as the tasks
+ * beyond it run on the submitter, so sending slowing down shows in the backlog instead: the requests
+ * due at "--rate" but not submitted yet. At the end, a metric is reported as leaking if it trends
+ * upward after warmup, see {@link Series}, and the harness exits with 1 if any metric leaks.
+ */
+public class SoakHarness {
+    static {
+        // Set before any logger is created, as the success of every request is logged at INFO
+        if (Objects.isNull(System.getProperty("log4j.configuration"))) {
+            System.setProperty("log4j.configuration", ThroughputSuite.LOG4J_CONFIGURATION);
+        }
+    }
+
+    private final static Logger log = LoggerFactory.getLogger(SoakHarness.class);
+
+    private final static String DEFAULT_VERTICALS = "retail,retailv2,media,general,byteair";
+
+    private final static String DEFAULT_SAMPLES_FILE = "soak-samples.csv";
+
+    private final static long DEFAULT_DURATION_SECONDS = TimeUnit.HOURS.toSeconds(4);
+
+    private final static long DEFAULT_WARMUP_SECONDS = TimeUnit.MINUTES.toSeconds(10);
+
+    private final static long DEFAULT_SAMPLE_INTERVAL_SECONDS = 60;
+
+    private final static long DEFAULT_HELPER_LIFETIME_SECONDS = TimeUnit.MINUTES.toSeconds(10);
+
+    // The requests per second of every vertical
+    private final static double DEFAULT_RATE = 10;
+
+    // The corpus is small and submitted in a loop, the same items are written again and again
+    private final static int DEFAULT_ITEM_COUNT = 20_000;
+
+    private final static int DEFAULT_BATCH_SIZE = 100;
+
+    // The growth allowed between the first and the last third of samples, relative to the first
+    private final static double DEFAULT_THRESHOLD = 0.2;
+
+    // The samples after warmup needed to judge a trend
+    private final static int MIN_SAMPLES = 6;
+
+    // The growth below these is noise whatever the ratio is
+    private final static long MIN_HEAP_GROWTH_BYTES = 16L * 1024 * 1024;
+
+    private final static long MIN_THREAD_GROWTH = 2;
+
+    private final static long MIN_QUEUE_GROWTH = 5;
+
+    private final static long MIN_DESCRIPTOR_GROWTH = 8;
+
+    private final static long MIN_BACKLOG_GROWTH = 50;
+
+    private final static long MIN_PENDING_GROWTH = 10;
+
+    private final static String CSV_HEADER = "elapsed_seconds,heap_after_gc_bytes,live_threads,queue_depth," +
+            "open_descriptors,submitted,submit_backlog,pending_tasks";
+
+    private static volatile boolean running = true;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> arguments = LoadGenerator.parseArguments(args);
+        Duration duration = Duration.ofSeconds(Long.parseLong(
+                arguments.getOrDefault("duration", String.valueOf(DEFAULT_DURATION_SECONDS))));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(
+                arguments.getOrDefault("warmup", String.valueOf(DEFAULT_WARMUP_SECONDS))));
+        Duration sampleInterval = Duration.ofSeconds(Long.parseLong(
+                arguments.getOrDefault("sample_interval", String.valueOf(DEFAULT_SAMPLE_INTERVAL_SECONDS))));
+        Duration helperLifetime = Duration.ofSeconds(Long.parseLong(
+                arguments.getOrDefault("helper_lifetime", String.valueOf(DEFAULT_HELPER_LIFETIME_SECONDS))));
+        double rate = Double.parseDouble(arguments.getOrDefault("rate", String.valueOf(DEFAULT_RATE)));
+        int itemCount = Integer.parseInt(arguments.getOrDefault("items", String.valueOf(DEFAULT_ITEM_COUNT)));
+        int batchSize = Integer.parseInt(arguments.getOrDefault("batch", String.valueOf(DEFAULT_BATCH_SIZE)));
+        double threshold = Double.parseDouble(arguments.getOrDefault("threshold", String.valueOf(DEFAULT_THRESHOLD)));
+
+        List<MockServer> servers = new ArrayList<>();
+        List<ThroughputSuite.Workload> workloads = new ArrayList<>();
+        List<Thread> submitters = new ArrayList<>();
+        AtomicLong submitted = new AtomicLong();
+        for (String vertical : arguments.getOrDefault("verticals", DEFAULT_VERTICALS).split(",")) {
+            ThroughputSuite.Workload workload = ThroughputSuite.workload(vertical.trim());
+            MockServer server = MockServer.builder(workload.vertical())
+                    .latency(Duration.ofMillis(Long.parseLong(arguments.getOrDefault("mock_median_ms", "20"))),
+                            Duration.ofMillis(Long.parseLong(arguments.getOrDefault("mock_p99_ms", "100"))))
+                    .overloadRate(Double.parseDouble(arguments.getOrDefault("mock_overload_rate", "0.01")))
+                    .build()
+                    .start();
+            servers.add(server);
+            workload.setup(server.getHost(), itemCount, batchSize);
+            workloads.add(workload);
+            Thread submitter = new Thread(() -> submit(workload, rate, helperLifetime, submitted),
+                    "soak-submitter-" + vertical);
+            submitter.setDaemon(true);
+            submitters.add(submitter);
+        }
+        long startNanos = System.nanoTime();
+        submitters.forEach(Thread::start);
+
+        Series heap = new Series("heap_after_gc_bytes", MIN_HEAP_GROWTH_BYTES);
+        Series threads = new Series("live_threads", MIN_THREAD_GROWTH);
+        Series queue = new Series("queue_depth", MIN_QUEUE_GROWTH);
+        Series descriptors = new Series("open_descriptors", MIN_DESCRIPTOR_GROWTH);
+        Series backlog = new Series("submit_backlog", MIN_BACKLOG_GROWTH);
+        Series pending = new Series("pending_tasks", MIN_PENDING_GROWTH);
+        String samplesFile = arguments.getOrDefault("samples_file", DEFAULT_SAMPLES_FILE);
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(samplesFile),
+                StandardCharsets.UTF_8))) {
+            writer.println(CSV_HEADER);
+            for (long next = sampleInterval.toNanos(); next <= duration.toNanos(); next += sampleInterval.toNanos()) {
+                TimeUnit.NANOSECONDS.sleep(startNanos + next - System.nanoTime());
+                long elapsedNanos = System.nanoTime() - startNanos;
+                long elapsedSeconds = TimeUnit.NANOSECONDS.toSeconds(elapsedNanos);
+                System.gc();
+                long heapBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+                long liveThreads = clientThreadCount();
+                long queueDepth = 0;
+                long pendingTasks = 0;
+                for (ThroughputSuite.Workload workload : workloads) {
+                    queueDepth += workload.queueSize();
+                    pendingTasks += workload.pendingCount();
+                }
+                long openDescriptors = openDescriptorCount();
+                long submittedCount = submitted.get();
+                // The requests due at the rate but not submitted, as the submitter is blocked
+                // running the tasks beyond the capacity of the executor
+                long dueCount = (long) (rate * workloads.size() * elapsedNanos / TimeUnit.SECONDS.toNanos(1));
+                long submitBacklog = Math.max(0, dueCount - submittedCount);
+                String sample = String.format("%d,%d,%d,%d,%d,%d,%d,%d", elapsedSeconds, heapBytes, liveThreads,
+                        queueDepth, openDescriptors, submittedCount, submitBacklog, pendingTasks);
+                writer.println(sample);
+                writer.flush();
+                log.info(sample);
+                // The samples in warmup are written, but not judged
+                if (elapsedSeconds < warmup.getSeconds()) {
+                    continue;
+                }
+                heap.add(elapsedSeconds, heapBytes);
+                threads.add(elapsedSeconds, liveThreads);
+                queue.add(elapsedSeconds, queueDepth);
+                if (openDescriptors >= 0) {
+                    descriptors.add(elapsedSeconds, openDescriptors);
+                }
+                backlog.add(elapsedSeconds, submitBacklog);
+                pending.add(elapsedSeconds, pendingTasks);
+            }
+        } finally {
+            // Stop submitting, send the submitted requests, then stop the servers answering them
+            running = false;
+            for (Thread submitter : submitters) {
+                submitter.join();
+            }
+            for (ThroughputSuite.Workload workload : workloads) {
+                workload.close();
+            }
+            for (MockServer server : servers) {
+                server.close();
+            }
+        }
+        log.info("samples are written into {}", Paths.get(samplesFile).toAbsolutePath());
+
+        boolean leaking = false;
+        for (Series series : Arrays.asList(heap, threads, queue, descriptors, backlog, pending)) {
+            String verdict = series.judge(threshold);
+            log.info(verdict);
+            leaking |= verdict.startsWith(Series.LEAKING);
+        }
+        // All the helpers are closed, the JVM exits by itself unless a thread is left running
+        if (leaking) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Submit the corpus in a loop at the rate, the requests late for blocking are not sent in a burst
+     * but counted in the backlog. The helper is renewed every lifetime on this thread, so no request
+     * is submitted to a closed helper.
+     */
+    private static void submit(ThroughputSuite.Workload workload, double rate, Duration helperLifetime,
+                               AtomicLong submitted) {
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long next = System.nanoTime();
+        long renewAt = next + helperLifetime.toNanos();
+        for (long i = 0; running; i++) {
+            LockSupport.parkNanos(next - System.nanoTime());
+            if (System.nanoTime() - renewAt >= 0) {
+                workload.renewHelper();
+                renewAt += helperLifetime.toNanos();
+            }
+            workload.submit((int) (i % workload.requestCount()));
+            submitted.incrementAndGet();
+            next = Math.max(next + intervalNanos, System.nanoTime());
+        }
+    }
+
+    private static long clientThreadCount() {
+        long count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (!ResourceSnapshot.isServerThread(thread)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // -1 if it is unknown, such as on windows
+    private static long openDescriptorCount() {
+        OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+        if (osBean instanceof com.sun.management.UnixOperatingSystemMXBean) {
+            return ((com.sun.management.UnixOperatingSystemMXBean) osBean).getOpenFileDescriptorCount();
+        }
+        return -1;
+    }
+
+    /**
+     * The samples of a metric after warmup. It is leaking when both the slope of the least
+     * squares line is positive, and the median of the last third of samples is above the
+     * median of the first third by more than max(minGrowth, threshold * first median).
+     * The medians ignore the spikes, such as a burst of retries, and the slope ignores a
+     * step up and down in the middle.
+     */
+    static class Series {
+        final static String LEAKING = "LEAKING";
+
+        private final String name;
+
+        private final long minGrowth;
+
+        private final List<long[]> samples = new ArrayList<>();
+
+        Series(String name, long minGrowth) {
+            this.name = name;
+            this.minGrowth = minGrowth;
+        }
+
+        void add(long elapsedSeconds, long value) {
+            samples.add(new long[]{elapsedSeconds, value});
+        }
+
+        String judge(double threshold) {
+            if (samples.size() < MIN_SAMPLES) {
+                return String.format("UNKNOWN %s: only %d samples after warmup, %d are needed",
+                        name, samples.size(), MIN_SAMPLES);
+            }
+            int third = samples.size() / 3;
+            double firstMedian = median(samples.subList(0, third));
+            double lastMedian = median(samples.subList(samples.size() - third, samples.size()));
+            double slopePerHour = slope() * TimeUnit.HOURS.toSeconds(1);
+            double growth = lastMedian - firstMedian;
+            boolean leaking = slopePerHour > 0 && growth > Math.max(minGrowth, threshold * firstMedian);
+            return String.format("%s %s: median %.0f -> %.0f, slope %+.1f per hour",
+                    leaking ? LEAKING : "STABLE", name, firstMedian, lastMedian, slopePerHour);
+        }
+
+        private double slope() {
+            double meanX = 0;
+            double meanY = 0;
+            for (long[] sample : samples) {
+                meanX += sample[0];
+                meanY += sample[1];
+            }
+            meanX /= samples.size();
+            meanY /= samples.size();
+            double covariance = 0;
+            double variance = 0;
+            for (long[] sample : samples) {
+                covariance += (sample[0] - meanX) * (sample[1] - meanY);
+                variance += (sample[0] - meanX) * (sample[0] - meanX);
+            }
+            return variance == 0 ? 0 : covariance / variance;
+        }
+
+        private static double median(List<long[]> samples) {
+            long[] values = new long[samples.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = samples.get(i)[1];
+            }
+            Arrays.sort(values);
+            int middle = values.length / 2;
+            return values.length % 2 == 1 ? values[middle] : (values[middle - 1] + values[middle]) / 2.0;
+        }
+    }
+}
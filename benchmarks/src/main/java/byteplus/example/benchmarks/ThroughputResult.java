@@ -0,0 +1,97 @@
+package byteplus.example.benchmarks;
+
+/**
+ * The result of a vertical in {@link ThroughputSuite}, written and read as json.
+ */
+public class ThroughputResult {
+    private String vertical;
+
+    private long items;
+
+    private double seconds;
+
+    private double itemsPerSecond;
+
+    // The CPU seconds of the client side to push one million items
+    private double cpuSecondsPerMillion;
+
+    // The allocation of the client side in MB per second
+    private double allocationMbPerSecond;
+
+    private double allocatedBytesPerItem;
+
+    // -1 if it is unknown
+    private long peakRssMb;
+
+    public String getVertical() {
+        return vertical;
+    }
+
+    public void setVertical(String vertical) {
+        this.vertical = vertical;
+    }
+
+    public long getItems() {
+        return items;
+    }
+
+    public void setItems(long items) {
+        this.items = items;
+    }
+
+    public double getSeconds() {
+        return seconds;
+    }
+
+    public void setSeconds(double seconds) {
+        this.seconds = seconds;
+    }
+
+    public double getItemsPerSecond() {
+        return itemsPerSecond;
+    }
+
+    public void setItemsPerSecond(double itemsPerSecond) {
+        this.itemsPerSecond = itemsPerSecond;
+    }
+
+    public double getCpuSecondsPerMillion() {
+        return cpuSecondsPerMillion;
+    }
+
+    public void setCpuSecondsPerMillion(double cpuSecondsPerMillion) {
+        this.cpuSecondsPerMillion = cpuSecondsPerMillion;
+    }
+
+    public double getAllocationMbPerSecond() {
+        return allocationMbPerSecond;
+    }
+
+    public void setAllocationMbPerSecond(double allocationMbPerSecond) {
+        this.allocationMbPerSecond = allocationMbPerSecond;
+    }
+
+    public double getAllocatedBytesPerItem() {
+        return allocatedBytesPerItem;
+    }
+
+    public void setAllocatedBytesPerItem(double allocatedBytesPerItem) {
+        this.allocatedBytesPerItem = allocatedBytesPerItem;
+    }
+
+    public long getPeakRssMb() {
+        return peakRssMb;
+    }
+
+    public void setPeakRssMb(long peakRssMb) {
+        this.peakRssMb = peakRssMb;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-9s items:%d seconds:%.2f items/s:%.0f cpu_s/M:%.2f alloc_MB/s:%.1f" +
+                        " alloc_B/item:%.0f peak_rss_MB:%d",
+                vertical, items, seconds, itemsPerSecond, cpuSecondsPerMillion, allocationMbPerSecond,
+                allocatedBytesPerItem, peakRssMb);
+    }
+}
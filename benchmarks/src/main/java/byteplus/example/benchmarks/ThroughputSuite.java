@@ -0,0 +1,313 @@
+package byteplus.example.benchmarks;
+
+import byteplus.example.common.LoadGenerator;
+import byteplus.example.common.MockServer;
+import byteplus.sdk.core.Option;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.TypeReference;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * The end-to-end throughput of every vertical: a fixed synthetic corpus is pushed through
+ * the real ConcurrentHelper, with the splitting, validation and retries of RequestHelper
+ * inside it, and the http client of sdk, to an embedded {@link MockServer} answering at once.
+ * Run it after packaging the benchmarks:
+ * <pre>
+ *     java -cp target/benchmarks.jar byteplus.example.benchmarks.ThroughputSuite --items 200000
+ * </pre>
+ * Every vertical runs in its own JVM forked with the same JVM options, so the peak RSS and
+ * the JIT of one vertical don't affect the others. The corpus is pushed once to warm up, then
+ * "--iterations" times to measure, and the suite reports for every vertical:
+ * items/s, CPU seconds per million items, allocation in MB/s and bytes per item, and peak RSS.
+ * The CPU and allocation are of the client side only, see {@link ResourceSnapshot}.
+ * <p>
+ * The results are written into "throughput-result-&lt;version&gt;.json". With "--baseline &lt;file&gt;",
+ * they are compared with a previous result, and the suite exits with 1 if the throughput of any
+ * vertical drops, or its allocation per item grows, by more than "--threshold" (0.1 by default).
+ * With "--save_baseline", the results are written into the baseline file instead.
+ * Run a part of the verticals by "--verticals retail,media".
+ * <p>
+ * The results are logged by the logger of this package, which has its own appender printing
+ * the bare messages in {@link #LOG4J_CONFIGURATION}.
+ */
+public class ThroughputSuite {
+    private final static String ALL_VERTICALS = "retail,retailv2,media,general,byteair";
+
+    private final static String RESULT_FILE_PREFIX = "throughput-result-";
+
+    // The log level of the forked JVM is WARN, as the success of every request is logged at INFO
+    final static String LOG4J_CONFIGURATION = "throughput-log4j.properties";
+
+    static {
+        // Set before any logger is created, unless another configuration is given
+        if (Objects.isNull(System.getProperty("log4j.configuration"))) {
+            System.setProperty("log4j.configuration", LOG4J_CONFIGURATION);
+        }
+    }
+
+    private final static Logger log = LoggerFactory.getLogger(ThroughputSuite.class);
+
+    private final static int DEFAULT_ITEM_COUNT = 200_000;
+
+    // Less than the max item count of a write request, so a request is never split
+    private final static int DEFAULT_BATCH_SIZE = 1000;
+
+    private final static int DEFAULT_ITERATIONS = 3;
+
+    private final static double DEFAULT_THRESHOLD = 0.1;
+
+    private final static Duration REQUEST_TIMEOUT = Duration.ofSeconds(5);
+
+    // The longest wait for the requests of a pass to complete
+    private final static Duration PASS_TIMEOUT = Duration.ofMinutes(5);
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> arguments = LoadGenerator.parseArguments(args);
+        int itemCount = Integer.parseInt(arguments.getOrDefault("items", String.valueOf(DEFAULT_ITEM_COUNT)));
+        int batchSize = Integer.parseInt(arguments.getOrDefault("batch", String.valueOf(DEFAULT_BATCH_SIZE)));
+        int iterations = Integer.parseInt(arguments.getOrDefault("iterations", String.valueOf(DEFAULT_ITERATIONS)));
+        // The forked JVM measures a single vertical and writes the result for the parent
+        if (arguments.containsKey("vertical")) {
+            ThroughputResult result = runVertical(arguments.get("vertical"), itemCount, batchSize, iterations);
+            Files.write(Paths.get(arguments.get("result_file")), JSON.toJSONBytes(result));
+            return;
+        }
+        Map<String, ThroughputResult> results = new LinkedHashMap<>();
+        for (String vertical : arguments.getOrDefault("verticals", ALL_VERTICALS).split(",")) {
+            ThroughputResult result = fork(vertical.trim(), itemCount, batchSize, iterations);
+            log.info("{}", result);
+            results.put(result.getVertical(), result);
+        }
+        Path resultFile = Paths.get(RESULT_FILE_PREFIX + version() + ".json");
+        writeResults(resultFile, results);
+        log.info("results are written into {}", resultFile.toAbsolutePath());
+
+        String baselineFile = arguments.get("baseline");
+        if (Objects.isNull(baselineFile)) {
+            return;
+        }
+        if (arguments.containsKey("save_baseline")) {
+            writeResults(Paths.get(baselineFile), results);
+            log.info("baseline is saved into {}", baselineFile);
+            return;
+        }
+        double threshold = Double.parseDouble(arguments.getOrDefault("threshold", String.valueOf(DEFAULT_THRESHOLD)));
+        List<String> regressions = compare(readResults(Paths.get(baselineFile)), results, threshold);
+        if (regressions.isEmpty()) {
+            log.info("no regression against {}", baselineFile);
+            return;
+        }
+        for (String regression : regressions) {
+            log.error("REGRESSION {}", regression);
+        }
+        System.exit(1);
+    }
+
+    /**
+     * The regressions of the results against the baseline, a vertical absent in baseline is skipped.
+     *
+     * @param threshold the ratio of change allowed, such as 0.1 for 10%
+     */
+    static List<String> compare(Map<String, ThroughputResult> baseline, Map<String, ThroughputResult> results,
+                                double threshold) {
+        List<String> regressions = new ArrayList<>();
+        for (ThroughputResult result : results.values()) {
+            ThroughputResult base = baseline.get(result.getVertical());
+            if (Objects.isNull(base)) {
+                log.warn("no baseline of {}, skip comparing", result.getVertical());
+                continue;
+            }
+            if (result.getItemsPerSecond() < base.getItemsPerSecond() * (1 - threshold)) {
+                regressions.add(String.format("%s throughput %.0f -> %.0f items/s (%+.1f%%)",
+                        result.getVertical(), base.getItemsPerSecond(), result.getItemsPerSecond(),
+                        change(base.getItemsPerSecond(), result.getItemsPerSecond())));
+            }
+            if (result.getAllocatedBytesPerItem() > base.getAllocatedBytesPerItem() * (1 + threshold)) {
+                regressions.add(String.format("%s allocation %.0f -> %.0f bytes/item (%+.1f%%)",
+                        result.getVertical(), base.getAllocatedBytesPerItem(), result.getAllocatedBytesPerItem(),
+                        change(base.getAllocatedBytesPerItem(), result.getAllocatedBytesPerItem())));
+            }
+        }
+        return regressions;
+    }
+
+    // Measure a vertical in this JVM
+    static ThroughputResult runVertical(String vertical, int itemCount, int batchSize, int iterations)
+            throws IOException, InterruptedException {
+        Workload workload = workload(vertical);
+        try (MockServer server = MockServer.builder(workload.vertical()).build().start()) {
+            long corpusItems = workload.setup(server.getHost(), itemCount, batchSize);
+            ResourceSnapshot start;
+            ResourceSnapshot end;
+            try {
+                // The first pass warms up the JIT, the pools of threads and the connections
+                push(workload);
+                start = ResourceSnapshot.take();
+                for (int i = 0; i < iterations; i++) {
+                    push(workload);
+                }
+                end = ResourceSnapshot.take();
+            } finally {
+                workload.close();
+            }
+
+            long items = corpusItems * iterations;
+            double seconds = end.nanosSince(start) / 1e9;
+            long allocatedBytes = end.allocatedBytesSince(start);
+            long peakRssBytes = ResourceSnapshot.peakRssBytes();
+            ThroughputResult result = new ThroughputResult();
+            result.setVertical(vertical);
+            result.setItems(items);
+            result.setSeconds(seconds);
+            result.setItemsPerSecond(items / seconds);
+            result.setCpuSecondsPerMillion(end.cpuNanosSince(start) / 1e9 * 1_000_000 / items);
+            result.setAllocationMbPerSecond(allocatedBytes / 1048576.0 / seconds);
+            result.setAllocatedBytesPerItem((double) allocatedBytes / items);
+            result.setPeakRssMb(peakRssBytes < 0 ? -1 : peakRssBytes / 1048576);
+            return result;
+        }
+    }
+
+    // Every request has its own request id, or the server rejects it as idempotent
+    static Option[] options() {
+        return new Option[]{
+                Option.withRequestId(UUID.randomUUID().toString()),
+                Option.withTimeout(REQUEST_TIMEOUT),
+        };
+    }
+
+    static Workload workload(String vertical) {
+        switch (vertical) {
+            case "retail":
+                return new RetailThroughputWorkload();
+            case "retailv2":
+                return new Retailv2ThroughputWorkload();
+            case "media":
+                return new MediaThroughputWorkload();
+            case "general":
+                return new GeneralThroughputWorkload();
+            case "byteair":
+                return new ByteairThroughputWorkload();
+            default:
+                throw new IllegalArgumentException("unknown vertical:" + vertical);
+        }
+    }
+
+    // Submit the whole corpus and wait for all the requests to complete
+    private static void push(Workload workload) throws InterruptedException {
+        for (int i = 0; i < workload.requestCount(); i++) {
+            workload.submit(i);
+        }
+        if (!workload.awaitIdle(PASS_TIMEOUT)) {
+            throw new IllegalStateException(workload.pendingCount() + " requests are not completed in " +
+                    PASS_TIMEOUT);
+        }
+    }
+
+    private static ThroughputResult fork(String vertical, int itemCount, int batchSize, int iterations)
+            throws IOException, InterruptedException {
+        Path resultFile = Files.createTempFile("throughput-" + vertical, ".json");
+        try {
+            List<String> command = new ArrayList<>();
+            command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+            command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+            command.add("-Dlog4j.configuration=" + LOG4J_CONFIGURATION);
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(ThroughputSuite.class.getName());
+            command.add("--vertical");
+            command.add(vertical);
+            command.add("--items");
+            command.add(String.valueOf(itemCount));
+            command.add("--batch");
+            command.add(String.valueOf(batchSize));
+            command.add("--iterations");
+            command.add(String.valueOf(iterations));
+            command.add("--result_file");
+            command.add(resultFile.toString());
+            Process process = new ProcessBuilder(command).inheritIO().start();
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new IllegalStateException("run " + vertical + " fail, exit code:" + exitCode);
+            }
+            return JSON.parseObject(new String(Files.readAllBytes(resultFile), StandardCharsets.UTF_8),
+                    ThroughputResult.class);
+        } finally {
+            Files.deleteIfExists(resultFile);
+        }
+    }
+
+    private static void writeResults(Path path, Map<String, ThroughputResult> results) throws IOException {
+        String json = JSON.toJSONString(results, SerializerFeature.PrettyFormat);
+        Files.write(path, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, ThroughputResult> readResults(Path path) throws IOException {
+        String json = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        return JSON.parseObject(json, new TypeReference<LinkedHashMap<String, ThroughputResult>>() {
+        });
+    }
+
+    // The change from base to current in percent
+    private static double change(double base, double current) {
+        return base == 0 ? 0 : (current - base) / base * 100;
+    }
+
+    // The version is written into the manifest of "benchmarks.jar"
+    private static String version() {
+        String version = ThroughputSuite.class.getPackage().getImplementationVersion();
+        return Objects.isNull(version) ? "dev" : version;
+    }
+
+    /**
+     * The corpus of a vertical and the way to push it, built once and pushed several times.
+     */
+    interface Workload {
+        // The responses of the stand-in server
+        MockServer.Vertical vertical();
+
+        /**
+         * Build the client of the host, and the requests of the corpus.
+         *
+         * @return the count of items in the corpus
+         */
+        long setup(String host, int itemCount, int batchSize);
+
+        // The count of requests of the corpus
+        int requestCount();
+
+        // Submit a request of the corpus to ConcurrentHelper, it may run on the caller if the queue is full
+        void submit(int index);
+
+        // The count of tasks waiting in the queue of ConcurrentHelper
+        int queueSize();
+
+        // The count of tasks of ConcurrentHelper submitted but not finished, a split request has several
+        int pendingCount();
+
+        // Wait for the submitted requests to be sent, including the parts of split ones and the retries
+        boolean awaitIdle(Duration timeout) throws InterruptedException;
+
+        // Replace ConcurrentHelper by a new one of the same client, and close the old one
+        void renewHelper();
+
+        // Close ConcurrentHelper after the submitted requests are sent
+        void close();
+    }
+}
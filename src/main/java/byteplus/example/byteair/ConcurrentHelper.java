@@ -1,8 +1,13 @@
 package byteplus.example.byteair;
 
+import byteplus.example.common.PartialFailureHelper;
+import byteplus.example.common.PartialFailureHelper.RejectSink;
+import byteplus.example.common.PopularityModel;
 import byteplus.example.common.RequestHelper;
+import byteplus.example.common.RequestSplitter;
 import byteplus.example.common.RequestHelper.Callable;
 import byteplus.example.common.StatusHelper;
+import byteplus.example.common.ValidationHelper;
 import byteplus.sdk.byteair.ByteairClient;
 import byteplus.sdk.common.protocol.ByteplusCommon.DoneResponse;
 import byteplus.sdk.core.Option;
@@ -12,16 +17,19 @@ import byteplus.sdk.byteair.protocol.ByteplusByteair.WriteResponse;
 import byteplus.sdk.byteair.protocol.ByteplusByteair.CallbackRequest;
 import byteplus.sdk.byteair.protocol.ByteplusByteair.CallbackResponse;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
+import java.util.Objects;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 @Slf4j
-public class ConcurrentHelper {
+public class ConcurrentHelper implements AutoCloseable {
 
     private final static int CORE_POOL_SIZE = 5;
 
@@ -31,9 +39,18 @@ public class ConcurrentHelper {
 
     private final static int MAX_BLOCK_TASK_COUNT = 20;
 
+    // The time close waits for the submitted requests to be sent, including their retries
+    private final static Duration CLOSE_TIMEOUT = Duration.ofSeconds(30);
+
     private final static int RETRY_TIMES = 2;
 
-    private final ExecutorService executor = new ThreadPoolExecutor(
+    // The count of items included in one "Write" request should not exceed 300
+    private final static int MAX_WRITE_ITEM_COUNT = 300;
+
+    // The max payload size of one request, adjust it according to the server limit
+    private final static int MAX_REQUEST_BYTES = 8 * 1024 * 1024;
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(
             CORE_POOL_SIZE,
             MAX_POOL_SIZE,
             KEEP_ALIVE_MINUTES, TimeUnit.MINUTES,
@@ -41,13 +58,107 @@ public class ConcurrentHelper {
             new ThreadPoolExecutor.CallerRunsPolicy()
     );
 
+    // The count of requests skipped as all their items are oversized
+    private final LongAdder oversizedSkipCount = new LongAdder();
+
+    // The count of tasks submitted but not finished, waiting in the queue or running
+    private final AtomicInteger pendingTaskCount = new AtomicInteger();
+
     private final ByteairClient client;
 
     private final RequestHelper requestHelper;
 
+    private final RequestSplitter<Map<String, Object>> writeSplitter =
+            RequestSplitter.ofJsonMap(MAX_WRITE_ITEM_COUNT, MAX_REQUEST_BYTES);
+
+    private final PartialFailureHelper partialFailureHelper;
+
+    // Receive the items which are invalid, or still rejected by server after retries
+    private final RejectSink<Object> rejectSink;
+
+    // Fed with the event data written successfully, null means disabled
+    private final PopularityModel popularityModel;
+
     public ConcurrentHelper(ByteairClient client) {
+        this(client, PartialFailureHelper.loggingRejectSink("AsyncWrite"));
+    }
+
+    public ConcurrentHelper(ByteairClient client, RejectSink<Object> rejectSink) {
+        this(client, rejectSink, null);
+    }
+
+    // When popularityModel is set, the event data written successfully are recorded
+    // into it, so that it can serve the fallback result when predict fails
+    public ConcurrentHelper(ByteairClient client, RejectSink<Object> rejectSink, PopularityModel popularityModel) {
         this.client = client;
         this.requestHelper = new RequestHelper(client);
+        this.partialFailureHelper = new PartialFailureHelper(requestHelper);
+        this.rejectSink = rejectSink;
+        this.popularityModel = popularityModel;
+    }
+
+    // The count of tasks waiting in the queue of executor, a queue staying full means
+    // the requests are submitted faster than they are sent
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public long getOversizedSkipCount() {
+        return oversizedSkipCount.sum();
+    }
+
+    public int getPendingTaskCount() {
+        return pendingTaskCount.get();
+    }
+
+    /**
+     * Wait for the submitted requests to be sent, including their retries, and keep the
+     * helper usable. A split request is waited for all its parts.
+     *
+     * @return false if some requests are still unsent after the timeout
+     */
+    public boolean awaitIdle(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (pendingTaskCount.get() > 0) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        return true;
+    }
+
+    /**
+     * Stop taking requests and wait for the submitted ones to be sent, then the threads
+     * of executor exit. The requests still unsent after {@link #CLOSE_TIMEOUT} are cancelled,
+     * and the requests submitted after closing are dropped.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("[ConcurrentHelper] {} requests are still unsent after {}, cancel them",
+                        executor.getQueue().size(), CLOSE_TIMEOUT);
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Hand the task to executor, and count it as pending until it finishes,
+    // whether it runs on a thread of executor or on the caller
+    private void submit(Runnable task) {
+        pendingTaskCount.incrementAndGet();
+        executor.submit(() -> {
+            try {
+                task.run();
+            } finally {
+                pendingTaskCount.decrementAndGet();
+            }
+        });
     }
 
     // Submit tasks.
@@ -58,15 +169,39 @@ public class ConcurrentHelper {
     // It is not recommended to use too many concurrent imports,
     // which may lead to server overload and limit the flow of the request
     public void submitWriteRequest(List<Map<String, Object>> dataList, String topic, Option... opts) {
-        executor.submit(() -> doWrite(dataList, topic, opts));
+        // The data which can't pass the client side check of topic is diverted to rejectSink
+        List<Map<String, Object>> validDataList =
+                ValidationHelper.filterValid(dataList, SchemaHelper.ofTopic(topic), rejectSink);
+        if (Objects.isNull(validDataList) || validDataList.isEmpty()) {
+            log.warn("[AsyncWrite] all data are invalid, skip request");
+            return;
+        }
+        // The data list is split by item count and estimated payload size,
+        // and every split request is sent with its own request id
+        List<List<Map<String, Object>>> chunks = writeSplitter.split(validDataList,
+                RequestSplitter.loggingOversizedHandler("AsyncWrite"));
+        if (chunks.isEmpty()) {
+            oversizedSkipCount.increment();
+            log.warn("[AsyncWrite] all data are oversized, skip request");
+            return;
+        }
+        if (chunks.size() == 1) {
+            submit(() -> doWrite(chunks.get(0), topic, opts));
+            return;
+        }
+        log.info("[AsyncWrite] split data into {} requests", chunks.size());
+        for (List<Map<String, Object>> chunk : chunks) {
+            Option[] chunkOpts = RequestHelper.withNewRequestId(opts);
+            submit(() -> doWrite(chunk, topic, chunkOpts));
+        }
     }
 
     public void submitDoneRequest(List<LocalDate> dateList, String topic, Option... opts) {
-        executor.submit(() -> doDone(dateList, topic, opts));
+        submit(() -> doDone(dateList, topic, opts));
     }
 
     public void submitCallbackRequest(CallbackRequest request, Option... opts) {
-        executor.submit(() -> doCallback(request, opts));
+        submit(() -> doCallback(request, opts));
     }
 
     private void doWrite(List<Map<String, Object>> dataList, String topic, Option... opts) {
@@ -74,12 +209,18 @@ public class ConcurrentHelper {
         Callable<WriteResponse, List<Map<String, Object>>> call
                 = (req, optList) -> client.writeData(req, topic, optList);
         try {
-            response = requestHelper.doWithRetry(call, dataList, opts, RETRY_TIMES);
+            // Only the rejected items are resent when partial failure occurs
+            response = partialFailureHelper.doWrite(call, dataList, items -> items,
+                    WriteResponse::getErrorsList, PartialFailureHelper.jsonMapMatcher(),
+                    opts, RETRY_TIMES, rejectSink);
         } catch (Throwable e) {
             log.error("[AsyncWrite] occur error, msg:{}", e.getMessage());
             return;
         }
         if (StatusHelper.isSuccess(response.getStatus())) {
+            if (Objects.nonNull(popularityModel)) {
+                FallbackHelper.recordData(popularityModel, topic, dataList);
+            }
             log.info("[AsyncWrite] success");
             return;
         }
@@ -0,0 +1,71 @@
+package byteplus.example.byteair;
+
+import byteplus.example.common.PopularityModel;
+import byteplus.sdk.byteair.protocol.ByteplusByteair.PredictItem;
+import byteplus.sdk.byteair.protocol.ByteplusByteair.PredictResponse;
+import byteplus.sdk.byteair.protocol.ByteplusByteair.PredictResult;
+
+import java.util.List;
+import java.util.Map;
+
+import static byteplus.sdk.core.Constant.STATUS_CODE_SUCCESS;
+
+/**
+ * Serve the locally popular items when predict fails or times out.
+ * <p>
+ * The fallback response is built on client, it has no "request_id",
+ * so it must not be sent back by callback, check it by {@link #isFallback}.
+ */
+public class FallbackHelper {
+    // Only the data of this topic are events
+    public final static String EVENT_TOPIC = "behavior";
+
+    private final static String SCENE_KEY = "scene_scene_name";
+
+    private final static String ITEM_ID_KEY = "product_id";
+
+    private final static String EVENT_TYPE_KEY = "event_type";
+
+    private final static String EVENT_TIMESTAMP_KEY = "event_timestamp";
+
+    // Feed the model with the event data which are written successfully,
+    // the data of other topics are ignored
+    public static void recordData(PopularityModel model, String topic, List<Map<String, Object>> dataList) {
+        if (!EVENT_TOPIC.equals(topic)) {
+            return;
+        }
+        for (Map<String, Object> data : dataList) {
+            Object timestamp = data.get(EVENT_TIMESTAMP_KEY);
+            model.recordEvent(stringValue(data.get(SCENE_KEY)), stringValue(data.get(ITEM_ID_KEY)),
+                    stringValue(data.get(EVENT_TYPE_KEY)),
+                    timestamp instanceof Number ? ((Number) timestamp).longValue() : 0);
+        }
+    }
+
+    // Return null if the model has no events yet, so that the caller can
+    // handle the failure as if there is no fallback
+    public static PredictResponse fallbackResponse(PopularityModel model, String scene, int size) {
+        List<String> itemIds = model.top(scene, size);
+        if (itemIds.isEmpty()) {
+            return null;
+        }
+        PredictResult.Builder result = PredictResult.newBuilder();
+        for (int i = 0; i < itemIds.size(); i++) {
+            result.addItems(PredictItem.newBuilder()
+                    .setId(itemIds.get(i))
+                    .setRank(i + 1));
+        }
+        return PredictResponse.newBuilder()
+                .setCode(STATUS_CODE_SUCCESS)
+                .setValue(result)
+                .build();
+    }
+
+    public static boolean isFallback(PredictResponse response) {
+        return response.getRequestId().isEmpty();
+    }
+
+    private static String stringValue(Object value) {
+        return value == null ? null : value.toString();
+    }
+}
@@ -1,7 +1,17 @@
 package byteplus.example.byteair;
 
+import byteplus.example.common.AsyncPredictor;
+import byteplus.example.common.EligibilityIndex;
+import byteplus.example.common.ExtraHelper;
+import byteplus.example.common.HedgedPredictor;
+import byteplus.example.common.PartialFailureHelper;
+import byteplus.example.common.PopularityModel;
+import byteplus.example.common.PredictCache;
 import byteplus.example.common.RequestHelper;
 import byteplus.example.common.RequestHelper.Callable;
+import byteplus.example.common.RequestTemplate;
+import byteplus.example.common.SeenItemFilter;
+import byteplus.example.common.SingleFlight;
 import byteplus.example.common.StatusHelper;
 import byteplus.sdk.byteair.ByteairClient;
 import byteplus.sdk.byteair.ByteairClientBuilder;
@@ -22,12 +32,12 @@ import byteplus.sdk.byteair.protocol.ByteplusByteair.PredictExtra;
 import byteplus.sdk.byteair.protocol.ByteplusByteair.PredictResponse;
 import byteplus.sdk.byteair.protocol.ByteplusByteair.CallbackRequest;
 import byteplus.sdk.byteair.protocol.ByteplusByteair.CallbackItem;
-import com.alibaba.fastjson.JSON;
 import lombok.extern.slf4j.Slf4j;
 
 import java.time.Duration;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 public class Main {
@@ -35,8 +45,27 @@ public class Main {
 
     private final static RequestHelper requestHelper;
 
+    private final static PartialFailureHelper partialFailureHelper;
+
     private final static ConcurrentHelper concurrentHelper;
 
+    private final static PredictCache<PredictRequest, PredictResponse> predictCache;
+
+    private final static SingleFlight<PredictRequest, PredictResponse> singleFlight;
+
+    private final static HedgedPredictor<PredictRequest, PredictResponse> hedgedPredictor;
+
+    private final static AsyncPredictor<PredictRequest, PredictResponse> asyncPredictor;
+
+    private final static PopularityModel popularityModel;
+
+    private final static SeenItemFilter seenItemFilter;
+
+    private final static EligibilityIndex eligibilityIndex;
+
+    // The constant parts of predict requests, keyed by scene and device class
+    private final static RequestTemplate.Cache<PredictRequest> predictTemplates = new RequestTemplate.Cache<>();
+
     private final static int DEFAULT_RETRY_TIMES = 2;
 
     private final static Duration DEFAULT_WRITE_TIMEOUT = Duration.ofMillis(1000);
@@ -45,6 +74,37 @@ public class Main {
 
     private final static Duration DEFAULT_PREDICT_TIMEOUT = Duration.ofMillis(800);
 
+    // The max time a page waits for predict result, including the time queued in pool
+    private final static Duration DEFAULT_PREDICT_DEADLINE = Duration.ofMillis(1000);
+
+    // The predict responses are cached per user, scene and request context,
+    // so that the users refreshing a page don't wait for predict every time
+    private final static int PREDICT_CACHE_SIZE = 10000;
+
+    private final static Duration PREDICT_CACHE_TTL = Duration.ofSeconds(30);
+
+    // The stale response is served while refreshing in background
+    private final static Duration PREDICT_CACHE_STALE_WINDOW = Duration.ofMinutes(2);
+
+    // A predict request which hasn't returned after this percentile of recent latency
+    // is hedged by an identical one, at most HEDGE_BUDGET_RATIO extra requests are sent
+    private final static double HEDGE_PERCENTILE = 0.95;
+
+    private final static double HEDGE_BUDGET_RATIO = 0.05;
+
+    // The items shown to a user within this window are filtered out of the next predict results
+    private final static Duration SEEN_ITEM_WINDOW = Duration.ofDays(1);
+
+    // The seen items of a user take about 288 bytes out of heap
+    private final static int MAX_SEEN_USER_COUNT = 100000;
+
+    // The popularity of an item halves every half life, so the fallback
+    // result follows the recent trend instead of the all-time best sellers
+    private final static Duration POPULARITY_HALF_LIFE = Duration.ofHours(6);
+
+    // The count of items in fallback result, the predict request doesn't carry the size
+    private final static int DEFAULT_FALLBACK_SIZE = 20;
+
     private final static Duration DEFAULT_CALLBACK_TIMEOUT = Duration.ofMillis(800);
 
     /**
@@ -112,6 +172,20 @@ public class Main {
 //                .pingTimeout(Duration.ofMillis(300))
 //                // The interval for sending ping requests when hostAvailabler sorts the host, default is 1s.
 //                .pingInterval(Duration.ofSeconds(1))
+//                .build();
+
+//        // To try the example without the real endpoints, answer the requests by an embedded
+//        // mock server, and point the client to it by ".schema("http").hosts(...)", such as:
+//        MockServer mockServer = MockServer.builder(MockServerHelper.vertical())
+//                .latency(MockServer.ACTION_PREDICT, Duration.ofMillis(30), Duration.ofMillis(120))
+//                .overloadRate(0.01)
+//                .operationLossRate(0.01)
+//                .build()
+//                .start();
+//        client = new ByteairClientBuilder()
+//                ...
+//                .schema("http")
+//                .hosts(Collections.singletonList(mockServer.getHost()))
 //                .build();
 
         client = new ByteairClientBuilder()
@@ -126,7 +200,23 @@ public class Main {
 //                .hostAvailablerConfig(config) // Optional
                 .build();
         requestHelper = new RequestHelper(client);
-        concurrentHelper = new ConcurrentHelper(client); //用于多线程请求
+        partialFailureHelper = new PartialFailureHelper(requestHelper);
+        // The popularity model is fed by the user events written through concurrentHelper,
+        // and serves the fallback result when predict fails or exceeds the deadline.
+        // To warm up right after restart, restore the snapshot saved before exit, such as:
+        // popularityModel.restore(Paths.get("popularity.snapshot"));
+        popularityModel = new PopularityModel(POPULARITY_HALF_LIFE);
+        seenItemFilter = new SeenItemFilter(MAX_SEEN_USER_COUNT, SEEN_ITEM_WINDOW);
+        // The eligibility index is fed by the items written successfully,
+        // and prunes the candidates which can't be shown before predict
+        eligibilityIndex = new EligibilityIndex();
+        concurrentHelper = new ConcurrentHelper(client,
+                PartialFailureHelper.loggingRejectSink("AsyncWrite"), popularityModel); //用于多线程请求
+        predictCache = new PredictCache<>(PREDICT_CACHE_SIZE, PREDICT_CACHE_TTL,
+                PREDICT_CACHE_STALE_WINDOW, req -> req.getUser().getUid());
+        singleFlight = new SingleFlight<>();
+        hedgedPredictor = new HedgedPredictor<>(HEDGE_PERCENTILE, HEDGE_BUDGET_RATIO);
+        asyncPredictor = new AsyncPredictor<>();
     }
 
     /**
@@ -166,12 +256,17 @@ public class Main {
             Callable<WriteResponse, List<Map<String, Object>>> call
                     = (req, optList) -> client.writeData(req, topic, optList);
             // 带重试的请求，自行实现重试时请参考此处重试逻辑
-            response = requestHelper.doWithRetry(call, dataList, opts, DEFAULT_RETRY_TIMES);
+            // Only the rejected items are resent when partial failure occurs
+            response = partialFailureHelper.doWrite(call, dataList, items -> items,
+                    WriteResponse::getErrorsList, PartialFailureHelper.jsonMapMatcher(),
+                    opts, DEFAULT_RETRY_TIMES, PartialFailureHelper.loggingRejectSink("WriteData"));
         } catch (BizException e) {
             log.error("write data occur err, msg:{}", e.getMessage());
             return;
         }
         if (StatusHelper.isUploadSuccess(response.getStatus())) {
+            // Only the data of item topic are recorded
+            EligibilityHelper.recordData(eligibilityIndex, topic, dataList);
             log.info("write data success");
             return;
         }
@@ -239,10 +334,21 @@ public class Main {
     // 推荐服务请求example
     public static void recommendExample() {
         PredictRequest predictRequest = buildPredictRequest();
+        if (Objects.isNull(predictRequest)) {
+            log.warn("all candidates are ineligible, serve empty page");
+            return;
+        }
         Option[] predictOpts = predictOptions(DEFAULT_PREDICT_TIMEOUT);
         PredictResponse predictResponse;
+        // The request is sent in background with a hard deadline,
+        // other parts of page can be prepared while waiting for it
+        CompletableFuture<PredictResponse> future = asyncPredictor.predict(
+                predictCall(DEFAULT_PREDICT_SCENE, DEFAULT_PREDICT_DEADLINE),
+                predictRequest, DEFAULT_PREDICT_DEADLINE,
+                () -> FallbackHelper.fallbackResponse(popularityModel, DEFAULT_PREDICT_SCENE, DEFAULT_FALLBACK_SIZE),
+                predictOpts);
         try {
-            predictResponse = client.predict(predictRequest, predictOpts);
+            predictResponse = future.join();
         } catch (Exception e) {
             log.error("predict occur error, msg:{}", e.getMessage());
             return;
@@ -251,10 +357,17 @@ public class Main {
             log.error("predict find failure info, msg:{}", predictResponse);
             return;
         }
+        if (FallbackHelper.isFallback(predictResponse)) {
+            // The fallback result is not from byteplus, it must not be acked
+            log.warn("predict fail, serve local popular items");
+            return;
+        }
         log.info("predict success");
         // The items, which is eventually shown to user,
         // should send back to Bytedance for deduplication
-        List<CallbackItem> callbackItems = doSomethingWithPredictResult(predictResponse.getValue());
+        List<CallbackItem> callbackItems =
+                doSomethingWithPredictResult(predictRequest.getUser().getUid(),
+                        predictResponse.getRequestId(), predictResponse.getValue());
         CallbackRequest callbackRequest = CallbackRequest.newBuilder()
                 .setPredictRequestId(predictResponse.getRequestId())
                 .setUid(predictRequest.getUser().getUid())
@@ -276,16 +389,52 @@ public class Main {
         };
     }
 
+    // The cached response keeps its own request id, so the ack/callback
+    // built from it still carries the original predict request id.
+    // The identical requests in flight at the same time share one response, and a follower
+    // waits for the leader no longer than its caller does: the request timeout, or the deadline
+    // of caller if it is earlier. The deadline counts from now, so a call is built per request.
+    // A slow request is hedged by a second one with the same request id
+    private static Callable<PredictResponse, PredictRequest> predictCall(String scene, Duration deadline) {
+        Duration wait = deadline.compareTo(DEFAULT_PREDICT_TIMEOUT) < 0 ? deadline : DEFAULT_PREDICT_TIMEOUT;
+        Callable<PredictResponse, PredictRequest> hedgedCall = hedgedPredictor.wrap(client::predict);
+        Callable<PredictResponse, PredictRequest> singleFlightCall =
+                singleFlight.wrap(scene, hedgedCall, System.nanoTime() + wait.toNanos());
+        return (req, optList) -> predictCache.predict(singleFlightCall, scene, req, optList);
+    }
+
+    // Return null if every candidate is pruned as ineligible
     private static PredictRequest buildPredictRequest() {
+        PredictCandidateItem candidateItem = PredictCandidateItem.newBuilder()
+                .setId("item_id")
+                .build();
+        // The candidates which can't be shown to the user are pruned locally,
+        // so that the request is smaller and the server needn't rank them
+        List<PredictCandidateItem> candidates = Collections.singletonList(candidateItem);
+        List<PredictCandidateItem> candidateItems = eligibilityIndex.prune(candidates,
+                PredictCandidateItem::getId, EligibilityHelper.sellableIn("SG"));
+        if (candidateItems.isEmpty() && !candidates.isEmpty()) {
+            // Every candidate is ineligible, a request without candidates would be
+            // ranked from all the items, so it must not be sent
+            return null;
+        }
+        // The context, parent item and extra are the same for the requests of a scene, they are
+        // built once in template, only user and candidates are set per request
+        RequestTemplate<PredictRequest> template =
+                predictTemplates.get(DEFAULT_PREDICT_SCENE, "default", Main::buildPredictTemplate);
         PredictUser user = PredictUser.newBuilder()
                 .setUid("uid")
                 .build();
+        return template.getTemplate().toBuilder()
+                .setUser(user)
+                .addAllCandidateItems(candidateItems)
+                .build();
+    }
+
+    private static PredictRequest buildPredictTemplate() {
         PredictContext context = PredictContext.newBuilder()
                 .setSpm("xx$$xxx$$xx")
                 .build();
-        PredictCandidateItem candidateItem = PredictCandidateItem.newBuilder()
-                .setId("item_id")
-                .build();
         PredictParentItem parentItem = PredictParentItem.newBuilder()
                 .setId("item_id")
                 .build();
@@ -295,34 +444,44 @@ public class Main {
                 .build();
 
         return PredictRequest.newBuilder()
-                .setUser(user)
                 .setContext(context)
-                .addCandidateItems(candidateItem)
                 .setParentItem(parentItem)
                 .setExtra(extra)
                 .build();
     }
 
-    private static List<CallbackItem> doSomethingWithPredictResult(PredictResult predictResult) {
+    private static List<CallbackItem> doSomethingWithPredictResult(String userId, String predictRequestId,
+                                                                   PredictResult predictResult) {
         // You can handle recommend results here,
         // such as filter, insert other items, sort again, etc.
         // The list of goods finally displayed to user and the filtered goods
         // should be sent back to bytedance for deduplication
-        return conv2CallbackItems(predictResult.getItemsList());
+        // The items seen by user recently are filtered, and reported with "already_seen" reason
+        SeenItemFilter.Result<PredictItem> result = seenItemFilter.filter(userId, predictRequestId,
+                predictResult.getItemsList(), PredictItem::getId);
+        // A cached response served again is filtered by its request id into the same split
+        return conv2CallbackItems(predictResult.getItemsList(), result.getSeen());
     }
 
-    private static List<CallbackItem> conv2CallbackItems(List<PredictItem> resultItems) {
+    // The pos of both the kept and the seen items is the position in the predict result
+    private static List<CallbackItem> conv2CallbackItems(List<PredictItem> resultItems, List<PredictItem> seenItems) {
         if (Objects.isNull(resultItems) || resultItems.isEmpty()) {
             return Collections.emptyList();
         }
+        Set<String> seenIds = new HashSet<>(seenItems.size());
+        for (PredictItem seenItem : seenItems) {
+            seenIds.add(seenItem.getId());
+        }
         List<CallbackItem> callbackItems = new ArrayList<>(resultItems.size());
+        // All the items share the same extra, the cached json string can be reused directly
+        String keptExtra = ExtraHelper.reasonExtra(ExtraHelper.REASON_KEPT);
+        String seenExtra = ExtraHelper.reasonExtra(ExtraHelper.REASON_ALREADY_SEEN);
         for (int i = 0; i < resultItems.size(); i++) {
             PredictItem resultItem = resultItems.get(i);
-            Map<String, String> extraMap = Collections.singletonMap("reason", "kept");
             CallbackItem callbackItem = CallbackItem.newBuilder()
                     .setId(resultItem.getId())
-                    .setPos((i + 1) + "")
-                    .setExtra(JSON.toJSONString(extraMap))
+                    .setPos(String.valueOf(i + 1))
+                    .setExtra(seenIds.contains(resultItem.getId()) ? seenExtra : keptExtra)
                     .build();
             callbackItems.add(callbackItem);
         }
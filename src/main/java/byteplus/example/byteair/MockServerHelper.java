@@ -0,0 +1,81 @@
+package byteplus.example.byteair;
+
+import byteplus.example.common.MockServer;
+import byteplus.sdk.byteair.ByteairClient;
+import byteplus.sdk.byteair.protocol.ByteplusByteair.CallbackRequest;
+import byteplus.sdk.byteair.protocol.ByteplusByteair.CallbackResponse;
+import byteplus.sdk.byteair.protocol.ByteplusByteair.ImportResponse;
+import byteplus.sdk.byteair.protocol.ByteplusByteair.PredictCandidateItem;
+import byteplus.sdk.byteair.protocol.ByteplusByteair.PredictItem;
+import byteplus.sdk.byteair.protocol.ByteplusByteair.PredictRequest;
+import byteplus.sdk.byteair.protocol.ByteplusByteair.PredictResponse;
+import byteplus.sdk.byteair.protocol.ByteplusByteair.PredictResult;
+import byteplus.sdk.byteair.protocol.ByteplusByteair.WriteResponse;
+import byteplus.sdk.common.protocol.ByteplusCommon.GetOperationRequest;
+import byteplus.sdk.common.protocol.ByteplusCommon.ListOperationsRequest;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The responses of byteair answered by {@link MockServer}.
+ * The data of all topics share the same response types.
+ */
+public class MockServerHelper {
+    // The name of operation got by the route check, the server answers it as lost
+    private final static String ROUTE_CHECK_OPERATION = "route_check";
+
+    // The count of items returned when the predict request has no size
+    private final static int DEFAULT_PREDICT_SIZE = 10;
+
+    private final static String MOCK_ITEM_ID_PREFIX = "mock_item_";
+
+    public static MockServer.Vertical vertical() {
+        return new MockServer.Vertical()
+                .write("*", WriteResponse.getDefaultInstance())
+                .importResult("*", ImportResponse.getDefaultInstance())
+                .predict(PredictResponse.getDefaultInstance(), MockServerHelper::predict)
+                .callback(CallbackResponse.getDefaultInstance());
+    }
+
+    /**
+     * A call of every action of byteair client, used by {@link MockServer#checkRoutes} to find
+     * the URLs built by sdk which don't reach the intended action of the server.
+     */
+    public static Map<String, MockServer.RouteCall> routeCalls(ByteairClient client) {
+        Map<String, MockServer.RouteCall> calls = new LinkedHashMap<>();
+        calls.put(MockServer.ACTION_WRITE, () -> client.writeData(MockHelper.mockDataList(1), "user"));
+        calls.put(MockServer.ACTION_IMPORT, () -> client.importData(MockHelper.mockDataList(1), "user"));
+        calls.put(MockServer.ACTION_DONE, () -> client.done(
+                Collections.singletonList(LocalDate.now()), "user"));
+        calls.put(MockServer.ACTION_PREDICT, () -> client.predict(PredictRequest.getDefaultInstance()));
+        calls.put(MockServer.ACTION_CALLBACK, () -> client.callback(CallbackRequest.getDefaultInstance()));
+        calls.put(MockServer.ACTION_GET_OPERATION, () -> client.getOperation(
+                GetOperationRequest.newBuilder().setName(ROUTE_CHECK_OPERATION).build()));
+        calls.put(MockServer.ACTION_LIST_OPERATIONS, () -> client.listOperations(
+                ListOperationsRequest.newBuilder().setPageSize(1).build()));
+        return calls;
+    }
+
+    // Rank the candidates in the order of request, or mock items if there is no candidate
+    private static PredictResponse predict(String scene, byte[] body) throws InvalidProtocolBufferException {
+        PredictRequest request = PredictRequest.parseFrom(body);
+        int size = request.getSize() > 0 ? request.getSize() : DEFAULT_PREDICT_SIZE;
+        List<PredictCandidateItem> candidates = request.getCandidateItemsList();
+        PredictResult.Builder result = PredictResult.newBuilder();
+        for (int i = 0; i < size; i++) {
+            if (!candidates.isEmpty() && i >= candidates.size()) {
+                break;
+            }
+            String itemId = candidates.isEmpty() ? MOCK_ITEM_ID_PREFIX + i : candidates.get(i).getId();
+            result.addItems(PredictItem.newBuilder().setId(itemId).setRank(i + 1));
+        }
+        return PredictResponse.newBuilder()
+                .setValue(result)
+                .build();
+    }
+}
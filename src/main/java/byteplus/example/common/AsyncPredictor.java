@@ -0,0 +1,202 @@
+package byteplus.example.common;
+
+import byteplus.example.common.RequestHelper.Callable;
+import byteplus.sdk.core.Option;
+import com.google.protobuf.Message;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Send predict requests asynchronously, so that the caller thread can render
+ * other parts of page while waiting for the result.
+ * <p>
+ * Every request has a hard deadline. When the deadline passes, the request is
+ * cancelled, and the future is completed by the fallback supplier, or completed
+ * exceptionally with {@link TimeoutException} if there is no fallback.
+ * The fallback is also used when the request fails, or the pool is full.
+ * Cancelling the returned future cancels the request as well.
+ * <p>
+ * The requests run on a dedicated bounded pool, the predict traffic never
+ * takes the threads of caller's other tasks.
+ */
+@Slf4j
+public class AsyncPredictor<Req extends Message, Rsp extends Message> {
+    private final static int DEFAULT_THREAD_COUNT = Runtime.getRuntime().availableProcessors() * 4;
+
+    private final static int DEFAULT_MAX_QUEUED_COUNT = 1000;
+
+    private final ThreadPoolExecutor executor;
+
+    private final ScheduledExecutorService timer;
+
+    private final LongAdder requestCount = new LongAdder();
+
+    private final LongAdder timeoutCount = new LongAdder();
+
+    private final LongAdder failureCount = new LongAdder();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    private final LongAdder fallbackCount = new LongAdder();
+
+    public AsyncPredictor() {
+        this(DEFAULT_THREAD_COUNT, DEFAULT_MAX_QUEUED_COUNT);
+    }
+
+    /**
+     * @param threadCount    the count of threads sending predict requests
+     * @param maxQueuedCount the max count of requests waiting for thread,
+     *                       the requests beyond it are completed by fallback directly
+     */
+    public AsyncPredictor(int threadCount, int maxQueuedCount) {
+        this.executor = new ThreadPoolExecutor(
+                threadCount,
+                threadCount,
+                0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(maxQueuedCount),
+                daemonThreadFactory("async-predict"),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        this.timer = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("async-predict-timer"));
+    }
+
+    /**
+     * @param callable the predict api, with the scene bound
+     * @param request  the predict request
+     * @param deadline the max time from now to complete the future
+     * @param fallback supply the result when the request times out or fails, null means no fallback.
+     *                 It is called in the timer or pool thread, so it must be fast
+     * @param opts     the options of request
+     */
+    public CompletableFuture<Rsp> predict(Callable<Rsp, Req> callable, Req request, Duration deadline,
+                                          Supplier<Rsp> fallback, Option... opts) {
+        requestCount.increment();
+        CompletableFuture<Rsp> result = new CompletableFuture<>();
+        Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                if (result.isDone()) {
+                    // Timed out or cancelled while waiting in queue
+                    return;
+                }
+                try {
+                    Rsp response = callable.call(request, opts);
+                    if (Objects.nonNull(response) && StatusHelper.isResponseSuccess(response)) {
+                        result.complete(response);
+                        return;
+                    }
+                    failureCount.increment();
+                    completeByFallback(result, fallback, response, null);
+                } catch (Throwable e) {
+                    if (!result.isDone()) {
+                        failureCount.increment();
+                    }
+                    completeByFallback(result, fallback, null, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedCount.increment();
+            log.warn("[AsyncPredict] too many pending requests, use fallback");
+            completeByFallback(result, fallback, null, e);
+            return result;
+        }
+        ScheduledFuture<?> timeout = timer.schedule(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            timeoutCount.increment();
+            // Complete before cancelling, so the interrupted task can't complete it with its error
+            completeByFallback(result, fallback, null,
+                    new TimeoutException("predict deadline exceeded, deadline:" + deadline));
+            task.cancel(true);
+        }, deadline.toNanos(), TimeUnit.NANOSECONDS);
+        result.whenComplete((response, e) -> {
+            timeout.cancel(false);
+            if (result.isCancelled()) {
+                // Cancelled by caller, the request is useless now
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    // The count of requests failed with exception or error status before deadline
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    // The count of futures completed by fallback, whatever the reason is
+    public long getFallbackCount() {
+        return fallbackCount.sum();
+    }
+
+    public void release() {
+        timer.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    // The failed response is returned when there is no fallback,
+    // so that the caller can still find the failure info
+    private void completeByFallback(CompletableFuture<Rsp> result, Supplier<Rsp> fallback,
+                                    Rsp failedResponse, Throwable cause) {
+        if (result.isDone()) {
+            return;
+        }
+        if (Objects.nonNull(fallback)) {
+            Rsp fallbackResponse;
+            try {
+                fallbackResponse = fallback.get();
+            } catch (Throwable e) {
+                log.error("[AsyncPredict] fallback occur error, msg:{}", e.getMessage());
+                fallbackResponse = null;
+            }
+            if (Objects.nonNull(fallbackResponse) && result.complete(fallbackResponse)) {
+                fallbackCount.increment();
+                return;
+            }
+        }
+        if (Objects.nonNull(failedResponse)) {
+            result.complete(failedResponse);
+            return;
+        }
+        result.completeExceptionally(Objects.nonNull(cause) ? cause
+                : new IllegalStateException("predict return empty response"));
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        AtomicInteger index = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
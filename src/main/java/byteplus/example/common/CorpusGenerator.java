@@ -0,0 +1,239 @@
+package byteplus.example.common;
+
+import com.google.protobuf.Message;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Generate a large synthetic corpus, such as 100M user events, in parallel
+ * and reproducibly from a seed.
+ * <p>
+ * The corpus is split into chunks of a fixed count of units (records, or sessions of
+ * events), and every chunk is generated with its own random source derived from the
+ * seed, the stream name and the chunk index. So the content of a chunk doesn't depend
+ * on the count of threads or the order of running, and the same seed always gives the
+ * same corpus. The chunks are passed to a {@link Sink} as soon as they are generated,
+ * and only a few chunks are in memory at the same time.
+ */
+@Slf4j
+public class CorpusGenerator implements AutoCloseable {
+    // The chunks generated but not consumed by sink for every thread
+    private final static int PENDING_PER_THREAD = 2;
+
+    // The chunks waiting for the previous ones in the ordered sink
+    private final static int MAX_WAITING_CHUNKS = 64;
+
+    private final static AtomicInteger THREAD_INDEX = new AtomicInteger();
+
+    private final long seed;
+
+    private final int chunkSize;
+
+    private final int parallelism;
+
+    private final ExecutorService executor;
+
+    /**
+     * @param seed        the same seed gives the same corpus
+     * @param parallelism the count of threads generating chunks
+     * @param chunkSize   the count of units in a chunk, changing it changes the corpus
+     *                    if the records are generated with the random of chunk
+     */
+    public CorpusGenerator(long seed, int parallelism, int chunkSize) {
+        this.seed = seed;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "corpus-generator-" + THREAD_INDEX.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * The seed of a stream, different streams of the same seed are independent.
+     */
+    public static long streamSeed(long seed, String stream) {
+        return HashHelper.hash64(stream, seed);
+    }
+
+    /**
+     * The random source of a chunk or a record of the stream,
+     * the same arguments always give the same sequence.
+     */
+    public static SplittableRandom random(long streamSeed, long index) {
+        return new SplittableRandom(HashHelper.mix64(streamSeed + HashHelper.mix64(index)));
+    }
+
+    /**
+     * Generate the units in [0, unitCount) chunk by chunk, and wait until all the chunks are consumed.
+     *
+     * @param stream    the name of the corpus, such as "users", different streams use different randoms
+     * @param unitCount the count of units, a unit is a record or a group of records such as a session
+     * @param generator generate the records of a chunk
+     * @param sink      consume the records of every chunk, it may be called by several threads at once
+     * @return the count of records generated
+     */
+    public <T> long generate(String stream, long unitCount, ChunkGenerator<T> generator, Sink<T> sink)
+            throws InterruptedException, IOException {
+        int maxPending = parallelism * PENDING_PER_THREAD;
+        Semaphore pendingPermits = new Semaphore(maxPending);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        LongAdder recordCount = new LongAdder();
+        long chunkCount = (unitCount + chunkSize - 1) / chunkSize;
+        long streamSeed = streamSeed(seed, stream);
+        long startNanos = System.nanoTime();
+        for (long chunkIndex = 0; chunkIndex < chunkCount && Objects.isNull(failure.get()); chunkIndex++) {
+            pendingPermits.acquire();
+            long index = chunkIndex;
+            long firstUnit = chunkIndex * chunkSize;
+            int units = (int) Math.min(chunkSize, unitCount - firstUnit);
+            executor.execute(() -> {
+                try {
+                    List<T> records = new ArrayList<>(units);
+                    generator.generate(firstUnit, units, random(streamSeed, index), records::add);
+                    sink.accept(index, records);
+                    recordCount.add(records.size());
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    pendingPermits.release();
+                }
+            });
+        }
+        // All the permits are free when no chunk is being generated or consumed
+        pendingPermits.acquire(maxPending);
+        pendingPermits.release(maxPending);
+        Exception e = failure.get();
+        if (Objects.nonNull(e)) {
+            throw new IOException("generate " + stream + " fail, msg:" + e.getMessage(), e);
+        }
+        long records = recordCount.sum();
+        log.info("[CorpusGenerator] stream:{} chunks:{} records:{} cost:{}ms", stream, chunkCount, records,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        return records;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Pass the chunks to the delegate in the order of chunk index, one at a time, so the
+     * output is the same whatever the order of generating. The chunks generated ahead of
+     * the next one wait in memory, at most 64 of them.
+     */
+    public static <T> Sink<T> ordered(Sink<T> delegate) {
+        return new OrderedSink<>(delegate);
+    }
+
+    /**
+     * Write the messages into the file with length-delimited encoding in the order of
+     * chunks, they can be read back by "parseDelimitedFrom" of the message type.
+     * Close the returned sink after generating to flush the file.
+     */
+    public static <T extends Message> FileSink<T> delimitedFile(Path path) throws IOException {
+        return new FileSink<>(new BufferedOutputStream(Files.newOutputStream(path), 1 << 20));
+    }
+
+    /**
+     * Generate the records of the units in [firstUnit, firstUnit + unitCount).
+     * The random is derived from the chunk index, so the records depend on the chunk size
+     * if they use it. Derive a random from the unit index instead to make them independent
+     * of the chunk size, and the same as generating the units one by one.
+     */
+    public interface ChunkGenerator<T> {
+        void generate(long firstUnit, int unitCount, SplittableRandom random, Output<T> output);
+    }
+
+    public interface Output<T> {
+        void add(T record);
+    }
+
+    public interface Sink<T> {
+        void accept(long chunkIndex, List<T> records) throws IOException;
+    }
+
+    private static class OrderedSink<T> implements Sink<T> {
+        private final Sink<T> delegate;
+
+        // Guarded by this
+        private final Map<Long, List<T>> waiting = new TreeMap<>();
+
+        private long nextChunkIndex;
+
+        OrderedSink(Sink<T> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public synchronized void accept(long chunkIndex, List<T> records) throws IOException {
+            // Chunks far ahead wait for the previous ones, or the buffer grows without limit
+            // when a chunk is slow. The next chunk is never blocked, as it is submitted earlier
+            // and is already being generated by another thread.
+            while (chunkIndex >= nextChunkIndex + MAX_WAITING_CHUNKS) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while waiting for chunk " + nextChunkIndex, e);
+                }
+            }
+            waiting.put(chunkIndex, records);
+            List<T> next;
+            boolean delivered = false;
+            while (Objects.nonNull(next = waiting.remove(nextChunkIndex))) {
+                delegate.accept(nextChunkIndex, next);
+                nextChunkIndex++;
+                delivered = true;
+            }
+            if (delivered) {
+                notifyAll();
+            }
+        }
+    }
+
+    public static class FileSink<T extends Message> implements Sink<T>, AutoCloseable {
+        private final OutputStream output;
+
+        private final Sink<T> ordered;
+
+        private FileSink(OutputStream output) {
+            this.output = output;
+            this.ordered = ordered((chunkIndex, records) -> {
+                for (T record : records) {
+                    record.writeDelimitedTo(output);
+                }
+            });
+        }
+
+        @Override
+        public void accept(long chunkIndex, List<T> records) throws IOException {
+            ordered.accept(chunkIndex, records);
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package byteplus.example.common;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * A local index of the item attributes which decide whether an item can be
+ * recommended, such as stock, region and category, used to prune the
+ * candidates before sending predict request.
+ * <p>
+ * Every item id is mapped to a dense int, and the items having the same value
+ * of an attribute are kept in a compressed bitmap, so that the candidates are
+ * checked by bitmap intersections instead of looking up the items one by one.
+ * <p>
+ * The index is updated from the items written successfully. Only the items
+ * known to be ineligible are pruned, the items not in index, or having no value
+ * of a required attribute, are kept, so a stale or partial index never
+ * drops a candidate which might be sellable.
+ */
+public class EligibilityIndex {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Map item id to a dense int, the ints are never reused
+    private final Map<String, Integer> itemIndexes = new HashMap<>();
+
+    // The attributes of item at its index, used to clear the old values on update
+    private final List<Map<String, Collection<String>>> itemAttributes = new ArrayList<>();
+
+    // attribute -> value -> the items having the value
+    private final Map<String, Map<String, RoaringBitmap>> valueBitmaps = new HashMap<>();
+
+    // attribute -> the items having any value of the attribute
+    private final Map<String, RoaringBitmap> knownBitmaps = new HashMap<>();
+
+    private final LongAdder prunedCount = new LongAdder();
+
+    /**
+     * Replace the attributes of item, the attributes not passed are cleared.
+     *
+     * @param itemId     the id of item
+     * @param attributes attribute -> values, such as "region" -> ["SG", "US"]
+     */
+    public void update(String itemId, Map<String, ? extends Collection<String>> attributes) {
+        Map<String, Collection<String>> copied = new HashMap<>(attributes.size());
+        attributes.forEach((attribute, values) -> copied.put(attribute, new ArrayList<>(values)));
+        lock.writeLock().lock();
+        try {
+            Integer index = itemIndexes.get(itemId);
+            if (Objects.isNull(index)) {
+                index = itemAttributes.size();
+                itemIndexes.put(itemId, index);
+                itemAttributes.add(Collections.emptyMap());
+            }
+            for (Map.Entry<String, Collection<String>> entry : itemAttributes.get(index).entrySet()) {
+                Map<String, RoaringBitmap> bitmaps = valueBitmaps.get(entry.getKey());
+                for (String value : entry.getValue()) {
+                    bitmaps.get(value).remove(index);
+                }
+                knownBitmaps.get(entry.getKey()).remove(index);
+            }
+            for (Map.Entry<String, Collection<String>> entry : copied.entrySet()) {
+                Map<String, RoaringBitmap> bitmaps = valueBitmaps.computeIfAbsent(entry.getKey(), k -> new HashMap<>());
+                for (String value : entry.getValue()) {
+                    bitmaps.computeIfAbsent(value, v -> new RoaringBitmap()).add(index);
+                }
+                knownBitmaps.computeIfAbsent(entry.getKey(), k -> new RoaringBitmap()).add(index);
+            }
+            itemAttributes.set(index, copied);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the candidates which don't have any of the required values of an attribute.
+     *
+     * @param candidates the candidates in the order of request
+     * @param idGetter   get item id from candidate
+     * @param required   attribute -> the accepted values, such as "in_stock" -> ["true"]
+     * @return the eligible candidates in the original order, or candidates itself if none is pruned
+     */
+    public <T> List<T> prune(List<T> candidates, Function<T, String> idGetter,
+                             Map<String, ? extends Collection<String>> required) {
+        if (candidates.isEmpty() || required.isEmpty()) {
+            return candidates;
+        }
+        int[] indexes = new int[candidates.size()];
+        RoaringBitmap rejected = new RoaringBitmap();
+        lock.readLock().lock();
+        try {
+            RoaringBitmap candidateBitmap = new RoaringBitmap();
+            for (int i = 0; i < indexes.length; i++) {
+                Integer index = itemIndexes.get(idGetter.apply(candidates.get(i)));
+                indexes[i] = Objects.isNull(index) ? -1 : index;
+                if (Objects.nonNull(index)) {
+                    candidateBitmap.add(index);
+                }
+            }
+            if (candidateBitmap.isEmpty()) {
+                return candidates;
+            }
+            for (Map.Entry<String, ? extends Collection<String>> entry : required.entrySet()) {
+                RoaringBitmap known = knownBitmaps.get(entry.getKey());
+                if (Objects.isNull(known)) {
+                    continue;
+                }
+                // The candidates having the attribute, but none of the accepted values
+                RoaringBitmap rejectedByAttribute = RoaringBitmap.and(candidateBitmap, known);
+                Map<String, RoaringBitmap> bitmaps = valueBitmaps.get(entry.getKey());
+                for (String value : entry.getValue()) {
+                    RoaringBitmap accepted = bitmaps.get(value);
+                    if (Objects.nonNull(accepted)) {
+                        rejectedByAttribute.andNot(accepted);
+                    }
+                }
+                rejected.or(rejectedByAttribute);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (rejected.isEmpty()) {
+            return candidates;
+        }
+        List<T> eligible = new ArrayList<>(candidates.size() - rejected.getCardinality());
+        for (int i = 0; i < indexes.length; i++) {
+            if (indexes[i] < 0 || !rejected.contains(indexes[i])) {
+                eligible.add(candidates.get(i));
+            }
+        }
+        prunedCount.add(candidates.size() - eligible.size());
+        return eligible;
+    }
+
+    public int getItemCount() {
+        lock.readLock().lock();
+        try {
+            return itemIndexes.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The count of candidates pruned as ineligible
+    public long getPrunedCount() {
+        return prunedCount.sum();
+    }
+
+    // The bytes taken by bitmaps, not including the item ids
+    public long getBitmapBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (Map<String, RoaringBitmap> bitmaps : valueBitmaps.values()) {
+                for (RoaringBitmap bitmap : bitmaps.values()) {
+                    bytes += bitmap.getLongSizeInBytes();
+                }
+            }
+            for (RoaringBitmap bitmap : knownBitmaps.values()) {
+                bytes += bitmap.getLongSizeInBytes();
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -14,6 +14,7 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.time.Duration;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Slf4j
 public class Example {
@@ -22,6 +23,11 @@ public class Example {
 
     private final static Duration DEFAULT_LIST_OPERATIONS_TIMEOUT = Duration.ofMillis(800);
 
+    // Large pages need fewer round trips when walking many operations
+    private final static int DEFAULT_LIST_OPERATIONS_PAGE_SIZE = 1000;
+
+    private final static int DEFAULT_LIST_OPERATIONS_RETRY_TIMES = 2;
+
     public static void getOperationExample(CommonClient client, String name) {
         GetOperationRequest request = GetOperationRequest.newBuilder()
                 .setName(name)
@@ -48,8 +54,12 @@ public class Example {
     }
 
     public static List<Operation> listOperationsExample(CommonClient client, String filter) {
+        return listOperationsExample(client, filter, DEFAULT_LIST_OPERATIONS_PAGE_SIZE);
+    }
+
+    public static List<Operation> listOperationsExample(CommonClient client, String filter, int pageSize) {
         // The "pageToken" is empty when getting the first page
-        ListOperationsRequest request = buildListOperationsRequest(filter, "");
+        ListOperationsRequest request = buildListOperationsRequest(filter, pageSize, "");
         Option[] opts = new Option[]{
                 Option.withTimeout(DEFAULT_LIST_OPERATIONS_TIMEOUT),
         };
@@ -67,15 +77,25 @@ public class Example {
         log.info("list operations success");
         return response.getOperationsList();
         // When continue getting next Page, the "pageToken" need be set,
-        // whose value equals to previous request's `nextPageToken`.
-        // ListOperationsRequest nextPageRequest = buildListOperationsRequest(response.getNextPageToken());
-        // request next page
+        // whose value equals to previous request's `nextPageToken`,
+        // or walk all pages by listAllOperations.
+    }
+
+    /**
+     * Walk all the operations matching the filter, the next page is fetched
+     * while the current one is consumed.
+     * The stream must be closed if it is not consumed to the end, such as by try-with-resources,
+     * and a page which still fails after retries ends the stream by IllegalStateException.
+     */
+    public static Stream<Operation> listAllOperations(CommonClient client, String filter) {
+        return new OperationIterator(client, filter, DEFAULT_LIST_OPERATIONS_PAGE_SIZE,
+                DEFAULT_LIST_OPERATIONS_TIMEOUT, DEFAULT_LIST_OPERATIONS_RETRY_TIMES).stream();
     }
 
-    private static ListOperationsRequest buildListOperationsRequest(String filter, String pageToken) {
+    private static ListOperationsRequest buildListOperationsRequest(String filter, int pageSize, String pageToken) {
         return ListOperationsRequest.newBuilder()
                 .setFilter(filter)
-                .setPageSize(3)
+                .setPageSize(pageSize)
                 .setPageToken(pageToken)
                 .build();
     }
@@ -0,0 +1,158 @@
+package byteplus.example.common;
+
+import com.alibaba.fastjson.JSON;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encodes the json "extra" field carried by callback items and altered products.
+ * <p>
+ * Most items of a predict result share the same extra, such as {"reason":"kept"},
+ * so the encoded string of a reason is cached and the same instance is returned
+ * for every item. Arbitrary maps are written into a reused per-thread buffer
+ * instead of going through fastjson's serializer for every item.
+ */
+public class ExtraHelper {
+    public final static String REASON_KEY = "reason";
+
+    public final static String REASON_KEPT = "kept";
+
+    public final static String REASON_FILTERED = "filtered";
+
+    public final static String REASON_INSERTED = "inserted";
+
+    // The item is filtered because the user has seen it recently
+    public final static String REASON_ALREADY_SEEN = "already_seen";
+
+    // Protect the cache from being flooded by unbounded reason values,
+    // reasons beyond this count are encoded on every call
+    private final static int MAX_CACHED_REASON_COUNT = 1024;
+
+    // Buffers larger than this are not kept after use, to avoid
+    // pinning a huge builder to a thread for one unusual extra
+    private final static int MAX_REUSED_BUFFER_SIZE = 8 * 1024;
+
+    private final static Map<String, String> REASON_EXTRA_CACHE = new ConcurrentHashMap<>();
+
+    private final static ThreadLocal<StringBuilder> BUFFER =
+            ThreadLocal.withInitial(() -> new StringBuilder(128));
+
+    private final static char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    static {
+        REASON_EXTRA_CACHE.put(REASON_KEPT, encode(Collections.singletonMap(REASON_KEY, REASON_KEPT)));
+        REASON_EXTRA_CACHE.put(REASON_FILTERED, encode(Collections.singletonMap(REASON_KEY, REASON_FILTERED)));
+        REASON_EXTRA_CACHE.put(REASON_INSERTED, encode(Collections.singletonMap(REASON_KEY, REASON_INSERTED)));
+        REASON_EXTRA_CACHE.put(REASON_ALREADY_SEEN,
+                encode(Collections.singletonMap(REASON_KEY, REASON_ALREADY_SEEN)));
+    }
+
+    /**
+     * Get the json string of {"reason": reason}.
+     * The same string instance is returned for the same reason,
+     * so it is cheap to call it for every item.
+     *
+     * @param reason the reason why the item is kept, filtered or inserted
+     * @return json string, such as {"reason":"kept"}
+     */
+    public static String reasonExtra(String reason) {
+        String extra = REASON_EXTRA_CACHE.get(reason);
+        if (Objects.nonNull(extra)) {
+            return extra;
+        }
+        extra = encode(Collections.singletonMap(REASON_KEY, reason));
+        if (REASON_EXTRA_CACHE.size() < MAX_CACHED_REASON_COUNT) {
+            String previous = REASON_EXTRA_CACHE.putIfAbsent(reason, extra);
+            return Objects.isNull(previous) ? extra : previous;
+        }
+        return extra;
+    }
+
+    /**
+     * Encode a flat map into a json object string.
+     * String, number and boolean values are written directly,
+     * other values are delegated to fastjson.
+     *
+     * @param extra the map need to encode
+     * @return json object string, "{}" when the map is null or empty
+     */
+    public static String encode(Map<String, ?> extra) {
+        if (Objects.isNull(extra) || extra.isEmpty()) {
+            return "{}";
+        }
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        buffer.append('{');
+        boolean first = true;
+        for (Map.Entry<String, ?> entry : extra.entrySet()) {
+            if (!first) {
+                buffer.append(',');
+            }
+            first = false;
+            writeString(buffer, entry.getKey());
+            buffer.append(':');
+            writeValue(buffer, entry.getValue());
+        }
+        buffer.append('}');
+        String result = buffer.toString();
+        if (buffer.capacity() > MAX_REUSED_BUFFER_SIZE) {
+            BUFFER.remove();
+        }
+        return result;
+    }
+
+    private static void writeValue(StringBuilder buffer, Object value) {
+        if (Objects.isNull(value)) {
+            buffer.append("null");
+        } else if (value instanceof CharSequence) {
+            writeString(buffer, value.toString());
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            buffer.append(((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            buffer.append(((Boolean) value).booleanValue());
+        } else {
+            buffer.append(JSON.toJSONString(value));
+        }
+    }
+
+    private static void writeString(StringBuilder buffer, String value) {
+        if (Objects.isNull(value)) {
+            buffer.append("null");
+            return;
+        }
+        buffer.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    buffer.append("\\\"");
+                    break;
+                case '\\':
+                    buffer.append("\\\\");
+                    break;
+                case '\n':
+                    buffer.append("\\n");
+                    break;
+                case '\r':
+                    buffer.append("\\r");
+                    break;
+                case '\t':
+                    buffer.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        buffer.append("\\u00")
+                                .append(HEX_DIGITS[(c >> 4) & 0xF])
+                                .append(HEX_DIGITS[c & 0xF]);
+                    } else {
+                        buffer.append(c);
+                    }
+            }
+        }
+        buffer.append('"');
+    }
+}
@@ -0,0 +1,487 @@
+package byteplus.example.common;
+
+import byteplus.example.common.RequestHelper.Callable;
+import byteplus.sdk.common.protocol.ByteplusCommon.GetOperationRequest;
+import byteplus.sdk.common.protocol.ByteplusCommon.OperationResponse;
+import byteplus.sdk.common.protocol.ByteplusCommon.Status;
+import byteplus.sdk.core.BizException;
+import byteplus.sdk.core.NetException;
+import com.alibaba.fastjson.JSON;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Message;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static byteplus.sdk.core.Constant.STATUS_CODE_OPERATION_LOSS;
+import static byteplus.sdk.core.Constant.STATUS_CODE_TOO_MANY_REQUEST;
+
+/**
+ * Inject failures into the requests, to see how retries, limiters and fallbacks
+ * behave when the network or the server goes wrong, without a real outage.
+ * <p>
+ * It wraps a {@link Callable} used by {@link RequestHelper}, or a whole client by
+ * {@link #wrapClient}, so the concurrent helpers, the operation polling and the load
+ * generator get the failures without any change. The failures are:
+ * <ul>
+ *     <li>"net_exception": throws {@link NetException}, half of them after the request reached the server</li>
+ *     <li>"overload": answers with status 429 without calling the server</li>
+ *     <li>"slow": waits a log-normal delay before calling the server</li>
+ *     <li>"partial_failure": rejects some items of a "Write" request in "errors" of response</li>
+ *     <li>"operation_loss": answers the polling of an import operation with status 410</li>
+ * </ul>
+ * The failure of every call is picked by the {@link Schedule} of the action, with a random
+ * derived from the seed, the action and the index of the call, so the same seed gives the
+ * same failures for the n-th call of an action, no matter how the calls are interleaved.
+ * A failure which doesn't apply to the call, such as "partial_failure" on predict, is ignored.
+ */
+@Slf4j
+public class FaultInjector {
+    public final static String FAULT_NONE = "none";
+
+    public final static String FAULT_NET_EXCEPTION = "net_exception";
+
+    public final static String FAULT_OVERLOAD = "overload";
+
+    public final static String FAULT_SLOW = "slow";
+
+    public final static String FAULT_PARTIAL_FAILURE = "partial_failure";
+
+    public final static String FAULT_OPERATION_LOSS = "operation_loss";
+
+    // The schedule of the actions having no schedule of their own
+    public final static String ALL_ACTIONS = "*";
+
+    private final static List<String> FAULTS = Arrays.asList(FAULT_NONE, FAULT_NET_EXCEPTION, FAULT_OVERLOAD,
+            FAULT_SLOW, FAULT_PARTIAL_FAILURE, FAULT_OPERATION_LOSS);
+
+    // The prefix of a scripted schedule in "parse"
+    private final static String SCRIPT_PREFIX = "script:";
+
+    private final static String ERRORS_FIELD = "errors";
+
+    private final static String ERROR_MESSAGE_FIELD = "message";
+
+    private final long seed;
+
+    private final Map<String, Schedule> schedules;
+
+    private final LatencyDistribution slowLatency;
+
+    private final double partialFailureRate;
+
+    private final long startNanos = System.nanoTime();
+
+    private final Map<String, AtomicLong> callIndexes = new ConcurrentHashMap<>();
+
+    private final Map<String, LongAdder> injectedCounts = new ConcurrentHashMap<>();
+
+    /**
+     * Pick the failure of a call.
+     */
+    public interface Schedule {
+        /**
+         * @param callIndex the index of the call of the action, from 0
+         * @param elapsed   the time since the injector is built
+         * @param random    the random of this call, the same for the same seed, action and index
+         * @return one of the "FAULT_XXX"
+         */
+        String next(long callIndex, Duration elapsed, SplittableRandom random);
+    }
+
+    private FaultInjector(Builder builder) {
+        this.seed = builder.seed;
+        this.schedules = new HashMap<>(builder.schedules);
+        this.slowLatency = new LatencyDistribution(builder.slowMedian, builder.slowP99);
+        this.partialFailureRate = builder.partialFailureRate;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Every call fails independently with the probability of each failure,
+     * the rest of calls are not changed.
+     */
+    public static Schedule probabilistic(Map<String, Double> probabilities) {
+        probabilities.keySet().forEach(FaultInjector::checkFault);
+        Map<String, Double> copied = new LinkedHashMap<>(probabilities);
+        return (callIndex, elapsed, random) -> {
+            double value = random.nextDouble();
+            for (Map.Entry<String, Double> entry : copied.entrySet()) {
+                value -= entry.getValue();
+                if (value < 0) {
+                    return entry.getKey();
+                }
+            }
+            return FAULT_NONE;
+        };
+    }
+
+    /**
+     * The n-th call gets the n-th failure of the script, such as "none, none, overload, overload",
+     * the calls after the script get none, or the script from the start again if it repeats.
+     */
+    public static Schedule scripted(List<String> faults, boolean repeat) {
+        faults.forEach(FaultInjector::checkFault);
+        List<String> copied = new ArrayList<>(faults);
+        return (callIndex, elapsed, random) -> {
+            if (copied.isEmpty() || (!repeat && callIndex >= copied.size())) {
+                return FAULT_NONE;
+            }
+            return copied.get((int) (callIndex % copied.size()));
+        };
+    }
+
+    /**
+     * Change the schedule over time, such as an outage from the 10th second to the 20th second.
+     * The key is the time a phase starts, no failure is injected before the first phase.
+     * The phase of a call depends on the time it's sent, so it's not reproducible by seed.
+     */
+    public static Schedule phased(Map<Duration, Schedule> phases) {
+        TreeMap<Duration, Schedule> sorted = new TreeMap<>(phases);
+        return (callIndex, elapsed, random) -> {
+            Map.Entry<Duration, Schedule> phase = sorted.floorEntry(elapsed);
+            return Objects.isNull(phase) ? FAULT_NONE : phase.getValue().next(callIndex, elapsed, random);
+        };
+    }
+
+    /**
+     * Parse a schedule from text, such as "overload=0.05,net_exception=0.01" for
+     * {@link #probabilistic}, or "script:none,none,overload" for a repeated {@link #scripted}.
+     */
+    public static Schedule parse(String spec) {
+        String trimmed = spec.trim();
+        if (trimmed.startsWith(SCRIPT_PREFIX)) {
+            List<String> faults = new ArrayList<>();
+            for (String fault : trimmed.substring(SCRIPT_PREFIX.length()).split(",")) {
+                if (!fault.trim().isEmpty()) {
+                    faults.add(fault.trim());
+                }
+            }
+            return scripted(faults, true);
+        }
+        Map<String, Double> probabilities = new LinkedHashMap<>();
+        for (String entry : trimmed.split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            String[] parts = entry.split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("invalid fault:" + entry + ", expect fault=probability");
+            }
+            probabilities.put(parts[0].trim(), Double.parseDouble(parts[1].trim()));
+        }
+        return probabilistic(probabilities);
+    }
+
+    /**
+     * Build from the command line arguments of the load generator, return null if no "faults":
+     * <pre>
+     *     --faults overload=0.05,net_exception=0.01 --fault_seed 1
+     *     --fault_slow_median_ms 500 --fault_slow_p99_ms 2000 --fault_partial_rate 0.1
+     * </pre>
+     * The schedule of "--faults" is applied to all actions, see {@link #parse}.
+     */
+    public static FaultInjector fromArguments(Map<String, String> arguments) {
+        String faults = arguments.get("faults");
+        if (Objects.isNull(faults)) {
+            return null;
+        }
+        Builder builder = builder().schedule(ALL_ACTIONS, parse(faults));
+        if (arguments.containsKey("fault_seed")) {
+            builder.seed(Long.parseLong(arguments.get("fault_seed")));
+        }
+        if (arguments.containsKey("fault_slow_median_ms") || arguments.containsKey("fault_slow_p99_ms")) {
+            long medianMillis = Long.parseLong(arguments.getOrDefault("fault_slow_median_ms",
+                    String.valueOf(builder.slowMedian.toMillis())));
+            long p99Millis = Long.parseLong(arguments.getOrDefault("fault_slow_p99_ms",
+                    String.valueOf(Math.max(medianMillis, builder.slowP99.toMillis()))));
+            builder.slowLatency(Duration.ofMillis(medianMillis), Duration.ofMillis(p99Millis));
+        }
+        if (arguments.containsKey("fault_partial_rate")) {
+            builder.partialFailureRate(Double.parseDouble(arguments.get("fault_partial_rate")));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Wrap a callable, such as "client::writeUsers", the response class is used to build
+     * the overloaded responses without calling the server.
+     *
+     * @param action the name to pick schedule and count calls, such as "writeUsers"
+     */
+    public <Rsp extends Message, Req> Callable<Rsp, Req> wrap(
+            String action, Class<Rsp> responseClass, Callable<Rsp, Req> callable) {
+        return (req, opts) -> responseClass.cast(inject(action, responseClass, req, () -> callable.call(req, opts)));
+    }
+
+    /**
+     * Wrap all the methods of a client returning protobuf messages, the action is the
+     * method name, such as "writeUsers", "predict" and "getOperation". It can be passed to
+     * the concurrent helpers and {@link RequestHelper}, the polling of import operations
+     * goes through it too.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T wrapClient(Class<T> clientInterface, T client) {
+        return (T) Proxy.newProxyInstance(clientInterface.getClassLoader(), new Class<?>[]{clientInterface},
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class
+                            || !Message.class.isAssignableFrom(method.getReturnType())
+                            || Objects.isNull(args) || args.length == 0) {
+                        return invoke(method, client, args);
+                    }
+                    return inject(method.getName(), method.getReturnType(), args[0],
+                            () -> invoke(method, client, args));
+                });
+    }
+
+    // The count of the failure injected, the failures ignored are not counted
+    public long getInjectedCount(String fault) {
+        LongAdder count = injectedCounts.get(fault);
+        return Objects.isNull(count) ? 0 : count.sum();
+    }
+
+    public Map<String, Long> getInjectedCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        injectedCounts.forEach((fault, count) -> counts.put(fault, count.sum()));
+        return Collections.unmodifiableMap(counts);
+    }
+
+    private Object inject(String action, Class<?> responseClass, Object request, Invocation invocation)
+            throws BizException, NetException {
+        Schedule schedule = schedules.getOrDefault(action, schedules.get(ALL_ACTIONS));
+        if (Objects.isNull(schedule)) {
+            return invocation.invoke();
+        }
+        long callIndex = callIndexes.computeIfAbsent(action, k -> new AtomicLong()).getAndIncrement();
+        SplittableRandom random = CorpusGenerator.random(CorpusGenerator.streamSeed(seed, action), callIndex);
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+        String fault = schedule.next(callIndex, elapsed, random);
+        switch (fault) {
+            case FAULT_NONE:
+                return invocation.invoke();
+            case FAULT_NET_EXCEPTION:
+                count(action, callIndex, fault);
+                // The response of a request reached server may be lost too,
+                // the retry of it is rejected by server as idempotent
+                if (random.nextBoolean()) {
+                    invocation.invoke();
+                }
+                throw new NetException("injected net exception, action:" + action);
+            case FAULT_OVERLOAD:
+                Message overloaded = StatusHelper.withStatus(defaultInstance(responseClass),
+                        STATUS_CODE_TOO_MANY_REQUEST, "too many request (injected)");
+                if (Objects.isNull(overloaded)) {
+                    return invocation.invoke();
+                }
+                count(action, callIndex, fault);
+                return overloaded;
+            case FAULT_SLOW:
+                count(action, callIndex, fault);
+                sleep(random);
+                return invocation.invoke();
+            case FAULT_PARTIAL_FAILURE:
+                Object response = invocation.invoke();
+                Message rejected = withRejectedItems(response, request, random);
+                if (Objects.isNull(rejected)) {
+                    return response;
+                }
+                count(action, callIndex, fault);
+                return rejected;
+            case FAULT_OPERATION_LOSS:
+                if (!(request instanceof GetOperationRequest) || responseClass != OperationResponse.class) {
+                    return invocation.invoke();
+                }
+                count(action, callIndex, fault);
+                return OperationResponse.newBuilder()
+                        .setStatus(Status.newBuilder()
+                                .setCode(STATUS_CODE_OPERATION_LOSS)
+                                .setMessage("operation loss (injected)"))
+                        .build();
+            default:
+                throw new IllegalArgumentException("unknown fault:" + fault);
+        }
+    }
+
+    private static void checkFault(String fault) {
+        if (!FAULTS.contains(fault)) {
+            throw new IllegalArgumentException("unknown fault:" + fault + ", expect one of " + FAULTS);
+        }
+    }
+
+    private void count(String action, long callIndex, String fault) {
+        injectedCounts.computeIfAbsent(fault, k -> new LongAdder()).increment();
+        log.debug("[FaultInjector] inject {} into call {} of {}", fault, callIndex, action);
+    }
+
+    private void sleep(SplittableRandom random) throws BizException {
+        try {
+            TimeUnit.NANOSECONDS.sleep(slowLatency.sampleNanos(random));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BizException(e.getMessage());
+        }
+    }
+
+    /**
+     * Reject some items of request in "errors" of the response, the error entry carries the
+     * item as the message of item type, or as json for the json items of general/byteair.
+     * Return null if the response has no "errors" or the request has no items.
+     */
+    private Message withRejectedItems(Object response, Object request, SplittableRandom random) {
+        if (!(response instanceof Message) || !StatusHelper.isResponseSuccess((Message) response)) {
+            return null;
+        }
+        Message message = (Message) response;
+        FieldDescriptor errorsField = message.getDescriptorForType().findFieldByName(ERRORS_FIELD);
+        if (Objects.isNull(errorsField) || !errorsField.isRepeated()
+                || errorsField.getJavaType() != FieldDescriptor.JavaType.MESSAGE) {
+            return null;
+        }
+        List<?> items = itemsOf(request);
+        if (items.isEmpty()) {
+            return null;
+        }
+        List<Object> rejectedItems = new ArrayList<>();
+        for (Object item : items) {
+            if (random.nextDouble() < partialFailureRate) {
+                rejectedItems.add(item);
+            }
+        }
+        if (rejectedItems.isEmpty()) {
+            rejectedItems.add(items.get(random.nextInt(items.size())));
+        }
+        Message.Builder builder = message.toBuilder();
+        for (Object item : rejectedItems) {
+            Message.Builder errorBuilder = builder.newBuilderForField(errorsField);
+            for (FieldDescriptor field : errorBuilder.getDescriptorForType().getFields()) {
+                if (ERROR_MESSAGE_FIELD.equals(field.getName())) {
+                    errorBuilder.setField(field, "item rejected (injected)");
+                } else if (item instanceof Message && field.getJavaType() == FieldDescriptor.JavaType.MESSAGE
+                        && field.getMessageType().equals(((Message) item).getDescriptorForType())) {
+                    errorBuilder.setField(field, item);
+                } else if (item instanceof Map && field.getJavaType() == FieldDescriptor.JavaType.STRING) {
+                    errorBuilder.setField(field, JSON.toJSONString(item));
+                }
+            }
+            builder.addRepeatedField(errorsField, errorBuilder.build());
+        }
+        return builder.build();
+    }
+
+    // The items of a "Write" request, the first repeated message field, or the list of general/byteair
+    private static List<?> itemsOf(Object request) {
+        if (request instanceof List) {
+            return (List<?>) request;
+        }
+        if (!(request instanceof Message)) {
+            return Collections.emptyList();
+        }
+        Message message = (Message) request;
+        for (FieldDescriptor field : message.getDescriptorForType().getFields()) {
+            if (field.isRepeated() && !field.isMapField() && field.getJavaType() == FieldDescriptor.JavaType.MESSAGE) {
+                return (List<?>) message.getField(field);
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private static Message defaultInstance(Class<?> responseClass) {
+        try {
+            return (Message) responseClass.getMethod("getDefaultInstance").invoke(null);
+        } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException e) {
+            log.warn("[FaultInjector] can't build response of {}, msg:{}", responseClass, e.getMessage());
+            return null;
+        }
+    }
+
+    // Rethrow the exception of client as it is, so the callers see the same exceptions with or without proxy
+    private static Object invoke(Method method, Object target, Object[] args) throws BizException, NetException {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof BizException) {
+                throw (BizException) cause;
+            }
+            if (cause instanceof NetException) {
+                throw (NetException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new UndeclaredThrowableException(cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private interface Invocation {
+        Object invoke() throws BizException, NetException;
+    }
+
+    public static class Builder {
+        private final Map<String, Schedule> schedules = new HashMap<>();
+
+        private long seed = System.nanoTime();
+
+        private Duration slowMedian = Duration.ofMillis(500);
+
+        private Duration slowP99 = Duration.ofSeconds(2);
+
+        private double partialFailureRate = 0.1;
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * @param action the method name of client, or the action of "wrap", or "*" for any action
+         */
+        public Builder schedule(String action, Schedule schedule) {
+            this.schedules.put(action, schedule);
+            return this;
+        }
+
+        // The delay of "slow" failure
+        public Builder slowLatency(Duration median, Duration p99) {
+            this.slowMedian = median;
+            this.slowP99 = p99;
+            return this;
+        }
+
+        // The ratio of items rejected by "partial_failure", at least one item is rejected
+        public Builder partialFailureRate(double partialFailureRate) {
+            this.partialFailureRate = partialFailureRate;
+            return this;
+        }
+
+        public FaultInjector build() {
+            return new FaultInjector(this);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package byteplus.example.common;
+
+import com.google.protobuf.Message;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Record the fingerprint of every user/product/content which has been written successfully,
+ * so that the unchanged ones can be dropped before next daily full upload.
+ * <p>
+ * The fingerprint is the 64-bit hash of the message's deterministic serialized bytes,
+ * and it is keyed by the 64-bit hash of "namespace + id". They are kept in an
+ * open-addressing table with linear probing, which is stored in a memory-mapped file,
+ * so the table is neither on the java heap nor lost after restart.
+ * Every slot takes 16 bytes, 100M keys take about 2.1GB at the default load factor.
+ * <p>
+ * Hash collision of two ids only makes both of them treated as changed,
+ * it never causes a changed entity to be dropped.
+ */
+@Slf4j
+public class FingerprintStore implements Closeable {
+    private final static long MAGIC = 0x4250465053544F52L;
+
+    private final static int VERSION = 1;
+
+    private final static int HEADER_BYTES = 64;
+
+    private final static int SLOT_BYTES = 16;
+
+    // Must be a multiple of SLOT_BYTES, and a single mapping can't exceed 2GB
+    private final static int SEGMENT_SHIFT = 30;
+
+    private final static long SEGMENT_BYTES = 1L << SEGMENT_SHIFT;
+
+    private final static long SEGMENT_MASK = SEGMENT_BYTES - 1;
+
+    private final static double DEFAULT_LOAD_FACTOR = 0.75;
+
+    // New keys are not accepted when the table is fuller than this,
+    // otherwise the probing becomes too long
+    private final static double MAX_LOAD_FACTOR = 0.9;
+
+    private final static long EMPTY_KEY = 0;
+
+    private final static int HEADER_MAGIC_OFFSET = 0;
+
+    private final static int HEADER_VERSION_OFFSET = 8;
+
+    private final static int HEADER_CAPACITY_OFFSET = 16;
+
+    private final static int HEADER_SIZE_OFFSET = 24;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer header;
+
+    private final MappedByteBuffer[] segments;
+
+    private final long capacity;
+
+    private final long maxSize;
+
+    private long size;
+
+    private boolean fullWarned;
+
+    private FingerprintStore(FileChannel channel, MappedByteBuffer header,
+                             MappedByteBuffer[] segments, long capacity, long size) {
+        this.channel = channel;
+        this.header = header;
+        this.segments = segments;
+        this.capacity = capacity;
+        this.maxSize = (long) (capacity * MAX_LOAD_FACTOR);
+        this.size = size;
+    }
+
+    /**
+     * Open the store file, and create it if not exist.
+     *
+     * @param file         the file to persist fingerprints
+     * @param expectedKeys the max count of keys expected to be stored,
+     *                     it only works when creating a new file
+     */
+    public static FingerprintStore open(Path file, long expectedKeys) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean isNew = channel.size() == 0;
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            long capacity;
+            long size;
+            if (isNew) {
+                capacity = Math.max(16, (long) Math.ceil(expectedKeys / DEFAULT_LOAD_FACTOR));
+                size = 0;
+                header.putLong(HEADER_MAGIC_OFFSET, MAGIC);
+                header.putInt(HEADER_VERSION_OFFSET, VERSION);
+                header.putLong(HEADER_CAPACITY_OFFSET, capacity);
+                header.putLong(HEADER_SIZE_OFFSET, size);
+            } else {
+                if (header.getLong(HEADER_MAGIC_OFFSET) != MAGIC
+                        || header.getInt(HEADER_VERSION_OFFSET) != VERSION) {
+                    throw new IOException("not a fingerprint store file: " + file);
+                }
+                capacity = header.getLong(HEADER_CAPACITY_OFFSET);
+                size = header.getLong(HEADER_SIZE_OFFSET);
+            }
+            MappedByteBuffer[] segments = mapSegments(channel, capacity * SLOT_BYTES);
+            log.info("[FingerprintStore] open {}, capacity:{} size:{}", file, capacity, size);
+            return new FingerprintStore(channel, header, segments, capacity, size);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static MappedByteBuffer[] mapSegments(FileChannel channel, long tableBytes) throws IOException {
+        int segmentCount = (int) ((tableBytes + SEGMENT_BYTES - 1) >>> SEGMENT_SHIFT);
+        MappedByteBuffer[] segments = new MappedByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            long position = HEADER_BYTES + ((long) i << SEGMENT_SHIFT);
+            long length = Math.min(SEGMENT_BYTES, tableBytes - ((long) i << SEGMENT_SHIFT));
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, length);
+            segments[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return segments;
+    }
+
+    public static long keyOf(String namespace, String id) {
+        long key = HashHelper.hash64(id, HashHelper.hash64(namespace));
+        return key == EMPTY_KEY ? 1 : key;
+    }
+
+    /**
+     * Check whether the message is different from the one recorded last time.
+     * An id which has never been recorded is treated as changed.
+     */
+    public boolean isChanged(String namespace, String id, Message message) {
+        return isChanged(keyOf(namespace, id), HashHelper.hash64(message));
+    }
+
+    public synchronized boolean isChanged(long key, long fingerprint) {
+        long slot = findSlot(key);
+        if (slot < 0 || getKey(slot) == EMPTY_KEY) {
+            return true;
+        }
+        return getFingerprint(slot) != fingerprint;
+    }
+
+    /**
+     * Record the message after it has been written successfully.
+     */
+    public void record(String namespace, String id, Message message) {
+        record(keyOf(namespace, id), HashHelper.hash64(message));
+    }
+
+    public synchronized void record(long key, long fingerprint) {
+        long slot = findSlot(key);
+        if (slot < 0) {
+            return;
+        }
+        if (getKey(slot) == EMPTY_KEY) {
+            if (size >= maxSize) {
+                if (!fullWarned) {
+                    log.warn("[FingerprintStore] store is full, new ids will always be treated as changed,"
+                            + " size:{} capacity:{}", size, capacity);
+                    fullWarned = true;
+                }
+                return;
+            }
+            putKey(slot, key);
+            size++;
+            header.putLong(HEADER_SIZE_OFFSET, size);
+        }
+        putFingerprint(slot, fingerprint);
+    }
+
+    /**
+     * Keep only the messages which are changed since they were recorded last time.
+     */
+    public <T extends Message> List<T> filterChanged(String namespace, List<T> items, Function<T, String> idGetter) {
+        List<T> changed = new ArrayList<>();
+        for (T item : items) {
+            if (isChanged(namespace, idGetter.apply(item), item)) {
+                changed.add(item);
+            }
+        }
+        return changed;
+    }
+
+    public <T extends Message> void recordAll(String namespace, List<T> items, Function<T, String> idGetter) {
+        for (T item : items) {
+            record(namespace, idGetter.apply(item), item);
+        }
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized void flush() {
+        header.force();
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Flush the table to disk. The mapped memory is released after the store is garbage collected.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    // Return the slot holding the key, or the empty slot where the key should be inserted,
+    // or -1 if the table has no empty slot
+    private long findSlot(long key) {
+        long slot = (key & Long.MAX_VALUE) % capacity;
+        for (long probed = 0; probed < capacity; probed++) {
+            long slotKey = getKey(slot);
+            if (slotKey == key || slotKey == EMPTY_KEY) {
+                return slot;
+            }
+            slot++;
+            if (slot == capacity) {
+                slot = 0;
+            }
+        }
+        return -1;
+    }
+
+    private long getKey(long slot) {
+        long offset = slot * SLOT_BYTES;
+        return segments[(int) (offset >>> SEGMENT_SHIFT)].getLong((int) (offset & SEGMENT_MASK));
+    }
+
+    private void putKey(long slot, long key) {
+        long offset = slot * SLOT_BYTES;
+        segments[(int) (offset >>> SEGMENT_SHIFT)].putLong((int) (offset & SEGMENT_MASK), key);
+    }
+
+    private long getFingerprint(long slot) {
+        long offset = slot * SLOT_BYTES + 8;
+        return segments[(int) (offset >>> SEGMENT_SHIFT)].getLong((int) (offset & SEGMENT_MASK));
+    }
+
+    private void putFingerprint(long slot, long fingerprint) {
+        long offset = slot * SLOT_BYTES + 8;
+        segments[(int) (offset >>> SEGMENT_SHIFT)].putLong((int) (offset & SEGMENT_MASK), fingerprint);
+    }
+}
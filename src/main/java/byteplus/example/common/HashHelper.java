@@ -0,0 +1,167 @@
+package byteplus.example.common;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * 64-bit non-cryptographic hash functions, whose results are stable across
+ * processes and machines, so they can be persisted and compared later.
+ */
+public class HashHelper {
+    private final static long PRIME64_1 = 0x9E3779B185EBCA87L;
+
+    private final static long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+
+    private final static long PRIME64_3 = 0x165667B19E3779F9L;
+
+    private final static long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+
+    private final static long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+    private final static long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+
+    private final static long FNV_PRIME = 0x100000001B3L;
+
+    // Messages larger than this are serialized into a temporary buffer
+    private final static int MAX_REUSED_BUFFER_SIZE = 64 * 1024;
+
+    private final static ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[4096]);
+
+    /**
+     * Hash the chars of a string, the result only depends on the chars.
+     */
+    public static long hash64(CharSequence value) {
+        return hash64(value, 0);
+    }
+
+    public static long hash64(CharSequence value, long seed) {
+        long hash = FNV_OFFSET_BASIS ^ seed;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return mix64(hash ^ value.length());
+    }
+
+    /**
+     * Hash the deterministic serialized bytes of a message.
+     * The map fields are serialized in the order of keys, so two equal messages
+     * always have the same hash, no matter how they are built.
+     */
+    public static long hash64(Message message) {
+        int size = message.getSerializedSize();
+        byte[] buffer = BUFFER.get();
+        if (buffer.length < size) {
+            buffer = new byte[Math.max(size, buffer.length * 2)];
+            if (buffer.length <= MAX_REUSED_BUFFER_SIZE) {
+                BUFFER.set(buffer);
+            }
+        }
+        CodedOutputStream output = CodedOutputStream.newInstance(buffer, 0, size);
+        output.useDeterministicSerialization();
+        try {
+            message.writeTo(output);
+        } catch (IOException e) {
+            // Writing to a byte array never throws IOException unless the size is wrong
+            throw new UncheckedIOException(e);
+        }
+        return hash64(buffer, 0, size, 0);
+    }
+
+    /**
+     * The xxHash64 algorithm.
+     */
+    public static long hash64(byte[] data, int offset, int length, long seed) {
+        int end = offset + length;
+        int index = offset;
+        long hash;
+        if (length >= 32) {
+            long v1 = seed + PRIME64_1 + PRIME64_2;
+            long v2 = seed + PRIME64_2;
+            long v3 = seed;
+            long v4 = seed - PRIME64_1;
+            int limit = end - 32;
+            do {
+                v1 = round(v1, getLong(data, index));
+                v2 = round(v2, getLong(data, index + 8));
+                v3 = round(v3, getLong(data, index + 16));
+                v4 = round(v4, getLong(data, index + 24));
+                index += 32;
+            } while (index <= limit);
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+                    + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = seed + PRIME64_5;
+        }
+        hash += length;
+        while (index + 8 <= end) {
+            hash ^= round(0, getLong(data, index));
+            hash = Long.rotateLeft(hash, 27) * PRIME64_1 + PRIME64_4;
+            index += 8;
+        }
+        if (index + 4 <= end) {
+            hash ^= (getInt(data, index) & 0xFFFFFFFFL) * PRIME64_1;
+            hash = Long.rotateLeft(hash, 23) * PRIME64_2 + PRIME64_3;
+            index += 4;
+        }
+        while (index < end) {
+            hash ^= (data[index] & 0xFF) * PRIME64_5;
+            hash = Long.rotateLeft(hash, 11) * PRIME64_1;
+            index++;
+        }
+        hash ^= hash >>> 33;
+        hash *= PRIME64_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME64_3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    /**
+     * The finalizer of MurmurHash3, which spreads every input bit to all output bits.
+     */
+    public static long mix64(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME64_2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME64_1;
+    }
+
+    private static long mergeRound(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * PRIME64_1 + PRIME64_4;
+    }
+
+    private static long getLong(byte[] data, int index) {
+        return (data[index] & 0xFFL)
+                | (data[index + 1] & 0xFFL) << 8
+                | (data[index + 2] & 0xFFL) << 16
+                | (data[index + 3] & 0xFFL) << 24
+                | (data[index + 4] & 0xFFL) << 32
+                | (data[index + 5] & 0xFFL) << 40
+                | (data[index + 6] & 0xFFL) << 48
+                | (data[index + 7] & 0xFFL) << 56;
+    }
+
+    private static int getInt(byte[] data, int index) {
+        return (data[index] & 0xFF)
+                | (data[index + 1] & 0xFF) << 8
+                | (data[index + 2] & 0xFF) << 16
+                | (data[index + 3] & 0xFF) << 24;
+    }
+}
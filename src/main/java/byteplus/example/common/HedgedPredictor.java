@@ -0,0 +1,439 @@
+package byteplus.example.common;
+
+import byteplus.example.common.RequestHelper.Callable;
+import byteplus.sdk.core.BizException;
+import byteplus.sdk.core.NetException;
+import byteplus.sdk.core.Option;
+import com.google.protobuf.Message;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cut the tail latency of predict by hedging.
+ * <p>
+ * If the first attempt hasn't returned after the given percentile of recent latency,
+ * a second identical request, with the same request id, is sent, and the response
+ * returned first wins. The hedges are limited by a budget, such as at most 5% extra
+ * requests, so that a slow server is not overloaded by the hedges.
+ * <p>
+ * The losing attempt is not interrupted, the request is already sent and the sdk
+ * call stops at its own timeout. Its latency is still recorded, so the hedge delay
+ * is always computed from the latency without hedging.
+ */
+@Slf4j
+public class HedgedPredictor<Req extends Message, Rsp extends Message> {
+    private final static int DEFAULT_THREAD_COUNT = Runtime.getRuntime().availableProcessors() * 4;
+
+    private final static int MAX_QUEUED_COUNT = 1000;
+
+    private final static Duration DEFAULT_MIN_DELAY = Duration.ofMillis(10);
+
+    // The count of recent latencies the percentiles are computed from
+    private final static int LATENCY_WINDOW_SIZE = 1024;
+
+    // No hedging before enough latencies are collected
+    private final static int MIN_SAMPLE_COUNT = 100;
+
+    // The hedge delay is recomputed every time this count of latencies are collected
+    private final static int DELAY_REFRESH_INTERVAL = 64;
+
+    // The budget saved when traffic is low, allows a short burst of hedges
+    private final static long MAX_BUDGET_TOKENS = 10;
+
+    private final static long TOKEN_SCALE = 1_000_000;
+
+    private final double percentile;
+
+    private final long budgetMicroTokensPerRequest;
+
+    private final long minDelayNanos;
+
+    private final ThreadPoolExecutor executor;
+
+    private final LatencyWindow primaryLatencies = new LatencyWindow(LATENCY_WINDOW_SIZE);
+
+    private final LatencyWindow servedLatencies = new LatencyWindow(LATENCY_WINDOW_SIZE);
+
+    private final AtomicLong budgetMicroTokens = new AtomicLong();
+
+    // Negative means not enough latencies yet
+    private volatile long hedgeDelayNanos = -1;
+
+    private final LongAdder requestCount = new LongAdder();
+
+    private final LongAdder hedgeCount = new LongAdder();
+
+    private final LongAdder hedgeWinCount = new LongAdder();
+
+    private final LongAdder budgetExhaustedCount = new LongAdder();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * @param percentile  the percentile of recent latency to send the hedge after, such as 0.95
+     * @param budgetRatio the max ratio of hedges to requests, such as 0.05
+     */
+    public HedgedPredictor(double percentile, double budgetRatio) {
+        this(percentile, budgetRatio, DEFAULT_MIN_DELAY, DEFAULT_THREAD_COUNT);
+    }
+
+    /**
+     * @param minDelay    the min time to wait before hedging, even if the percentile is lower
+     * @param threadCount the count of threads sending the attempts
+     */
+    public HedgedPredictor(double percentile, double budgetRatio, Duration minDelay, int threadCount) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException("percentile must be in (0, 1)");
+        }
+        this.percentile = percentile;
+        this.budgetMicroTokensPerRequest = Math.round(budgetRatio * TOKEN_SCALE);
+        this.minDelayNanos = minDelay.toNanos();
+        this.executor = new ThreadPoolExecutor(
+                threadCount,
+                threadCount,
+                0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(MAX_QUEUED_COUNT),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "hedged-predict");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    /**
+     * Wrap the predict api, so that it can be passed to where a Callable is needed,
+     * such as {@link SingleFlight#wrap}.
+     *
+     * @param callable the predict api, with the scene bound
+     */
+    public Callable<Rsp, Req> wrap(Callable<Rsp, Req> callable) {
+        return (req, opts) -> predict(callable, req, opts);
+    }
+
+    /**
+     * @param callable the predict api, with the scene bound
+     * @param request  the predict request
+     * @param opts     the options of request, the hedge is sent with the same options,
+     *                 including the request id
+     */
+    public Rsp predict(Callable<Rsp, Req> callable, Req request, Option... opts)
+            throws BizException, NetException {
+        requestCount.increment();
+        earnBudget();
+        long startNanos = System.nanoTime();
+        Attempts attempts = new Attempts();
+        try {
+            executor.execute(() -> attempt(callable, request, opts, attempts, startNanos, false));
+        } catch (RejectedExecutionException e) {
+            // No spare thread, send the request in caller thread without hedging
+            rejectedCount.increment();
+            Rsp response = callable.call(request, opts);
+            recordPrimaryLatency(System.nanoTime() - startNanos);
+            servedLatencies.add(System.nanoTime() - startNanos);
+            return response;
+        }
+        long delay = hedgeDelayNanos;
+        Rsp response;
+        if (delay < 0) {
+            response = await(attempts.result, -1);
+        } else {
+            response = await(attempts.result, delay);
+            if (Objects.isNull(response)) {
+                hedge(callable, request, opts, attempts, startNanos);
+                response = await(attempts.result, -1);
+            }
+        }
+        servedLatencies.add(System.nanoTime() - startNanos);
+        return response;
+    }
+
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    public long getHedgeCount() {
+        return hedgeCount.sum();
+    }
+
+    // The count of requests which are answered by the hedge
+    public long getHedgeWinCount() {
+        return hedgeWinCount.sum();
+    }
+
+    // The count of hedges skipped because the budget is used up
+    public long getBudgetExhaustedCount() {
+        return budgetExhaustedCount.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    public double getHedgeRate() {
+        long requests = requestCount.sum();
+        return requests == 0 ? 0 : (double) hedgeCount.sum() / requests;
+    }
+
+    // Return -1 if not enough latencies are collected
+    public long getHedgeDelayMillis() {
+        long delay = hedgeDelayNanos;
+        return delay < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(delay);
+    }
+
+    /**
+     * The latencies of recent requests. The latency without hedging is the one
+     * of the first attempts, compare it with the served latency to see the gain.
+     */
+    public Stats getStats() {
+        return new Stats(requestCount.sum(), hedgeCount.sum(), hedgeWinCount.sum(), budgetExhaustedCount.sum(),
+                primaryLatencies.percentileMillis(0.5), primaryLatencies.percentileMillis(0.99),
+                servedLatencies.percentileMillis(0.5), servedLatencies.percentileMillis(0.99));
+    }
+
+    public void release() {
+        executor.shutdownNow();
+    }
+
+    private void hedge(Callable<Rsp, Req> callable, Req request, Option[] opts, Attempts attempts, long startNanos) {
+        if (attempts.result.isDone()) {
+            return;
+        }
+        if (!tryAcquireBudget()) {
+            budgetExhaustedCount.increment();
+            return;
+        }
+        attempts.pending.incrementAndGet();
+        try {
+            executor.execute(() -> attempt(callable, request, opts, attempts, startNanos, true));
+            hedgeCount.increment();
+        } catch (RejectedExecutionException e) {
+            attempts.pending.decrementAndGet();
+            rejectedCount.increment();
+            log.debug("[HedgedPredict] too many pending attempts, skip hedge");
+        }
+    }
+
+    private void attempt(Callable<Rsp, Req> callable, Req request, Option[] opts,
+                         Attempts attempts, long startNanos, boolean isHedge) {
+        try {
+            Rsp response = callable.call(request, opts);
+            if (!isHedge) {
+                recordPrimaryLatency(System.nanoTime() - startNanos);
+            }
+            if (Objects.nonNull(response) && StatusHelper.isResponseSuccess(response)) {
+                if (attempts.result.complete(response) && isHedge) {
+                    hedgeWinCount.increment();
+                }
+                return;
+            }
+            // Wait for the other attempt, return this failed response if it fails too
+            attempts.failedResponse = response;
+        } catch (Throwable e) {
+            if (!isHedge) {
+                recordPrimaryLatency(System.nanoTime() - startNanos);
+            }
+            attempts.error = e;
+        }
+        if (attempts.pending.decrementAndGet() == 0) {
+            attempts.fail();
+        }
+    }
+
+    // Return null if not completed in time, negative timeout means no limit
+    private Rsp await(CompletableFuture<Rsp> result, long timeoutNanos) throws BizException, NetException {
+        try {
+            if (timeoutNanos < 0) {
+                return result.get();
+            }
+            return result.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BizException(e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof BizException) {
+                throw (BizException) cause;
+            }
+            if (cause instanceof NetException) {
+                throw (NetException) cause;
+            }
+            throw new BizException(String.valueOf(cause));
+        }
+    }
+
+    private void recordPrimaryLatency(long latencyNanos) {
+        long count = primaryLatencies.add(latencyNanos);
+        if (count >= MIN_SAMPLE_COUNT && count % DELAY_REFRESH_INTERVAL == 0) {
+            hedgeDelayNanos = Math.max(minDelayNanos, primaryLatencies.percentile(percentile));
+        }
+    }
+
+    private void earnBudget() {
+        long max = MAX_BUDGET_TOKENS * TOKEN_SCALE;
+        long current;
+        do {
+            current = budgetMicroTokens.get();
+            if (current >= max) {
+                return;
+            }
+        } while (!budgetMicroTokens.compareAndSet(current,
+                Math.min(max, current + budgetMicroTokensPerRequest)));
+    }
+
+    private boolean tryAcquireBudget() {
+        long current;
+        do {
+            current = budgetMicroTokens.get();
+            if (current < TOKEN_SCALE) {
+                return false;
+            }
+        } while (!budgetMicroTokens.compareAndSet(current, current - TOKEN_SCALE));
+        return true;
+    }
+
+    private class Attempts {
+        private final CompletableFuture<Rsp> result = new CompletableFuture<>();
+
+        private final AtomicInteger pending = new AtomicInteger(1);
+
+        private volatile Rsp failedResponse;
+
+        private volatile Throwable error;
+
+        // All attempts failed, the failed response is preferred,
+        // so that the caller can find the failure info
+        private void fail() {
+            if (Objects.nonNull(failedResponse)) {
+                result.complete(failedResponse);
+                return;
+            }
+            result.completeExceptionally(Objects.nonNull(error) ? error
+                    : new IllegalStateException("predict return empty response"));
+        }
+    }
+
+    // The latencies of recent requests in a ring buffer
+    private static class LatencyWindow {
+        private final long[] samples;
+
+        private long count;
+
+        LatencyWindow(int size) {
+            this.samples = new long[size];
+        }
+
+        // Return the total count of latencies ever added
+        synchronized long add(long latencyNanos) {
+            samples[(int) (count % samples.length)] = latencyNanos;
+            return ++count;
+        }
+
+        // Return -1 if there is no latency
+        long percentile(double percentile) {
+            long[] sorted;
+            synchronized (this) {
+                sorted = Arrays.copyOf(samples, (int) Math.min(count, samples.length));
+            }
+            if (sorted.length == 0) {
+                return -1;
+            }
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        }
+
+        long percentileMillis(double percentile) {
+            long latency = percentile(percentile);
+            return latency < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(latency);
+        }
+    }
+
+    public static class Stats {
+        private final long requestCount;
+
+        private final long hedgeCount;
+
+        private final long hedgeWinCount;
+
+        private final long budgetExhaustedCount;
+
+        private final long primaryP50Millis;
+
+        private final long primaryP99Millis;
+
+        private final long servedP50Millis;
+
+        private final long servedP99Millis;
+
+        Stats(long requestCount, long hedgeCount, long hedgeWinCount, long budgetExhaustedCount,
+              long primaryP50Millis, long primaryP99Millis, long servedP50Millis, long servedP99Millis) {
+            this.requestCount = requestCount;
+            this.hedgeCount = hedgeCount;
+            this.hedgeWinCount = hedgeWinCount;
+            this.budgetExhaustedCount = budgetExhaustedCount;
+            this.primaryP50Millis = primaryP50Millis;
+            this.primaryP99Millis = primaryP99Millis;
+            this.servedP50Millis = servedP50Millis;
+            this.servedP99Millis = servedP99Millis;
+        }
+
+        public long getRequestCount() {
+            return requestCount;
+        }
+
+        public long getHedgeCount() {
+            return hedgeCount;
+        }
+
+        public long getHedgeWinCount() {
+            return hedgeWinCount;
+        }
+
+        public long getBudgetExhaustedCount() {
+            return budgetExhaustedCount;
+        }
+
+        public double getHedgeRate() {
+            return requestCount == 0 ? 0 : (double) hedgeCount / requestCount;
+        }
+
+        // The p99 latency without hedging
+        public long getPrimaryP99Millis() {
+            return primaryP99Millis;
+        }
+
+        public long getServedP99Millis() {
+            return servedP99Millis;
+        }
+
+        // How much the p99 latency is cut by hedging
+        public long getP99ImprovementMillis() {
+            return primaryP99Millis - servedP99Millis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("request:%d hedge:%d hedgeWin:%d hedgeRate:%.4f budgetExhausted:%d"
+                            + " primaryP50Ms:%d primaryP99Ms:%d servedP50Ms:%d servedP99Ms:%d",
+                    requestCount, hedgeCount, hedgeWinCount, getHedgeRate(), budgetExhaustedCount,
+                    primaryP50Millis, primaryP99Millis, servedP50Millis, servedP99Millis);
+        }
+    }
+}
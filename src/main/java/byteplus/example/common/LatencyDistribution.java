@@ -0,0 +1,50 @@
+package byteplus.example.common;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A log-normal distribution of latency decided by its median and p99, which has
+ * the long tail of real services. It is used to simulate a slow server, such as
+ * by {@link MockServer} and {@link FaultInjector}.
+ */
+public class LatencyDistribution {
+    // z of 0.99 in standard normal distribution, used to derive sigma from p99
+    private final static double Z_99 = 2.326;
+
+    private final long medianNanos;
+
+    private final double sigma;
+
+    /**
+     * @param median zero means no latency
+     * @param p99    the latency is always the median if it is not above the median
+     */
+    public LatencyDistribution(Duration median, Duration p99) {
+        this.medianNanos = median.toNanos();
+        long p99Nanos = p99.toNanos();
+        this.sigma = medianNanos > 0 && p99Nanos > medianNanos
+                ? Math.log((double) p99Nanos / medianNanos) / Z_99 : 0;
+    }
+
+    // Sample by the random of current thread
+    public long sampleNanos() {
+        if (medianNanos <= 0) {
+            return 0;
+        }
+        return sampleNanos(ThreadLocalRandom.current().nextGaussian());
+    }
+
+    // Sample by the given random, the same random gives the same latency
+    public long sampleNanos(SplittableRandom random) {
+        if (medianNanos <= 0) {
+            return 0;
+        }
+        return sampleNanos(SyntheticValues.gaussian(random));
+    }
+
+    private long sampleNanos(double gaussian) {
+        return (long) (medianNanos * Math.exp(sigma * gaussian));
+    }
+}
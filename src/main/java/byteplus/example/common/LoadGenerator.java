@@ -0,0 +1,651 @@
+package byteplus.example.common;
+
+import byteplus.sdk.core.Option;
+import com.google.protobuf.Message;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Send requests at a fixed target rate (open loop) with a weighted mix of actions,
+ * such as 70% writing user events, 20% predict and 10% ack, to find out how many
+ * requests per second the client and server can take.
+ * <p>
+ * The start time of every request is planned before running, and the latency is
+ * recorded from the planned start instead of the real start, so the time a request
+ * waits because the previous ones are slow is counted (no coordinated omission).
+ * When the requests waiting for a thread reach "maxPending", the next ones are
+ * dropped and counted, instead of slowing down the rate.
+ * <p>
+ * The throughput, p50/p99/p999 latency, and the error and overload rates of every
+ * action are logged every report interval, and returned as a {@link Report} at the end.
+ */
+@Slf4j
+public class LoadGenerator {
+    // The latency is recorded in microseconds with 3 significant digits
+    private final static int SIGNIFICANT_DIGITS = 3;
+
+    // The time to wait for the in-flight requests after the last one is started
+    private final static Duration DRAIN_TIMEOUT = Duration.ofSeconds(30);
+
+    private final static AtomicInteger THREAD_INDEX = new AtomicInteger();
+
+    private final double rate;
+
+    private final Duration duration;
+
+    private final Duration warmup;
+
+    private final int concurrency;
+
+    private final int maxPending;
+
+    private final Duration reportInterval;
+
+    private final long seed;
+
+    private final List<ActionStats> actions;
+
+    // The sum of weights of actions, used to pick an action by a random int
+    private final int totalWeight;
+
+    private LoadGenerator(Builder builder) {
+        this.rate = builder.rate;
+        this.duration = builder.duration;
+        this.warmup = builder.warmup;
+        this.concurrency = builder.concurrency;
+        this.maxPending = builder.maxPending;
+        this.reportInterval = builder.reportInterval;
+        this.seed = builder.seed;
+        this.actions = new ArrayList<>(builder.actions.size());
+        int weight = 0;
+        for (Map.Entry<String, WeightedAction> entry : builder.actions.entrySet()) {
+            weight += entry.getValue().weight;
+            actions.add(new ActionStats(entry.getKey(), entry.getValue().action, weight));
+        }
+        this.totalWeight = weight;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Parse the mix of actions, such as "user_events=70,predict=20,ack=10".
+     *
+     * @return action name -> weight, in the order of the string
+     */
+    public static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String part : mix.split(",")) {
+            String[] nameAndWeight = part.trim().split("=");
+            if (nameAndWeight.length != 2) {
+                throw new IllegalArgumentException("invalid mix:" + mix);
+            }
+            weights.put(nameAndWeight[0].trim(), Integer.parseInt(nameAndWeight[1].trim()));
+        }
+        return weights;
+    }
+
+    /**
+     * Parse the command line arguments like "--rate 200 --mock", the value of a flag is "true".
+     */
+    public static Map<String, String> parseArguments(String[] args) {
+        Map<String, String> arguments = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("unexpected argument:" + args[i]);
+            }
+            String name = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                arguments.put(name, args[++i]);
+            } else {
+                arguments.put(name, "true");
+            }
+        }
+        return arguments;
+    }
+
+    /**
+     * Send the requests until the warmup and the duration pass, and wait for the in-flight ones.
+     * The requests planned in warmup are reported, but not counted in the result, even if they
+     * finish after it. The elapsed time of result is the duration, without the draining.
+     */
+    public Report run() throws InterruptedException {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(concurrency, concurrency,
+                0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "load-generator-" + THREAD_INDEX.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger pending = new AtomicInteger();
+        Random random = new Random(seed);
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long reportIntervalNanos = reportInterval.toNanos();
+        long startNanos = System.nanoTime();
+        long measureStartNanos = startNanos + warmup.toNanos();
+        long endNanos = measureStartNanos + duration.toNanos();
+        long nextReportNanos = startNanos + reportIntervalNanos;
+        boolean warming = !warmup.isZero();
+        int reportIndex = 0;
+        log.info("[LoadGenerator] start, rate:{}/s warmup:{} duration:{} concurrency:{} actions:{}",
+                rate, warmup, duration, concurrency, actionNames());
+        for (long i = 0; ; i++) {
+            long plannedNanos = startNanos + i * intervalNanos;
+            if (plannedNanos - endNanos >= 0) {
+                break;
+            }
+            // The report is written by the sending thread, so no request is
+            // started late because of the reporting thread being scheduled
+            if (plannedNanos - nextReportNanos >= 0) {
+                report(++reportIndex, reportIntervalNanos);
+                nextReportNanos += reportIntervalNanos;
+            }
+            if (warming && plannedNanos - measureStartNanos >= 0) {
+                // The JIT compiling and the connections created in warmup make the latency much higher
+                report(++reportIndex, Math.max(plannedNanos - (nextReportNanos - reportIntervalNanos), 1));
+                nextReportNanos = plannedNanos + reportIntervalNanos;
+                for (ActionStats action : actions) {
+                    action.resetTotal();
+                }
+                warming = false;
+                log.info("[LoadGenerator] warmup finished");
+            }
+            waitUntil(plannedNanos);
+            ActionStats action = pickAction(random);
+            if (pending.get() >= maxPending) {
+                action.droppedCount.increment();
+                continue;
+            }
+            pending.incrementAndGet();
+            // Tagged when planned, a request planned in warmup may finish after it
+            boolean measured = plannedNanos - measureStartNanos >= 0;
+            executor.execute(() -> {
+                try {
+                    action.call(plannedNanos, measured);
+                } finally {
+                    pending.decrementAndGet();
+                }
+            });
+        }
+        executor.shutdown();
+        if (!executor.awaitTermination(DRAIN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+            log.warn("[LoadGenerator] {} requests are still in-flight after {}", pending.get(), DRAIN_TIMEOUT);
+            executor.shutdownNow();
+        }
+        report(++reportIndex, Math.max(System.nanoTime() - (nextReportNanos - reportIntervalNanos), 1));
+        // The requests are planned in the measured window only, the time waiting
+        // for the in-flight ones to drain is not part of it
+        Report result = new Report(actions, endNanos - measureStartNanos);
+        log.info("[LoadGenerator] finish, report:\n{}", result);
+        return result;
+    }
+
+    /**
+     * An action calling the api directly, or by {@link RequestHelper#doWithRetryAlthoughOverload}
+     * when requestHelper is not null, which retries network exceptions and overload as the
+     * concurrent helpers do, so the goodput and latency seen by the callers are measured.
+     *
+     * @param options the options of every call, a call must have its own request id
+     */
+    public static <Rsp extends Message, Req> Action call(RequestHelper requestHelper, int retryTimes,
+                                                         RequestHelper.Callable<Rsp, Req> callable, Req request,
+                                                         Supplier<Option[]> options) {
+        if (Objects.isNull(requestHelper)) {
+            return () -> callable.call(request, options.get());
+        }
+        return () -> requestHelper.doWithRetryAlthoughOverload(callable, request, options.get(), retryTimes);
+    }
+
+    private ActionStats pickAction(Random random) {
+        int value = random.nextInt(totalWeight);
+        for (ActionStats action : actions) {
+            if (value < action.cumulativeWeight) {
+                return action;
+            }
+        }
+        return actions.get(actions.size() - 1);
+    }
+
+    private void report(int index, long intervalNanos) {
+        double seconds = intervalNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        for (ActionStats action : actions) {
+            Interval interval = action.takeInterval();
+            if (interval.count == 0 && interval.droppedCount == 0) {
+                continue;
+            }
+            Histogram histogram = interval.histogram;
+            log.info("[LoadGenerator] #{} action:{} throughput:{}/s p50:{}ms p99:{}ms p999:{}ms " +
+                            "error:{}% overload:{}% dropped:{}",
+                    index, action.name, format(interval.count / seconds),
+                    millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getValueAtPercentile(99.9)),
+                    format(percent(interval.errorCount, interval.count)),
+                    format(percent(interval.overloadCount, interval.count)), interval.droppedCount);
+        }
+    }
+
+    private List<String> actionNames() {
+        List<String> names = new ArrayList<>(actions.size());
+        for (ActionStats action : actions) {
+            names.add(action.name);
+        }
+        return names;
+    }
+
+    private static void waitUntil(long nanos) {
+        long remaining;
+        while ((remaining = nanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static double percent(long part, long total) {
+        return total == 0 ? 0 : part * 100.0 / total;
+    }
+
+    private static String millis(long micros) {
+        return format(micros / 1000.0);
+    }
+
+    private static String format(double value) {
+        return String.format("%.2f", value);
+    }
+
+    /**
+     * One request of an action, such as writing a batch of user events.
+     * The response is checked by {@link StatusHelper#isResponseSuccess},
+     * an exception is counted as an error.
+     */
+    public interface Action {
+        Message call() throws Exception;
+    }
+
+    public static class Builder {
+        private final Map<String, WeightedAction> actions = new LinkedHashMap<>();
+
+        private double rate = 100;
+
+        private Duration duration = Duration.ofMinutes(1);
+
+        private Duration warmup = Duration.ZERO;
+
+        private int concurrency = 64;
+
+        private int maxPending = 10000;
+
+        private Duration reportInterval = Duration.ofSeconds(1);
+
+        private long seed = System.nanoTime();
+
+        // The count of requests started per second, over all actions
+        public Builder rate(double rate) {
+            this.rate = rate;
+            return this;
+        }
+
+        public Builder duration(Duration duration) {
+            this.duration = duration;
+            return this;
+        }
+
+        // The time to send requests before measuring, at the same rate
+        public Builder warmup(Duration warmup) {
+            this.warmup = warmup;
+            return this;
+        }
+
+        // The count of threads sending requests, it should be larger than rate * latency
+        public Builder concurrency(int concurrency) {
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        // The max count of requests waiting for a thread, the requests beyond it are dropped
+        public Builder maxPending(int maxPending) {
+            this.maxPending = maxPending;
+            return this;
+        }
+
+        public Builder reportInterval(Duration reportInterval) {
+            this.reportInterval = reportInterval;
+            return this;
+        }
+
+        // The seed to pick actions, the same seed gives the same sequence of actions
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * @param weight the share of requests of the action, relative to the other actions
+         */
+        public Builder action(String name, int weight, Action action) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("weight must be positive, action:" + name);
+            }
+            actions.put(name, new WeightedAction(weight, action));
+            return this;
+        }
+
+        /**
+         * Apply the arguments parsed by {@link #parseArguments}, such as
+         * "--rate 200 --duration 60 --warmup 10 --concurrency 64 --max_pending 10000 --seed 1",
+         * the duration and warmup are in seconds.
+         */
+        public Builder arguments(Map<String, String> arguments) {
+            if (arguments.containsKey("rate")) {
+                rate(Double.parseDouble(arguments.get("rate")));
+            }
+            if (arguments.containsKey("duration")) {
+                duration(Duration.ofSeconds(Long.parseLong(arguments.get("duration"))));
+            }
+            if (arguments.containsKey("warmup")) {
+                warmup(Duration.ofSeconds(Long.parseLong(arguments.get("warmup"))));
+            }
+            if (arguments.containsKey("concurrency")) {
+                concurrency(Integer.parseInt(arguments.get("concurrency")));
+            }
+            if (arguments.containsKey("max_pending")) {
+                maxPending(Integer.parseInt(arguments.get("max_pending")));
+            }
+            if (arguments.containsKey("seed")) {
+                seed(Long.parseLong(arguments.get("seed")));
+            }
+            return this;
+        }
+
+        public LoadGenerator build() {
+            if (actions.isEmpty()) {
+                throw new IllegalArgumentException("no action to run");
+            }
+            if (rate <= 0) {
+                throw new IllegalArgumentException("rate must be positive");
+            }
+            return new LoadGenerator(this);
+        }
+    }
+
+    private static class WeightedAction {
+        private final int weight;
+
+        private final Action action;
+
+        WeightedAction(int weight, Action action) {
+            this.weight = weight;
+            this.action = action;
+        }
+    }
+
+    private static class ActionStats {
+        private final String name;
+
+        private final Action action;
+
+        private final int cumulativeWeight;
+
+        // The requests planned after warmup, counted in the result
+        private final Recording measured = new Recording();
+
+        // The requests planned in warmup, only reported in the intervals even if they finish late
+        private final Recording warmup = new Recording();
+
+        private final LongAdder droppedCount = new LongAdder();
+
+        // The sum of all intervals, only accessed by the reporter
+        private final Histogram total = new Histogram(SIGNIFICANT_DIGITS);
+
+        private long totalCount;
+
+        private long totalErrorCount;
+
+        private long totalOverloadCount;
+
+        private long totalDroppedCount;
+
+        ActionStats(String name, Action action, int cumulativeWeight) {
+            this.name = name;
+            this.action = action;
+            this.cumulativeWeight = cumulativeWeight;
+        }
+
+        private void call(long plannedNanos, boolean isMeasured) {
+            Recording recording = isMeasured ? measured : warmup;
+            try {
+                Message response = action.call();
+                if (StatusHelper.isResponseOverload(response)) {
+                    recording.overloadCount.increment();
+                } else if (!StatusHelper.isResponseSuccess(response)) {
+                    recording.errorCount.increment();
+                }
+            } catch (Exception e) {
+                recording.errorCount.increment();
+            } finally {
+                recording.recorder.recordValue(
+                        Math.max(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - plannedNanos), 0));
+                recording.count.increment();
+            }
+        }
+
+        private Interval takeInterval() {
+            long dropped = droppedCount.sumThenReset();
+            Interval interval = measured.take(dropped);
+            total.add(interval.histogram);
+            totalCount += interval.count;
+            totalErrorCount += interval.errorCount;
+            totalOverloadCount += interval.overloadCount;
+            totalDroppedCount += interval.droppedCount;
+            Interval warmupInterval = warmup.take(0);
+            if (warmupInterval.count == 0) {
+                return interval;
+            }
+            Histogram histogram = interval.histogram.copy();
+            histogram.add(warmupInterval.histogram);
+            return new Interval(histogram, interval.count + warmupInterval.count,
+                    interval.errorCount + warmupInterval.errorCount,
+                    interval.overloadCount + warmupInterval.overloadCount, dropped);
+        }
+
+        // The requests dropped in warmup are counted in total before it is reset
+        private void resetTotal() {
+            total.reset();
+            totalCount = 0;
+            totalErrorCount = 0;
+            totalOverloadCount = 0;
+            totalDroppedCount = 0;
+        }
+    }
+
+    // Recorded by the sending threads, the interval is taken by the reporter
+    private static class Recording {
+        private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder errorCount = new LongAdder();
+
+        private final LongAdder overloadCount = new LongAdder();
+
+        private Histogram recycled;
+
+        private Interval take(long droppedCount) {
+            Histogram histogram = recorder.getIntervalHistogram(recycled);
+            recycled = histogram;
+            return new Interval(histogram, count.sumThenReset(), errorCount.sumThenReset(),
+                    overloadCount.sumThenReset(), droppedCount);
+        }
+    }
+
+    private static class Interval {
+        private final Histogram histogram;
+
+        private final long count;
+
+        private final long errorCount;
+
+        private final long overloadCount;
+
+        private final long droppedCount;
+
+        Interval(Histogram histogram, long count, long errorCount, long overloadCount, long droppedCount) {
+            this.histogram = histogram;
+            this.count = count;
+            this.errorCount = errorCount;
+            this.overloadCount = overloadCount;
+            this.droppedCount = droppedCount;
+        }
+    }
+
+    /**
+     * The result of a run, the latency of every action is kept as a whole histogram.
+     */
+    public static class Report {
+        private final Map<String, ActionReport> actionReports = new LinkedHashMap<>();
+
+        private final long elapsedNanos;
+
+        private Report(List<ActionStats> actions, long elapsedNanos) {
+            this.elapsedNanos = elapsedNanos;
+            for (ActionStats action : actions) {
+                actionReports.put(action.name, new ActionReport(action.name, action.total.copy(),
+                        action.totalCount, action.totalErrorCount, action.totalOverloadCount,
+                        action.totalDroppedCount, elapsedNanos));
+            }
+        }
+
+        public Map<String, ActionReport> getActionReports() {
+            return Collections.unmodifiableMap(actionReports);
+        }
+
+        public ActionReport getActionReport(String action) {
+            return actionReports.get(action);
+        }
+
+        public Duration getElapsed() {
+            return Duration.ofNanos(elapsedNanos);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            for (ActionReport actionReport : actionReports.values()) {
+                if (builder.length() > 0) {
+                    builder.append('\n');
+                }
+                builder.append(actionReport);
+            }
+            return builder.toString();
+        }
+    }
+
+    public static class ActionReport {
+        private final String name;
+
+        // The latency in microseconds from the planned start
+        private final Histogram latency;
+
+        private final long count;
+
+        private final long errorCount;
+
+        private final long overloadCount;
+
+        private final long droppedCount;
+
+        private final long elapsedNanos;
+
+        ActionReport(String name, Histogram latency, long count, long errorCount, long overloadCount,
+                     long droppedCount, long elapsedNanos) {
+            this.name = name;
+            this.latency = latency;
+            this.count = count;
+            this.errorCount = errorCount;
+            this.overloadCount = overloadCount;
+            this.droppedCount = droppedCount;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // The count of requests finished, including the failed ones
+        public long getCount() {
+            return count;
+        }
+
+        public long getErrorCount() {
+            return errorCount;
+        }
+
+        public long getOverloadCount() {
+            return overloadCount;
+        }
+
+        // The count of requests not sent because too many requests were waiting
+        public long getDroppedCount() {
+            return droppedCount;
+        }
+
+        // The finished requests per second
+        public double getThroughput() {
+            return count / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+
+        // The requests finished successfully per second, neither failed nor overloaded
+        public double getGoodput() {
+            return (count - errorCount - overloadCount) / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+
+        public double getErrorRate() {
+            return count == 0 ? 0 : errorCount / (double) count;
+        }
+
+        public double getOverloadRate() {
+            return count == 0 ? 0 : overloadCount / (double) count;
+        }
+
+        /**
+         * @param percentile such as 99.9
+         */
+        public Duration getLatency(double percentile) {
+            return Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(latency.getValueAtPercentile(percentile)));
+        }
+
+        // A copy of the latency histogram in microseconds
+        public Histogram getLatencyHistogram() {
+            return latency.copy();
+        }
+
+        @Override
+        public String toString() {
+            return "action:" + name + " count:" + count + " throughput:" + format(getThroughput()) + "/s"
+                    + " goodput:" + format(getGoodput()) + "/s"
+                    + " p50:" + millis(latency.getValueAtPercentile(50)) + "ms"
+                    + " p99:" + millis(latency.getValueAtPercentile(99)) + "ms"
+                    + " p999:" + millis(latency.getValueAtPercentile(99.9)) + "ms"
+                    + " max:" + millis(latency.getMaxValue()) + "ms"
+                    + " error:" + format(percent(errorCount, count)) + "%"
+                    + " overload:" + format(percent(overloadCount, count)) + "%"
+                    + " dropped:" + droppedCount;
+        }
+    }
+}
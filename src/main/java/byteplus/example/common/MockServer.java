@@ -0,0 +1,686 @@
+package byteplus.example.common;
+
+import byteplus.sdk.common.protocol.ByteplusCommon.DoneResponse;
+import byteplus.sdk.common.protocol.ByteplusCommon.GetOperationRequest;
+import byteplus.sdk.common.protocol.ByteplusCommon.ListOperationsRequest;
+import byteplus.sdk.common.protocol.ByteplusCommon.ListOperationsResponse;
+import byteplus.sdk.common.protocol.ByteplusCommon.Operation;
+import byteplus.sdk.common.protocol.ByteplusCommon.OperationResponse;
+import byteplus.sdk.common.protocol.ByteplusCommon.Status;
+import com.google.protobuf.Any;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+import static byteplus.sdk.core.Constant.STATUS_CODE_OPERATION_LOSS;
+import static byteplus.sdk.core.Constant.STATUS_CODE_SUCCESS;
+import static byteplus.sdk.core.Constant.STATUS_CODE_TOO_MANY_REQUEST;
+
+/**
+ * An embedded HTTP server answering the requests of byteplus sdk locally,
+ * used to test latency and throughput without the real endpoints.
+ * <p>
+ * The client is pointed at it by "schema" and "hosts" of client builder, such as:
+ * <pre>
+ *     MockServer server = MockServer.builder(MockServerHelper.vertical()).build().start();
+ *     new RetailClientBuilder()...schema("http").hosts(Collections.singletonList(server.getHost()))
+ * </pre>
+ * The action of request is resolved from URL: the "method" parameter (write/import/done/get/list),
+ * or the suffix after ':' of the last path segment, "ack..." and "callback" segments, and
+ * any other request under a "predict" segment is a predict of the scene in the last segment.
+ * The other requests are answered with 404, {@link #checkRoutes} finds the client calls
+ * which don't reach the intended action.
+ * The responses are the protobuf messages registered by {@link Vertical}, such as the
+ * ones in "MockServerHelper" of every vertical.
+ * <p>
+ * The latency of every action is sampled from a log-normal distribution of the configured
+ * median and p99. A ratio of requests can be answered as overloaded, the import operations
+ * are done after a delay, and a ratio of them can be lost. The operations are forgotten
+ * after they have been done for a while, or when there are too many of them, as server does.
+ */
+@Slf4j
+public class MockServer implements AutoCloseable {
+    public final static String ACTION_WRITE = "write";
+
+    public final static String ACTION_IMPORT = "import";
+
+    public final static String ACTION_DONE = "done";
+
+    public final static String ACTION_GET_OPERATION = "get";
+
+    public final static String ACTION_LIST_OPERATIONS = "list";
+
+    public final static String ACTION_PREDICT = "predict";
+
+    public final static String ACTION_ACK = "ack";
+
+    public final static String ACTION_CALLBACK = "callback";
+
+    private final static String ACTION_PING = "ping";
+
+    // Used when no response is registered for the entity
+    private final static String ANY_ENTITY = "*";
+
+    private final static AtomicInteger THREAD_INDEX = new AtomicInteger();
+
+    private final Vertical vertical;
+
+    private final Map<String, LatencyDistribution> latencies;
+
+    private final LatencyDistribution defaultLatency;
+
+    private final double overloadRate;
+
+    private final long operationDelayNanos;
+
+    private final double operationLossRate;
+
+    private final long operationTtlNanos;
+
+    private final int maxOperationCount;
+
+    private final HttpServer httpServer;
+
+    private final ExecutorService executor;
+
+    private final Map<String, MockOperation> operations = new ConcurrentHashMap<>();
+
+    // The sequence of creation -> the name of operation, guarded by itself.
+    // The page token of listing is the sequence, so it is stable while the oldest are evicted
+    private final NavigableMap<Long, String> operationNames = new TreeMap<>();
+
+    private long nextOperationSequence;
+
+    private final Map<String, LongAdder> requestCounts = new ConcurrentHashMap<>();
+
+    private final LongAdder overloadCount = new LongAdder();
+
+    private MockServer(Builder builder) throws IOException {
+        this.vertical = builder.vertical;
+        this.latencies = new HashMap<>(builder.latencies);
+        this.defaultLatency = builder.defaultLatency;
+        this.overloadRate = builder.overloadRate;
+        this.operationDelayNanos = builder.operationDelay.toNanos();
+        this.operationLossRate = builder.operationLossRate;
+        this.operationTtlNanos = builder.operationTtl.toNanos();
+        this.maxOperationCount = builder.maxOperationCount;
+        this.httpServer = HttpServer.create(new InetSocketAddress(builder.host, builder.port), builder.backlog);
+        // The handlers sleep to simulate latency, every in-flight request takes a thread
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "mock-server-" + THREAD_INDEX.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        httpServer.setExecutor(executor);
+        httpServer.createContext("/", this::handle);
+    }
+
+    /**
+     * @param vertical the responses of the vertical, such as MockServerHelper.vertical() of retail
+     */
+    public static Builder builder(Vertical vertical) {
+        return new Builder(vertical);
+    }
+
+    public MockServer start() {
+        httpServer.start();
+        log.info("[MockServer] started, host:{}", getHost());
+        return this;
+    }
+
+    // The host passed to "hosts" of client builder, such as "127.0.0.1:8080"
+    public String getHost() {
+        InetSocketAddress address = httpServer.getAddress();
+        return address.getHostString() + ":" + address.getPort();
+    }
+
+    // The count of requests of the action, such as ACTION_PREDICT
+    public long getRequestCount(String action) {
+        LongAdder count = requestCounts.get(action);
+        return Objects.isNull(count) ? 0 : count.sum();
+    }
+
+    // The count of requests answered as overloaded
+    public long getOverloadCount() {
+        return overloadCount.sum();
+    }
+
+    public int getOperationCount() {
+        return operations.size();
+    }
+
+    /**
+     * Check that every call of a client pointed at this server reaches the intended action,
+     * and no other action, so that a change of the URLs built by sdk is found instead of
+     * being answered as another action. The calls are made one by one, the server must not
+     * serve other requests meanwhile. The exception of a call, such as the one of 404, is
+     * ignored, only the actions reached are checked.
+     *
+     * @param calls the intended action, such as {@link #ACTION_WRITE} -> a call of the client
+     * @return the description of every call reaching a wrong action, empty if all are right
+     */
+    public List<String> checkRoutes(Map<String, RouteCall> calls) {
+        List<String> mismatches = new ArrayList<>();
+        for (Map.Entry<String, RouteCall> call : calls.entrySet()) {
+            Map<String, Long> before = requestCountSnapshot();
+            try {
+                call.getValue().call();
+            } catch (Exception e) {
+                log.debug("[MockServer] route check call fail, action:{} msg:{}", call.getKey(), e.getMessage());
+            }
+            List<String> reached = new ArrayList<>();
+            for (Map.Entry<String, Long> after : requestCountSnapshot().entrySet()) {
+                if (after.getValue() > before.getOrDefault(after.getKey(), 0L)) {
+                    reached.add(after.getKey());
+                }
+            }
+            if (!reached.equals(Collections.singletonList(call.getKey()))) {
+                mismatches.add(String.format("call of %s reached %s", call.getKey(), reached));
+            }
+        }
+        return mismatches;
+    }
+
+    @Override
+    public void close() {
+        httpServer.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            URI uri = exchange.getRequestURI();
+            Route route = route(uri);
+            if (Objects.isNull(route)) {
+                log.warn("[MockServer] unknown path, uri:{}", uri);
+                reply(exchange, 404, new byte[0]);
+                return;
+            }
+            if (ACTION_PING.equals(route.action)) {
+                reply(exchange, 200, new byte[0]);
+                return;
+            }
+            byte[] body = readBody(exchange);
+            requestCounts.computeIfAbsent(route.action, a -> new LongAdder()).increment();
+            sleep(latencies.getOrDefault(route.action, defaultLatency));
+            Message response = respond(route, body);
+            if (Objects.isNull(response)) {
+                log.warn("[MockServer] unsupported request, uri:{}", uri);
+                reply(exchange, 404, new byte[0]);
+                return;
+            }
+            reply(exchange, 200, response.toByteArray());
+        } catch (Exception e) {
+            log.error("[MockServer] handle request fail, uri:{} msg:{}", exchange.getRequestURI(), e.getMessage());
+            reply(exchange, 500, new byte[0]);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Message respond(Route route, byte[] body) throws InvalidProtocolBufferException {
+        Message defaultResponse = defaultResponse(route);
+        if (Objects.isNull(defaultResponse)) {
+            return null;
+        }
+        if (overloadRate > 0 && ThreadLocalRandom.current().nextDouble() < overloadRate) {
+            overloadCount.increment();
+            return StatusHelper.withStatus(defaultResponse, STATUS_CODE_TOO_MANY_REQUEST, "too many request");
+        }
+        switch (route.action) {
+            case ACTION_IMPORT:
+                return createOperation(vertical.responseOf(vertical.importResults, route.entity));
+            case ACTION_GET_OPERATION:
+                return getOperation(GetOperationRequest.parseFrom(body));
+            case ACTION_LIST_OPERATIONS:
+                return listOperations(ListOperationsRequest.parseFrom(body));
+            case ACTION_PREDICT:
+                Message predictResponse = vertical.predictor.predict(route.entity, body);
+                return withRequestId(StatusHelper.withStatus(predictResponse, STATUS_CODE_SUCCESS, "success"));
+            default:
+                return StatusHelper.withStatus(defaultResponse, STATUS_CODE_SUCCESS, "success");
+        }
+    }
+
+    private Message defaultResponse(Route route) {
+        switch (route.action) {
+            case ACTION_WRITE:
+                return vertical.responseOf(vertical.writeResponses, route.entity);
+            case ACTION_IMPORT:
+                return vertical.responseOf(vertical.importResults, route.entity) == null
+                        ? null : OperationResponse.getDefaultInstance();
+            case ACTION_GET_OPERATION:
+                return OperationResponse.getDefaultInstance();
+            case ACTION_LIST_OPERATIONS:
+                return ListOperationsResponse.getDefaultInstance();
+            case ACTION_DONE:
+                return DoneResponse.getDefaultInstance();
+            case ACTION_PREDICT:
+                return vertical.predictResponse;
+            case ACTION_ACK:
+                return vertical.ackResponse;
+            case ACTION_CALLBACK:
+                return vertical.callbackResponse;
+            default:
+                return null;
+        }
+    }
+
+    private OperationResponse createOperation(Message importResult) {
+        String name = UUID.randomUUID().toString();
+        boolean lost = operationLossRate > 0 && ThreadLocalRandom.current().nextDouble() < operationLossRate;
+        Any result = Any.pack(StatusHelper.withStatus(importResult, STATUS_CODE_SUCCESS, "success"));
+        long nowNanos = System.nanoTime();
+        operations.put(name, new MockOperation(name, nowNanos + operationDelayNanos, lost, result));
+        synchronized (operationNames) {
+            operationNames.put(nextOperationSequence++, name);
+            evictOperations(nowNanos);
+        }
+        return OperationResponse.newBuilder()
+                .setStatus(status(STATUS_CODE_SUCCESS, "success"))
+                .setOperation(Operation.newBuilder().setName(name).setDone(false))
+                .build();
+    }
+
+    private OperationResponse getOperation(GetOperationRequest request) {
+        MockOperation operation = operations.get(request.getName());
+        if (Objects.isNull(operation) || operation.lost) {
+            return OperationResponse.newBuilder()
+                    .setStatus(status(STATUS_CODE_OPERATION_LOSS, "operation loss"))
+                    .build();
+        }
+        return OperationResponse.newBuilder()
+                .setStatus(status(STATUS_CODE_SUCCESS, "success"))
+                .setOperation(operation.toOperation())
+                .build();
+    }
+
+    // The operations are created with the same delay, so the oldest one is the first done.
+    // Called with the lock of operationNames held
+    private void evictOperations(long nowNanos) {
+        while (!operationNames.isEmpty()) {
+            Map.Entry<Long, String> oldest = operationNames.firstEntry();
+            MockOperation operation = operations.get(oldest.getValue());
+            boolean expired = Objects.isNull(operation) || nowNanos - operation.doneAtNanos > operationTtlNanos;
+            if (!expired && operationNames.size() <= maxOperationCount) {
+                return;
+            }
+            operationNames.pollFirstEntry();
+            operations.remove(oldest.getValue());
+        }
+    }
+
+    // The "page_token" is the sequence of the first operation of the page, the filter is not supported
+    private ListOperationsResponse listOperations(ListOperationsRequest request) {
+        long fromSequence = request.getPageToken().isEmpty() ? 0 : Long.parseLong(request.getPageToken());
+        int pageSize = request.getPageSize() > 0 ? request.getPageSize() : 10;
+        List<String> names = new ArrayList<>(pageSize);
+        Long nextSequence = null;
+        synchronized (operationNames) {
+            for (Map.Entry<Long, String> entry : operationNames.tailMap(fromSequence, true).entrySet()) {
+                if (names.size() == pageSize) {
+                    nextSequence = entry.getKey();
+                    break;
+                }
+                names.add(entry.getValue());
+            }
+        }
+        ListOperationsResponse.Builder response = ListOperationsResponse.newBuilder()
+                .setStatus(status(STATUS_CODE_SUCCESS, "success"));
+        for (String name : names) {
+            MockOperation operation = operations.get(name);
+            // The operation may be evicted after the names are copied
+            if (Objects.nonNull(operation) && !operation.lost) {
+                response.addOperations(operation.toOperation());
+            }
+        }
+        if (Objects.nonNull(nextSequence)) {
+            response.setNextPageToken(String.valueOf(nextSequence));
+        }
+        return response.build();
+    }
+
+    private Map<String, Long> requestCountSnapshot() {
+        Map<String, Long> snapshot = new HashMap<>();
+        requestCounts.forEach((action, count) -> snapshot.put(action, count.sum()));
+        return snapshot;
+    }
+
+    /**
+     * Resolve the action and entity of request from URL, such as
+     * ".../user?method=write", ".../users:write", ".../operation?method=get",
+     * ".../ack_server_impressions", ".../callback" and ".../predict/.../home".
+     *
+     * @return null if the URL is none of them
+     */
+    private static Route route(URI uri) {
+        String path = uri.getPath();
+        String lastSegment = path.substring(path.lastIndexOf('/') + 1);
+        String method = queryParameter(uri.getRawQuery(), "method");
+        String entity = lastSegment;
+        String action = method;
+        int colon = lastSegment.indexOf(':');
+        if (Objects.isNull(action) && colon >= 0) {
+            entity = lastSegment.substring(0, colon);
+            action = lastSegment.substring(colon + 1);
+        }
+        if (Objects.nonNull(action)) {
+            if (normalizeEntity(entity).equals("operation") && action.startsWith("get")) {
+                return new Route(ACTION_GET_OPERATION, entity);
+            }
+            if (normalizeEntity(entity).equals("operation") && action.startsWith("list")) {
+                return new Route(ACTION_LIST_OPERATIONS, entity);
+            }
+            return new Route(action.toLowerCase(), normalizeEntity(entity));
+        }
+        if (lastSegment.equals(ACTION_PING)) {
+            return new Route(ACTION_PING, "");
+        }
+        if (lastSegment.startsWith(ACTION_ACK)) {
+            return new Route(ACTION_ACK, "");
+        }
+        if (lastSegment.equals(ACTION_CALLBACK)) {
+            return new Route(ACTION_CALLBACK, "");
+        }
+        // The scene is the last segment of predict URL
+        if (path.contains("/" + ACTION_PREDICT + "/")) {
+            return new Route(ACTION_PREDICT, lastSegment);
+        }
+        return null;
+    }
+
+    // "users", "user" and "User" are the same entity
+    private static String normalizeEntity(String entity) {
+        String normalized = entity.toLowerCase();
+        return normalized.endsWith("s") ? normalized.substring(0, normalized.length() - 1) : normalized;
+    }
+
+    private static String queryParameter(String query, String name) {
+        if (Objects.isNull(query)) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int equal = pair.indexOf('=');
+            if (equal > 0 && pair.substring(0, equal).equals(name)) {
+                return pair.substring(equal + 1);
+            }
+        }
+        return null;
+    }
+
+    // The predict response from server always has a request id
+    private static Message withRequestId(Message response) {
+        FieldDescriptor requestIdField = response.getDescriptorForType().findFieldByName("request_id");
+        if (Objects.isNull(requestIdField)) {
+            return response;
+        }
+        return response.toBuilder().setField(requestIdField, UUID.randomUUID().toString()).build();
+    }
+
+    private static Status status(int code, String message) {
+        return Status.newBuilder().setCode(code).setMessage(message).build();
+    }
+
+    private static void sleep(LatencyDistribution latency) throws InterruptedException {
+        long nanos = latency.sampleNanos();
+        if (nanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+    }
+
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        InputStream input = exchange.getRequestBody();
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            input = new GZIPInputStream(input);
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) > 0) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+
+    private static void reply(HttpExchange exchange, int httpCode, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/x-protobuf");
+        exchange.sendResponseHeaders(httpCode, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        }
+    }
+
+    /**
+     * A call of client used by {@link #checkRoutes}, such as a write of one user.
+     */
+    public interface RouteCall {
+        void call() throws Exception;
+    }
+
+    /**
+     * Build the predict response of the scene from the request body.
+     */
+    public interface Predictor {
+        Message predict(String scene, byte[] body) throws InvalidProtocolBufferException;
+    }
+
+    /**
+     * The responses of a vertical, the status of response is set by server,
+     * only the type and the payload need to be registered.
+     */
+    public static class Vertical {
+        // entity -> the response of write
+        private final Map<String, Message> writeResponses = new HashMap<>();
+
+        // entity -> the result of import operation
+        private final Map<String, Message> importResults = new HashMap<>();
+
+        private Message predictResponse;
+
+        private Predictor predictor;
+
+        private Message ackResponse;
+
+        private Message callbackResponse;
+
+        /**
+         * @param entity the entity in URL, such as "users", "*" means any entity
+         */
+        public Vertical write(String entity, Message response) {
+            writeResponses.put(entityKey(entity), response);
+            return this;
+        }
+
+        /**
+         * @param entity the entity in URL, such as "users", "*" means any entity
+         * @param result the result of import operation, such as ImportUsersResponse
+         */
+        public Vertical importResult(String entity, Message result) {
+            importResults.put(entityKey(entity), result);
+            return this;
+        }
+
+        public Vertical predict(Message defaultResponse, Predictor predictor) {
+            this.predictResponse = defaultResponse;
+            this.predictor = predictor;
+            return this;
+        }
+
+        public Vertical ack(Message response) {
+            this.ackResponse = response;
+            return this;
+        }
+
+        public Vertical callback(Message response) {
+            this.callbackResponse = response;
+            return this;
+        }
+
+        private Message responseOf(Map<String, Message> responses, String entity) {
+            Message response = responses.get(normalizeEntity(entity));
+            return Objects.isNull(response) ? responses.get(ANY_ENTITY) : response;
+        }
+
+        private static String entityKey(String entity) {
+            return ANY_ENTITY.equals(entity) ? entity : normalizeEntity(entity);
+        }
+    }
+
+    public static class Builder {
+        private final Vertical vertical;
+
+        private final Map<String, LatencyDistribution> latencies = new HashMap<>();
+
+        private LatencyDistribution defaultLatency = new LatencyDistribution(Duration.ZERO, Duration.ZERO);
+
+        private String host = "127.0.0.1";
+
+        // Zero means a random free port
+        private int port;
+
+        private int backlog = 1024;
+
+        private double overloadRate;
+
+        private Duration operationDelay = Duration.ofMillis(500);
+
+        private double operationLossRate;
+
+        private Duration operationTtl = Duration.ofMinutes(10);
+
+        private int maxOperationCount = 100_000;
+
+        private Builder(Vertical vertical) {
+            this.vertical = vertical;
+        }
+
+        public Builder host(String host) {
+            this.host = host;
+            return this;
+        }
+
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Builder backlog(int backlog) {
+            this.backlog = backlog;
+            return this;
+        }
+
+        // The latency of the actions which have no latency of their own
+        public Builder latency(Duration median, Duration p99) {
+            this.defaultLatency = new LatencyDistribution(median, p99);
+            return this;
+        }
+
+        /**
+         * @param action such as {@link #ACTION_PREDICT}
+         */
+        public Builder latency(String action, Duration median, Duration p99) {
+            latencies.put(action, new LatencyDistribution(median, p99));
+            return this;
+        }
+
+        // The ratio of requests answered with STATUS_CODE_TOO_MANY_REQUEST
+        public Builder overloadRate(double overloadRate) {
+            this.overloadRate = overloadRate;
+            return this;
+        }
+
+        // The time from an import operation is created to it is done
+        public Builder operationDelay(Duration operationDelay) {
+            this.operationDelay = operationDelay;
+            return this;
+        }
+
+        // The ratio of import operations reported as lost
+        public Builder operationLossRate(double operationLossRate) {
+            this.operationLossRate = operationLossRate;
+            return this;
+        }
+
+        // The time an operation is kept after it is done, it is reported as lost after that
+        public Builder operationTtl(Duration operationTtl) {
+            this.operationTtl = operationTtl;
+            return this;
+        }
+
+        // The oldest operations are evicted beyond the count, even if they are not expired
+        public Builder maxOperationCount(int maxOperationCount) {
+            this.maxOperationCount = maxOperationCount;
+            return this;
+        }
+
+        public MockServer build() throws IOException {
+            return new MockServer(this);
+        }
+    }
+
+    private static class Route {
+        private final String action;
+
+        private final String entity;
+
+        Route(String action, String entity) {
+            this.action = action;
+            this.entity = entity;
+        }
+    }
+
+    private static class MockOperation {
+        private final String name;
+
+        private final long doneAtNanos;
+
+        private final boolean lost;
+
+        private final Any result;
+
+        MockOperation(String name, long doneAtNanos, boolean lost, Any result) {
+            this.name = name;
+            this.doneAtNanos = doneAtNanos;
+            this.lost = lost;
+            this.result = result;
+        }
+
+        private Operation toOperation() {
+            Operation.Builder operation = Operation.newBuilder().setName(name);
+            if (System.nanoTime() - doneAtNanos >= 0) {
+                operation.setDone(true).setResponse(result);
+            }
+            return operation.build();
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package byteplus.example.common;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * A local index of the import operations created by this process, so that whether
+ * the import of a day succeeded can be checked without listing operations from server.
+ * <p>
+ * Every operation is indexed by its date, "worksOn" (such as "ImportProducts") and chunk,
+ * the chunk is the order of the operation among the ones of the same date and worksOn.
+ * The index is kept in sorted maps in memory, and every change is appended to a log
+ * file as a json line. The log is replayed when the index is opened, the last line of
+ * an operation wins, and the log is rewritten, when opened or appended, once most of
+ * its lines are outdated.
+ * <p>
+ * It is fed by {@link RequestHelper#doImport} when the RequestHelper is created with it.
+ */
+@Slf4j
+public class OperationIndex implements AutoCloseable {
+    // The operation is accepted by server, and its result is not known yet
+    public final static String STATE_CREATED = "created";
+
+    public final static String STATE_SUCCEEDED = "succeeded";
+
+    public final static String STATE_FAILED = "failed";
+
+    // The server lost the operation, the data should be imported again
+    public final static String STATE_LOST = "lost";
+
+    // The result was not returned within the polling time, it may still be running
+    public final static String STATE_TIMEOUT = "timeout";
+
+    // Rewrite the log when it has this times more lines than the operations
+    private final static int COMPACT_RATIO = 3;
+
+    private final static String REQUEST_SUFFIX = "Request";
+
+    // date -> worksOn -> chunk -> operation
+    private final NavigableMap<String, NavigableMap<String, NavigableMap<Integer, Entry>>> entries = new TreeMap<>();
+
+    private final Map<String, Entry> entriesByName = new HashMap<>();
+
+    // Null means the index is not persisted
+    private final Path logPath;
+
+    private BufferedWriter logWriter;
+
+    private long logLineCount;
+
+    private OperationIndex(Path logPath) {
+        this.logPath = logPath;
+    }
+
+    // An index kept in memory only, it is lost after restart
+    public static OperationIndex inMemory() {
+        return new OperationIndex(null);
+    }
+
+    // Open the index persisted in the log file, the file is created if not exists
+    public static OperationIndex open(Path logPath) throws IOException {
+        OperationIndex index = new OperationIndex(logPath);
+        index.replay();
+        if (index.logLineCount > (long) COMPACT_RATIO * index.entriesByName.size()) {
+            index.compact();
+        }
+        boolean brokenTail = endsWithBrokenLine(logPath);
+        index.logWriter = openWriter(logPath);
+        if (brokenTail) {
+            // Don't append to the broken line, or the next line is broken too
+            index.logWriter.newLine();
+        }
+        return index;
+    }
+
+    /**
+     * Record the operation just created by server for the import request.
+     * The date is read from "date_config" of request if it has, otherwise it is today,
+     * and the worksOn is the name of request type without "Request", such as "ImportUsers".
+     */
+    public Entry recordCreated(String name, Object request) {
+        String worksOn = request.getClass().getSimpleName();
+        if (worksOn.endsWith(REQUEST_SUFFIX)) {
+            worksOn = worksOn.substring(0, worksOn.length() - REQUEST_SUFFIX.length());
+        }
+        return recordCreated(name, requestDate(request), worksOn);
+    }
+
+    /**
+     * @param date    the date of data, formatted as "yyyy-MM-dd"
+     * @param worksOn the type of operation, such as "ImportUsers"
+     */
+    public synchronized Entry recordCreated(String name, String date, String worksOn) {
+        Entry existing = entriesByName.get(name);
+        if (Objects.nonNull(existing)) {
+            return existing;
+        }
+        NavigableMap<Integer, Entry> chunks = entries
+                .computeIfAbsent(date, d -> new TreeMap<>())
+                .computeIfAbsent(worksOn, w -> new TreeMap<>());
+        int chunk = chunks.isEmpty() ? 0 : chunks.lastKey() + 1;
+        Entry entry = new Entry(name, date, worksOn, chunk, STATE_CREATED, "", System.currentTimeMillis());
+        put(entry);
+        append(entry);
+        return entry;
+    }
+
+    // Update the state of operation, the operations not created by this process are ignored
+    public synchronized void recordState(String name, String state, String message) {
+        Entry existing = entriesByName.get(name);
+        if (Objects.isNull(existing)) {
+            return;
+        }
+        Entry entry = new Entry(name, existing.date, existing.worksOn, existing.chunk,
+                state, Objects.isNull(message) ? "" : message, System.currentTimeMillis());
+        put(entry);
+        append(entry);
+    }
+
+    public synchronized Entry get(String name) {
+        return entriesByName.get(name);
+    }
+
+    public synchronized Entry get(String date, String worksOn, int chunk) {
+        NavigableMap<String, NavigableMap<Integer, Entry>> worksOnEntries = entries.get(date);
+        if (Objects.isNull(worksOnEntries) || !worksOnEntries.containsKey(worksOn)) {
+            return null;
+        }
+        return worksOnEntries.get(worksOn).get(chunk);
+    }
+
+    /**
+     * Query the operations ordered by date, worksOn and chunk.
+     *
+     * @param fromDate the first date included, formatted as "yyyy-MM-dd"
+     * @param toDate   the last date included
+     * @param worksOn  the type of operation, null means any
+     * @param state    the state of operation, such as {@link #STATE_FAILED}, null means any
+     */
+    public synchronized List<Entry> query(String fromDate, String toDate, String worksOn, String state) {
+        List<Entry> result = new ArrayList<>();
+        for (NavigableMap<String, NavigableMap<Integer, Entry>> worksOnEntries
+                : entries.subMap(fromDate, true, toDate, true).values()) {
+            for (Map.Entry<String, NavigableMap<Integer, Entry>> chunks : worksOnEntries.entrySet()) {
+                if (Objects.nonNull(worksOn) && !worksOn.equals(chunks.getKey())) {
+                    continue;
+                }
+                for (Entry entry : chunks.getValue().values()) {
+                    if (Objects.isNull(state) || state.equals(entry.state)) {
+                        result.add(entry);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return entriesByName.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (Objects.nonNull(logWriter)) {
+            logWriter.close();
+            logWriter = null;
+        }
+    }
+
+    private void put(Entry entry) {
+        entriesByName.put(entry.name, entry);
+        entries.computeIfAbsent(entry.date, d -> new TreeMap<>())
+                .computeIfAbsent(entry.worksOn, w -> new TreeMap<>())
+                .put(entry.chunk, entry);
+    }
+
+    private void append(Entry entry) {
+        if (Objects.isNull(logWriter)) {
+            return;
+        }
+        try {
+            logWriter.write(entry.toJson());
+            logWriter.newLine();
+            // Flush every line, so that the operation is not lost if the process exits
+            logWriter.flush();
+            logLineCount++;
+        } catch (IOException e) {
+            // The index is still correct in memory, only the persistence is lost
+            log.error("[OperationIndex] append log fail, name:{} msg:{}", entry.name, e.getMessage());
+            return;
+        }
+        // Every operation appends a line per state, a long-running process outdates most lines
+        if (logLineCount > (long) COMPACT_RATIO * entriesByName.size()) {
+            compactWhileOpen();
+        }
+    }
+
+    // The writer is closed while rewriting the log, and reopened on the compacted log
+    private void compactWhileOpen() {
+        try {
+            logWriter.close();
+            compact();
+        } catch (IOException e) {
+            // The old log is kept if it is not replaced, it is still valid to append to
+            log.error("[OperationIndex] compact log fail, msg:{}", e.getMessage());
+        }
+        try {
+            logWriter = openWriter(logPath);
+        } catch (IOException e) {
+            logWriter = null;
+            log.error("[OperationIndex] reopen log fail, the index is kept in memory only, msg:{}",
+                    e.getMessage());
+        }
+    }
+
+    private void replay() throws IOException {
+        if (!Files.exists(logPath)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(logPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                logLineCount++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    put(Entry.fromJson(line));
+                } catch (RuntimeException e) {
+                    // The last line may be broken if the process exited while writing it
+                    log.warn("[OperationIndex] skip broken log line, msg:{}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void compact() throws IOException {
+        Path tmpPath = logPath.resolveSibling(logPath.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmpPath, StandardCharsets.UTF_8)) {
+            for (Entry entry : entriesByName.values()) {
+                writer.write(entry.toJson());
+                writer.newLine();
+            }
+        }
+        Files.move(tmpPath, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logLineCount = entriesByName.size();
+    }
+
+    private static BufferedWriter openWriter(Path logPath) throws IOException {
+        return Files.newBufferedWriter(logPath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static boolean endsWithBrokenLine(Path logPath) throws IOException {
+        if (!Files.exists(logPath) || Files.size(logPath) == 0) {
+            return false;
+        }
+        try (SeekableByteChannel channel = Files.newByteChannel(logPath, StandardOpenOption.READ)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.position(channel.size() - 1).read(last);
+            return last.get(0) != '\n';
+        }
+    }
+
+    // Read "date_config.date" of request, such as "2021-06-15T10:00:00+08:00" or "20210615"
+    private static String requestDate(Object request) {
+        String date = "";
+        try {
+            Method dateConfigGetter = request.getClass().getMethod("getDateConfig");
+            Object dateConfig = dateConfigGetter.invoke(request);
+            date = (String) dateConfig.getClass().getMethod("getDate").invoke(dateConfig);
+        } catch (ReflectiveOperationException e) {
+            // The request has no date config, such as the import of general and byteair
+        }
+        if (date.length() >= 10 && date.charAt(4) == '-') {
+            return date.substring(0, 10);
+        }
+        if (date.length() == 8) {
+            return date.substring(0, 4) + "-" + date.substring(4, 6) + "-" + date.substring(6);
+        }
+        return LocalDate.now().format(DateTimeFormatter.ISO_LOCAL_DATE);
+    }
+
+    public static class Entry {
+        private final String name;
+
+        private final String date;
+
+        private final String worksOn;
+
+        private final int chunk;
+
+        private final String state;
+
+        private final String message;
+
+        private final long updateTime;
+
+        Entry(String name, String date, String worksOn, int chunk, String state, String message, long updateTime) {
+            this.name = name;
+            this.date = date;
+            this.worksOn = worksOn;
+            this.chunk = chunk;
+            this.state = state;
+            this.message = message;
+            this.updateTime = updateTime;
+        }
+
+        // The name of operation, used to get it from server
+        public String getName() {
+            return name;
+        }
+
+        public String getDate() {
+            return date;
+        }
+
+        public String getWorksOn() {
+            return worksOn;
+        }
+
+        public int getChunk() {
+            return chunk;
+        }
+
+        public String getState() {
+            return state;
+        }
+
+        // The error message when the operation failed
+        public String getMessage() {
+            return message;
+        }
+
+        // The milliseconds since epoch when the state is updated
+        public long getUpdateTime() {
+            return updateTime;
+        }
+
+        private String toJson() {
+            JSONObject json = new JSONObject();
+            json.put("name", name);
+            json.put("date", date);
+            json.put("works_on", worksOn);
+            json.put("chunk", chunk);
+            json.put("state", state);
+            json.put("message", message);
+            json.put("update_time", updateTime);
+            return json.toJSONString();
+        }
+
+        private static Entry fromJson(String line) {
+            JSONObject json = JSON.parseObject(line);
+            return new Entry(json.getString("name"), json.getString("date"), json.getString("works_on"),
+                    json.getIntValue("chunk"), json.getString("state"), json.getString("message"),
+                    json.getLongValue("update_time"));
+        }
+
+        @Override
+        public String toString() {
+            return toJson();
+        }
+    }
+}
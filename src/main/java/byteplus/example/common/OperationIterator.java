@@ -0,0 +1,164 @@
+package byteplus.example.common;
+
+import byteplus.sdk.common.CommonClient;
+import byteplus.sdk.common.protocol.ByteplusCommon.ListOperationsRequest;
+import byteplus.sdk.common.protocol.ByteplusCommon.ListOperationsResponse;
+import byteplus.sdk.common.protocol.ByteplusCommon.Operation;
+import byteplus.sdk.core.BizException;
+import byteplus.sdk.core.Option;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterate all the operations matching the filter, following "next_page_token" page by page.
+ * <p>
+ * When a page is returned, the next page is fetched in background at once, so it is
+ * usually ready when the consumer finishes the current page. At most one page is
+ * fetched ahead, and the fetching stops when the iterator is closed, so a consumer
+ * which stops early, such as a stream with "limit", wastes at most one request.
+ * <p>
+ * Every page is requested with retry through {@link RequestHelper}, and a page which
+ * still fails after retries ends the iteration by an {@link IllegalStateException}.
+ */
+@Slf4j
+public class OperationIterator implements Iterator<Operation>, AutoCloseable {
+    private final static AtomicInteger THREAD_INDEX = new AtomicInteger();
+
+    // The threads of prefetch are mostly waiting for response, so they are not shared with computing
+    private final static ExecutorService PREFETCH_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "list-operations-prefetch-" + THREAD_INDEX.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final RequestHelper requestHelper;
+
+    private final CommonClient client;
+
+    private final String filter;
+
+    private final int pageSize;
+
+    private final Duration timeout;
+
+    private final int retryTimes;
+
+    private List<Operation> page;
+
+    private int pageIndex;
+
+    // The request of the page after the current one, null if the current one is the last
+    private CompletableFuture<ListOperationsResponse> nextPage;
+
+    private volatile boolean closed;
+
+    /**
+     * @param filter     the filter of operations, such as "date>=2021-06-15 and done=true"
+     * @param pageSize   the count of operations in one page, large pages need fewer round trips
+     * @param timeout    the timeout of one page request
+     * @param retryTimes the max times of retry when a page request fails
+     */
+    public OperationIterator(CommonClient client, String filter, int pageSize, Duration timeout, int retryTimes) {
+        this.requestHelper = new RequestHelper(client);
+        this.client = client;
+        this.filter = filter;
+        this.pageSize = pageSize;
+        this.timeout = timeout;
+        this.retryTimes = retryTimes;
+        // The "pageToken" is empty when getting the first page
+        this.nextPage = fetch("");
+    }
+
+    // The stream must be closed if it is not consumed to the end, such as by try-with-resources
+    public Stream<Operation> stream() {
+        Spliterator<Operation> spliterator = Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(this::close);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (Objects.isNull(page) || pageIndex >= page.size()) {
+            if (closed || Objects.isNull(nextPage)) {
+                return false;
+            }
+            ListOperationsResponse response = awaitNextPage();
+            page = response.getOperationsList();
+            pageIndex = 0;
+            // An empty token means the last page
+            String nextPageToken = response.getNextPageToken();
+            nextPage = nextPageToken.isEmpty() ? null : fetch(nextPageToken);
+        }
+        return true;
+    }
+
+    @Override
+    public Operation next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.get(pageIndex++);
+    }
+
+    // Stop fetching the pages, the response of the in-flight request is dropped
+    @Override
+    public void close() {
+        closed = true;
+        if (Objects.nonNull(nextPage)) {
+            nextPage.cancel(false);
+            nextPage = null;
+        }
+    }
+
+    private ListOperationsResponse awaitNextPage() {
+        try {
+            return nextPage.join();
+        } catch (CompletionException e) {
+            close();
+            Throwable cause = Objects.isNull(e.getCause()) ? e : e.getCause();
+            throw new IllegalStateException("list operations fail, msg:" + cause.getMessage(), cause);
+        }
+    }
+
+    private CompletableFuture<ListOperationsResponse> fetch(String pageToken) {
+        ListOperationsRequest request = ListOperationsRequest.newBuilder()
+                .setFilter(filter)
+                .setPageSize(pageSize)
+                .setPageToken(pageToken)
+                .build();
+        Option[] opts = new Option[]{
+                Option.withTimeout(timeout),
+        };
+        return CompletableFuture.supplyAsync(() -> {
+            if (closed) {
+                throw new CompletionException(new BizException("iterator is closed"));
+            }
+            ListOperationsResponse response;
+            try {
+                response = requestHelper.doWithRetryAlthoughOverload(
+                        client::listOperations, request, opts, retryTimes);
+            } catch (BizException e) {
+                throw new CompletionException(e);
+            }
+            if (!StatusHelper.isSuccess(response.getStatus())) {
+                log.error("[ListOperations] find failure info, msg:\n{}", response.getStatus());
+                throw new CompletionException(new BizException(response.getStatus().getMessage()));
+            }
+            return response;
+        }, PREFETCH_EXECUTOR);
+    }
+}
@@ -0,0 +1,296 @@
+package byteplus.example.common;
+
+import byteplus.sdk.common.protocol.ByteplusCommon.Operation;
+import byteplus.sdk.common.protocol.ByteplusCommon.Status;
+import com.google.protobuf.Any;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Summarize the results of import operations, such as the ones walked by
+ * {@link Example#listAllOperations}, per day and entity type.
+ * <p>
+ * The result type of operation is looked up by the message name in its type url,
+ * so every registered type is parsed by its own parser without string matching.
+ * The operations are parsed in parallel, and at most a few of them wait to be
+ * parsed, so the memory doesn't grow with the count of operations: only the
+ * counters and a few error samples of every day and entity type are kept.
+ */
+@Slf4j
+public class OperationSummarizer implements AutoCloseable {
+    private final static int MAX_ERROR_SAMPLES = 10;
+
+    // The operations waiting to be parsed for every thread
+    private final static int PENDING_PER_THREAD = 4;
+
+    private final static String UNKNOWN_ENTITY_TYPE = "unknown";
+
+    private final static AtomicInteger THREAD_INDEX = new AtomicInteger();
+
+    // The full name of result message -> the reader of the result
+    private final Map<String, ResultReader<?>> readers = new HashMap<>();
+
+    private final Map<SummaryKey, Summary> summaries = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor;
+
+    private final Semaphore pendingPermits;
+
+    private final int maxPending;
+
+    /**
+     * @param parallelism the count of threads parsing the results
+     */
+    public OperationSummarizer(int parallelism) {
+        this.maxPending = parallelism * PENDING_PER_THREAD;
+        this.pendingPermits = new Semaphore(maxPending);
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "operation-summarizer-" + THREAD_INDEX.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Register the result type of operations, all types must be registered before the first {@link #add}.
+     *
+     * @param entityType         the entity imported by operation, such as "users"
+     * @param defaultInstance    the default instance of result, such as ImportUsersResponse.getDefaultInstance()
+     * @param statusGetter       get status from result
+     * @param errorCounter       get the count of failed items from result
+     * @param errorSamplesGetter get the samples of failed items from result
+     */
+    public <T extends Message> OperationSummarizer register(String entityType, T defaultInstance,
+                                                            Function<T, Status> statusGetter,
+                                                            ToLongFunction<T> errorCounter,
+                                                            Function<T, List<? extends Message>> errorSamplesGetter) {
+        readers.put(defaultInstance.getDescriptorForType().getFullName(),
+                new ResultReader<>(entityType, defaultInstance, statusGetter, errorCounter, errorSamplesGetter));
+        return this;
+    }
+
+    /**
+     * Parse and count the operation in background, the caller is blocked
+     * if too many operations are waiting to be parsed.
+     *
+     * @param day the day of the operation, such as the date filtered by when listing operations
+     */
+    public void add(String day, Operation operation) throws InterruptedException {
+        pendingPermits.acquire();
+        try {
+            executor.execute(() -> {
+                try {
+                    summarize(day, operation);
+                } catch (Throwable e) {
+                    log.error("[SummarizeOperations] summarize fail, name:{} msg:{}",
+                            operation.getName(), e.getMessage());
+                } finally {
+                    pendingPermits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            pendingPermits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for the added operations to be counted, and return the summaries ordered by day and entity type.
+     */
+    public Map<String, Map<String, Summary>> finish() throws InterruptedException {
+        // All the permits are free when no operation is waiting or being parsed
+        pendingPermits.acquire(maxPending);
+        pendingPermits.release(maxPending);
+        Map<String, Map<String, Summary>> result = new TreeMap<>();
+        for (Map.Entry<SummaryKey, Summary> entry : summaries.entrySet()) {
+            result.computeIfAbsent(entry.getKey().day, day -> new TreeMap<>())
+                    .put(entry.getKey().entityType, entry.getValue());
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void summarize(String day, Operation operation) {
+        if (!operation.getDone()) {
+            summary(day, UNKNOWN_ENTITY_TYPE).unfinishedCount.increment();
+            return;
+        }
+        Any response = operation.getResponse();
+        String typeUrl = response.getTypeUrl();
+        // The type url is like "type.googleapis.com/full.name.of.Message"
+        ResultReader<?> reader = readers.get(typeUrl.substring(typeUrl.lastIndexOf('/') + 1));
+        if (Objects.isNull(reader)) {
+            log.warn("[SummarizeOperations] unexpected task response type:{}", typeUrl);
+            summary(day, UNKNOWN_ENTITY_TYPE).operationCount.increment();
+            return;
+        }
+        reader.read(response, summary(day, reader.entityType));
+    }
+
+    private Summary summary(String day, String entityType) {
+        return summaries.computeIfAbsent(new SummaryKey(day, entityType), k -> new Summary());
+    }
+
+    private static class ResultReader<T extends Message> {
+        private final String entityType;
+
+        private final T defaultInstance;
+
+        private final Function<T, Status> statusGetter;
+
+        private final ToLongFunction<T> errorCounter;
+
+        private final Function<T, List<? extends Message>> errorSamplesGetter;
+
+        ResultReader(String entityType, T defaultInstance, Function<T, Status> statusGetter,
+                     ToLongFunction<T> errorCounter, Function<T, List<? extends Message>> errorSamplesGetter) {
+            this.entityType = entityType;
+            this.defaultInstance = defaultInstance;
+            this.statusGetter = statusGetter;
+            this.errorCounter = errorCounter;
+            this.errorSamplesGetter = errorSamplesGetter;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void read(Any response, Summary summary) {
+            T result;
+            try {
+                // To ensure compatibility, do not parse response by 'Any.unpack()'
+                result = (T) defaultInstance.getParserForType().parseFrom(response.getValue());
+            } catch (InvalidProtocolBufferException e) {
+                log.error("[SummarizeOperations] parse task response fail, msg:{}", e.getMessage());
+                summary.parseFailureCount.increment();
+                return;
+            }
+            summary.operationCount.increment();
+            if (StatusHelper.isSuccess(statusGetter.apply(result))) {
+                summary.successCount.increment();
+            } else {
+                summary.failureCount.increment();
+            }
+            summary.errorItemCount.add(errorCounter.applyAsLong(result));
+            summary.addErrorSamples(errorSamplesGetter.apply(result));
+        }
+    }
+
+    private static class SummaryKey {
+        private final String day;
+
+        private final String entityType;
+
+        SummaryKey(String day, String entityType) {
+            this.day = day;
+            this.entityType = entityType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SummaryKey)) {
+                return false;
+            }
+            SummaryKey that = (SummaryKey) o;
+            return day.equals(that.day) && entityType.equals(that.entityType);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(day, entityType);
+        }
+    }
+
+    public static class Summary {
+        private final LongAdder operationCount = new LongAdder();
+
+        private final LongAdder successCount = new LongAdder();
+
+        private final LongAdder failureCount = new LongAdder();
+
+        private final LongAdder unfinishedCount = new LongAdder();
+
+        private final LongAdder parseFailureCount = new LongAdder();
+
+        private final LongAdder errorItemCount = new LongAdder();
+
+        // At most MAX_ERROR_SAMPLES, guarded by this
+        private final List<Message> errorSamples = new ArrayList<>();
+
+        // The count of finished operations whose result is parsed
+        public long getOperationCount() {
+            return operationCount.sum();
+        }
+
+        // The count of operations whose result status is success,
+        // some items of them may still fail, see getErrorItemCount
+        public long getSuccessCount() {
+            return successCount.sum();
+        }
+
+        public long getFailureCount() {
+            return failureCount.sum();
+        }
+
+        // The count of operations still running when they are listed
+        public long getUnfinishedCount() {
+            return unfinishedCount.sum();
+        }
+
+        public long getParseFailureCount() {
+            return parseFailureCount.sum();
+        }
+
+        // The count of items failed to import
+        public long getErrorItemCount() {
+            return errorItemCount.sum();
+        }
+
+        public synchronized List<Message> getErrorSamples() {
+            return Collections.unmodifiableList(new ArrayList<>(errorSamples));
+        }
+
+        private synchronized void addErrorSamples(List<? extends Message> samples) {
+            for (Message sample : samples) {
+                if (errorSamples.size() >= MAX_ERROR_SAMPLES) {
+                    return;
+                }
+                errorSamples.add(sample);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "operations:" + getOperationCount() + " success:" + getSuccessCount()
+                    + " failure:" + getFailureCount() + " unfinished:" + getUnfinishedCount()
+                    + " parseFailure:" + getParseFailureCount() + " errorItems:" + getErrorItemCount();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package byteplus.example.common;
+
+import byteplus.example.common.RequestHelper.Callable;
+import byteplus.sdk.core.Option;
+import com.google.protobuf.Message;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Compose a page from the predict results of several scenes, such as "home" and "similar".
+ * <p>
+ * The predicts of all scenes are sent in parallel under one deadline, so the page
+ * latency is the one of the slowest scene within the deadline, instead of the sum
+ * of all scenes. A scene which fails or exceeds the deadline is served by its own
+ * fallback, or left out of the page if it has no fallback.
+ * <p>
+ * The same item may be recommended by several scenes, {@link Page#dedup} keeps it
+ * in the first scene only, so that the acks/callbacks built from the page report
+ * what is really shown.
+ */
+@Slf4j
+public class PageComposer<Req extends Message, Rsp extends Message> {
+    private final AsyncPredictor<Req, Rsp> asyncPredictor;
+
+    public PageComposer(AsyncPredictor<Req, Rsp> asyncPredictor) {
+        this.asyncPredictor = asyncPredictor;
+    }
+
+    /**
+     * @param predicts the predicts of scenes, the order is the priority of dedup
+     * @param deadline the max time from now to compose the page
+     */
+    public Page<Rsp> compose(List<ScenePredict<Req, Rsp>> predicts, Duration deadline) {
+        long startNanos = System.nanoTime();
+        Map<String, CompletableFuture<Rsp>> futures = new LinkedHashMap<>();
+        for (ScenePredict<Req, Rsp> predict : predicts) {
+            futures.put(predict.scene, asyncPredictor.predict(predict.callable, predict.request,
+                    deadline, predict.fallback, predict.opts));
+        }
+        // Every future is completed by the deadline of AsyncPredictor,
+        // so the total waiting time is bounded by the deadline
+        Map<String, Rsp> responses = new LinkedHashMap<>();
+        List<String> failedScenes = new ArrayList<>();
+        for (Map.Entry<String, CompletableFuture<Rsp>> entry : futures.entrySet()) {
+            try {
+                Rsp response = entry.getValue().join();
+                if (StatusHelper.isResponseSuccess(response)) {
+                    responses.put(entry.getKey(), response);
+                    continue;
+                }
+                log.warn("[ComposePage] scene fail, scene:{} rsp:{}", entry.getKey(), response);
+            } catch (Exception e) {
+                log.warn("[ComposePage] scene occur error, scene:{} msg:{}", entry.getKey(), e.getMessage());
+            }
+            failedScenes.add(entry.getKey());
+        }
+        long costMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        return new Page<>(responses, failedScenes, costMillis);
+    }
+
+    public static class ScenePredict<Req extends Message, Rsp extends Message> {
+        private final String scene;
+
+        private final Callable<Rsp, Req> callable;
+
+        private final Req request;
+
+        private final Supplier<Rsp> fallback;
+
+        private final Option[] opts;
+
+        /**
+         * @param scene    the scene of request
+         * @param callable the predict api, with the scene bound
+         * @param request  the predict request
+         * @param fallback supply the result when the scene fails, null means no fallback
+         * @param opts     the options of request, every scene must have its own request id
+         */
+        public ScenePredict(String scene, Callable<Rsp, Req> callable, Req request,
+                            Supplier<Rsp> fallback, Option... opts) {
+            this.scene = scene;
+            this.callable = callable;
+            this.request = request;
+            this.fallback = fallback;
+            this.opts = opts;
+        }
+    }
+
+    public static class Page<Rsp> {
+        // Ordered as the scenes are passed
+        private final Map<String, Rsp> responses;
+
+        private final List<String> failedScenes;
+
+        private final long costMillis;
+
+        Page(Map<String, Rsp> responses, List<String> failedScenes, long costMillis) {
+            this.responses = Collections.unmodifiableMap(responses);
+            this.failedScenes = Collections.unmodifiableList(failedScenes);
+            this.costMillis = costMillis;
+        }
+
+        // The successful responses of scenes, including the ones from fallback
+        public Map<String, Rsp> getResponses() {
+            return responses;
+        }
+
+        // The scenes which have neither response nor fallback
+        public List<String> getFailedScenes() {
+            return failedScenes;
+        }
+
+        public long getCostMillis() {
+            return costMillis;
+        }
+
+        /**
+         * Remove the items recommended by more than one scene,
+         * an item is kept in the first scene which recommends it.
+         *
+         * @param itemsGetter get the ordered items from response
+         * @param idGetter    get item id from item
+         */
+        public <T> Map<String, SceneItems<T>> dedup(Function<Rsp, List<T>> itemsGetter,
+                                                    Function<T, String> idGetter) {
+            Set<String> shownIds = new HashSet<>();
+            Map<String, SceneItems<T>> result = new LinkedHashMap<>();
+            for (Map.Entry<String, Rsp> entry : responses.entrySet()) {
+                List<T> items = itemsGetter.apply(entry.getValue());
+                List<T> kept = new ArrayList<>(items.size());
+                List<T> duplicated = new ArrayList<>();
+                for (T item : items) {
+                    if (shownIds.add(idGetter.apply(item))) {
+                        kept.add(item);
+                    } else {
+                        duplicated.add(item);
+                    }
+                }
+                result.put(entry.getKey(), new SceneItems<>(kept, duplicated));
+            }
+            return result;
+        }
+    }
+
+    public static class SceneItems<T> {
+        private final List<T> kept;
+
+        private final List<T> duplicated;
+
+        SceneItems(List<T> kept, List<T> duplicated) {
+            this.kept = kept;
+            this.duplicated = duplicated;
+        }
+
+        // The items shown to user, in the original order
+        public List<T> getKept() {
+            return kept;
+        }
+
+        // The items already shown by a previous scene
+        public List<T> getDuplicated() {
+            return duplicated;
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package byteplus.example.common;
+
+import byteplus.example.common.RequestHelper.Callable;
+import byteplus.sdk.core.BizException;
+import byteplus.sdk.core.NetException;
+import byteplus.sdk.core.Option;
+import com.google.protobuf.Message;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * Prefetch the next page of a feed while the user is reading the current one.
+ * <p>
+ * After page N is served, the request of page N+1 for the same session is sent
+ * in background, and its response is kept in the session. When the user scrolls
+ * to page N+1, the prefetched response is served without a round trip.
+ * <p>
+ * The prefetches run on their own small pool, and at most "maxConcurrentPrefetch"
+ * of them are in flight in the whole process, the prefetch is skipped rather than
+ * queued when the limit is reached, so it never takes the resources of foreground
+ * predicts. A session which is idle longer than "idleTimeout" is dropped, and its
+ * in-flight prefetch is cancelled.
+ */
+@Slf4j
+public class PagePrefetcher<Req extends Message, Rsp extends Message> {
+    private final static int DEFAULT_MAX_SESSION_COUNT = 100000;
+
+    private final UnaryOperator<Req> nextPage;
+
+    private final long idleTimeoutNanos;
+
+    private final long maxWaitNanos;
+
+    private final int maxSessionCount;
+
+    // Guard the global count of in-flight prefetches
+    private final Semaphore prefetchPermits;
+
+    private final ThreadPoolExecutor executor;
+
+    private final ScheduledExecutorService sweeper;
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+
+    private final LongAdder prefetchCount = new LongAdder();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder skippedCount = new LongAdder();
+
+    private final LongAdder cancelledCount = new LongAdder();
+
+    private final LongAdder wastedCount = new LongAdder();
+
+    /**
+     * @param nextPage              build the request of next page from the current one,
+     *                              such as increasing "page_number" and "offset" of scene
+     * @param idleTimeout           the session is dropped if no page is requested for this time
+     * @param maxWait               the max time to wait for an in-flight prefetch of the requested page,
+     *                              a foreground request is sent if it doesn't return in time
+     * @param maxConcurrentPrefetch the max count of in-flight prefetches in the whole process
+     */
+    public PagePrefetcher(UnaryOperator<Req> nextPage, Duration idleTimeout,
+                          Duration maxWait, int maxConcurrentPrefetch) {
+        this(nextPage, idleTimeout, maxWait, maxConcurrentPrefetch, DEFAULT_MAX_SESSION_COUNT);
+    }
+
+    /**
+     * @param maxSessionCount the max count of sessions, no prefetch for new sessions beyond it
+     */
+    public PagePrefetcher(UnaryOperator<Req> nextPage, Duration idleTimeout, Duration maxWait,
+                          int maxConcurrentPrefetch, int maxSessionCount) {
+        this.nextPage = nextPage;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.maxWaitNanos = maxWait.toNanos();
+        this.maxSessionCount = maxSessionCount;
+        this.prefetchPermits = new Semaphore(maxConcurrentPrefetch);
+        // The permits limit the in-flight count, so no task waits in queue
+        this.executor = new ThreadPoolExecutor(
+                0,
+                maxConcurrentPrefetch,
+                1, TimeUnit.MINUTES,
+                new SynchronousQueue<>(),
+                daemonThreadFactory("page-prefetch"),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("page-prefetch-sweeper"));
+        long sweepIntervalNanos = Math.max(TimeUnit.SECONDS.toNanos(1), idleTimeoutNanos / 2);
+        sweeper.scheduleWithFixedDelay(this::dropIdleSessions,
+                sweepIntervalNanos, sweepIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Wrap the predict api, so that it can be passed to where a Callable is needed,
+     * such as {@link AsyncPredictor#predict}.
+     *
+     * @param sessionId the id of the user's browsing session, such as user id + scene
+     * @param callable  the predict api, with the scene bound
+     */
+    public Callable<Rsp, Req> wrap(String sessionId, Callable<Rsp, Req> callable) {
+        return (req, opts) -> predict(callable, sessionId, req, opts);
+    }
+
+    /**
+     * Serve the page from the prefetched response if possible, and prefetch the next page.
+     *
+     * @param callable  the predict api, with the scene bound
+     * @param sessionId the id of the user's browsing session, such as user id + scene
+     * @param request   the predict request of the page
+     * @param opts      the options of request, the prefetch is sent with a new request id
+     */
+    public Rsp predict(Callable<Rsp, Req> callable, String sessionId, Req request, Option... opts)
+            throws BizException, NetException {
+        Session session = touchSession(sessionId);
+        Rsp response = takePrefetched(session, request);
+        if (Objects.isNull(response)) {
+            missCount.increment();
+            response = callable.call(request, opts);
+        } else {
+            hitCount.increment();
+        }
+        if (Objects.nonNull(session) && Objects.nonNull(response) && StatusHelper.isResponseSuccess(response)) {
+            prefetch(session, callable, nextPage.apply(request), opts);
+        }
+        return response;
+    }
+
+    // Drop the session when the user leaves, such as closing the page
+    public void endSession(String sessionId) {
+        Session session = sessions.remove(sessionId);
+        if (Objects.nonNull(session)) {
+            session.cancel();
+        }
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    public long getPrefetchCount() {
+        return prefetchCount.sum();
+    }
+
+    // The count of pages served by prefetched responses
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    // The count of prefetches skipped because of the concurrency or session limit
+    public long getSkippedCount() {
+        return skippedCount.sum();
+    }
+
+    // The count of in-flight prefetches cancelled because the session went idle
+    public long getCancelledCount() {
+        return cancelledCount.sum();
+    }
+
+    // The count of prefetched responses which are never served
+    public long getWastedCount() {
+        return wastedCount.sum();
+    }
+
+    public void release() {
+        sweeper.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    // Return null if there are too many sessions, no prefetch for it then
+    private Session touchSession(String sessionId) {
+        if (Objects.isNull(sessionId)) {
+            return null;
+        }
+        Session session = sessions.get(sessionId);
+        if (Objects.isNull(session)) {
+            if (sessions.size() >= maxSessionCount) {
+                return null;
+            }
+            session = sessions.computeIfAbsent(sessionId, id -> new Session());
+        }
+        session.lastAccessNanos = System.nanoTime();
+        return session;
+    }
+
+    // Return null if the page is not prefetched, or the prefetch failed
+    private Rsp takePrefetched(Session session, Req request) throws BizException {
+        if (Objects.isNull(session)) {
+            return null;
+        }
+        Prefetch prefetch;
+        synchronized (session) {
+            prefetch = session.prefetch;
+            if (Objects.isNull(prefetch) || !prefetch.request.equals(request)) {
+                return null;
+            }
+            session.prefetch = null;
+        }
+        try {
+            // Waiting for the in-flight prefetch is still faster than a new request
+            return prefetch.result.get(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BizException(e.getMessage());
+        } catch (ExecutionException | TimeoutException e) {
+            prefetch.cancel();
+            return null;
+        }
+    }
+
+    private void prefetch(Session session, Callable<Rsp, Req> callable, Req request, Option[] opts) {
+        if (!prefetchPermits.tryAcquire()) {
+            skippedCount.increment();
+            return;
+        }
+        // The prefetch is a new predict request, the request id must be different
+        Option[] prefetchOpts = RequestHelper.withNewRequestId(opts);
+        Prefetch prefetch = new Prefetch(request);
+        try {
+            executor.execute(() -> {
+                try {
+                    if (!prefetch.start()) {
+                        return;
+                    }
+                    Rsp response = callable.call(request, prefetchOpts);
+                    if (Objects.nonNull(response) && StatusHelper.isResponseSuccess(response)) {
+                        prefetch.result.complete(response);
+                        return;
+                    }
+                    prefetch.result.completeExceptionally(new BizException("prefetch fail"));
+                } catch (Throwable e) {
+                    log.debug("[PagePrefetch] prefetch fail, msg:{}", e.getMessage());
+                    prefetch.result.completeExceptionally(e);
+                } finally {
+                    prefetch.finish();
+                    prefetchPermits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            prefetchPermits.release();
+            skippedCount.increment();
+            return;
+        }
+        prefetchCount.increment();
+        Prefetch replaced;
+        synchronized (session) {
+            replaced = session.prefetch;
+            session.prefetch = prefetch;
+        }
+        if (Objects.nonNull(replaced)) {
+            // The user jumped to another page, the old prefetch is useless
+            wastedCount.increment();
+            replaced.cancel();
+        }
+    }
+
+    private void dropIdleSessions() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<String, Session>> iterator = sessions.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Session session = iterator.next().getValue();
+            if (now - session.lastAccessNanos < idleTimeoutNanos) {
+                continue;
+            }
+            iterator.remove();
+            session.cancel();
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        AtomicInteger index = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private class Session {
+        private volatile long lastAccessNanos = System.nanoTime();
+
+        // The prefetch of the next page, guarded by session
+        private Prefetch prefetch;
+
+        private void cancel() {
+            Prefetch dropped;
+            synchronized (this) {
+                dropped = prefetch;
+                prefetch = null;
+            }
+            if (Objects.isNull(dropped)) {
+                return;
+            }
+            wastedCount.increment();
+            if (!dropped.result.isDone()) {
+                cancelledCount.increment();
+            }
+            dropped.cancel();
+        }
+    }
+
+    private class Prefetch {
+        private final Req request;
+
+        private final CompletableFuture<Rsp> result = new CompletableFuture<>();
+
+        // The thread running the prefetch, guarded by this
+        private Thread runner;
+
+        private boolean cancelled;
+
+        Prefetch(Req request) {
+            this.request = request;
+        }
+
+        // Return false if cancelled before started
+        private synchronized boolean start() {
+            if (cancelled) {
+                return false;
+            }
+            runner = Thread.currentThread();
+            return true;
+        }
+
+        private synchronized void finish() {
+            runner = null;
+            // Clear the interruption of cancel, the thread is reused by pool
+            Thread.interrupted();
+        }
+
+        private synchronized void cancel() {
+            result.cancel(false);
+            cancelled = true;
+            if (Objects.nonNull(runner)) {
+                runner.interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package byteplus.example.common;
+
+import byteplus.example.common.RequestHelper.Callable;
+import byteplus.sdk.common.protocol.ByteplusCommon.Status;
+import byteplus.sdk.core.BizException;
+import byteplus.sdk.core.Option;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Message;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Handle the partial failure of "Write" requests.
+ * <p>
+ * When some items of a "Write" request are rejected, the server returns success
+ * for the others and carries the rejected ones in "errors". Resending the whole
+ * request to fix a few items wastes a lot, so the error entries are mapped back
+ * to the items of request, and only those items are retried in a new request
+ * with its own request id. The items still failed after all retries are
+ * reported to the {@link RejectSink}.
+ */
+@Slf4j
+public class PartialFailureHelper {
+    private final static String ERROR_MESSAGE_FIELD = "message";
+
+    private final RequestHelper requestHelper;
+
+    public interface RejectSink<T> {
+        /**
+         * @param item   the rejected item, null if the error can't be mapped to any item
+         * @param reason the error message returned by server
+         */
+        void reject(T item, String reason);
+    }
+
+    /**
+     * Build a request which only contains the given items.
+     */
+    public interface RequestBuilder<T, Req> {
+        Req build(List<T> items);
+    }
+
+    /**
+     * Match the error entries returned by server with the items of request.
+     */
+    public interface ItemMatcher<T> {
+        Object keyOfItem(T item);
+
+        // Return null if the error doesn't carry the item
+        Object keyOfError(Message error);
+    }
+
+    public PartialFailureHelper(RequestHelper requestHelper) {
+        this.requestHelper = requestHelper;
+    }
+
+    /**
+     * For requests whose items are protobuf messages, such as users, products and user events.
+     * The rejected item carried by the error entry is compared with the items of request.
+     */
+    public static <T extends Message> ItemMatcher<T> messageMatcher() {
+        return new ItemMatcher<T>() {
+            @Override
+            public Object keyOfItem(T item) {
+                return item;
+            }
+
+            @Override
+            public Object keyOfError(Message error) {
+                for (Object value : error.getAllFields().values()) {
+                    if (value instanceof Message) {
+                        return value;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * For requests whose items are json maps, such as the data of general/byteair.
+     * The rejected item is carried by the error entry as json string,
+     * and items are compared by their json strings with sorted keys.
+     */
+    public static ItemMatcher<Map<String, Object>> jsonMapMatcher() {
+        return new ItemMatcher<Map<String, Object>>() {
+            @Override
+            public Object keyOfItem(Map<String, Object> item) {
+                return canonicalJson(item);
+            }
+
+            @Override
+            public Object keyOfError(Message error) {
+                for (Map.Entry<FieldDescriptor, Object> entry : error.getAllFields().entrySet()) {
+                    if (ERROR_MESSAGE_FIELD.equals(entry.getKey().getName())) {
+                        continue;
+                    }
+                    Object value = entry.getValue();
+                    if (value instanceof String && ((String) value).trim().startsWith("{")) {
+                        try {
+                            return canonicalJson(JSON.parseObject((String) value));
+                        } catch (RuntimeException e) {
+                            log.debug("[PartialFailure] error data is not json, msg:{}", e.getMessage());
+                        }
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    public static <T> RejectSink<T> loggingRejectSink(String scope) {
+        return (item, reason) -> log.error("[{}] item is rejected finally, reason:{} item:{}", scope, reason, item);
+    }
+
+    /**
+     * Pass the rejected items to the delegate, and remember them, so the items accepted by
+     * server can be told after {@link #doWrite} returns success, which it also does when some
+     * items are rejected finally. Used by one request on one thread.
+     */
+    public static class RecordingRejectSink<T> implements RejectSink<T> {
+        private final RejectSink<? super T> delegate;
+
+        // The items of request are compared by identity, as doWrite passes them as they are
+        private final Set<T> rejectedItems = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        // Some error can't be mapped to any item, so any of the items may be the rejected one
+        private boolean unmatched;
+
+        public RecordingRejectSink(RejectSink<? super T> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void reject(T item, String reason) {
+            if (Objects.isNull(item)) {
+                unmatched = true;
+            } else {
+                rejectedItems.add(item);
+            }
+            delegate.reject(item, reason);
+        }
+
+        // The items not rejected, empty if some error can't be mapped to an item
+        public List<T> accepted(List<T> items) {
+            if (unmatched) {
+                return Collections.emptyList();
+            }
+            if (rejectedItems.isEmpty()) {
+                return items;
+            }
+            List<T> accepted = new ArrayList<>(items.size());
+            for (T item : items) {
+                if (!rejectedItems.contains(item)) {
+                    accepted.add(item);
+                }
+            }
+            return accepted;
+        }
+    }
+
+    private static String canonicalJson(Map<String, Object> map) {
+        // Convert to JSONObject first, so that arrays and collections are written in the same way
+        JSONObject jsonObject = map instanceof JSONObject ? (JSONObject) map : new JSONObject(map);
+        return JSON.toJSONString(jsonObject, SerializerFeature.MapSortField);
+    }
+
+    /**
+     * Send the items, and resend only the rejected items when partial failure occurs.
+     *
+     * @param callable       the "Write" api
+     * @param items          the items need to write
+     * @param requestBuilder build the request from items
+     * @param errorsGetter   get error entries from response
+     * @param matcher        map error entries to items
+     * @param opts           the options of first request, retried requests use new request id
+     * @param retryTimes     the max times of resending the rejected items,
+     *                       also the retry times of network exception for each request
+     * @param rejectSink     receive the items which are still rejected after retries
+     * @return the response of the last request, whose "errors" only contains the items rejected finally
+     */
+    public <T, Req, Rsp extends Message> Rsp doWrite(
+            Callable<Rsp, Req> callable,
+            List<T> items,
+            RequestBuilder<T, Req> requestBuilder,
+            Function<Rsp, List<? extends Message>> errorsGetter,
+            ItemMatcher<T> matcher,
+            Option[] opts,
+            int retryTimes,
+            RejectSink<? super T> rejectSink) throws BizException {
+
+        Rsp response = requestHelper.doWithRetry(callable, requestBuilder.build(items), opts, retryTimes);
+        List<? extends Message> errors = errorsGetter.apply(response);
+        if (errors.isEmpty()) {
+            // Success, or the whole request is failed, which should be handled by caller
+            return response;
+        }
+        List<T> pending = items;
+        for (int i = 0; ; i++) {
+            List<T> failedItems = new ArrayList<>(errors.size());
+            List<String> failedReasons = new ArrayList<>(errors.size());
+            mapErrors(pending, errors, matcher, failedItems, failedReasons, rejectSink);
+            if (failedItems.isEmpty()) {
+                return response;
+            }
+            if (i >= retryTimes) {
+                for (int j = 0; j < failedItems.size(); j++) {
+                    rejectSink.reject(failedItems.get(j), failedReasons.get(j));
+                }
+                return response;
+            }
+            log.warn("[PartialFailure] resend {} rejected items of {}, retried:{}",
+                    failedItems.size(), pending.size(), i);
+            pending = failedItems;
+            // The resent items belong to a new request, so the request id must be different,
+            // otherwise the server treats it as idempotent request and ignores it
+            response = requestHelper.doWithRetry(callable, requestBuilder.build(pending),
+                    RequestHelper.withNewRequestId(opts), retryTimes);
+            errors = errorsGetter.apply(response);
+            if (errors.isEmpty() && !StatusHelper.isUploadSuccess(statusOf(response))) {
+                // The retried request is failed entirely, all of the pending items are rejected
+                for (T item : pending) {
+                    rejectSink.reject(item, String.valueOf(statusOf(response)));
+                }
+                return response;
+            }
+        }
+    }
+
+    private <T> void mapErrors(List<T> items, List<? extends Message> errors, ItemMatcher<T> matcher,
+                               List<T> failedItems, List<String> failedReasons,
+                               RejectSink<? super T> rejectSink) {
+        Map<Object, List<Integer>> indexesByKey = new HashMap<>(items.size() * 2);
+        for (int i = 0; i < items.size(); i++) {
+            indexesByKey.computeIfAbsent(matcher.keyOfItem(items.get(i)), k -> new ArrayList<>(1)).add(i);
+        }
+        for (Message error : errors) {
+            String reason = errorMessage(error);
+            Object key = matcher.keyOfError(error);
+            List<Integer> indexes = Objects.isNull(key) ? null : indexesByKey.remove(key);
+            if (Objects.isNull(indexes)) {
+                // Can't find the item, it can't be resent either
+                rejectSink.reject(null, reason);
+                continue;
+            }
+            for (Integer index : indexes) {
+                failedItems.add(items.get(index));
+                failedReasons.add(reason);
+            }
+        }
+    }
+
+    private static String errorMessage(Message error) {
+        FieldDescriptor field = error.getDescriptorForType().findFieldByName(ERROR_MESSAGE_FIELD);
+        if (Objects.isNull(field)) {
+            return error.toString();
+        }
+        return String.valueOf(error.getField(field));
+    }
+
+    private static Status statusOf(Message response) {
+        FieldDescriptor field = response.getDescriptorForType().findFieldByName("status");
+        if (Objects.nonNull(field) && response.getField(field) instanceof Status) {
+            return (Status) response.getField(field);
+        }
+        return Status.getDefaultInstance();
+    }
+}
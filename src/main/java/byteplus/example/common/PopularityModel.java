@@ -0,0 +1,368 @@
+package byteplus.example.common;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A local popularity model built from the user events sent to server,
+ * which is used as the fallback result when predict fails or times out.
+ * <p>
+ * Every scene keeps a count-min sketch of the time-decayed event weights of items,
+ * and the top-K items by the estimated weight. Events are decayed by half life with
+ * forward decay: a new event is added with a weight growing exponentially with its
+ * timestamp, instead of decaying all the counters over time. The sketch and top-K
+ * are rescaled when the weight grows too large.
+ * <p>
+ * The memory is bounded by sketch width, top-K size and the max count of scenes,
+ * no matter how many items there are. The model can be saved to a snapshot file,
+ * and restored from it after restart.
+ */
+@Slf4j
+public class PopularityModel {
+    // Every event is recorded into its own scene and this scene,
+    // which serves the scenes having no events
+    public final static String ALL_SCENES = "*";
+
+    private final static int SKETCH_DEPTH = 4;
+
+    private final static int DEFAULT_SKETCH_WIDTH = 1 << 14;
+
+    private final static int DEFAULT_TOP_K = 200;
+
+    private final static int DEFAULT_MAX_SCENE_COUNT = 64;
+
+    // Rescale the counters when the weight of new event exceeds 2^60,
+    // the float counters can hold up to about 2^127
+    private final static double MAX_DECAY_EXPONENT = 60;
+
+    // The sorted top list is rebuilt at most once in this interval
+    private final static long TOP_LIST_REFRESH_NANOS = Duration.ofSeconds(1).toNanos();
+
+    private final static int SNAPSHOT_MAGIC = 0x504F504D;
+
+    private final static int SNAPSHOT_VERSION = 1;
+
+    private final static Map<String, Double> DEFAULT_EVENT_WEIGHTS = new HashMap<>();
+
+    static {
+        // Impressions are too many and say little about popularity
+        DEFAULT_EVENT_WEIGHTS.put("impression", 0.0);
+        DEFAULT_EVENT_WEIGHTS.put("click", 1.0);
+        DEFAULT_EVENT_WEIGHTS.put("play", 1.0);
+        DEFAULT_EVENT_WEIGHTS.put("stay", 1.0);
+        DEFAULT_EVENT_WEIGHTS.put("like", 2.0);
+        DEFAULT_EVENT_WEIGHTS.put("share", 2.0);
+        DEFAULT_EVENT_WEIGHTS.put("comment", 2.0);
+        DEFAULT_EVENT_WEIGHTS.put("add-to-cart", 2.0);
+        DEFAULT_EVENT_WEIGHTS.put("add-to-favorites", 2.0);
+        DEFAULT_EVENT_WEIGHTS.put("purchase", 4.0);
+    }
+
+    private final double halfLifeSeconds;
+
+    private final int sketchWidth;
+
+    private final int topK;
+
+    private final int maxSceneCount;
+
+    private final ConcurrentHashMap<String, SceneModel> scenes = new ConcurrentHashMap<>();
+
+    private volatile boolean sceneFullWarned;
+
+    public PopularityModel(Duration halfLife) {
+        this(halfLife, DEFAULT_SKETCH_WIDTH, DEFAULT_TOP_K, DEFAULT_MAX_SCENE_COUNT);
+    }
+
+    /**
+     * Every scene takes about "4 * 4 * sketchWidth" bytes plus the top-K items.
+     *
+     * @param halfLife      the time after which an event counts half
+     * @param sketchWidth   the count of counters in each row of sketch, larger is more accurate
+     * @param topK          the count of popular items kept for each scene
+     * @param maxSceneCount the events of scenes beyond this count are only recorded in {@link #ALL_SCENES}
+     */
+    public PopularityModel(Duration halfLife, int sketchWidth, int topK, int maxSceneCount) {
+        this.halfLifeSeconds = Math.max(1, halfLife.getSeconds());
+        this.sketchWidth = sketchWidth;
+        this.topK = topK;
+        this.maxSceneCount = maxSceneCount;
+    }
+
+    public static double eventWeight(String eventType) {
+        Double weight = DEFAULT_EVENT_WEIGHTS.get(eventType);
+        return Objects.isNull(weight) ? 1.0 : weight;
+    }
+
+    /**
+     * Record an event with the default weight of its type.
+     *
+     * @param timestamp the event time in seconds, 0 means now
+     */
+    public void recordEvent(String scene, String itemId, String eventType, long timestamp) {
+        record(scene, itemId, eventWeight(eventType), timestamp);
+    }
+
+    public void record(String scene, String itemId, double weight, long timestamp) {
+        if (Objects.isNull(itemId) || itemId.isEmpty() || weight <= 0) {
+            return;
+        }
+        if (timestamp <= 0) {
+            timestamp = System.currentTimeMillis() / 1000;
+        }
+        sceneModel(ALL_SCENES, true).record(itemId, weight, timestamp);
+        if (Objects.nonNull(scene) && !scene.isEmpty() && !ALL_SCENES.equals(scene)) {
+            SceneModel sceneModel = sceneModel(scene, true);
+            if (Objects.nonNull(sceneModel)) {
+                sceneModel.record(itemId, weight, timestamp);
+            }
+        }
+    }
+
+    /**
+     * Get the most popular items of scene, the items of all scenes are
+     * returned if the scene has no events.
+     *
+     * @return item ids ordered by popularity, at most "size" items
+     */
+    public List<String> top(String scene, int size) {
+        SceneModel sceneModel = sceneModel(scene, false);
+        if (Objects.isNull(sceneModel) || sceneModel.isEmpty()) {
+            sceneModel = sceneModel(ALL_SCENES, false);
+        }
+        if (Objects.isNull(sceneModel)) {
+            return Collections.emptyList();
+        }
+        List<String> topList = sceneModel.topList();
+        return topList.size() <= size ? topList : topList.subList(0, size);
+    }
+
+    /**
+     * Save the model into file. The file is written into a temporary file first,
+     * and then renamed, so the existing snapshot is never broken.
+     */
+    public void snapshot(Path file) throws IOException {
+        Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+            output.writeInt(SNAPSHOT_MAGIC);
+            output.writeInt(SNAPSHOT_VERSION);
+            output.writeInt(sketchWidth);
+            // Copy the scenes first, new scenes may be added while writing
+            List<Map.Entry<String, SceneModel>> entries = new ArrayList<>(scenes.entrySet());
+            output.writeInt(entries.size());
+            for (Map.Entry<String, SceneModel> entry : entries) {
+                output.writeUTF(entry.getKey());
+                entry.getValue().writeTo(output);
+            }
+        }
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("[PopularityModel] snapshot {} scenes into {}", scenes.size(), file);
+    }
+
+    /**
+     * Restore the model from snapshot file, the current data of model is replaced.
+     *
+     * @return false if the file doesn't exist or is not compatible with this model
+     */
+    public boolean restore(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return false;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != SNAPSHOT_MAGIC || input.readInt() != SNAPSHOT_VERSION) {
+                log.warn("[PopularityModel] not a snapshot file, file:{}", file);
+                return false;
+            }
+            if (input.readInt() != sketchWidth) {
+                log.warn("[PopularityModel] sketch width is changed, ignore snapshot:{}", file);
+                return false;
+            }
+            int sceneCount = input.readInt();
+            Map<String, SceneModel> restored = new HashMap<>(sceneCount * 2);
+            for (int i = 0; i < sceneCount; i++) {
+                String scene = input.readUTF();
+                SceneModel sceneModel = new SceneModel();
+                sceneModel.readFrom(input);
+                restored.put(scene, sceneModel);
+            }
+            scenes.clear();
+            scenes.putAll(restored);
+        }
+        log.info("[PopularityModel] restore {} scenes from {}", scenes.size(), file);
+        return true;
+    }
+
+    private SceneModel sceneModel(String scene, boolean createIfAbsent) {
+        if (Objects.isNull(scene)) {
+            return null;
+        }
+        SceneModel sceneModel = scenes.get(scene);
+        if (Objects.nonNull(sceneModel) || !createIfAbsent) {
+            return sceneModel;
+        }
+        if (scenes.size() >= maxSceneCount && !ALL_SCENES.equals(scene)) {
+            if (!sceneFullWarned) {
+                sceneFullWarned = true;
+                log.warn("[PopularityModel] too many scenes, new scenes are not recorded, max:{}", maxSceneCount);
+            }
+            return null;
+        }
+        return scenes.computeIfAbsent(scene, s -> new SceneModel());
+    }
+
+    private class SceneModel {
+        private final float[] counters = new float[SKETCH_DEPTH * sketchWidth];
+
+        // The estimated weights of the candidates of top-K, its size is less than 2K
+        private final HashMap<String, Double> topWeights = new HashMap<>();
+
+        // The timestamp where the weight of new event is 1
+        private long landmark;
+
+        // The min weight of the top-K after last pruning,
+        // items not heavier than it can't be in top-K
+        private double topThreshold;
+
+        private volatile boolean dirty;
+
+        private volatile List<String> topList = Collections.emptyList();
+
+        private volatile long topListTimeNanos = System.nanoTime() - TOP_LIST_REFRESH_NANOS;
+
+        synchronized void record(String itemId, double weight, long timestamp) {
+            if (landmark == 0) {
+                landmark = timestamp;
+            }
+            double exponent = (timestamp - landmark) / halfLifeSeconds;
+            if (exponent > MAX_DECAY_EXPONENT) {
+                rescale(timestamp);
+                exponent = 0;
+            }
+            double decayedWeight = weight * Math.pow(2, exponent);
+            double estimate = addToSketch(itemId, decayedWeight);
+            if (topWeights.containsKey(itemId) || topWeights.size() < topK || estimate > topThreshold) {
+                topWeights.put(itemId, estimate);
+                if (topWeights.size() >= 2 * topK) {
+                    prune();
+                }
+                dirty = true;
+            }
+        }
+
+        boolean isEmpty() {
+            return topList.isEmpty() && !dirty;
+        }
+
+        List<String> topList() {
+            long now = System.nanoTime();
+            if (dirty && now - topListTimeNanos >= TOP_LIST_REFRESH_NANOS) {
+                synchronized (this) {
+                    if (dirty) {
+                        topList = Collections.unmodifiableList(sortedItems(topK));
+                        topListTimeNanos = now;
+                        dirty = false;
+                    }
+                }
+            }
+            return topList;
+        }
+
+        // Conservative update: only the counters less than the new estimate are raised,
+        // which reduces the over estimation of count-min sketch
+        private double addToSketch(String itemId, double weight) {
+            long hash = HashHelper.hash64(itemId);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            double estimate = Double.MAX_VALUE;
+            int[] indexes = new int[SKETCH_DEPTH];
+            for (int i = 0; i < SKETCH_DEPTH; i++) {
+                int index = i * sketchWidth + Math.floorMod(h1 + i * h2, sketchWidth);
+                indexes[i] = index;
+                estimate = Math.min(estimate, counters[index]);
+            }
+            estimate += weight;
+            for (int index : indexes) {
+                if (counters[index] < estimate) {
+                    counters[index] = (float) estimate;
+                }
+            }
+            return estimate;
+        }
+
+        private void rescale(long newLandmark) {
+            double factor = Math.pow(2, -(newLandmark - landmark) / halfLifeSeconds);
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] *= factor;
+            }
+            topWeights.replaceAll((itemId, weight) -> weight * factor);
+            topThreshold *= factor;
+            landmark = newLandmark;
+        }
+
+        private void prune() {
+            List<String> kept = sortedItems(topK);
+            HashMap<String, Double> keptWeights = new HashMap<>(kept.size() * 2);
+            for (String itemId : kept) {
+                keptWeights.put(itemId, topWeights.get(itemId));
+            }
+            topWeights.clear();
+            topWeights.putAll(keptWeights);
+            topThreshold = kept.isEmpty() ? 0 : keptWeights.get(kept.get(kept.size() - 1));
+        }
+
+        private List<String> sortedItems(int limit) {
+            List<Map.Entry<String, Double>> entries = new ArrayList<>(topWeights.entrySet());
+            entries.sort((a, b) -> Double.compare(b.getValue(), a.getValue()));
+            int size = Math.min(limit, entries.size());
+            List<String> items = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                items.add(entries.get(i).getKey());
+            }
+            return items;
+        }
+
+        synchronized void writeTo(DataOutputStream output) throws IOException {
+            output.writeLong(landmark);
+            output.writeDouble(topThreshold);
+            for (float counter : counters) {
+                output.writeFloat(counter);
+            }
+            output.writeInt(topWeights.size());
+            for (Map.Entry<String, Double> entry : topWeights.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeDouble(entry.getValue());
+            }
+        }
+
+        synchronized void readFrom(DataInputStream input) throws IOException {
+            landmark = input.readLong();
+            topThreshold = input.readDouble();
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] = input.readFloat();
+            }
+            int topCount = input.readInt();
+            for (int i = 0; i < topCount; i++) {
+                topWeights.put(input.readUTF(), input.readDouble());
+            }
+            dirty = true;
+            topListTimeNanos = System.nanoTime() - TOP_LIST_REFRESH_NANOS;
+        }
+    }
+}
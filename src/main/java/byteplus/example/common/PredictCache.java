@@ -0,0 +1,327 @@
+package byteplus.example.common;
+
+import byteplus.example.common.RequestHelper.Callable;
+import byteplus.sdk.core.BizException;
+import byteplus.sdk.core.NetException;
+import byteplus.sdk.core.Option;
+import com.google.protobuf.Message;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Cache the predict responses per (user, scene, request context).
+ * <p>
+ * A response younger than "ttl" is served directly. In stale-while-revalidate mode,
+ * a response older than "ttl" but within the stale window is still served immediately,
+ * and a refresh is sent in background, so the user never waits for the refresh.
+ * Only the successful responses are cached, and the least recently used ones are
+ * evicted when the cache is full.
+ * <p>
+ * The whole response is cached, including its "request_id", so the ack/callback
+ * built from a cached response still carries the original "predict_request_id".
+ */
+@Slf4j
+public class PredictCache<Req extends Message, Rsp extends Message> {
+    private final static int REFRESH_THREAD_COUNT = 2;
+
+    // Refreshes beyond this count are dropped, the stale response is served
+    // until a later request triggers the refresh again
+    private final static int MAX_REFRESH_TASK_COUNT = 100;
+
+    private final int maxSize;
+
+    private final long ttlNanos;
+
+    private final long staleNanos;
+
+    private final Function<Req, String> userIdGetter;
+
+    private final Function<Req, Req> normalizer;
+
+    // Guarded by itself, ordered by access so that the eldest entry is evicted first
+    private final LinkedHashMap<Key, CachedResponse<Rsp>> entries;
+
+    private final ExecutorService refreshExecutor;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder staleHitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder refreshCount = new LongAdder();
+
+    private final LongAdder refreshFailureCount = new LongAdder();
+
+    private final LongAdder servedAgeMillisSum = new LongAdder();
+
+    private final LongAccumulator maxServedAgeMillis = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param maxSize      the max count of cached responses
+     * @param ttl          the time a response is served without refreshing
+     * @param staleWindow  the time after "ttl" that a stale response is still served
+     *                     while refreshing in background, zero disables stale-while-revalidate
+     * @param userIdGetter get user id from request
+     */
+    public PredictCache(int maxSize, Duration ttl, Duration staleWindow, Function<Req, String> userIdGetter) {
+        this(maxSize, ttl, staleWindow, userIdGetter, Function.identity());
+    }
+
+    /**
+     * @param normalizer clear the fields which change on every call but don't affect the result,
+     *                   such as a trace id in "extra", so that the same context hits the same entry
+     */
+    public PredictCache(int maxSize, Duration ttl, Duration staleWindow,
+                        Function<Req, String> userIdGetter, Function<Req, Req> normalizer) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.staleNanos = staleWindow.toNanos();
+        this.userIdGetter = userIdGetter;
+        this.normalizer = normalizer;
+        this.entries = new LinkedHashMap<Key, CachedResponse<Rsp>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedResponse<Rsp>> eldest) {
+                return size() > PredictCache.this.maxSize;
+            }
+        };
+        this.refreshExecutor = new ThreadPoolExecutor(
+                REFRESH_THREAD_COUNT,
+                REFRESH_THREAD_COUNT,
+                0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(MAX_REFRESH_TASK_COUNT),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "predict-cache-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    /**
+     * Get the response from cache, or request it by callable if not cached.
+     *
+     * @param callable the predict api, with the scene bound, such as
+     *                 (req, optList) -> client.predict(req, "home", optList)
+     * @param scene    the scene of request
+     * @param request  the predict request
+     * @param opts     the options of request, a refresh is sent with a new request id
+     */
+    public Rsp predict(Callable<Rsp, Req> callable, String scene, Req request, Option... opts)
+            throws BizException, NetException {
+        Key key = new Key(scene, userIdGetter.apply(request), HashHelper.hash64(normalizer.apply(request)));
+        long now = System.nanoTime();
+        CachedResponse<Rsp> entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (Objects.nonNull(entry)) {
+            long age = now - entry.createTimeNanos;
+            if (age < ttlNanos) {
+                hitCount.increment();
+                recordServedAge(age);
+                return entry.response;
+            }
+            if (age < ttlNanos + staleNanos) {
+                staleHitCount.increment();
+                recordServedAge(age);
+                refreshAsync(key, entry, callable, request, opts);
+                return entry.response;
+            }
+        }
+        missCount.increment();
+        Rsp response = callable.call(request, opts);
+        put(key, response);
+        return response;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(hitCount.sum(), staleHitCount.sum(), missCount.sum(),
+                refreshCount.sum(), refreshFailureCount.sum(),
+                servedAgeMillisSum.sum(), maxServedAgeMillis.get());
+    }
+
+    public void release() {
+        refreshExecutor.shutdownNow();
+    }
+
+    private void refreshAsync(Key key, CachedResponse<Rsp> entry, Callable<Rsp, Req> callable, Req request, Option[] opts) {
+        // Only one refresh for an entry at the same time
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        // The refresh is a new predict request, the request id must be different
+        Option[] refreshOpts = RequestHelper.withNewRequestId(opts);
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    refreshCount.increment();
+                    if (!put(key, callable.call(request, refreshOpts))) {
+                        refreshFailureCount.increment();
+                    }
+                } catch (Throwable e) {
+                    refreshFailureCount.increment();
+                    log.warn("[PredictCache] refresh fail, scene:{} msg:{}", key.scene, e.getMessage());
+                } finally {
+                    entry.refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            entry.refreshing.set(false);
+            log.debug("[PredictCache] too many refresh tasks, skip refresh, scene:{}", key.scene);
+        }
+    }
+
+    // Return false if the response is not cacheable
+    private boolean put(Key key, Rsp response) {
+        if (Objects.isNull(response) || !StatusHelper.isResponseSuccess(response)) {
+            return false;
+        }
+        CachedResponse<Rsp> entry = new CachedResponse<>(response, System.nanoTime());
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+        return true;
+    }
+
+    private void recordServedAge(long ageNanos) {
+        long ageMillis = TimeUnit.NANOSECONDS.toMillis(ageNanos);
+        servedAgeMillisSum.add(ageMillis);
+        maxServedAgeMillis.accumulate(ageMillis);
+    }
+
+    private static class Key {
+        private final String scene;
+
+        private final String userId;
+
+        private final long contextHash;
+
+        Key(String scene, String userId, long contextHash) {
+            this.scene = Objects.isNull(scene) ? "" : scene;
+            this.userId = Objects.isNull(userId) ? "" : userId;
+            this.contextHash = contextHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return contextHash == key.contextHash && scene.equals(key.scene) && userId.equals(key.userId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(scene, userId, contextHash);
+        }
+    }
+
+    private static class CachedResponse<Rsp> {
+        private final Rsp response;
+
+        private final long createTimeNanos;
+
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        CachedResponse(Rsp response, long createTimeNanos) {
+            this.response = response;
+            this.createTimeNanos = createTimeNanos;
+        }
+    }
+
+    public static class Stats {
+        private final long hitCount;
+
+        private final long staleHitCount;
+
+        private final long missCount;
+
+        private final long refreshCount;
+
+        private final long refreshFailureCount;
+
+        private final long servedAgeMillisSum;
+
+        private final long maxServedAgeMillis;
+
+        Stats(long hitCount, long staleHitCount, long missCount, long refreshCount,
+              long refreshFailureCount, long servedAgeMillisSum, long maxServedAgeMillis) {
+            this.hitCount = hitCount;
+            this.staleHitCount = staleHitCount;
+            this.missCount = missCount;
+            this.refreshCount = refreshCount;
+            this.refreshFailureCount = refreshFailureCount;
+            this.servedAgeMillisSum = servedAgeMillisSum;
+            this.maxServedAgeMillis = maxServedAgeMillis;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getStaleHitCount() {
+            return staleHitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        public long getRefreshCount() {
+            return refreshCount;
+        }
+
+        public long getRefreshFailureCount() {
+            return refreshFailureCount;
+        }
+
+        // Both fresh and stale hits are counted
+        public double getHitRate() {
+            long total = hitCount + staleHitCount + missCount;
+            return total == 0 ? 0 : (double) (hitCount + staleHitCount) / total;
+        }
+
+        // The average age of the responses served from cache
+        public double getAverageServedAgeMillis() {
+            long served = hitCount + staleHitCount;
+            return served == 0 ? 0 : (double) servedAgeMillisSum / served;
+        }
+
+        public long getMaxServedAgeMillis() {
+            return maxServedAgeMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hit:%d staleHit:%d miss:%d hitRate:%.4f avgAgeMs:%.1f maxAgeMs:%d"
+                            + " refresh:%d refreshFail:%d",
+                    hitCount, staleHitCount, missCount, getHitRate(), getAverageServedAgeMillis(),
+                    maxServedAgeMillis, refreshCount, refreshFailureCount);
+        }
+    }
+}
@@ -18,6 +18,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.time.Duration;
 import java.time.LocalTime;
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.UUID;
 
@@ -38,12 +39,22 @@ public class RequestHelper {
 
     private final CommonClient client;
 
+    // Record the import operations created and their results, null means disabled
+    private final OperationIndex operationIndex;
+
     public interface Callable<Rsp extends Message, Req> {
         Rsp call(Req req, Option... opts) throws BizException, NetException;
     }
 
     public RequestHelper(CommonClient client) {
+        this(client, null);
+    }
+
+    // When operationIndex is set, the operations created by "doImport" and
+    // their polling results are recorded into it
+    public RequestHelper(CommonClient client, OperationIndex operationIndex) {
         this.client = client;
+        this.operationIndex = operationIndex;
     }
 
     public <Rsp extends Message, Req> Rsp doImport(
@@ -61,7 +72,23 @@ public class RequestHelper {
             log.error("[PollingImportResponse] server return error info, rsp:\n{}", opRsp);
             throw new BizException(opRsp.getStatus().getMessage());
         }
-        return pollingResponse(opRsp, parser);
+        String name = opRsp.getOperation().getName();
+        if (Objects.nonNull(operationIndex)) {
+            operationIndex.recordCreated(name, req);
+        }
+        Rsp rsp;
+        try {
+            rsp = pollingResponse(opRsp, parser);
+        } catch (BizException | RuntimeException e) {
+            recordPollingFailure(name, e);
+            throw e;
+        }
+        if (Objects.nonNull(operationIndex)) {
+            Status status = getStatus(rsp);
+            operationIndex.recordState(name, StatusHelper.isUploadSuccess(status)
+                    ? OperationIndex.STATE_SUCCEEDED : OperationIndex.STATE_FAILED, status.getMessage());
+        }
+        return rsp;
     }
 
     /**
@@ -137,6 +164,21 @@ public class RequestHelper {
         return rsp;
     }
 
+    /**
+     * Append a new requestId to the options, which overrides the RequestId set by the user.
+     * It is used when one request of user is split into several requests,
+     * every split request must have its own requestId, otherwise the later ones
+     * will be rejected by the server as idempotent request.
+     */
+    public static Option[] withNewRequestId(Option[] opts) {
+        if (Objects.isNull(opts) || opts.length == 0) {
+            return new Option[]{Option.withRequestId(UUID.randomUUID().toString())};
+        }
+        Option[] optsWithRequestId = Arrays.copyOf(opts, opts.length + 1);
+        optsWithRequestId[opts.length] = Option.withRequestId(UUID.randomUUID().toString());
+        return optsWithRequestId;
+    }
+
     private Option[] withRequestId(Option[] opts) {
         Option[] optsWithRequestId;
         if (Objects.isNull(opts)) {
@@ -203,6 +245,7 @@ public class RequestHelper {
             // to confirm whether the data in this request has been successfully imported
             if (StatusHelper.isLossOperation(opRsp.getStatus())) {
                 log.error("[PollingResponse] operation loss, rsp:\n{}", opRsp);
+                recordState(name, OperationIndex.STATE_LOST, opRsp.getStatus().getMessage());
                 throw new BizException("operation loss, please feedback to bytedance");
             }
             Operation operation = opRsp.getOperation();
@@ -219,9 +262,28 @@ public class RequestHelper {
             }
         } while (LocalTime.now().isBefore(endTime));
         log.error("[PollingResponse] timeout after {}", POLLING_TIMEOUT);
+        recordState(name, OperationIndex.STATE_TIMEOUT, "polling import result timeout");
         throw new BizException("polling import result timeout");
     }
 
+    private void recordState(String name, String state, String message) {
+        if (Objects.nonNull(operationIndex)) {
+            operationIndex.recordState(name, state, message);
+        }
+    }
+
+    // The lost and timeout are recorded where they are found, any other failure of polling,
+    // such as a BizException of getOperation or a broken response, is recorded as failed
+    private void recordPollingFailure(String name, Exception e) {
+        if (Objects.isNull(operationIndex)) {
+            return;
+        }
+        OperationIndex.Entry entry = operationIndex.get(name);
+        if (Objects.nonNull(entry) && OperationIndex.STATE_CREATED.equals(entry.getState())) {
+            operationIndex.recordState(name, OperationIndex.STATE_FAILED, e.getMessage());
+        }
+    }
+
     private OperationResponse getPollingOperation(String name) throws BizException {
         GetOperationRequest request = GetOperationRequest
                 .newBuilder()
@@ -0,0 +1,223 @@
+package byteplus.example.common;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Split the items of a "Write" or "Import" request into several requests,
+ * and each of them is limited by both item count and payload size.
+ * <p>
+ * The payload size of protobuf items is calculated by "getSerializedSize()",
+ * which is cached by protobuf after the first calculation.
+ * The payload size of map items(general/byteair) is estimated as json.
+ * Item which is larger than the payload limit by itself can never be sent
+ * successfully, so it is reported to the {@link OversizedHandler} and skipped,
+ * instead of failing after a round trip.
+ */
+@Slf4j
+public class RequestSplitter<T> {
+    // Size reserved for the fields of request except items, such as "extra", "date_config"
+    private final static int REQUEST_RESERVED_BYTES = 1024;
+
+    // Max bytes of the tag of a repeated field
+    private final static int FIELD_TAG_BYTES = 2;
+
+    public interface Sizer<T> {
+        int sizeOf(T item);
+    }
+
+    public interface OversizedHandler<T> {
+        void onOversized(int index, T item, int size);
+    }
+
+    private final int maxItemCount;
+
+    private final int maxRequestBytes;
+
+    private final Sizer<T> sizer;
+
+    public RequestSplitter(int maxItemCount, int maxRequestBytes, Sizer<T> sizer) {
+        if (maxItemCount <= 0) {
+            throw new IllegalArgumentException("maxItemCount must be positive");
+        }
+        if (maxRequestBytes <= REQUEST_RESERVED_BYTES) {
+            throw new IllegalArgumentException("maxRequestBytes must be larger than " + REQUEST_RESERVED_BYTES);
+        }
+        this.maxItemCount = maxItemCount;
+        this.maxRequestBytes = maxRequestBytes;
+        this.sizer = sizer;
+    }
+
+    public static <T extends Message> RequestSplitter<T> ofMessage(int maxItemCount, int maxRequestBytes) {
+        return new RequestSplitter<>(maxItemCount, maxRequestBytes, RequestSplitter::messageSize);
+    }
+
+    public static RequestSplitter<Map<String, Object>> ofJsonMap(int maxItemCount, int maxRequestBytes) {
+        return new RequestSplitter<>(maxItemCount, maxRequestBytes, RequestSplitter::estimateJsonSize);
+    }
+
+    public static OversizedHandler<Object> loggingOversizedHandler(String scope) {
+        return (index, item, size) ->
+                log.error("[{}] item is too large to send, index:{} size:{}", scope, index, size);
+    }
+
+    /**
+     * Pack items into chunks in order, every chunk contains at most "maxItemCount" items
+     * and its estimated payload is not larger than "maxRequestBytes".
+     *
+     * @param items            the items of the original request
+     * @param oversizedHandler receive the items which can't be sent in any request
+     * @return chunks of items, the original list is returned directly if no split is needed,
+     * including an empty list, and an empty result only if every item is oversized
+     */
+    public List<List<T>> split(List<T> items, OversizedHandler<? super T> oversizedHandler) {
+        // A request without items, such as an import carrying only "date_config", is kept as it is
+        if (Objects.isNull(items) || items.isEmpty()) {
+            return Collections.singletonList(items);
+        }
+        int itemBytesLimit = maxRequestBytes - REQUEST_RESERVED_BYTES;
+        List<List<T>> chunks = new ArrayList<>();
+        List<T> chunk = new ArrayList<>(Math.min(items.size(), maxItemCount));
+        long chunkBytes = 0;
+        boolean hasOversized = false;
+        for (int i = 0; i < items.size(); i++) {
+            T item = items.get(i);
+            int itemBytes = sizer.sizeOf(item);
+            if (itemBytes > itemBytesLimit) {
+                hasOversized = true;
+                if (Objects.nonNull(oversizedHandler)) {
+                    oversizedHandler.onOversized(i, item, itemBytes);
+                }
+                continue;
+            }
+            if (chunk.size() >= maxItemCount || chunkBytes + itemBytes > itemBytesLimit) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>(Math.min(items.size() - i, maxItemCount));
+                chunkBytes = 0;
+            }
+            chunk.add(item);
+            chunkBytes += itemBytes;
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        if (chunks.isEmpty()) {
+            log.warn("[RequestSplitter] all {} items are oversized, nothing to send", items.size());
+            return Collections.emptyList();
+        }
+        if (chunks.size() == 1 && !hasOversized) {
+            // Nothing changed, keep the original list to avoid copying when rebuilding request
+            return Collections.singletonList(items);
+        }
+        return chunks;
+    }
+
+    /**
+     * Split the items of request, and rebuild a request for every chunk.
+     *
+     * @param request          the original request
+     * @param items            the items contained in the original request
+     * @param rebuilder        build a new request from the original request with part of items
+     * @param oversizedHandler receive the items which can't be sent in any request
+     * @return the split requests, or the original request if no split is needed,
+     * empty if every item is oversized
+     */
+    public <R> List<R> splitRequest(R request, List<T> items,
+                                    Function<List<T>, R> rebuilder,
+                                    OversizedHandler<? super T> oversizedHandler) {
+        List<List<T>> chunks = split(items, oversizedHandler);
+        if (chunks.size() == 1 && chunks.get(0) == items) {
+            return Collections.singletonList(request);
+        }
+        List<R> requests = new ArrayList<>(chunks.size());
+        for (List<T> chunk : chunks) {
+            requests.add(rebuilder.apply(chunk));
+        }
+        return requests;
+    }
+
+    private static int messageSize(Message message) {
+        int size = message.getSerializedSize();
+        return FIELD_TAG_BYTES + CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+    }
+
+    /**
+     * Estimate the utf-8 json size of a map without serializing it.
+     * The estimation is slightly larger than real size for most values.
+     */
+    public static int estimateJsonSize(Map<String, ?> map) {
+        if (Objects.isNull(map)) {
+            return 4;
+        }
+        // "{}" and "," between items
+        int size = 2 + Math.max(map.size() - 1, 0);
+        for (Map.Entry<String, ?> entry : map.entrySet()) {
+            // "key":
+            size += estimateStringSize(entry.getKey()) + 1;
+            size += estimateValueSize(entry.getValue());
+        }
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int estimateValueSize(Object value) {
+        if (Objects.isNull(value)) {
+            return 4;
+        }
+        if (value instanceof CharSequence) {
+            return estimateStringSize((CharSequence) value);
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return String.valueOf(value).length();
+        }
+        if (value instanceof Map) {
+            return estimateJsonSize((Map<String, ?>) value);
+        }
+        if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            int size = 2 + Math.max(collection.size() - 1, 0);
+            for (Object element : collection) {
+                size += estimateValueSize(element);
+            }
+            return size;
+        }
+        if (value instanceof Object[]) {
+            Object[] array = (Object[]) value;
+            int size = 2 + Math.max(array.length - 1, 0);
+            for (Object element : array) {
+                size += estimateValueSize(element);
+            }
+            return size;
+        }
+        return estimateStringSize(String.valueOf(value));
+    }
+
+    private static int estimateStringSize(CharSequence value) {
+        if (Objects.isNull(value)) {
+            return 4;
+        }
+        // Quotes, and at most 3 bytes for one char in utf-8.
+        // Escaped chars are rare, and ignored here
+        int size = 2;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                size += 1;
+            } else if (c < 0x800) {
+                size += 2;
+            } else {
+                size += 3;
+            }
+        }
+        return size;
+    }
+}
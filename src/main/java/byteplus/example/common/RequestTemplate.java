@@ -0,0 +1,88 @@
+package byteplus.example.common;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * An immutable request holding the parts which are the same for many requests,
+ * such as the scene, device and context of a page.
+ * <p>
+ * The template is built once, and every request only sets its own fields on
+ * {@code getTemplate().toBuilder()}, such as user id, size and candidates.
+ * The sub messages of the template are shared by all the requests by reference
+ * instead of being rebuilt, and their serialized sizes are computed only once.
+ * <p>
+ * The template is also kept in serialized bytes. As protobuf merges the fields
+ * of concatenated messages, a request can be serialized by splicing the template
+ * bytes and the bytes of its own fields, without building the whole request.
+ */
+public class RequestTemplate<Req extends Message> {
+    private final Req template;
+
+    private final byte[] templateBytes;
+
+    public RequestTemplate(Req template) {
+        this.template = template;
+        this.templateBytes = template.toByteArray();
+    }
+
+    // Call toBuilder() of the template and set the per-request fields to build a request
+    public Req getTemplate() {
+        return template;
+    }
+
+    /**
+     * Merge the per-request fields into the template. The singular fields of
+     * perRequest override the template, and the repeated fields are appended.
+     * It is for the per-request fields built elsewhere, setting them on
+     * the builder of template directly is cheaper.
+     *
+     * @param perRequest the fields of this request only, such as user id, size and candidates
+     */
+    @SuppressWarnings("unchecked")
+    public Req merge(Req perRequest) {
+        return (Req) template.toBuilder().mergeFrom(perRequest).build();
+    }
+
+    /**
+     * Serialize the request merged by {@link #merge}, without building it.
+     * The result can be sent by a transport which takes raw bytes.
+     */
+    public byte[] mergeBytes(Req perRequest) {
+        int perRequestSize = perRequest.getSerializedSize();
+        byte[] bytes = new byte[templateBytes.length + perRequestSize];
+        System.arraycopy(templateBytes, 0, bytes, 0, templateBytes.length);
+        // The tail of concatenated bytes is parsed as a merge into the head
+        CodedOutputStream output = CodedOutputStream.newInstance(bytes, templateBytes.length, perRequestSize);
+        try {
+            perRequest.writeTo(output);
+        } catch (IOException e) {
+            // Never happens when writing to an array of exact size
+            throw new IllegalStateException(e);
+        }
+        output.checkNoSpaceLeft();
+        return bytes;
+    }
+
+    /**
+     * The templates keyed by scene and device class, or anything that decides the constant parts.
+     * A template is built on its first use.
+     */
+    public static class Cache<Req extends Message> {
+        private final Map<String, RequestTemplate<Req>> templates = new ConcurrentHashMap<>();
+
+        public RequestTemplate<Req> get(String scene, String deviceClass, Supplier<Req> templateBuilder) {
+            String key = scene + "|" + deviceClass;
+            RequestTemplate<Req> template = templates.get(key);
+            if (template != null) {
+                return template;
+            }
+            return templates.computeIfAbsent(key, k -> new RequestTemplate<>(templateBuilder.get()));
+        }
+    }
+}
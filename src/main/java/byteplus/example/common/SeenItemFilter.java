@@ -0,0 +1,331 @@
+package byteplus.example.common;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Remember the items recently shown to every user, so that they can be
+ * filtered out of the next predict results.
+ * <p>
+ * Every user has a rotating Bloom filter of two generations, the items are added
+ * into the current generation, and looked up in both. When a half of the window
+ * passes, the older generation is cleared and becomes the current one, so an item
+ * is remembered for between half a window and a whole window.
+ * <p>
+ * Every user also remembers the last response filtered, as the request id
+ * of the response and which of its first 64 items were seen. When the same response
+ * is filtered again, such as a cached response served for a reload, the same split
+ * is returned, instead of all its items reported as seen.
+ * <p>
+ * The filters are held in one direct buffer out of heap, a user takes
+ * 32 + 2 * bitsPerGeneration / 8 bytes, 288 bytes by default. The users are
+ * hashed into buckets of a few slots, the least recently active user in the
+ * bucket is evicted when the bucket is full, so the memory never grows.
+ * As a Bloom filter, a small ratio of unseen items is reported as seen,
+ * about 2% when a user sees 100 items in half a window by default.
+ */
+public class SeenItemFilter {
+    private final static int DEFAULT_BITS_PER_GENERATION = 1024;
+
+    private final static int DEFAULT_HASH_COUNT = 4;
+
+    private final static int BUCKET_SLOT_COUNT = 8;
+
+    private final static int LOCK_COUNT = 256;
+
+    // Only the first items of a response are remembered in the seen mask
+    private final static int MASK_ITEM_COUNT = 64;
+
+    // Slot layout: user hash(8 bytes), generation number(8 bytes), last response hash(8 bytes),
+    // seen mask of last response(8 bytes), two generations of bits
+    private final static int USER_HASH_OFFSET = 0;
+
+    private final static int GENERATION_OFFSET = 8;
+
+    private final static int RESPONSE_HASH_OFFSET = 16;
+
+    private final static int SEEN_MASK_OFFSET = 24;
+
+    private final static int BITS_OFFSET = 32;
+
+    private final int bitsPerGeneration;
+
+    private final int generationBytes;
+
+    private final int hashCount;
+
+    private final int slotBytes;
+
+    private final int bucketCount;
+
+    private final long generationMillis;
+
+    private final ByteBuffer buffer;
+
+    private final Object[] locks = new Object[LOCK_COUNT];
+
+    private final LongAdder seenCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * @param maxUserCount the max count of users remembered at the same time
+     * @param window       the time an item is remembered at most
+     */
+    public SeenItemFilter(int maxUserCount, Duration window) {
+        this(maxUserCount, window, DEFAULT_BITS_PER_GENERATION, DEFAULT_HASH_COUNT);
+    }
+
+    /**
+     * @param bitsPerGeneration the bits of one generation of a user, rounded up to a multiple of 64
+     * @param hashCount         the count of bits set for an item
+     */
+    public SeenItemFilter(int maxUserCount, Duration window, int bitsPerGeneration, int hashCount) {
+        this.bitsPerGeneration = (bitsPerGeneration + 63) / 64 * 64;
+        this.generationBytes = this.bitsPerGeneration / 8;
+        this.hashCount = hashCount;
+        this.slotBytes = BITS_OFFSET + 2 * generationBytes;
+        this.bucketCount = Math.max(1, (maxUserCount + BUCKET_SLOT_COUNT - 1) / BUCKET_SLOT_COUNT);
+        this.generationMillis = Math.max(1, window.toMillis() / 2);
+        long totalBytes = (long) bucketCount * BUCKET_SLOT_COUNT * slotBytes;
+        if (totalBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many users, the filters exceed 2GB: " + totalBytes);
+        }
+        this.buffer = ByteBuffer.allocateDirect((int) totalBytes);
+        for (int i = 0; i < LOCK_COUNT; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Split the items of a response into the ones not seen by user and the ones seen recently.
+     * The unseen items are recorded as seen, since they are going to be shown.
+     * The same response filtered again gets the same split, so a cached response
+     * can be served again without being emptied by its own items.
+     *
+     * @param userId     the user the items are shown to
+     * @param responseId the request id of the predict response
+     * @param items      the items in the order of predict result
+     * @param idGetter   get item id from item
+     */
+    public <T> Result<T> filter(String userId, String responseId, List<T> items, Function<T, String> idGetter) {
+        if (items.isEmpty()) {
+            return new Result<>(Collections.emptyList(), Collections.emptyList());
+        }
+        List<T> unseen = new ArrayList<>(items.size());
+        List<T> seen = new ArrayList<>();
+        long userHash = userHash(userId);
+        long responseHash = HashHelper.hash64(responseId);
+        int bucket = bucket(userHash);
+        synchronized (lock(bucket)) {
+            int slot = findOrCreateSlot(bucket, userHash);
+            boolean served = buffer.getLong(slot + RESPONSE_HASH_OFFSET) == responseHash;
+            long seenMask = served ? buffer.getLong(slot + SEEN_MASK_OFFSET) : 0;
+            for (int i = 0; i < items.size(); i++) {
+                T item = items.get(i);
+                long itemHash = HashHelper.hash64(idGetter.apply(item));
+                boolean isSeen;
+                if (served && i < MASK_ITEM_COUNT) {
+                    isSeen = (seenMask & (1L << i)) != 0;
+                } else {
+                    isSeen = mightContain(slot, itemHash);
+                }
+                if (isSeen) {
+                    seen.add(item);
+                    if (!served && i < MASK_ITEM_COUNT) {
+                        seenMask |= 1L << i;
+                    }
+                    continue;
+                }
+                unseen.add(item);
+                add(slot, itemHash);
+            }
+            buffer.putLong(slot + RESPONSE_HASH_OFFSET, responseHash);
+            buffer.putLong(slot + SEEN_MASK_OFFSET, seenMask);
+        }
+        seenCount.add(seen.size());
+        return new Result<>(unseen, seen);
+    }
+
+    // Record the items shown to user by other ways, such as the items inserted by yourself
+    public void markSeen(String userId, Collection<String> itemIds) {
+        long userHash = userHash(userId);
+        int bucket = bucket(userHash);
+        synchronized (lock(bucket)) {
+            int slot = findOrCreateSlot(bucket, userHash);
+            for (String itemId : itemIds) {
+                add(slot, HashHelper.hash64(itemId));
+            }
+        }
+    }
+
+    public boolean mightHaveSeen(String userId, String itemId) {
+        long userHash = userHash(userId);
+        int bucket = bucket(userHash);
+        synchronized (lock(bucket)) {
+            int slot = findSlot(bucket, userHash);
+            return slot >= 0 && mightContain(slot, HashHelper.hash64(itemId));
+        }
+    }
+
+    // The bytes out of heap taken by the filters
+    public long getMemoryBytes() {
+        return buffer.capacity();
+    }
+
+    // The count of items filtered as seen
+    public long getSeenCount() {
+        return seenCount.sum();
+    }
+
+    // The count of users evicted to make room for new users
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    private int findSlot(int bucket, long userHash) {
+        int first = bucket * BUCKET_SLOT_COUNT;
+        for (int i = 0; i < BUCKET_SLOT_COUNT; i++) {
+            int slot = (first + i) * slotBytes;
+            if (buffer.getLong(slot + USER_HASH_OFFSET) == userHash) {
+                rotate(slot);
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int findOrCreateSlot(int bucket, long userHash) {
+        int slot = findSlot(bucket, userHash);
+        if (slot >= 0) {
+            return slot;
+        }
+        // Take an empty slot, or the one accessed least recently
+        int first = bucket * BUCKET_SLOT_COUNT;
+        int victim = -1;
+        long victimGeneration = Long.MAX_VALUE;
+        for (int i = 0; i < BUCKET_SLOT_COUNT; i++) {
+            int candidate = (first + i) * slotBytes;
+            if (buffer.getLong(candidate + USER_HASH_OFFSET) == 0) {
+                victim = candidate;
+                victimGeneration = Long.MAX_VALUE;
+                break;
+            }
+            long generation = buffer.getLong(candidate + GENERATION_OFFSET);
+            if (generation < victimGeneration) {
+                victim = candidate;
+                victimGeneration = generation;
+            }
+        }
+        if (victimGeneration != Long.MAX_VALUE) {
+            evictionCount.increment();
+        }
+        buffer.putLong(victim + USER_HASH_OFFSET, userHash);
+        buffer.putLong(victim + GENERATION_OFFSET, currentGeneration());
+        buffer.putLong(victim + RESPONSE_HASH_OFFSET, 0);
+        buffer.putLong(victim + SEEN_MASK_OFFSET, 0);
+        clearGeneration(victim, 0);
+        clearGeneration(victim, 1);
+        return victim;
+    }
+
+    // Clear the generations older than the window
+    private void rotate(int slot) {
+        long current = currentGeneration();
+        long stored = buffer.getLong(slot + GENERATION_OFFSET);
+        if (stored == current) {
+            return;
+        }
+        if (current - stored == 1) {
+            // The older generation becomes the current one
+            clearGeneration(slot, (int) (current & 1));
+        } else {
+            clearGeneration(slot, 0);
+            clearGeneration(slot, 1);
+        }
+        buffer.putLong(slot + GENERATION_OFFSET, current);
+    }
+
+    private void add(int slot, long itemHash) {
+        int bits = bitsOffset(slot, (int) (currentGeneration() & 1));
+        int h1 = (int) itemHash;
+        int h2 = (int) (itemHash >>> 32) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bitsPerGeneration);
+            int index = bits + (bit >>> 6) * 8;
+            buffer.putLong(index, buffer.getLong(index) | (1L << (bit & 63)));
+        }
+    }
+
+    private boolean mightContain(int slot, long itemHash) {
+        return generationContains(bitsOffset(slot, 0), itemHash) || generationContains(bitsOffset(slot, 1), itemHash);
+    }
+
+    private boolean generationContains(int bits, long itemHash) {
+        int h1 = (int) itemHash;
+        int h2 = (int) (itemHash >>> 32) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bitsPerGeneration);
+            if ((buffer.getLong(bits + (bit >>> 6) * 8) & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void clearGeneration(int slot, int generation) {
+        int bits = bitsOffset(slot, generation);
+        for (int i = 0; i < generationBytes; i += 8) {
+            buffer.putLong(bits + i, 0);
+        }
+    }
+
+    private int bitsOffset(int slot, int generation) {
+        return slot + BITS_OFFSET + generation * generationBytes;
+    }
+
+    private long currentGeneration() {
+        return System.currentTimeMillis() / generationMillis;
+    }
+
+    private int bucket(long userHash) {
+        return (int) Long.remainderUnsigned(HashHelper.mix64(userHash), bucketCount);
+    }
+
+    private Object lock(int bucket) {
+        return locks[bucket % LOCK_COUNT];
+    }
+
+    // Zero marks an empty slot, so it is never used as user hash
+    private static long userHash(String userId) {
+        long hash = HashHelper.hash64(userId);
+        return hash == 0 ? 1 : hash;
+    }
+
+    public static class Result<T> {
+        private final List<T> unseen;
+
+        private final List<T> seen;
+
+        Result(List<T> unseen, List<T> seen) {
+            this.unseen = unseen;
+            this.seen = seen;
+        }
+
+        // The items to show, in the original order
+        public List<T> getUnseen() {
+            return unseen;
+        }
+
+        // The items the user has seen recently
+        public List<T> getSeen() {
+            return seen;
+        }
+    }
+}
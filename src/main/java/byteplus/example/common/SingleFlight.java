@@ -0,0 +1,171 @@
+package byteplus.example.common;
+
+import byteplus.example.common.RequestHelper.Callable;
+import byteplus.sdk.core.BizException;
+import byteplus.sdk.core.NetException;
+import byteplus.sdk.core.Option;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+import com.google.protobuf.UnsafeByteOperations;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesce the identical predict requests which are in flight at the same time.
+ * <p>
+ * The first caller of a request becomes the leader and sends it, the callers
+ * arriving before the leader returns become followers, they wait for and share
+ * the leader's response instead of sending their own. Two requests are identical
+ * when they have the same scene and the same deterministic serialized bytes.
+ * <p>
+ * A follower waits at most until its own deadline, given by its caller on every call,
+ * so a slow leader never holds the followers past their deadlines. The leader itself
+ * is bounded by the timeout in its options.
+ */
+@Slf4j
+public class SingleFlight<Req extends Message, Rsp extends Message> {
+    private final ConcurrentHashMap<Key, CompletableFuture<Rsp>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder leaderCount = new LongAdder();
+
+    private final LongAdder followerCount = new LongAdder();
+
+    private final LongAdder followerTimeoutCount = new LongAdder();
+
+    /**
+     * Wrap the predict api for one caller, so that it can be passed to where a Callable
+     * is needed, such as {@link PredictCache#predict}. Build it for every request, as
+     * the deadline belongs to the caller.
+     *
+     * @param scene         the scene of request
+     * @param callable      the predict api, with the scene bound
+     * @param deadlineNanos the deadline of caller by {@link System#nanoTime()},
+     *                      a follower waits for the leader until it at most
+     */
+    public Callable<Rsp, Req> wrap(String scene, Callable<Rsp, Req> callable, long deadlineNanos) {
+        return (req, opts) -> predictBefore(callable, scene, req, deadlineNanos, opts);
+    }
+
+    /**
+     * @param timeout the max time from now a follower waits for the leader,
+     *                usually the timeout in the options of caller
+     */
+    public Rsp predict(Callable<Rsp, Req> callable, String scene, Req request, Duration timeout, Option... opts)
+            throws BizException, NetException {
+        return predictBefore(callable, scene, request, System.nanoTime() + timeout.toNanos(), opts);
+    }
+
+    private Rsp predictBefore(Callable<Rsp, Req> callable, String scene, Req request, long deadlineNanos,
+                              Option... opts) throws BizException, NetException {
+        Key key = new Key(scene, serialize(request));
+        CompletableFuture<Rsp> future = new CompletableFuture<>();
+        CompletableFuture<Rsp> leaderFuture = inFlight.putIfAbsent(key, future);
+        if (Objects.nonNull(leaderFuture)) {
+            followerCount.increment();
+            return follow(leaderFuture, scene, deadlineNanos);
+        }
+        leaderCount.increment();
+        try {
+            Rsp response = callable.call(request, opts);
+            future.complete(response);
+            return response;
+        } catch (Throwable e) {
+            // Any failure, including an Error, releases the followers at once
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    public long getLeaderCount() {
+        return leaderCount.sum();
+    }
+
+    // The count of requests which share the response of a leader
+    public long getFollowerCount() {
+        return followerCount.sum();
+    }
+
+    public long getFollowerTimeoutCount() {
+        return followerTimeoutCount.sum();
+    }
+
+    private Rsp follow(CompletableFuture<Rsp> leaderFuture, String scene, long deadlineNanos)
+            throws BizException, NetException {
+        try {
+            // A deadline already passed still takes the response if the leader has completed
+            return leaderFuture.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            followerTimeoutCount.increment();
+            log.debug("[SingleFlight] wait leader timeout, scene:{}", scene);
+            throw new NetException("wait for identical in-flight predict timeout");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BizException(e.getMessage());
+        } catch (ExecutionException e) {
+            // Fail in the same way as the leader
+            Throwable cause = e.getCause();
+            if (cause instanceof BizException) {
+                throw (BizException) cause;
+            }
+            if (cause instanceof NetException) {
+                throw (NetException) cause;
+            }
+            throw new BizException(String.valueOf(cause));
+        }
+    }
+
+    private static ByteString serialize(Message request) {
+        byte[] bytes = new byte[request.getSerializedSize()];
+        CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+        // The map fields are serialized in the order of keys,
+        // so two equal requests always have the same bytes
+        output.useDeterministicSerialization();
+        try {
+            request.writeTo(output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return UnsafeByteOperations.unsafeWrap(bytes);
+    }
+
+    private static class Key {
+        private final String scene;
+
+        private final ByteString request;
+
+        Key(String scene, ByteString request) {
+            this.scene = Objects.isNull(scene) ? "" : scene;
+            this.request = request;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return scene.equals(key.scene) && request.equals(key.request);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * scene.hashCode() + request.hashCode();
+        }
+    }
+}
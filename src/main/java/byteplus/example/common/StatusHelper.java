@@ -2,6 +2,10 @@ package byteplus.example.common;
 
 
 import byteplus.sdk.common.protocol.ByteplusCommon.Status;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Message;
+
+import java.util.Objects;
 
 import static byteplus.sdk.core.Constant.STATUS_CODE_IDEMPOTENT;
 import static byteplus.sdk.core.Constant.STATUS_CODE_OPERATION_LOSS;
@@ -26,6 +30,21 @@ public class StatusHelper {
         return code == STATUS_CODE_SUCCESS|| code == HTTP_STATUS_OK;
     }
 
+    /**
+     * Check the response of any vertical, the status is carried by
+     * "status" field in retail/retailv2/media, and by "code" field in general/byteair.
+     */
+    public static boolean isResponseSuccess(Message response) {
+        Integer code = responseCode(response);
+        return code != null && isSuccess(code);
+    }
+
+    // Check the response of any vertical, see isResponseSuccess
+    public static boolean isResponseOverload(Message response) {
+        Integer code = responseCode(response);
+        return code != null && code == STATUS_CODE_TOO_MANY_REQUEST;
+    }
+
     public static boolean isServerOverload(Status status) {
         return status.getCode() == STATUS_CODE_TOO_MANY_REQUEST;
     }
@@ -33,4 +52,48 @@ public class StatusHelper {
     public static boolean isLossOperation(Status status) {
         return status.getCode() == STATUS_CODE_OPERATION_LOSS;
     }
+
+    /**
+     * Set the status of any response, the status is carried by "status" field
+     * in retail/retailv2/media, and by "code" and "message" fields in general/byteair.
+     *
+     * @return null if the response is null or carries no status
+     */
+    public static Message withStatus(Message response, int code, String message) {
+        if (Objects.isNull(response)) {
+            return null;
+        }
+        Message.Builder builder = response.toBuilder();
+        FieldDescriptor statusField = response.getDescriptorForType().findFieldByName("status");
+        if (Objects.nonNull(statusField) && statusField.getType() == FieldDescriptor.Type.MESSAGE) {
+            builder.setField(statusField, Status.newBuilder().setCode(code).setMessage(message).build());
+            return builder.build();
+        }
+        FieldDescriptor codeField = response.getDescriptorForType().findFieldByName("code");
+        if (Objects.isNull(codeField) || codeField.getJavaType() != FieldDescriptor.JavaType.INT) {
+            return null;
+        }
+        builder.setField(codeField, code);
+        FieldDescriptor messageField = response.getDescriptorForType().findFieldByName("message");
+        if (Objects.nonNull(messageField) && messageField.getJavaType() == FieldDescriptor.JavaType.STRING) {
+            builder.setField(messageField, message);
+        }
+        return builder.build();
+    }
+
+    // Return null if the response carries no status
+    private static Integer responseCode(Message response) {
+        FieldDescriptor statusField = response.getDescriptorForType().findFieldByName("status");
+        if (statusField != null && statusField.getType() == FieldDescriptor.Type.MESSAGE) {
+            Object status = response.getField(statusField);
+            if (status instanceof Status) {
+                return ((Status) status).getCode();
+            }
+        }
+        FieldDescriptor codeField = response.getDescriptorForType().findFieldByName("code");
+        if (codeField != null && codeField.getJavaType() == FieldDescriptor.JavaType.INT) {
+            return (Integer) response.getField(codeField);
+        }
+        return null;
+    }
 }
@@ -0,0 +1,117 @@
+package byteplus.example.common;
+
+import java.util.SplittableRandom;
+
+/**
+ * The random values used to build synthetic records, all of them take the random
+ * source from the caller, so the records are reproducible from the seed.
+ */
+public class SyntheticValues {
+    private final static char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * A standard normal value, by the polar method.
+     */
+    public static double gaussian(SplittableRandom random) {
+        while (true) {
+            double x = 2 * random.nextDouble() - 1;
+            double y = 2 * random.nextDouble() - 1;
+            double s = x * x + y * y;
+            if (s > 0 && s < 1) {
+                return x * Math.sqrt(-2 * Math.log(s) / s);
+            }
+        }
+    }
+
+    /**
+     * A log-normal value, such as prices and durations, which are mostly around
+     * the median with a long tail of large values.
+     *
+     * @param sigma the standard deviation of the log of value, larger sigma means longer tail
+     */
+    public static double logNormal(SplittableRandom random, double median, double sigma) {
+        return median * Math.exp(sigma * gaussian(random));
+    }
+
+    /**
+     * An exponential value, such as the gap between two events.
+     */
+    public static double exponential(SplittableRandom random, double mean) {
+        return -mean * Math.log(1 - random.nextDouble());
+    }
+
+    /**
+     * A geometric value in [0, +inf), such as the count of items viewed after the first one.
+     */
+    public static int geometric(SplittableRandom random, double mean) {
+        if (mean <= 0) {
+            return 0;
+        }
+        double p = 1 / (1 + mean);
+        return (int) Math.min(Integer.MAX_VALUE, Math.floor(Math.log(1 - random.nextDouble()) / Math.log(1 - p)));
+    }
+
+    /**
+     * A value in [min, max] rounded to the given decimal digits, such as ratings.
+     */
+    public static double uniform(SplittableRandom random, double min, double max, int digits) {
+        double scale = Math.pow(10, digits);
+        return Math.round((min + random.nextDouble() * (max - min)) * scale) / scale;
+    }
+
+    /**
+     * Pick words from the vocabulary by the sampler, which is created with the size of vocabulary.
+     */
+    public static String words(SplittableRandom random, ZipfSampler sampler, String[] vocabulary,
+                               int count, String separator) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(separator);
+            }
+            builder.append(vocabulary[(int) sampler.sample(random)]);
+        }
+        return builder.toString();
+    }
+
+    public static String hex(SplittableRandom random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = HEX_DIGITS[random.nextInt(HEX_DIGITS.length)];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Pick a value with the given weights, such as genders and platforms,
+     * the weights don't need to sum to 1.
+     */
+    public static class Choice {
+        private final String[] values;
+
+        private final double[] cumulativeWeights;
+
+        public Choice(String[] values, double[] weights) {
+            if (values.length == 0 || values.length != weights.length) {
+                throw new IllegalArgumentException("values and weights must be non-empty and have the same length");
+            }
+            this.values = values;
+            this.cumulativeWeights = new double[weights.length];
+            double sum = 0;
+            for (int i = 0; i < weights.length; i++) {
+                sum += weights[i];
+                cumulativeWeights[i] = sum;
+            }
+        }
+
+        public String pick(SplittableRandom random) {
+            double target = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+            for (int i = 0; i < cumulativeWeights.length - 1; i++) {
+                if (target < cumulativeWeights[i]) {
+                    return values[i];
+                }
+            }
+            return values[values.length - 1];
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package byteplus.example.common;
+
+import byteplus.example.common.PartialFailureHelper.RejectSink;
+import com.alibaba.fastjson.JSON;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Check the items on client before they are sent, so that the bad ones are found
+ * without a round trip, and they never make the whole request or import operation fail.
+ * <p>
+ * A {@link Schema} is a list of rules for one entity type, such as required fields,
+ * value types, timestamps in seconds, and fields embedding json.
+ * Items of a large request are checked in parallel by a fork-join pool,
+ * the valid items keep their order, and the invalid ones are diverted to a
+ * {@link RejectSink} with the reason.
+ */
+@Slf4j
+public class ValidationHelper {
+    // Lists smaller than this are checked in caller thread,
+    // the cost of forking is larger than checking them
+    private final static int PARALLEL_THRESHOLD = 1024;
+
+    // Each fork-join task checks at most this count of items
+    private final static int TASK_ITEM_COUNT = 512;
+
+    // Timestamps larger than this are regarded as milliseconds,
+    // 10^10 seconds is in year 2286
+    private final static long MAX_SECOND_TIMESTAMP = 10_000_000_000L;
+
+    private final static ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    public interface Rule<T> {
+        // Return the reason if the item is invalid, otherwise return null
+        String check(T item);
+    }
+
+    /**
+     * The rules of one entity type, rules are checked in the order they are added.
+     */
+    public static class Schema<T> {
+        private final String entity;
+
+        private final List<Rule<? super T>> rules = new ArrayList<>();
+
+        public Schema(String entity) {
+            this.entity = entity;
+        }
+
+        public String getEntity() {
+            return entity;
+        }
+
+        public Schema<T> rule(Rule<? super T> rule) {
+            rules.add(rule);
+            return this;
+        }
+
+        public Schema<T> required(String field, Function<T, String> getter) {
+            return rule(item -> isEmpty(getter.apply(item)) ? field + " is required" : null);
+        }
+
+        // The timestamp must be in seconds, 0 means not set
+        public Schema<T> timestamp(String field, ToLongFunction<T> getter, boolean required) {
+            return rule(item -> checkTimestamp(field, getter.applyAsLong(item), required));
+        }
+
+        // The field is a json array string, empty means not set
+        public Schema<T> jsonArray(String field, Function<T, String> getter, boolean required) {
+            return rule(item -> checkJson(field, getter.apply(item), required, true));
+        }
+
+        // The field is a json object string, empty means not set
+        public Schema<T> jsonObject(String field, Function<T, String> getter, boolean required) {
+            return rule(item -> checkJson(field, getter.apply(item), required, false));
+        }
+
+        /**
+         * @return the reason of the first violated rule, or null if the item is valid
+         */
+        public String check(T item) {
+            if (Objects.isNull(item)) {
+                return entity + " is null";
+            }
+            for (Rule<? super T> rule : rules) {
+                String reason;
+                try {
+                    reason = rule.check(item);
+                } catch (RuntimeException e) {
+                    reason = "check fail, " + e;
+                }
+                if (Objects.nonNull(reason)) {
+                    return entity + " invalid, " + reason;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Rules of the json map data used by general/byteair, where the value types
+     * are not guaranteed by protobuf, and must be checked one by one.
+     */
+    public static class MapSchema extends Schema<Map<String, Object>> {
+        public MapSchema(String entity) {
+            super(entity);
+        }
+
+        public MapSchema requiredString(String key) {
+            rule(data -> {
+                Object value = data.get(key);
+                if (Objects.isNull(value)) {
+                    return key + " is required";
+                }
+                if (!(value instanceof CharSequence)) {
+                    return key + " should be string, but is " + value.getClass().getSimpleName();
+                }
+                return isEmpty((CharSequence) value) ? key + " is required" : null;
+            });
+            return this;
+        }
+
+        public MapSchema integer(String key, boolean required) {
+            rule(data -> {
+                Object value = data.get(key);
+                if (Objects.isNull(value)) {
+                    return required ? key + " is required" : null;
+                }
+                return isInteger(value) ? null
+                        : key + " should be integer, but is " + value.getClass().getSimpleName();
+            });
+            return this;
+        }
+
+        public MapSchema timestamp(String key, boolean required) {
+            rule(data -> {
+                Object value = data.get(key);
+                if (Objects.isNull(value)) {
+                    return required ? key + " is required" : null;
+                }
+                if (!isInteger(value)) {
+                    return key + " should be integer, but is " + value.getClass().getSimpleName();
+                }
+                return checkTimestamp(key, ((Number) value).longValue(), required);
+            });
+            return this;
+        }
+
+        public MapSchema jsonObject(String key, boolean required) {
+            rule(data -> checkJsonValue(key, data.get(key), required, false));
+            return this;
+        }
+
+        public MapSchema jsonArray(String key, boolean required) {
+            rule(data -> checkJsonValue(key, data.get(key), required, true));
+            return this;
+        }
+    }
+
+    /**
+     * Check the items with schema, and divert the invalid ones to rejectSink.
+     *
+     * @param items      the items need to check
+     * @param schema     the rules of items
+     * @param rejectSink receive the invalid items and the reasons
+     * @return the valid items in the original order,
+     * the original list is returned directly if all of them are valid
+     */
+    public static <T> List<T> filterValid(List<T> items, Schema<? super T> schema,
+                                          RejectSink<? super T> rejectSink) {
+        if (Objects.isNull(items) || items.isEmpty() || Objects.isNull(schema)) {
+            return items;
+        }
+        String[] reasons = new String[items.size()];
+        if (items.size() < PARALLEL_THRESHOLD) {
+            new CheckTask<>(items, schema, reasons, 0, items.size()).compute();
+        } else {
+            POOL.invoke(new CheckTask<>(items, schema, reasons, 0, items.size()));
+        }
+        int invalidCount = 0;
+        for (String reason : reasons) {
+            if (Objects.nonNull(reason)) {
+                invalidCount++;
+            }
+        }
+        if (invalidCount == 0) {
+            return items;
+        }
+        log.warn("[Validation] find {} invalid items of {}", invalidCount, items.size());
+        List<T> validItems = new ArrayList<>(items.size() - invalidCount);
+        for (int i = 0; i < items.size(); i++) {
+            if (Objects.isNull(reasons[i])) {
+                validItems.add(items.get(i));
+            } else {
+                rejectSink.reject(items.get(i), reasons[i]);
+            }
+        }
+        return validItems;
+    }
+
+    private static class CheckTask<T> extends RecursiveAction {
+        private final List<T> items;
+
+        private final Schema<? super T> schema;
+
+        private final String[] reasons;
+
+        private final int from;
+
+        private final int to;
+
+        CheckTask(List<T> items, Schema<? super T> schema, String[] reasons, int from, int to) {
+            this.items = items;
+            this.schema = schema;
+            this.reasons = reasons;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > TASK_ITEM_COUNT && inForkJoinPool()) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new CheckTask<>(items, schema, reasons, from, middle),
+                        new CheckTask<>(items, schema, reasons, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                reasons[i] = check(schema, items.get(i));
+            }
+        }
+
+        // Capture the wildcard, so that the item can be passed to the schema
+        @SuppressWarnings("unchecked")
+        private static <T> String check(Schema<T> schema, Object item) {
+            return schema.check((T) item);
+        }
+    }
+
+    private static boolean isEmpty(CharSequence value) {
+        return Objects.isNull(value) || value.length() == 0;
+    }
+
+    private static boolean isInteger(Object value) {
+        return value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte;
+    }
+
+    private static String checkTimestamp(String field, long timestamp, boolean required) {
+        if (timestamp == 0) {
+            return required ? field + " is required" : null;
+        }
+        if (timestamp < 0) {
+            return field + " should be positive";
+        }
+        if (timestamp > MAX_SECOND_TIMESTAMP) {
+            return field + " should be in seconds, but looks like milliseconds";
+        }
+        return null;
+    }
+
+    private static String checkJsonValue(String field, Object value, boolean required, boolean isArray) {
+        if (Objects.nonNull(value) && !(value instanceof CharSequence)) {
+            return field + " should be json string, but is " + value.getClass().getSimpleName();
+        }
+        return checkJson(field, (CharSequence) value, required, isArray);
+    }
+
+    private static String checkJson(String field, CharSequence value, boolean required, boolean isArray) {
+        if (isEmpty(value)) {
+            return required ? field + " is required" : null;
+        }
+        String json = value.toString();
+        boolean valid = isArray ? JSON.isValidArray(json) : JSON.isValidObject(json);
+        if (valid) {
+            return null;
+        }
+        return field + " should be json " + (isArray ? "array" : "object");
+    }
+}
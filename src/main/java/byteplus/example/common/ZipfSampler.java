@@ -0,0 +1,100 @@
+package byteplus.example.common;
+
+import java.util.SplittableRandom;
+
+/**
+ * Sample ranks from a Zipf distribution, rank k in [0, n) is picked with the
+ * probability proportional to 1 / (k + 1)^exponent, so a few items take most of
+ * the traffic and a long tail of items is seen rarely, as in the real catalogs.
+ * <p>
+ * It uses rejection-inversion sampling (W. Hormann and G. Derflinger, 1996),
+ * which needs no table, so it works for hundreds of millions of items, and takes
+ * about one or two random numbers per sample. It is immutable and thread safe,
+ * the random source is passed by the caller.
+ */
+public class ZipfSampler {
+    private final long n;
+
+    private final double exponent;
+
+    private final double hIntegralX1;
+
+    private final double hIntegralN;
+
+    private final double s;
+
+    /**
+     * @param n        the count of ranks, such as the count of products
+     * @param exponent larger exponent means more skewed, around 1 for the popularity of items
+     */
+    public ZipfSampler(long n, double exponent) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive");
+        }
+        if (exponent <= 0) {
+            throw new IllegalArgumentException("exponent must be positive");
+        }
+        this.n = n;
+        this.exponent = exponent;
+        this.hIntegralX1 = hIntegral(1.5) - 1;
+        this.hIntegralN = hIntegral(n + 0.5);
+        this.s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+    public long getN() {
+        return n;
+    }
+
+    /**
+     * @return the rank in [0, n), 0 is the most popular
+     */
+    public long sample(SplittableRandom random) {
+        while (true) {
+            double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+            double x = hIntegralInverse(u);
+            long k = (long) (x + 0.5);
+            if (k < 1) {
+                k = 1;
+            } else if (k > n) {
+                k = n;
+            }
+            if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                return k - 1;
+            }
+        }
+    }
+
+    private double h(double x) {
+        return Math.exp(-exponent * Math.log(x));
+    }
+
+    private double hIntegral(double x) {
+        double logX = Math.log(x);
+        return helper2((1 - exponent) * logX) * logX;
+    }
+
+    private double hIntegralInverse(double x) {
+        double t = x * (1 - exponent);
+        if (t < -1) {
+            // Limit the value to the domain of log1p, it is only reached by rounding errors
+            t = -1;
+        }
+        return Math.exp(helper1(t) * x);
+    }
+
+    // log(1 + x) / x, and its limit 1 when x is close to 0
+    private static double helper1(double x) {
+        if (Math.abs(x) > 1e-8) {
+            return Math.log1p(x) / x;
+        }
+        return 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+    }
+
+    // (exp(x) - 1) / x, and its limit 1 when x is close to 0
+    private static double helper2(double x) {
+        if (Math.abs(x) > 1e-8) {
+            return Math.expm1(x) / x;
+        }
+        return 1 + x * 0.5 * (1 + x * 1.0 / 3 * (1 + 0.25 * x));
+    }
+}
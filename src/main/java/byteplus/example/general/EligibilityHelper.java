@@ -0,0 +1,88 @@
+package byteplus.example.general;
+
+import byteplus.example.common.EligibilityIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keep the {@link EligibilityIndex} of items, so that the candidates out of stock,
+ * not sold in the user's region, or not recommendable are pruned before predict.
+ * <p>
+ * The attributes are read from the fields of item data with the same names,
+ * a field can be a single value or a list of values.
+ */
+public class EligibilityHelper {
+    // Only the data of this topic are items
+    public final static String ITEM_TOPIC = "product";
+
+    public final static String ATTRIBUTE_RECOMMENDABLE = "is_recommendable";
+
+    public final static String ATTRIBUTE_IN_STOCK = "in_stock";
+
+    public final static String ATTRIBUTE_REGION = "region";
+
+    public final static String ATTRIBUTE_CATEGORY = "category";
+
+    private final static String ITEM_ID_KEY = "product_id";
+
+    private final static List<String> ATTRIBUTES = Arrays.asList(
+            ATTRIBUTE_RECOMMENDABLE, ATTRIBUTE_IN_STOCK, ATTRIBUTE_REGION, ATTRIBUTE_CATEGORY);
+
+    // Feed the index with the item data which are written successfully,
+    // the data of other topics are ignored
+    public static void recordData(EligibilityIndex index, String topic, List<Map<String, Object>> dataList) {
+        if (!ITEM_TOPIC.equals(topic)) {
+            return;
+        }
+        for (Map<String, Object> data : dataList) {
+            Object itemId = data.get(ITEM_ID_KEY);
+            if (itemId == null) {
+                continue;
+            }
+            index.update(itemId.toString(), dataAttributes(data));
+        }
+    }
+
+    public static Map<String, Collection<String>> dataAttributes(Map<String, Object> data) {
+        Map<String, Collection<String>> attributes = new HashMap<>();
+        for (String attribute : ATTRIBUTES) {
+            Object value = data.get(attribute);
+            if (value != null) {
+                attributes.put(attribute, stringValues(value));
+            }
+        }
+        return attributes;
+    }
+
+    // The attributes required for the items shown to a user in the region
+    public static Map<String, Collection<String>> sellableIn(String region) {
+        Map<String, Collection<String>> required = new HashMap<>();
+        // The flag may be written as number or boolean
+        required.put(ATTRIBUTE_RECOMMENDABLE, Arrays.asList("1", "true"));
+        required.put(ATTRIBUTE_IN_STOCK, Arrays.asList("1", "true"));
+        required.put(ATTRIBUTE_REGION, Collections.singletonList(region));
+        return required;
+    }
+
+    private static Collection<String> stringValues(Object value) {
+        if (value instanceof Object[]) {
+            value = Arrays.asList((Object[]) value);
+        }
+        if (!(value instanceof Collection)) {
+            return Collections.singletonList(value.toString());
+        }
+        List<String> values = new ArrayList<>();
+        for (Object element : (Collection<?>) value) {
+            if (element != null) {
+                values.add(element.toString());
+            }
+        }
+        return values;
+    }
+}
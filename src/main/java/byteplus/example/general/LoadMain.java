@@ -0,0 +1,165 @@
+package byteplus.example.general;
+
+import byteplus.example.common.FaultInjector;
+import byteplus.example.common.LoadGenerator;
+import byteplus.example.common.MockServer;
+import byteplus.example.common.RequestHelper;
+import byteplus.sdk.core.Option;
+import byteplus.sdk.core.Region;
+import byteplus.sdk.general.GeneralClient;
+import byteplus.sdk.general.GeneralClientBuilder;
+import byteplus.sdk.general.protocol.ByteplusGeneral.CallbackItem;
+import byteplus.sdk.general.protocol.ByteplusGeneral.CallbackRequest;
+import byteplus.sdk.general.protocol.ByteplusGeneral.PredictCandidateItem;
+import byteplus.sdk.general.protocol.ByteplusGeneral.PredictRequest;
+import byteplus.sdk.general.protocol.ByteplusGeneral.PredictUser;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Drive the general apis at a fixed rate with {@link LoadGenerator}, such as:
+ * <pre>
+ *     --rate 500 --duration 60 --mix write=70,predict=20,callback=10 --batch 100 --topic user
+ * </pre>
+ * The actions are "write", "import" (the data of "--topic"), "predict" and "callback".
+ * Only the request creating the import operation is measured, the operation is not polled.
+ * <p>
+ * With "--mock", the requests are answered by an embedded {@link MockServer} instead
+ * of the real endpoints, the latency of it is set by "--mock_median_ms" and "--mock_p99_ms".
+ * With "--faults", such as "overload=0.05,net_exception=0.01", the failures are injected
+ * into the client by {@link FaultInjector}, and with "--retry 2" the requests are retried by
+ * {@link RequestHelper}, so the goodput and latency under failures are measured.
+ */
+@Slf4j
+public class LoadMain {
+    private final static String DEFAULT_MIX = "write=70,predict=20,callback=10";
+
+    // The count of data in a write or import request
+    private final static int DEFAULT_BATCH_SIZE = 10;
+
+    private final static String DEFAULT_TOPIC = "user";
+
+    private final static Duration DEFAULT_TIMEOUT = Duration.ofMillis(800);
+
+    private final static String PREDICT_SCENE = "home";
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> arguments = LoadGenerator.parseArguments(args);
+        MockServer mockServer = null;
+        if (arguments.containsKey("mock")) {
+            mockServer = MockServer.builder(MockServerHelper.vertical())
+                    .latency(Duration.ofMillis(Long.parseLong(arguments.getOrDefault("mock_median_ms", "20"))),
+                            Duration.ofMillis(Long.parseLong(arguments.getOrDefault("mock_p99_ms", "100"))))
+                    .build()
+                    .start();
+        }
+        try {
+            GeneralClient client = buildClient(mockServer);
+            if (Objects.nonNull(mockServer)) {
+                // Fail fast if a URL built by sdk is answered as another action
+                List<String> mismatches = mockServer.checkRoutes(MockServerHelper.routeCalls(client));
+                if (!mismatches.isEmpty()) {
+                    throw new IllegalStateException("mock server routes mismatch: " + mismatches);
+                }
+            }
+            FaultInjector faultInjector = FaultInjector.fromArguments(arguments);
+            if (Objects.nonNull(faultInjector)) {
+                client = faultInjector.wrapClient(GeneralClient.class, client);
+            }
+            // The requests are retried by RequestHelper only with "--retry"
+            RequestHelper requestHelper = arguments.containsKey("retry") ? new RequestHelper(client) : null;
+            int retryTimes = Integer.parseInt(arguments.getOrDefault("retry", "0"));
+            int batchSize = Integer.parseInt(arguments.getOrDefault("batch", String.valueOf(DEFAULT_BATCH_SIZE)));
+            String topic = arguments.getOrDefault("topic", DEFAULT_TOPIC);
+            LoadGenerator.Builder builder = LoadGenerator.builder().arguments(arguments);
+            Map<String, Integer> mix = LoadGenerator.parseMix(arguments.getOrDefault("mix", DEFAULT_MIX));
+            for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+                builder.action(entry.getKey(), entry.getValue(),
+                        action(client, requestHelper, retryTimes, entry.getKey(), topic, batchSize));
+            }
+            builder.build().run();
+            if (Objects.nonNull(faultInjector)) {
+                log.info("[LoadMain] injected faults:{}", faultInjector.getInjectedCounts());
+            }
+        } finally {
+            if (Objects.nonNull(mockServer)) {
+                mockServer.close();
+            }
+        }
+    }
+
+    private static GeneralClient buildClient(MockServer mockServer) {
+        GeneralClientBuilder builder = new GeneralClientBuilder()
+                .tenant(Main.TENANT)
+                .tenantId(Main.TENANT_ID)
+                .token(Main.TOKEN)
+                .region(Region.CN);
+        if (Objects.nonNull(mockServer)) {
+            builder.schema("http").hosts(Collections.singletonList(mockServer.getHost()));
+        }
+        return builder.build();
+    }
+
+    // The request of every action is built once, only the request id is new for every call
+    private static LoadGenerator.Action action(GeneralClient client, RequestHelper requestHelper, int retryTimes,
+                                                String name, String topic, int batchSize) {
+        switch (name) {
+            case "write":
+                List<Map<String, Object>> writeDataList = MockHelper.mockDataList(batchSize);
+                return LoadGenerator.call(requestHelper, retryTimes,
+                        (request, opts) -> client.writeData(request, topic, opts),
+                        writeDataList, LoadMain::options);
+            case "import":
+                List<Map<String, Object>> importDataList = MockHelper.mockDataList(batchSize);
+                return LoadGenerator.call(requestHelper, retryTimes,
+                        (request, opts) -> client.importData(request, topic, opts),
+                        importDataList, LoadMain::options);
+            case "predict":
+                PredictRequest predictRequest = buildPredictRequest();
+                return LoadGenerator.call(requestHelper, retryTimes,
+                        (request, opts) -> client.predict(request, PREDICT_SCENE, opts),
+                        predictRequest, LoadMain::options);
+            case "callback":
+                CallbackRequest callbackRequest = buildCallbackRequest();
+                return LoadGenerator.call(requestHelper, retryTimes,
+                        client::callback, callbackRequest, LoadMain::options);
+            default:
+                throw new IllegalArgumentException("unknown action:" + name);
+        }
+    }
+
+    private static PredictRequest buildPredictRequest() {
+        return PredictRequest.newBuilder()
+                .setUser(PredictUser.newBuilder().setUid("uid"))
+                .setSize(20)
+                .addCandidateItems(PredictCandidateItem.newBuilder().setId("item_id"))
+                .build();
+    }
+
+    private static CallbackRequest buildCallbackRequest() {
+        CallbackItem callbackItem = CallbackItem.newBuilder()
+                .setId("item_id")
+                .setPos("1")
+                .build();
+        return CallbackRequest.newBuilder()
+                .setPredictRequestId(UUID.randomUUID().toString())
+                .setUid("uid")
+                .setScene(PREDICT_SCENE)
+                .addItems(callbackItem)
+                .build();
+    }
+
+    // Every call has its own request id, or the server rejects it as idempotent
+    private static Option[] options() {
+        return new Option[]{
+                Option.withRequestId(UUID.randomUUID().toString()),
+                Option.withTimeout(DEFAULT_TIMEOUT),
+        };
+    }
+}
@@ -0,0 +1,39 @@
+package byteplus.example.general;
+
+import byteplus.example.common.ValidationHelper.MapSchema;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The client side rules of the data of each topic, checked before they are sent.
+ * The value types of json data are not guaranteed by the sdk,
+ * so wrong types, such as a string "event_timestamp", are found here
+ * instead of failing on server. Add your own rules if needed.
+ */
+public class SchemaHelper {
+    private final static Map<String, MapSchema> TOPIC_SCHEMAS = new HashMap<>();
+
+    static {
+        TOPIC_SCHEMAS.put("user", new MapSchema("user")
+                .requiredString("user_id")
+                .jsonObject("extra", false));
+
+        TOPIC_SCHEMAS.put("item", new MapSchema("item")
+                .jsonObject("extra", false));
+
+        // "extra" is a json object string, such as {"session_id":"sess_89j9ifuqrbplk0rti2va2k1ha0"}
+        TOPIC_SCHEMAS.put("user_event", new MapSchema("user_event")
+                .requiredString("user_id")
+                .requiredString("event_type")
+                .timestamp("event_timestamp", true)
+                .integer("scene_page_number", false)
+                .integer("scene_offset", false)
+                .jsonObject("extra", false));
+    }
+
+    // Return null if the topic has no rules
+    public static MapSchema ofTopic(String topic) {
+        return TOPIC_SCHEMAS.get(topic);
+    }
+}
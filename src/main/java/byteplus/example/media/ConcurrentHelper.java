@@ -1,9 +1,19 @@
 package byteplus.example.media;
 
+import byteplus.example.common.FingerprintStore;
+import byteplus.example.common.PartialFailureHelper;
+import byteplus.example.common.PartialFailureHelper.RecordingRejectSink;
+import byteplus.example.common.PartialFailureHelper.RejectSink;
+import byteplus.example.common.PopularityModel;
 import byteplus.example.common.RequestHelper;
+import byteplus.example.common.RequestSplitter;
 import byteplus.example.common.StatusHelper;
+import byteplus.example.common.ValidationHelper;
 import byteplus.sdk.core.Option;
 import byteplus.sdk.media.MediaClient;
+import byteplus.sdk.media.protocol.ByteplusMedia.Content;
+import byteplus.sdk.media.protocol.ByteplusMedia.User;
+import byteplus.sdk.media.protocol.ByteplusMedia.UserEvent;
 import byteplus.sdk.media.protocol.ByteplusMedia.WriteUsersRequest;
 import byteplus.sdk.media.protocol.ByteplusMedia.WriteUsersResponse;
 import byteplus.sdk.media.protocol.ByteplusMedia.WriteContentsRequest;
@@ -12,15 +22,22 @@ import byteplus.sdk.media.protocol.ByteplusMedia.WriteUserEventsRequest;
 import byteplus.sdk.media.protocol.ByteplusMedia.WriteUserEventsResponse;
 import byteplus.sdk.media.protocol.ByteplusMedia.AckServerImpressionsRequest;
 import byteplus.sdk.media.protocol.ByteplusMedia.AckServerImpressionsResponse;
+import com.google.protobuf.Message;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.concurrent.ExecutorService;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 @Slf4j
-public class ConcurrentHelper {
+public class ConcurrentHelper implements AutoCloseable {
     private final static int CORE_POOL_SIZE = 5;
 
     private final static int MAX_POOL_SIZE = 7;
@@ -29,9 +46,23 @@ public class ConcurrentHelper {
 
     private final static int MAX_BLOCK_TASK_COUNT = 20;
 
+    // The time close waits for the submitted requests to be sent, including their retries
+    private final static Duration CLOSE_TIMEOUT = Duration.ofSeconds(30);
+
     private final static int RETRY_TIMES = 2;
 
-    private final ExecutorService executor = new ThreadPoolExecutor(
+    // The "WriteXXX" api can transfer max to 2000 items at one request
+    private final static int MAX_WRITE_ITEM_COUNT = 2000;
+
+    // The max payload size of one request, adjust it according to the server limit
+    private final static int MAX_REQUEST_BYTES = 8 * 1024 * 1024;
+
+    // Namespaces of fingerprints, the same id of different entity types are recorded separately
+    private final static String USER_NAMESPACE = "user";
+
+    private final static String CONTENT_NAMESPACE = "content";
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(
             CORE_POOL_SIZE,
             MAX_POOL_SIZE,
             KEEP_ALICE_MINUTES, TimeUnit.MINUTES,
@@ -39,13 +70,111 @@ public class ConcurrentHelper {
             new ThreadPoolExecutor.CallerRunsPolicy()
     );
 
+    // The count of requests skipped as all their items are oversized
+    private final LongAdder oversizedSkipCount = new LongAdder();
+
+    // The count of tasks submitted but not finished, waiting in the queue or running
+    private final AtomicInteger pendingTaskCount = new AtomicInteger();
+
     private final MediaClient client;
 
     private final RequestHelper requestHelper;
 
+    private final PartialFailureHelper partialFailureHelper;
+
+    // Used to drop the unchanged entities before sending, null means change detection is disabled
+    private final FingerprintStore fingerprintStore;
+
+    // Receive the items which are invalid, or still rejected by server after retries
+    private final RejectSink<Object> rejectSink;
+
+    // Fed with the user events written successfully, null means disabled
+    private final PopularityModel popularityModel;
+
     public ConcurrentHelper(MediaClient client) {
+        this(client, null, PartialFailureHelper.loggingRejectSink("AsyncWrite"));
+    }
+
+    // When fingerprintStore is set, the entities which are the same as the ones
+    // written successfully last time will not be sent again
+    public ConcurrentHelper(MediaClient client, FingerprintStore fingerprintStore, RejectSink<Object> rejectSink) {
+        this(client, fingerprintStore, rejectSink, null);
+    }
+
+    // When popularityModel is set, the user events written successfully are recorded
+    // into it, so that it can serve the fallback result when predict fails
+    public ConcurrentHelper(MediaClient client, FingerprintStore fingerprintStore, RejectSink<Object> rejectSink,
+                            PopularityModel popularityModel) {
         this.client = client;
         this.requestHelper = new RequestHelper(client);
+        this.partialFailureHelper = new PartialFailureHelper(requestHelper);
+        this.fingerprintStore = fingerprintStore;
+        this.rejectSink = rejectSink;
+        this.popularityModel = popularityModel;
+    }
+
+    // The count of tasks waiting in the queue of executor, a queue staying full means
+    // the requests are submitted faster than they are sent
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public long getOversizedSkipCount() {
+        return oversizedSkipCount.sum();
+    }
+
+    public int getPendingTaskCount() {
+        return pendingTaskCount.get();
+    }
+
+    /**
+     * Wait for the submitted requests to be sent, including their retries, and keep the
+     * helper usable. A split request is waited for all its parts.
+     *
+     * @return false if some requests are still unsent after the timeout
+     */
+    public boolean awaitIdle(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (pendingTaskCount.get() > 0) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        return true;
+    }
+
+    /**
+     * Stop taking requests and wait for the submitted ones to be sent, then the threads
+     * of executor exit. The requests still unsent after {@link #CLOSE_TIMEOUT} are cancelled,
+     * and the requests submitted after closing are dropped.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("[ConcurrentHelper] {} requests are still unsent after {}, cancel them",
+                        executor.getQueue().size(), CLOSE_TIMEOUT);
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Hand the task to executor, and count it as pending until it finishes,
+    // whether it runs on a thread of executor or on the caller
+    private void execute(Runnable task) {
+        pendingTaskCount.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                pendingTaskCount.decrementAndGet();
+            }
+        });
     }
 
     // Submit tasks.
@@ -54,8 +183,112 @@ public class ConcurrentHelper {
     // Only supported for "import_xxx" and "ack_impressions" request.
     // It is recommended to increase the data amount contained in a single request.
     // It is not recommended to use too many concurrent imports,
-    // which may lead to server overload and limit the flow of the request
+    // which may lead to server overload and limit the flow of the request.
+    // The invalid items are diverted to rejectSink before sending.
+    // The "write_xxx" request is split by item count and payload size
+    // automatically, and every split request is sent with its own request id.
     public void submitRequest(Object request, Option... opts) {
+        request = dropInvalid(request);
+        if (Objects.isNull(request)) {
+            log.warn("[SubmitRequest] all items are invalid, skip request");
+            return;
+        }
+        request = dropUnchanged(request);
+        if (Objects.isNull(request)) {
+            log.info("[SubmitRequest] all entities are unchanged, skip request");
+            return;
+        }
+        List<?> requests = splitRequest(request);
+        if (requests.isEmpty()) {
+            oversizedSkipCount.increment();
+            log.warn("[SubmitRequest] all items are oversized, skip request");
+            return;
+        }
+        if (requests.size() == 1) {
+            execute(buildTask(requests.get(0), opts));
+            return;
+        }
+        log.info("[SubmitRequest] split request into {} requests", requests.size());
+        for (Object splitRequest : requests) {
+            execute(buildTask(splitRequest, RequestHelper.withNewRequestId(opts)));
+        }
+    }
+
+    // Divert the items which can't pass the client side check to rejectSink.
+    // Return null if none of them is valid
+    private Object dropInvalid(Object request) {
+        if (request instanceof WriteUsersRequest) {
+            WriteUsersRequest req = (WriteUsersRequest) request;
+            List<User> all = req.getUsersList();
+            List<User> valid = ValidationHelper.filterValid(all, SchemaHelper.USER, rejectSink);
+            if (valid == all) {
+                return request;
+            }
+            return valid.isEmpty() ? null : req.toBuilder().clearUsers().addAllUsers(valid).build();
+        }
+        if (request instanceof WriteContentsRequest) {
+            WriteContentsRequest req = (WriteContentsRequest) request;
+            List<Content> all = req.getContentsList();
+            List<Content> valid = ValidationHelper.filterValid(all, SchemaHelper.CONTENT, rejectSink);
+            if (valid == all) {
+                return request;
+            }
+            return valid.isEmpty() ? null : req.toBuilder().clearContents().addAllContents(valid).build();
+        }
+        if (request instanceof WriteUserEventsRequest) {
+            WriteUserEventsRequest req = (WriteUserEventsRequest) request;
+            List<UserEvent> all = req.getUserEventsList();
+            List<UserEvent> valid = ValidationHelper.filterValid(all, SchemaHelper.USER_EVENT, rejectSink);
+            if (valid == all) {
+                return request;
+            }
+            return valid.isEmpty() ? null : req.toBuilder().clearUserEvents().addAllUserEvents(valid).build();
+        }
+        return request;
+    }
+
+    // Remove the entities which are unchanged since last successful writing.
+    // Return null if all of them are unchanged
+    private Object dropUnchanged(Object request) {
+        if (Objects.isNull(fingerprintStore)) {
+            return request;
+        }
+        if (request instanceof WriteUsersRequest) {
+            WriteUsersRequest req = (WriteUsersRequest) request;
+            List<User> all = req.getUsersList();
+            List<User> changed = fingerprintStore.filterChanged(USER_NAMESPACE, all, User::getUserId);
+            if (changed.size() == all.size()) {
+                return request;
+            }
+            log.debug("[SubmitRequest] drop {} unchanged users", all.size() - changed.size());
+            return changed.isEmpty() ? null : req.toBuilder().clearUsers().addAllUsers(changed).build();
+        }
+        if (request instanceof WriteContentsRequest) {
+            WriteContentsRequest req = (WriteContentsRequest) request;
+            List<Content> all = req.getContentsList();
+            List<Content> changed = fingerprintStore.filterChanged(CONTENT_NAMESPACE, all, Content::getContentId);
+            if (changed.size() == all.size()) {
+                return request;
+            }
+            log.debug("[SubmitRequest] drop {} unchanged contents", all.size() - changed.size());
+            return changed.isEmpty() ? null : req.toBuilder().clearContents().addAllContents(changed).build();
+        }
+        return request;
+    }
+
+    private <T extends Message> void recordWritten(String namespace, List<T> items, Function<T, String> idGetter) {
+        if (Objects.nonNull(fingerprintStore)) {
+            fingerprintStore.recordAll(namespace, items, idGetter);
+        }
+    }
+
+    private void recordUserEvents(List<UserEvent> userEvents) {
+        if (Objects.nonNull(popularityModel)) {
+            FallbackHelper.recordUserEvents(popularityModel, userEvents);
+        }
+    }
+
+    private Runnable buildTask(Object request, Option[] opts) {
         Runnable run;
         if (request instanceof WriteUsersRequest) {
             run = () -> doWriteUsers((WriteUsersRequest) request, opts);
@@ -68,14 +301,46 @@ public class ConcurrentHelper {
         } else {
             throw new RuntimeException("can't support this request type");
         }
-        executor.execute(run);
+        return run;
+    }
+
+    private List<?> splitRequest(Object request) {
+        if (request instanceof WriteUsersRequest) {
+            WriteUsersRequest req = (WriteUsersRequest) request;
+            return RequestSplitter.<User>ofMessage(MAX_WRITE_ITEM_COUNT, MAX_REQUEST_BYTES).splitRequest(
+                    req, req.getUsersList(),
+                    users -> req.toBuilder().clearUsers().addAllUsers(users).build(),
+                    RequestSplitter.loggingOversizedHandler("AsyncWriteUsers"));
+        }
+        if (request instanceof WriteContentsRequest) {
+            WriteContentsRequest req = (WriteContentsRequest) request;
+            return RequestSplitter.<Content>ofMessage(MAX_WRITE_ITEM_COUNT, MAX_REQUEST_BYTES).splitRequest(
+                    req, req.getContentsList(),
+                    contents -> req.toBuilder().clearContents().addAllContents(contents).build(),
+                    RequestSplitter.loggingOversizedHandler("AsyncWriteContents"));
+        }
+        if (request instanceof WriteUserEventsRequest) {
+            WriteUserEventsRequest req = (WriteUserEventsRequest) request;
+            return RequestSplitter.<UserEvent>ofMessage(MAX_WRITE_ITEM_COUNT, MAX_REQUEST_BYTES).splitRequest(
+                    req, req.getUserEventsList(),
+                    userEvents -> req.toBuilder().clearUserEvents().addAllUserEvents(userEvents).build(),
+                    RequestSplitter.loggingOversizedHandler("AsyncWriteUserEvents"));
+        }
+        return Collections.singletonList(request);
     }
 
     private void doWriteUsers(WriteUsersRequest request, Option[] opts) {
         try {
-            WriteUsersResponse response =
-                    requestHelper.doWithRetry(client::writeUsers, request, opts, RETRY_TIMES);
+            RecordingRejectSink<User> recordingSink = new RecordingRejectSink<>(rejectSink);
+            // Only the rejected items are resent when partial failure occurs
+            WriteUsersResponse response = partialFailureHelper.doWrite(
+                    client::writeUsers, request.getUsersList(),
+                    users -> request.toBuilder().clearUsers().addAllUsers(users).build(),
+                    WriteUsersResponse::getErrorsList, PartialFailureHelper.messageMatcher(),
+                    opts, RETRY_TIMES, recordingSink);
             if (StatusHelper.isSuccess(response.getStatus())) {
+                // The items rejected finally are not fingerprinted, so they are sent again next time
+                recordWritten(USER_NAMESPACE, recordingSink.accepted(request.getUsersList()), User::getUserId);
                 log.info("[AsyncWriteUsers] success");
                 return;
             }
@@ -87,9 +352,17 @@ public class ConcurrentHelper {
 
     private void doWriteContents(WriteContentsRequest request, Option[] opts) {
         try {
-            WriteContentsResponse response =
-                    requestHelper.doWithRetry(client::writeContents, request, opts, RETRY_TIMES);
+            RecordingRejectSink<Content> recordingSink = new RecordingRejectSink<>(rejectSink);
+            // Only the rejected items are resent when partial failure occurs
+            WriteContentsResponse response = partialFailureHelper.doWrite(
+                    client::writeContents, request.getContentsList(),
+                    contents -> request.toBuilder().clearContents().addAllContents(contents).build(),
+                    WriteContentsResponse::getErrorsList, PartialFailureHelper.messageMatcher(),
+                    opts, RETRY_TIMES, recordingSink);
             if (StatusHelper.isSuccess(response.getStatus())) {
+                // The items rejected finally are not fingerprinted, so they are sent again next time
+                recordWritten(CONTENT_NAMESPACE, recordingSink.accepted(request.getContentsList()),
+                        Content::getContentId);
                 log.info("[AsyncWriteContents] success");
                 return;
             }
@@ -101,9 +374,14 @@ public class ConcurrentHelper {
 
     private void doWriteUserEvents(WriteUserEventsRequest request, Option[] opts) {
         try {
-            WriteUserEventsResponse response =
-                    requestHelper.doWithRetry(client::writeUserEvents, request, opts, RETRY_TIMES);
+            // Only the rejected items are resent when partial failure occurs
+            WriteUserEventsResponse response = partialFailureHelper.doWrite(
+                    client::writeUserEvents, request.getUserEventsList(),
+                    userEvents -> request.toBuilder().clearUserEvents().addAllUserEvents(userEvents).build(),
+                    WriteUserEventsResponse::getErrorsList, PartialFailureHelper.messageMatcher(),
+                    opts, RETRY_TIMES, rejectSink);
             if (StatusHelper.isSuccess(response.getStatus())) {
+                recordUserEvents(request.getUserEventsList());
                 log.info("[AsyncWriteUserEvents] success");
                 return;
             }
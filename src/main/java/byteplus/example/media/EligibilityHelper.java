@@ -0,0 +1,49 @@
+package byteplus.example.media;
+
+import byteplus.example.common.EligibilityIndex;
+import byteplus.sdk.media.protocol.ByteplusMedia.Content;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keep the {@link EligibilityIndex} of contents, so that the candidates not available
+ * in the user's region, or not recommendable are pruned before predict.
+ */
+public class EligibilityHelper {
+    public final static String ATTRIBUTE_RECOMMENDABLE = "recommendable";
+
+    public final static String ATTRIBUTE_REGION = "region";
+
+    public final static String ATTRIBUTE_CONTENT_TYPE = "content_type";
+
+    // Feed the index with the contents which are written successfully
+    public static void recordContents(EligibilityIndex index, List<Content> contents) {
+        for (Content content : contents) {
+            index.update(content.getContentId(), contentAttributes(content));
+        }
+    }
+
+    public static Map<String, Collection<String>> contentAttributes(Content content) {
+        Map<String, Collection<String>> attributes = new HashMap<>();
+        attributes.put(ATTRIBUTE_RECOMMENDABLE, Collections.singletonList(String.valueOf(content.getIsRecommendable())));
+        if (!content.getContentType().isEmpty()) {
+            attributes.put(ATTRIBUTE_CONTENT_TYPE, Collections.singletonList(content.getContentType()));
+        }
+        if (content.getAvailableRegionCount() > 0) {
+            attributes.put(ATTRIBUTE_REGION, content.getAvailableRegionList());
+        }
+        return attributes;
+    }
+
+    // The attributes required for the contents shown to a user in the region
+    public static Map<String, Collection<String>> availableIn(String region) {
+        Map<String, Collection<String>> required = new HashMap<>();
+        required.put(ATTRIBUTE_RECOMMENDABLE, Collections.singletonList("1"));
+        required.put(ATTRIBUTE_REGION, Collections.singletonList(region));
+        return required;
+    }
+}
@@ -0,0 +1,177 @@
+package byteplus.example.media;
+
+import byteplus.example.common.FaultInjector;
+import byteplus.example.common.LoadGenerator;
+import byteplus.example.common.MockServer;
+import byteplus.example.common.RequestHelper;
+import byteplus.sdk.core.Option;
+import byteplus.sdk.core.Region;
+import byteplus.sdk.media.MediaClient;
+import byteplus.sdk.media.MediaClientBuilder;
+import byteplus.sdk.media.protocol.ByteplusMedia.AckServerImpressionsRequest;
+import byteplus.sdk.media.protocol.ByteplusMedia.AckServerImpressionsRequest.AlteredContent;
+import byteplus.sdk.media.protocol.ByteplusMedia.PredictRequest;
+import byteplus.sdk.media.protocol.ByteplusMedia.WriteContentsRequest;
+import byteplus.sdk.media.protocol.ByteplusMedia.WriteUserEventsRequest;
+import byteplus.sdk.media.protocol.ByteplusMedia.WriteUsersRequest;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Drive the media apis at a fixed rate with {@link LoadGenerator}, such as:
+ * <pre>
+ *     --rate 500 --duration 60 --mix user_events=70,predict=20,ack=10 --batch 100
+ * </pre>
+ * The actions are "users", "contents", "user_events" (write), "predict" and "ack".
+ * <p>
+ * With "--mock", the requests are answered by an embedded {@link MockServer} instead
+ * of the real endpoints, the latency of it is set by "--mock_median_ms" and "--mock_p99_ms".
+ * With "--faults", such as "overload=0.05,net_exception=0.01", the failures are injected
+ * into the client by {@link FaultInjector}, and with "--retry 2" the requests are retried by
+ * {@link RequestHelper}, so the goodput and latency under failures are measured.
+ */
+@Slf4j
+public class LoadMain {
+    private final static String DEFAULT_MIX = "user_events=70,predict=20,ack=10";
+
+    // The count of items in a write or import request
+    private final static int DEFAULT_BATCH_SIZE = 10;
+
+    private final static Duration DEFAULT_TIMEOUT = Duration.ofMillis(800);
+
+    private final static String PREDICT_SCENE = "home";
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> arguments = LoadGenerator.parseArguments(args);
+        MockServer mockServer = null;
+        if (arguments.containsKey("mock")) {
+            mockServer = MockServer.builder(MockServerHelper.vertical())
+                    .latency(Duration.ofMillis(Long.parseLong(arguments.getOrDefault("mock_median_ms", "20"))),
+                            Duration.ofMillis(Long.parseLong(arguments.getOrDefault("mock_p99_ms", "100"))))
+                    .build()
+                    .start();
+        }
+        try {
+            MediaClient client = buildClient(mockServer);
+            if (Objects.nonNull(mockServer)) {
+                // Fail fast if a URL built by sdk is answered as another action
+                List<String> mismatches = mockServer.checkRoutes(MockServerHelper.routeCalls(client));
+                if (!mismatches.isEmpty()) {
+                    throw new IllegalStateException("mock server routes mismatch: " + mismatches);
+                }
+            }
+            FaultInjector faultInjector = FaultInjector.fromArguments(arguments);
+            if (Objects.nonNull(faultInjector)) {
+                client = faultInjector.wrapClient(MediaClient.class, client);
+            }
+            // The requests are retried by RequestHelper only with "--retry"
+            RequestHelper requestHelper = arguments.containsKey("retry") ? new RequestHelper(client) : null;
+            int retryTimes = Integer.parseInt(arguments.getOrDefault("retry", "0"));
+            int batchSize = Integer.parseInt(arguments.getOrDefault("batch", String.valueOf(DEFAULT_BATCH_SIZE)));
+            LoadGenerator.Builder builder = LoadGenerator.builder().arguments(arguments);
+            Map<String, Integer> mix = LoadGenerator.parseMix(arguments.getOrDefault("mix", DEFAULT_MIX));
+            for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+                builder.action(entry.getKey(), entry.getValue(),
+                        action(client, requestHelper, retryTimes, entry.getKey(), batchSize));
+            }
+            builder.build().run();
+            if (Objects.nonNull(faultInjector)) {
+                log.info("[LoadMain] injected faults:{}", faultInjector.getInjectedCounts());
+            }
+        } finally {
+            if (Objects.nonNull(mockServer)) {
+                mockServer.close();
+            }
+        }
+    }
+
+    private static MediaClient buildClient(MockServer mockServer) {
+        MediaClientBuilder builder = new MediaClientBuilder()
+                .tenant(Main.TENANT)
+                .tenantId(Main.TENANT_ID)
+                .token(Main.TOKEN)
+                .region(Region.SG);
+        if (Objects.nonNull(mockServer)) {
+            builder.schema("http").hosts(Collections.singletonList(mockServer.getHost()));
+        }
+        return builder.build();
+    }
+
+    // The request of every action is built once, only the request id is new for every call
+    private static LoadGenerator.Action action(MediaClient client, RequestHelper requestHelper, int retryTimes,
+                                                String name, int batchSize) {
+        switch (name) {
+            case "users":
+                WriteUsersRequest writeUsersRequest = WriteUsersRequest.newBuilder()
+                        .addAllUsers(MockHelper.mockUsers(batchSize))
+                        .build();
+                return LoadGenerator.call(requestHelper, retryTimes,
+                        client::writeUsers, writeUsersRequest, LoadMain::options);
+            case "contents":
+                WriteContentsRequest writeContentsRequest = WriteContentsRequest.newBuilder()
+                        .addAllContents(MockHelper.mockContents(batchSize))
+                        .build();
+                return LoadGenerator.call(requestHelper, retryTimes,
+                        client::writeContents, writeContentsRequest, LoadMain::options);
+            case "user_events":
+                WriteUserEventsRequest writeUserEventsRequest = WriteUserEventsRequest.newBuilder()
+                        .addAllUserEvents(MockHelper.mockUserEvents(batchSize))
+                        .build();
+                return LoadGenerator.call(requestHelper, retryTimes,
+                        client::writeUserEvents, writeUserEventsRequest, LoadMain::options);
+            case "predict":
+                PredictRequest predictRequest = buildPredictRequest();
+                return LoadGenerator.call(requestHelper, retryTimes,
+                        (request, opts) -> client.predict(request, PREDICT_SCENE, opts),
+                        predictRequest, LoadMain::options);
+            case "ack":
+                AckServerImpressionsRequest ackRequest = buildAckRequest();
+                return LoadGenerator.call(requestHelper, retryTimes,
+                        client::ackServerImpressions, ackRequest, LoadMain::options);
+            default:
+                throw new IllegalArgumentException("unknown action:" + name);
+        }
+    }
+
+    private static PredictRequest buildPredictRequest() {
+        PredictRequest.Context context = PredictRequest.Context.newBuilder()
+                .setRootContent(MockHelper.mockContent())
+                .setDevice("android")
+                .setOsType("phone")
+                .build();
+        return PredictRequest.newBuilder()
+                .setUserId("user_id")
+                .setSize(20)
+                .setScene(PredictRequest.Scene.newBuilder().setSceneName(PREDICT_SCENE))
+                .setContext(context)
+                .build();
+    }
+
+    private static AckServerImpressionsRequest buildAckRequest() {
+        AlteredContent alteredContent = AlteredContent.newBuilder()
+                .setAlteredReason("kept")
+                .setContentId("content_id")
+                .setRank(1)
+                .build();
+        return AckServerImpressionsRequest.newBuilder()
+                .setPredictRequestId(UUID.randomUUID().toString())
+                .setUserId("user_id")
+                .setScene(PredictRequest.Scene.newBuilder().setSceneName(PREDICT_SCENE))
+                .addAlteredContents(alteredContent)
+                .build();
+    }
+
+    // Every call has its own request id, or the server rejects it as idempotent
+    private static Option[] options() {
+        return new Option[]{
+                Option.withRequestId(UUID.randomUUID().toString()),
+                Option.withTimeout(DEFAULT_TIMEOUT),
+        };
+    }
+}
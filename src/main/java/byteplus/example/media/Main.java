@@ -1,6 +1,17 @@
 package byteplus.example.media;
 
+import byteplus.example.common.AsyncPredictor;
+import byteplus.example.common.EligibilityIndex;
+import byteplus.example.common.HedgedPredictor;
+import byteplus.example.common.PagePrefetcher;
+import byteplus.example.common.PartialFailureHelper;
+import byteplus.example.common.PopularityModel;
+import byteplus.example.common.PredictCache;
 import byteplus.example.common.RequestHelper;
+import byteplus.example.common.RequestHelper.Callable;
+import byteplus.example.common.RequestTemplate;
+import byteplus.example.common.SeenItemFilter;
+import byteplus.example.common.SingleFlight;
 import byteplus.example.common.StatusHelper;
 import byteplus.sdk.common.protocol.ByteplusCommon;
 import byteplus.sdk.core.BizException;
@@ -28,6 +39,7 @@ import org.jetbrains.annotations.NotNull;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 public class Main {
@@ -35,6 +47,25 @@ public class Main {
 
     private final static ConcurrentHelper concurrentHelper;
 
+    private final static PredictCache<PredictRequest, PredictResponse> predictCache;
+
+    private final static SingleFlight<PredictRequest, PredictResponse> singleFlight;
+
+    private final static HedgedPredictor<PredictRequest, PredictResponse> hedgedPredictor;
+
+    private final static AsyncPredictor<PredictRequest, PredictResponse> asyncPredictor;
+
+    private final static PagePrefetcher<PredictRequest, PredictResponse> pagePrefetcher;
+
+    private final static PopularityModel popularityModel;
+
+    private final static SeenItemFilter seenItemFilter;
+
+    private final static EligibilityIndex eligibilityIndex;
+
+    // The constant parts of predict requests, keyed by scene and device class
+    private final static RequestTemplate.Cache<PredictRequest> predictTemplates = new RequestTemplate.Cache<>();
+
     private final static String DEFAULT_DONE_TOPIC = "user";
 
     private final static Duration DEFAULT_WRITE_TIMEOUT = Duration.ofMillis(800);
@@ -43,6 +74,45 @@ public class Main {
 
     private final static Duration DEFAULT_PREDICT_TIMEOUT = Duration.ofMillis(8000);
 
+    // The max time a page waits for predict result, including the time queued in pool
+    private final static Duration DEFAULT_PREDICT_DEADLINE = Duration.ofMillis(1000);
+
+    // The predict responses are cached per user, scene and request context,
+    // so that the users refreshing a page don't wait for predict every time
+    private final static int PREDICT_CACHE_SIZE = 10000;
+
+    private final static Duration PREDICT_CACHE_TTL = Duration.ofSeconds(30);
+
+    // The stale response is served while refreshing in background
+    private final static Duration PREDICT_CACHE_STALE_WINDOW = Duration.ofMinutes(2);
+
+    // A predict request which hasn't returned after this percentile of recent latency
+    // is hedged by an identical one, at most HEDGE_BUDGET_RATIO extra requests are sent
+    private final static double HEDGE_PERCENTILE = 0.95;
+
+    private final static double HEDGE_BUDGET_RATIO = 0.05;
+
+    // The next page is prefetched while the user is reading the current one,
+    // the prefetch of a session which is idle for this time is dropped
+    private final static Duration PREFETCH_IDLE_TIMEOUT = Duration.ofMinutes(1);
+
+    // The max count of in-flight prefetches, keep it much less than the foreground
+    // predict threads, so that prefetches never slow down the foreground predicts
+    private final static int MAX_CONCURRENT_PREFETCH = 4;
+
+    // The count of pages the user scrolls through in recommendExample
+    private final static int FEED_PAGE_COUNT = 3;
+
+    // The items shown to a user within this window are filtered out of the next predict results
+    private final static Duration SEEN_ITEM_WINDOW = Duration.ofDays(1);
+
+    // The seen items of a user take about 288 bytes out of heap
+    private final static int MAX_SEEN_USER_COUNT = 100000;
+
+    // The popularity of an item halves every half life, so the fallback
+    // result follows the recent trend instead of the all-time best sellers
+    private final static Duration POPULARITY_HALF_LIFE = Duration.ofHours(6);
+
     private final static Duration DEFAULT_ACK_IMPRESSIONS_TIMEOUT = Duration.ofMillis(8000);
 
     // A unique token assigned by bytedance, which is used to
@@ -80,6 +150,20 @@ public class Main {
 //                .pingTimeout(Duration.ofMillis(300))
 //                // The interval for sending ping requests when hostAvailabler sorts the host, default is 1s.
 //                .pingInterval(Duration.ofSeconds(1))
+//                .build();
+
+//        // To try the example without the real endpoints, answer the requests by an embedded
+//        // mock server, and point the client to it by ".schema("http").hosts(...)", such as:
+//        MockServer mockServer = MockServer.builder(MockServerHelper.vertical())
+//                .latency(MockServer.ACTION_PREDICT, Duration.ofMillis(30), Duration.ofMillis(120))
+//                .overloadRate(0.01)
+//                .operationLossRate(0.01)
+//                .build()
+//                .start();
+//        client = new MediaClientBuilder()
+//                ...
+//                .schema("http")
+//                .hosts(Collections.singletonList(mockServer.getHost()))
 //                .build();
 
         client = new MediaClientBuilder()
@@ -92,7 +176,29 @@ public class Main {
 //                .metricsConfig(metricsCfg) // Optional
 //                .hostAvailablerConfig(config) // Optional
                 .build();
-        concurrentHelper = new ConcurrentHelper(client);
+        // To skip the users and contents which are unchanged since last successful upload,
+        // create ConcurrentHelper with a FingerprintStore persisted in local file, such as:
+        // FingerprintStore fingerprintStore = FingerprintStore.open(Paths.get("fingerprints.bin"), 100_000_000L);
+        // concurrentHelper = new ConcurrentHelper(client, fingerprintStore,
+        //         PartialFailureHelper.loggingRejectSink("AsyncWrite"));
+        // The popularity model is fed by the user events written through concurrentHelper,
+        // and serves the fallback result when predict fails or exceeds the deadline.
+        // To warm up right after restart, restore the snapshot saved before exit, such as:
+        // popularityModel.restore(Paths.get("popularity.snapshot"));
+        popularityModel = new PopularityModel(POPULARITY_HALF_LIFE);
+        seenItemFilter = new SeenItemFilter(MAX_SEEN_USER_COUNT, SEEN_ITEM_WINDOW);
+        // The eligibility index is fed by the items written successfully,
+        // and prunes the candidates which can't be shown before predict
+        eligibilityIndex = new EligibilityIndex();
+        concurrentHelper = new ConcurrentHelper(client, null,
+                PartialFailureHelper.loggingRejectSink("AsyncWrite"), popularityModel);
+        predictCache = new PredictCache<>(PREDICT_CACHE_SIZE, PREDICT_CACHE_TTL,
+                PREDICT_CACHE_STALE_WINDOW, PredictRequest::getUserId);
+        singleFlight = new SingleFlight<>();
+        hedgedPredictor = new HedgedPredictor<>(HEDGE_PERCENTILE, HEDGE_BUDGET_RATIO);
+        asyncPredictor = new AsyncPredictor<>();
+        pagePrefetcher = new PagePrefetcher<>(Main::nextPageRequest, PREFETCH_IDLE_TIMEOUT,
+                DEFAULT_PREDICT_TIMEOUT, MAX_CONCURRENT_PREFETCH);
     }
 
     /**
@@ -179,6 +285,7 @@ public class Main {
             return;
         }
         if (StatusHelper.isUploadSuccess(response.getStatus())) {
+            EligibilityHelper.recordContents(eligibilityIndex, request.getContentsList());
             log.info("write content success");
             return;
         }
@@ -258,39 +365,122 @@ public class Main {
 
     public static void recommendExample() {
         PredictRequest predictRequest = buildPredictRequest();
+        if (Objects.isNull(predictRequest)) {
+            log.warn("all candidates are ineligible, serve empty page");
+            return;
+        }
+        // The user scrolls down the feed page by page. The request of a page is built from
+        // the previous one, and served by the prefetch sent when the previous one was served
+        String sessionId = predictRequest.getUserId() + "|home";
+        for (int i = 0; i < FEED_PAGE_COUNT; i++) {
+            if (!serveFeedPage(sessionId, predictRequest)) {
+                break;
+            }
+            predictRequest = nextPageRequest(predictRequest);
+        }
+        // The user leaves the feed, the prefetch of the page never requested is cancelled
+        pagePrefetcher.endSession(sessionId);
+        log.info("prefetch hit:{} miss:{} wasted:{}", pagePrefetcher.getHitCount(),
+                pagePrefetcher.getMissCount(), pagePrefetcher.getWastedCount());
+    }
+
+    // Return false if the page can't be served, the user doesn't scroll further then
+    private static boolean serveFeedPage(String sessionId, PredictRequest predictRequest) {
         Option[] predict_opts = defaultOptions(DEFAULT_PREDICT_TIMEOUT);
         PredictResponse response;
+        // The "home" is scene name, which provided by ByteDance, usually is "home".
+        // The request is sent in background with a hard deadline,
+        // other parts of page can be prepared while waiting for it.
+        // The next page of the same user and scene is prefetched after this page is served
+        CompletableFuture<PredictResponse> future = asyncPredictor.predict(
+                pagePrefetcher.wrap(sessionId, predictCall("home", DEFAULT_PREDICT_DEADLINE)),
+                predictRequest, DEFAULT_PREDICT_DEADLINE,
+                () -> FallbackHelper.fallbackResponse(popularityModel, "home", predictRequest.getSize()),
+                predict_opts);
         try {
-            // The "home" is scene name, which provided by ByteDance, usually is "home"
-            response = client.predict(predictRequest, "home", predict_opts);
+            response = future.join();
         } catch (Exception e) {
             log.error("predict occur error, msg:{}", e.getMessage());
-            return;
+            return false;
         }
         if (!StatusHelper.isSuccess(response.getStatus())) {
             log.error("predict find failure info, msg:{}", response.getStatus());
-            return;
+            return false;
+        }
+        if (FallbackHelper.isFallback(response)) {
+            // The fallback result is not from byteplus, it must not be acked
+            log.warn("predict fail, serve local popular items");
+            return true;
         }
         log.info("predict success");
         // The items, which is eventually shown to user,
         // should send back to Bytedance for deduplication
         List<AckServerImpressionsRequest.AlteredContent> alteredContents =
-                doSomethingWithPredictResult(response.getValue());
+                doSomethingWithPredictResult(predictRequest.getUserId(), response.getRequestId(),
+                        response.getValue());
         AckServerImpressionsRequest ackRequest =
                 buildAckRequest(response.getRequestId(), predictRequest, alteredContents);
         Option[] ack_opts = defaultOptions(DEFAULT_ACK_IMPRESSIONS_TIMEOUT);
         concurrentHelper.submitRequest(ackRequest, ack_opts);
+        return true;
+    }
+
+    // The cached response keeps its own request id, so the ack/callback
+    // built from it still carries the original predict request id.
+    // The identical requests in flight at the same time share one response, and a follower
+    // waits for the leader no longer than its caller does: the request timeout, or the deadline
+    // of caller if it is earlier. The deadline counts from now, so a call is built per request.
+    // A slow request is hedged by a second one with the same request id
+    private static Callable<PredictResponse, PredictRequest> predictCall(String scene, Duration deadline) {
+        Duration wait = deadline.compareTo(DEFAULT_PREDICT_TIMEOUT) < 0 ? deadline : DEFAULT_PREDICT_TIMEOUT;
+        Callable<PredictResponse, PredictRequest> hedgedCall = hedgedPredictor.wrap((r, o) -> client.predict(r, scene, o));
+        Callable<PredictResponse, PredictRequest> singleFlightCall =
+                singleFlight.wrap(scene, hedgedCall, System.nanoTime() + wait.toNanos());
+        return (req, optList) -> predictCache.predict(singleFlightCall, scene, req, optList);
     }
 
+    // The request of the page after the given one, requested when the user scrolls to it,
+    // and prefetched by pagePrefetcher before that
+    private static PredictRequest nextPageRequest(PredictRequest request) {
+        PredictRequest.Scene scene = request.getScene();
+        return request.toBuilder()
+                .setScene(scene.toBuilder()
+                        .setPageNumber(scene.getPageNumber() + 1)
+                        .setOffset(scene.getOffset() + request.getSize()))
+                .build();
+    }
+
+    // Return null if every candidate is pruned as ineligible
     private static PredictRequest buildPredictRequest() {
+        // The candidates which can't be shown to the user are pruned locally,
+        // so that the request is smaller and the server needn't rank them
+        List<String> candidates = Arrays.asList("pid1", "pid2");
+        List<String> candidateIds = eligibilityIndex.prune(candidates,
+                id -> id, EligibilityHelper.availableIn("Singapore"));
+        if (candidateIds.isEmpty() && !candidates.isEmpty()) {
+            // Every candidate is ineligible, a request without candidates would be
+            // ranked from all the items, so it must not be sent
+            return null;
+        }
+        // The scene, device and context are the same for the requests of a page, they are
+        // built once in template, only user id, size and candidates are set per request
+        RequestTemplate<PredictRequest> template =
+                predictTemplates.get("home", "android", () -> buildPredictTemplate("home"));
+        PredictRequest.Builder builder = template.getTemplate().toBuilder()
+                .setUserId("user_id")
+                .setSize(20);
+        builder.getContextBuilder().addAllCandidateContentIds(candidateIds);
+        return builder.build();
+    }
+
+    private static PredictRequest buildPredictTemplate(String sceneName) {
         PredictRequest.Scene scene = PredictRequest.Scene.newBuilder()
-                .setSceneName("home")
+                .setSceneName(sceneName)
                 .build();
 
         Content rootContent = MockHelper.mockContent();
         PredictRequest.Context context = PredictRequest.Context.newBuilder()
                 .setRootContent(rootContent)
-                .addAllCandidateContentIds(Arrays.asList("pid1", "pid2"))
                 .setDevice("android")
                 .setOsType("phone")
                 .setAppVersion("app_version")
@@ -303,8 +493,6 @@ public class Main {
                 .build();
 
         return PredictRequest.newBuilder()
-                .setUserId("user_id")
-                .setSize(20)
                 .setScene(scene)
                 .setContext(context)
                 .putExtra("page_num", "1")
@@ -312,12 +500,25 @@ public class Main {
     }
 
     private static List<AckServerImpressionsRequest.AlteredContent> doSomethingWithPredictResult(
-            PredictResult predictResult) {
+            String userId, String predictRequestId, PredictResult predictResult) {
         // You can handle recommend results here,
         // such as filter, insert other items, sort again, etc.
         // The list of contents finally displayed to user and the filtered contents
         // should be sent back to bytedance for deduplication
-        return conv2AlteredContents(predictResult.getResponseContentsList());
+        // The contents seen by user recently are filtered, and acked as "already_seen"
+        SeenItemFilter.Result<PredictResult.ResponseContent> result = seenItemFilter.filter(userId, predictRequestId,
+                predictResult.getResponseContentsList(), PredictResult.ResponseContent::getContentId);
+        // A cached response served again is filtered by its request id into the same split
+        List<AckServerImpressionsRequest.AlteredContent> alteredContents =
+                new ArrayList<>(conv2AlteredContents(result.getUnseen()));
+        for (PredictResult.ResponseContent content : result.getSeen()) {
+            alteredContents.add(AckServerImpressionsRequest.AlteredContent.newBuilder()
+                    .setAlteredReason("already_seen")
+                    .setContentId(content.getContentId())
+                    .setRank(content.getRank())
+                    .build());
+        }
+        return alteredContents;
     }
 
     @NotNull
@@ -7,14 +7,9 @@ import byteplus.sdk.media.protocol.ByteplusMedia.UserEvent;
 import java.util.*;
 
 public class MockHelper {
+    // Different users with realistic fields, which are the same for every call
     public static List<User> mockUsers(int count) {
-        List<User> users = new ArrayList<>(count);
-        for (int i = 0; i < count; i++) {
-            User user = mockUser();
-            user = user.toBuilder().setUserId(user.getUserId() + i).build();
-            users.add(user);
-        }
-        return users;
+        return SyntheticHelper.defaultHelper().users(0, count);
     }
 
     public static User mockUser() {
@@ -43,13 +38,7 @@ public class MockHelper {
     }
 
     public static List<Content> mockContents(int count) {
-        List<Content> contents = new ArrayList<>(count);
-        for (int i = 0; i < count; i++) {
-            Content content = mockContent();
-            content = content.toBuilder().setContentId(content.getContentId() + i).build();
-            contents.add(content);
-        }
-        return contents;
+        return SyntheticHelper.defaultHelper().contents(0, count);
     }
 
     public static Content mockContent() {
@@ -98,13 +87,9 @@ public class MockHelper {
                 .build();
     }
 
+    // The events of sessions of the synthetic users on the synthetic contents
     public static List<UserEvent> mockUserEvents(int count) {
-        List<UserEvent> userEvents = new ArrayList<>(count);
-        for (int i = 0; i < count; i++) {
-            UserEvent userEvent = mockUserEvent();
-            userEvents.add(userEvent);
-        }
-        return userEvents;
+        return SyntheticHelper.defaultHelper().userEvents(0, count);
     }
 
     public static UserEvent mockUserEvent() {
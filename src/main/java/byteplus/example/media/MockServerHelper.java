@@ -0,0 +1,84 @@
+package byteplus.example.media;
+
+import byteplus.example.common.MockServer;
+import byteplus.sdk.common.protocol.ByteplusCommon.GetOperationRequest;
+import byteplus.sdk.common.protocol.ByteplusCommon.ListOperationsRequest;
+import byteplus.sdk.media.MediaClient;
+import byteplus.sdk.media.protocol.ByteplusMedia.AckServerImpressionsRequest;
+import byteplus.sdk.media.protocol.ByteplusMedia.AckServerImpressionsResponse;
+import byteplus.sdk.media.protocol.ByteplusMedia.PredictRequest;
+import byteplus.sdk.media.protocol.ByteplusMedia.PredictResponse;
+import byteplus.sdk.media.protocol.ByteplusMedia.PredictResult.ResponseContent;
+import byteplus.sdk.media.protocol.ByteplusMedia.PredictResult;
+import byteplus.sdk.media.protocol.ByteplusMedia.WriteContentsResponse;
+import byteplus.sdk.media.protocol.ByteplusMedia.WriteUserEventsResponse;
+import byteplus.sdk.media.protocol.ByteplusMedia.WriteUsersRequest;
+import byteplus.sdk.media.protocol.ByteplusMedia.WriteUsersResponse;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The responses of media answered by {@link MockServer}.
+ */
+public class MockServerHelper {
+    // The name of operation got by the route check, the server answers it as lost
+    private final static String ROUTE_CHECK_OPERATION = "route_check";
+
+    // The count of contents returned when the predict request has no size
+    private final static int DEFAULT_PREDICT_SIZE = 10;
+
+    private final static String MOCK_CONTENT_ID_PREFIX = "mock_content_";
+
+    public static MockServer.Vertical vertical() {
+        return new MockServer.Vertical()
+                .write("users", WriteUsersResponse.getDefaultInstance())
+                .write("contents", WriteContentsResponse.getDefaultInstance())
+                .write("user_events", WriteUserEventsResponse.getDefaultInstance())
+                .predict(PredictResponse.getDefaultInstance(), MockServerHelper::predict)
+                .ack(AckServerImpressionsResponse.getDefaultInstance());
+    }
+
+    /**
+     * A call of every action of media client, used by {@link MockServer#checkRoutes} to find
+     * the URLs built by sdk which don't reach the intended action of the server.
+     */
+    public static Map<String, MockServer.RouteCall> routeCalls(MediaClient client) {
+        Map<String, MockServer.RouteCall> calls = new LinkedHashMap<>();
+        calls.put(MockServer.ACTION_WRITE, () -> client.writeUsers(
+                WriteUsersRequest.newBuilder().addUsers(MockHelper.mockUser()).build()));
+        calls.put(MockServer.ACTION_DONE, () -> client.done(
+                Collections.singletonList(LocalDate.now()), "user"));
+        calls.put(MockServer.ACTION_PREDICT, () -> client.predict(
+                PredictRequest.newBuilder().setUserId("user_id").setSize(1).build(), "home"));
+        calls.put(MockServer.ACTION_ACK, () -> client.ackServerImpressions(
+                AckServerImpressionsRequest.getDefaultInstance()));
+        calls.put(MockServer.ACTION_GET_OPERATION, () -> client.getOperation(
+                GetOperationRequest.newBuilder().setName(ROUTE_CHECK_OPERATION).build()));
+        calls.put(MockServer.ACTION_LIST_OPERATIONS, () -> client.listOperations(
+                ListOperationsRequest.newBuilder().setPageSize(1).build()));
+        return calls;
+    }
+
+    // Rank the candidates in the order of request, or mock contents if there is no candidate
+    private static PredictResponse predict(String scene, byte[] body) throws InvalidProtocolBufferException {
+        PredictRequest request = PredictRequest.parseFrom(body);
+        int size = request.getSize() > 0 ? request.getSize() : DEFAULT_PREDICT_SIZE;
+        List<String> candidates = request.getContext().getCandidateContentIdsList();
+        PredictResult.Builder result = PredictResult.newBuilder();
+        for (int i = 0; i < size; i++) {
+            if (!candidates.isEmpty() && i >= candidates.size()) {
+                break;
+            }
+            String contentId = candidates.isEmpty() ? MOCK_CONTENT_ID_PREFIX + i : candidates.get(i);
+            result.addResponseContents(ResponseContent.newBuilder().setContentId(contentId).setRank(i + 1));
+        }
+        return PredictResponse.newBuilder()
+                .setValue(result)
+                .build();
+    }
+}
@@ -0,0 +1,29 @@
+package byteplus.example.media;
+
+import byteplus.example.common.ValidationHelper.Schema;
+import byteplus.sdk.media.protocol.ByteplusMedia.Content;
+import byteplus.sdk.media.protocol.ByteplusMedia.User;
+import byteplus.sdk.media.protocol.ByteplusMedia.UserEvent;
+
+/**
+ * The client side rules of the entities, checked before they are sent.
+ * Only the rules which surely make the server reject the item are listed here,
+ * add your own rules if needed.
+ */
+public class SchemaHelper {
+    public final static Schema<User> USER = new Schema<User>("user")
+            .required("user_id", User::getUserId)
+            .timestamp("registration_timestamp", User::getRegistrationTimestamp, false);
+
+    // "categories" is a json array string, such as
+    // [{"category_depth":1,"category_nodes":[{"id_or_name":"Movie"}]}]
+    public final static Schema<Content> CONTENT = new Schema<Content>("content")
+            .required("content_id", Content::getContentId)
+            .jsonArray("categories", Content::getCategories, true)
+            .timestamp("publish_timestamp", Content::getPublishTimestamp, false);
+
+    public final static Schema<UserEvent> USER_EVENT = new Schema<UserEvent>("user_event")
+            .required("user_id", UserEvent::getUserId)
+            .required("event_type", UserEvent::getEventType)
+            .timestamp("event_timestamp", UserEvent::getEventTimestamp, true);
+}
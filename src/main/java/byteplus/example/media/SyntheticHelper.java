@@ -0,0 +1,523 @@
+package byteplus.example.media;
+
+import byteplus.example.common.CorpusGenerator;
+import byteplus.example.common.SyntheticValues;
+import byteplus.example.common.SyntheticValues.Choice;
+import byteplus.example.common.ZipfSampler;
+import byteplus.sdk.media.protocol.ByteplusMedia.Content;
+import byteplus.sdk.media.protocol.ByteplusMedia.User;
+import byteplus.sdk.media.protocol.ByteplusMedia.UserEvent;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Synthetic media users, contents and user events for benchmarks, which look like
+ * the real data: the popularity of contents and the activity of users follow Zipf
+ * distributions, the fields have realistic cardinalities (100 genres, thousands of
+ * owners, episodes grouped into series), and the user events are sessions of a user
+ * watching mostly one genre, some impressions turning into clicks, plays and likes.
+ * <p>
+ * Every user, content and session is generated from its own random derived from the
+ * seed and its index, so any record can be generated alone, and the corpus generated
+ * in parallel by {@link CorpusGenerator} is the same as the one generated one by one.
+ * Content ids are ranked by popularity, "content_0" is the most popular one.
+ */
+public class SyntheticHelper {
+    // The default seed of the records of MockHelper
+    public final static long DEFAULT_SEED = 20210601;
+
+    public final static long DEFAULT_USER_COUNT = 1_000_000;
+
+    public final static long DEFAULT_CONTENT_COUNT = 100_000;
+
+    // The first session of benchmark corpora starts at 2021-06-01 00:00:00 UTC,
+    // a fixed time so the corpora are reproducible
+    public final static long BENCHMARK_BASE_TIMESTAMP = 1622505600;
+
+    // 10 sessions start every second, 100M events are about 12M sessions in 2 weeks
+    private final static int SESSIONS_PER_SECOND = 10;
+
+    // The episodes of a series have adjacent indexes
+    private final static int EPISODES_PER_SERIES = 10;
+
+    private final static int OWNER_COUNT = 5000;
+
+    private final static int ACTOR_COUNT = 20000;
+
+    private final static int TAG_COUNT = 1000;
+
+    // Sessions mostly watch contents of the genre of the first content
+    private final static double SAME_GENRE_PROBABILITY = 0.7;
+
+    private final static double MEAN_EXTRA_VIEWS = 7;
+
+    // The mean seconds between two events of a session
+    private final static double MEAN_EVENT_GAP_SECONDS = 20;
+
+    private final static double CLICK_PROBABILITY = 0.15;
+
+    private final static double PLAY_PROBABILITY = 0.8;
+
+    private final static double LIKE_PROBABILITY = 0.1;
+
+    private final static double SHARE_PROBABILITY = 0.03;
+
+    private final static String[] TOP_GENRES = {
+            "Movie", "TV", "Music", "Sports", "News", "Kids", "Anime", "Documentary", "Gaming", "Education",
+    };
+
+    private final static String[] SUB_GENRES = {
+            "Comedy", "Drama", "Action", "Romance", "Horror", "Family", "Thriller", "Fantasy", "Live", "Classic",
+    };
+
+    private final static String[] TITLE_WORDS = {
+            "the", "love", "night", "city", "last", "first", "world", "story", "day", "home",
+            "secret", "dream", "star", "war", "family", "friends", "summer", "winter", "life", "game",
+            "king", "queen", "road", "sea", "fire", "light", "dark", "heart", "time", "school",
+    };
+
+    private final static String[][] REGIONS = {
+            {"SG", "Singapore"}, {"ID", "Indonesia"}, {"TH", "Thailand"}, {"PH", "Philippines"},
+            {"VN", "Vietnam"}, {"MY", "Malaysia"}, {"IN", "India"}, {"JP", "Japan"},
+            {"KR", "Korea"}, {"US", "USA"}, {"GB", "UK"}, {"BR", "Brazil"},
+    };
+
+    private final static Choice GENDERS = new Choice(
+            new String[]{"female", "male", "unknown"}, new double[]{48, 47, 5});
+
+    private final static Choice AGES = new Choice(
+            new String[]{"0-17", "18-25", "26-35", "36-45", "46+"}, new double[]{10, 30, 30, 18, 12});
+
+    private final static Choice LANGUAGES = new Choice(
+            new String[]{"English", "Indonesian", "Thai", "Vietnamese", "Japanese", "Korean", "Hindi"},
+            new double[]{40, 15, 10, 10, 10, 8, 7});
+
+    private final static Choice SUBSCRIBER_TYPES = new Choice(
+            new String[]{"free", "trial", "paid"}, new double[]{75, 5, 20});
+
+    private final static Choice ACTIVATION_CHANNELS = new Choice(
+            new String[]{"AppStore", "GooglePlay", "Web", "Referral", "Ads"}, new double[]{30, 40, 15, 5, 10});
+
+    private final static Choice MEMBERSHIP_LEVELS = new Choice(
+            new String[]{"none", "silver", "gold", "platinum"}, new double[]{70, 20, 8, 2});
+
+    private final static Choice CONTENT_TYPES = new Choice(
+            new String[]{"video", "short_video", "live", "audio"}, new double[]{50, 35, 5, 10});
+
+    private final static Choice VIDEO_TYPES = new Choice(
+            new String[]{"series", "movie", "clip"}, new double[]{50, 20, 30});
+
+    private final static Choice DISPLAY_TYPES = new Choice(
+            new String[]{"image", "video", "text"}, new double[]{80, 15, 5});
+
+    private final static Choice DEVICES = new Choice(
+            new String[]{"app", "web", "tv"}, new double[]{75, 15, 10});
+
+    private final static Choice NETWORKS = new Choice(
+            new String[]{"wifi", "4g", "5g", "3g"}, new double[]{55, 35, 7, 3});
+
+    private final static Choice SCENES = new Choice(
+            new String[]{"Home Page", "Detail Page", "Search", "Following"}, new double[]{55, 25, 12, 8});
+
+    private final static Choice TRAFFIC_SOURCES = new Choice(
+            new String[]{"byteplus", "self", "other"}, new double[]{60, 35, 5});
+
+    private final static String[] ANDROID_BRANDS = {"samsung", "xiaomi", "oppo", "vivo", "huawei", "realme"};
+
+    private final long seed;
+
+    // The seconds since epoch when the first session starts
+    private final long baseTimestamp;
+
+    private final long userCount;
+
+    private final long contentCount;
+
+    private final int genreCount;
+
+    private final long userStreamSeed;
+
+    private final long contentStreamSeed;
+
+    private final long sessionStreamSeed;
+
+    private final ZipfSampler userActivity;
+
+    private final ZipfSampler contentPopularity;
+
+    // The popularity of contents in a genre
+    private final ZipfSampler genrePopularity;
+
+    private final ZipfSampler owners = new ZipfSampler(OWNER_COUNT, 1.1);
+
+    private final ZipfSampler actors = new ZipfSampler(ACTOR_COUNT, 1.0);
+
+    private final ZipfSampler tags = new ZipfSampler(TAG_COUNT, 1.0);
+
+    private final ZipfSampler titleWords = new ZipfSampler(TITLE_WORDS.length, 0.8);
+
+    private final ZipfSampler regions = new ZipfSampler(REGIONS.length, 1.0);
+
+    // The records are built on the documented examples, so all the fields are filled
+    private final User userTemplate = MockHelper.mockUser();
+
+    private final Content contentTemplate = MockHelper.mockContent();
+
+    private final UserEvent userEventTemplate = MockHelper.mockUserEvent();
+
+    /**
+     * @param baseTimestamp the seconds since epoch when the first session starts, the users
+     *                      and contents are registered or published in the years before it
+     */
+    public SyntheticHelper(long seed, long userCount, long contentCount, long baseTimestamp) {
+        this.seed = seed;
+        this.baseTimestamp = baseTimestamp;
+        this.userCount = userCount;
+        this.contentCount = contentCount;
+        this.genreCount = (int) Math.min(TOP_GENRES.length * SUB_GENRES.length, contentCount);
+        this.userStreamSeed = CorpusGenerator.streamSeed(seed, "users");
+        this.contentStreamSeed = CorpusGenerator.streamSeed(seed, "contents");
+        this.sessionStreamSeed = CorpusGenerator.streamSeed(seed, "sessions");
+        this.userActivity = new ZipfSampler(userCount, 0.8);
+        this.contentPopularity = new ZipfSampler(contentCount, 1.0);
+        this.genrePopularity = new ZipfSampler(contentCount / genreCount, 1.0);
+    }
+
+    /**
+     * The helper with the default seed and counts, which is used by MockHelper.
+     * The sessions start at 00:00:00 UTC of yesterday, so the mock user events are
+     * recent enough to be accepted by server.
+     */
+    public static SyntheticHelper defaultHelper() {
+        return DefaultHolder.HELPER;
+    }
+
+    /**
+     * The helper with the default seed and counts, and the fixed {@link #BENCHMARK_BASE_TIMESTAMP},
+     * so a benchmark corpus is the same in every run.
+     */
+    public static SyntheticHelper benchmarkHelper() {
+        return BenchmarkHolder.HELPER;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public User user(long index) {
+        SplittableRandom random = CorpusGenerator.random(userStreamSeed, index);
+        String[] region = REGIONS[(int) regions.sample(random)];
+        User.Builder builder = userTemplate.toBuilder()
+                .setUserId(userId(index))
+                .setGender(GENDERS.pick(random))
+                .setAge(AGES.pick(random))
+                .clearTags()
+                .setDeviceId(SyntheticValues.hex(random, 16))
+                .setDeviceType(DEVICES.pick(random))
+                .setSubscriberType(SUBSCRIBER_TYPES.pick(random))
+                .setLanguage(LANGUAGES.pick(random))
+                .clearViewHistory()
+                .setActivationChannel(ACTIVATION_CHANNELS.pick(random))
+                .setMembershipLevel(MEMBERSHIP_LEVELS.pick(random))
+                .setRegistrationTimestamp(baseTimestamp - random.nextLong(3 * 365 * 86400L))
+                .setCountry(region[1])
+                .setCity("city_" + region[0] + "_" + random.nextInt(10))
+                .setDistrictOrArea("district_" + random.nextInt(20))
+                .setPostcode(String.format("%05d", random.nextInt(100_000)));
+        int tagCount = random.nextInt(4);
+        for (int i = 0; i < tagCount; i++) {
+            builder.addTags("tag_" + tags.sample(random));
+        }
+        int historyCount = random.nextInt(4);
+        for (int i = 0; i < historyCount; i++) {
+            builder.addViewHistory(contentId(contentPopularity.sample(random)));
+        }
+        return builder.build();
+    }
+
+    public Content content(long index) {
+        SplittableRandom random = CorpusGenerator.random(contentStreamSeed, index);
+        int genre = genre(index);
+        String topGenre = TOP_GENRES[genre % TOP_GENRES.length];
+        String subGenre = SUB_GENRES[genre / TOP_GENRES.length % SUB_GENRES.length];
+        String categories = "[{\"category_depth\":1,\"category_nodes\":[{\"id_or_name\":\"" + topGenre + "\"}]},"
+                + "{\"category_depth\":2,\"category_nodes\":[{\"id_or_name\":\"" + subGenre + "\"}]}]";
+
+        long series = index / EPISODES_PER_SERIES;
+        String seriesName = SyntheticValues.words(CorpusGenerator.random(contentStreamSeed, -series - 1),
+                titleWords, TITLE_WORDS, 3, " ");
+        int episode = (int) (index % EPISODES_PER_SERIES) + 1;
+        // Popular contents are viewed more, and a few viewers like and share them
+        int viewsCount = (int) Math.min(Integer.MAX_VALUE,
+                SyntheticValues.logNormal(random, 10_000_000, 1.0) / (index + 1));
+        boolean paid = random.nextDouble() < 0.2;
+        long currentPrice = paid ? 100 * (1 + random.nextInt(20)) : 0;
+        long publishTimestamp = baseTimestamp - random.nextLong(2 * 365 * 86400L);
+        String[] region = REGIONS[(int) regions.sample(random)];
+
+        Content.Builder builder = contentTemplate.toBuilder()
+                .setContentId(contentId(index))
+                .setIsRecommendable(random.nextDouble() < 0.98 ? 1 : 0)
+                .setCategories(categories)
+                .setContentTitle(seriesName + " #" + episode)
+                .setDescription(SyntheticValues.words(random, titleWords, TITLE_WORDS, 8 + random.nextInt(12), " "))
+                .setContentType(CONTENT_TYPES.pick(random))
+                .setContentOwner("owner_" + owners.sample(random))
+                .setLanguage(LANGUAGES.pick(random))
+                .clearTags()
+                .clearListingPageDisplayTags()
+                .addListingPageDisplayTags("tag_" + tags.sample(random))
+                .clearDetailPageDisplayTags()
+                .addDetailPageDisplayTags("tag_" + tags.sample(random))
+                .setListingPageDisplayType(DISPLAY_TYPES.pick(random))
+                .setCoverMultimediaUrl("https://cdn.example.com/contents/" + index + ".jpg")
+                .setUserRating(SyntheticValues.uniform(random, 2.5, 5, 1))
+                .setViewsCount(viewsCount)
+                .setCommentsCount((int) (viewsCount * 0.01 * random.nextDouble()))
+                .setLikesCount((int) (viewsCount * 0.1 * random.nextDouble()))
+                .setSharesCount((int) (viewsCount * 0.005 * random.nextDouble()))
+                .setIsPaidContent(paid ? 1 : 0)
+                .setOriginPrice(currentPrice > 0 && random.nextDouble() < 0.3 ? currentPrice * 2 : currentPrice)
+                .setCurrentPrice(currentPrice)
+                .setPublishRegion(region[0])
+                .clearAvailableRegion()
+                .addAvailableRegion(region[0])
+                .setEntityId("entity_" + series / 4)
+                .setEntityName(seriesName)
+                .setSeriesId("series_" + series)
+                .setSeriesIndex((int) (series % 4) + 1)
+                .setSeriesName(seriesName + " season " + (series % 4 + 1))
+                .setSeriesCount(4)
+                .setVideoId("video_" + index)
+                .setVideoIndex(episode)
+                .setVideoName(seriesName + " episode " + episode)
+                .setVideoCount(EPISODES_PER_SERIES)
+                .setVideoType(VIDEO_TYPES.pick(random))
+                .setVideoDuration(videoDurationMillis(index))
+                .setPublishTimestamp(publishTimestamp)
+                .setCopyrightStartTimestamp(publishTimestamp)
+                .setCopyrightEndTimestamp(publishTimestamp + 3 * 365 * 86400L)
+                .clearActors();
+        int tagCount = 1 + random.nextInt(4);
+        for (int i = 0; i < tagCount; i++) {
+            builder.addTags("tag_" + tags.sample(random));
+        }
+        int actorCount = random.nextInt(5);
+        for (int i = 0; i < actorCount; i++) {
+            builder.addActors("actor_" + actors.sample(random));
+        }
+        return builder.build();
+    }
+
+    /**
+     * The events of a session: a user views some contents mostly in one genre,
+     * and some of the impressions are clicked, played, liked and shared.
+     */
+    public void session(long sessionIndex, CorpusGenerator.Output<UserEvent> output) {
+        SplittableRandom random = CorpusGenerator.random(sessionStreamSeed, sessionIndex);
+        long userIndex = userActivity.sample(random);
+        UserEvent template = device(userIndex).toBuilder()
+                .setUserId(userId(userIndex))
+                .setTrafficSource(TRAFFIC_SOURCES.pick(random))
+                .setRequestId(SyntheticValues.hex(random, 32))
+                .setAttributionToken(SyntheticValues.hex(random, 32))
+                .build();
+        double timestamp = baseTimestamp + (double) sessionIndex / SESSIONS_PER_SECOND + random.nextDouble();
+
+        long firstContent = contentPopularity.sample(random);
+        int genre = genre(firstContent);
+        int views = 1 + Math.min(50, SyntheticValues.geometric(random, MEAN_EXTRA_VIEWS));
+        for (int i = 0; i < views; i++) {
+            long content = firstContent;
+            if (i > 0) {
+                content = random.nextDouble() < SAME_GENRE_PROBABILITY ?
+                        genrePopularity.sample(random) * genreCount + genre : contentPopularity.sample(random);
+            }
+            long series = content / EPISODES_PER_SERIES;
+            String sceneName = SCENES.pick(random);
+            UserEvent.Builder builder = template.toBuilder()
+                    .setContentId(contentId(content))
+                    .setRecInfo("rec_" + sessionIndex + "_" + i)
+                    .setSceneName(sceneName)
+                    .setPageNumber(1 + SyntheticValues.geometric(random, 0.5))
+                    .setOffset(1 + random.nextInt(20))
+                    .setEntityId("entity_" + series / 4)
+                    .setSeriesId("series_" + series)
+                    .setVideoId("video_" + content)
+                    .setParentContentId(i > 0 ? contentId(firstContent) : "")
+                    .setQuery("Search".equals(sceneName) ? SUB_GENRES[genre / TOP_GENRES.length % SUB_GENRES.length] : "");
+
+            timestamp += SyntheticValues.exponential(random, MEAN_EVENT_GAP_SECONDS);
+            output.add(builder.setEventType("impression").setEventTimestamp((long) timestamp).build());
+            if (random.nextDouble() >= CLICK_PROBABILITY) {
+                continue;
+            }
+            timestamp += SyntheticValues.exponential(random, MEAN_EVENT_GAP_SECONDS / 4);
+            int stayTime = 1 + SyntheticValues.geometric(random, 15);
+            output.add(builder.setEventType("click")
+                    .setEventTimestamp((long) timestamp)
+                    .setDetailStayTime(stayTime)
+                    .build());
+            if (random.nextDouble() >= PLAY_PROBABILITY) {
+                continue;
+            }
+            // Most plays stop early, some of them watch to the end
+            long durationMillis = videoDurationMillis(content);
+            int playMillis = (int) Math.min(durationMillis, SyntheticValues.exponential(random, durationMillis / 3.0));
+            timestamp += stayTime + playMillis / 1000.0;
+            output.add(builder.setEventType("play")
+                    .setEventTimestamp((long) timestamp)
+                    .setPlayDuration(playMillis)
+                    .setStartTime(0)
+                    .setEndTime(playMillis / 1000)
+                    .build());
+            builder.clearPlayDuration().clearStartTime().clearEndTime();
+            if (random.nextDouble() < LIKE_PROBABILITY) {
+                timestamp += SyntheticValues.exponential(random, MEAN_EVENT_GAP_SECONDS / 4);
+                output.add(builder.setEventType("like").setEventTimestamp((long) timestamp).build());
+            }
+            if (random.nextDouble() < SHARE_PROBABILITY) {
+                timestamp += SyntheticValues.exponential(random, MEAN_EVENT_GAP_SECONDS / 4);
+                output.add(builder.setEventType("share").setEventTimestamp((long) timestamp).build());
+            }
+        }
+    }
+
+    public List<User> users(long firstIndex, int count) {
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(user(firstIndex + i));
+        }
+        return users;
+    }
+
+    public List<Content> contents(long firstIndex, int count) {
+        List<Content> contents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            contents.add(content(firstIndex + i));
+        }
+        return contents;
+    }
+
+    /**
+     * The events of the sessions from the first one, the last session is cut at the count.
+     */
+    public List<UserEvent> userEvents(long firstSession, int count) {
+        List<UserEvent> userEvents = new ArrayList<>(count);
+        for (long session = firstSession; userEvents.size() < count; session++) {
+            session(session, userEvent -> {
+                if (userEvents.size() < count) {
+                    userEvents.add(userEvent);
+                }
+            });
+        }
+        return userEvents;
+    }
+
+    public long generateUsers(CorpusGenerator generator, CorpusGenerator.Sink<User> sink)
+            throws InterruptedException, IOException {
+        return generator.generate("users", userCount, (firstUnit, unitCount, random, output) -> {
+            for (long i = firstUnit; i < firstUnit + unitCount; i++) {
+                output.add(user(i));
+            }
+        }, sink);
+    }
+
+    public long generateContents(CorpusGenerator generator, CorpusGenerator.Sink<Content> sink)
+            throws InterruptedException, IOException {
+        return generator.generate("contents", contentCount, (firstUnit, unitCount, random, output) -> {
+            for (long i = firstUnit; i < firstUnit + unitCount; i++) {
+                output.add(content(i));
+            }
+        }, sink);
+    }
+
+    /**
+     * Generate the events of the sessions, a session has about 9 events.
+     */
+    public long generateUserEvents(CorpusGenerator generator, long sessionCount, CorpusGenerator.Sink<UserEvent> sink)
+            throws InterruptedException, IOException {
+        return generator.generate("user_events", sessionCount, (firstUnit, unitCount, random, output) -> {
+            for (long i = firstUnit; i < firstUnit + unitCount; i++) {
+                session(i, output);
+            }
+        }, sink);
+    }
+
+    private static class DefaultHolder {
+        // 00:00:00 UTC of yesterday
+        private final static long BASE_TIMESTAMP =
+                Instant.now().truncatedTo(ChronoUnit.DAYS).minus(1, ChronoUnit.DAYS).getEpochSecond();
+
+        private final static SyntheticHelper HELPER =
+                new SyntheticHelper(DEFAULT_SEED, DEFAULT_USER_COUNT, DEFAULT_CONTENT_COUNT, BASE_TIMESTAMP);
+    }
+
+    private static class BenchmarkHolder {
+        private final static SyntheticHelper HELPER =
+                new SyntheticHelper(DEFAULT_SEED, DEFAULT_USER_COUNT, DEFAULT_CONTENT_COUNT, BENCHMARK_BASE_TIMESTAMP);
+    }
+
+    public static String userId(long index) {
+        return "user_" + index;
+    }
+
+    public static String contentId(long index) {
+        return "content_" + index;
+    }
+
+    // The contents of a genre are spread over all the popularity ranks
+    private int genre(long contentIndex) {
+        return (int) (contentIndex % genreCount);
+    }
+
+    // Used by both contents and play events, so it has its own random
+    private long videoDurationMillis(long contentIndex) {
+        SplittableRandom random = CorpusGenerator.random(contentStreamSeed ^ 0x5DEECE66DL, contentIndex);
+        return Math.max(10_000, Math.round(SyntheticValues.logNormal(random, 20 * 60_000, 0.8)));
+    }
+
+    // A user always uses the same device, the fields of device are on the event
+    private UserEvent device(long userIndex) {
+        SplittableRandom random = CorpusGenerator.random(userStreamSeed ^ 0x5DEECE66DL, userIndex);
+        String device = DEVICES.pick(random);
+        UserEvent.Builder builder = userEventTemplate.toBuilder()
+                .setDevice(device)
+                .setNetwork(NETWORKS.pick(random))
+                .setPlayType(String.valueOf(random.nextInt(2)));
+        if ("web".equals(device)) {
+            return builder.setOsType("pc")
+                    .setAppVersion("")
+                    .setDeviceModel("")
+                    .setDeviceBrand("")
+                    .setOsVersion("")
+                    .setBrowserType(random.nextDouble() < 0.7 ? "chrome" : "firefox")
+                    .setUserAgent("web")
+                    .build();
+        }
+        if (random.nextDouble() < 0.35) {
+            return builder.setOsType("ios")
+                    .setAppVersion("9." + random.nextInt(10) + ".0")
+                    .setDeviceModel("iphone_" + (8 + random.nextInt(6)))
+                    .setDeviceBrand("apple")
+                    .setOsVersion(String.valueOf(13 + random.nextInt(3)))
+                    .setBrowserType("safari")
+                    .setUserAgent("ios/apple")
+                    .build();
+        }
+        String brand = ANDROID_BRANDS[random.nextInt(ANDROID_BRANDS.length)];
+        return builder.setOsType("android")
+                .setAppVersion("9." + random.nextInt(10) + ".0")
+                .setDeviceModel(brand + "_" + random.nextInt(30))
+                .setDeviceBrand(brand)
+                .setOsVersion(String.valueOf(8 + random.nextInt(5)))
+                .setBrowserType("chrome")
+                .setUserAgent("android/" + brand)
+                .build();
+    }
+}
@@ -0,0 +1,52 @@
+package byteplus.example.retail;
+
+import byteplus.example.common.PopularityModel;
+import byteplus.sdk.common.protocol.ByteplusCommon.Status;
+import byteplus.sdk.retail.protocol.ByteplusRetail.PredictResponse;
+import byteplus.sdk.retail.protocol.ByteplusRetail.PredictResult;
+import byteplus.sdk.retail.protocol.ByteplusRetail.PredictResult.ResponseProduct;
+import byteplus.sdk.retail.protocol.ByteplusRetail.UserEvent;
+
+import java.util.List;
+
+import static byteplus.sdk.core.Constant.STATUS_CODE_SUCCESS;
+
+/**
+ * Serve the locally popular products when predict fails or times out.
+ * <p>
+ * The fallback response is built on client, it has no "request_id",
+ * so it must not be acked to byteplus, check it by {@link #isFallback}.
+ */
+public class FallbackHelper {
+
+    // Feed the model with the user events which are written successfully
+    public static void recordUserEvents(PopularityModel model, List<UserEvent> userEvents) {
+        for (UserEvent userEvent : userEvents) {
+            model.recordEvent(userEvent.getScene().getSceneName(), userEvent.getProductId(),
+                    userEvent.getEventType(), userEvent.getEventTimestamp());
+        }
+    }
+
+    // Return null if the model has no events yet, so that the caller can
+    // handle the failure as if there is no fallback
+    public static PredictResponse fallbackResponse(PopularityModel model, String scene, int size) {
+        List<String> productIds = model.top(scene, size);
+        if (productIds.isEmpty()) {
+            return null;
+        }
+        PredictResult.Builder result = PredictResult.newBuilder();
+        for (int i = 0; i < productIds.size(); i++) {
+            result.addResponseProducts(ResponseProduct.newBuilder()
+                    .setProductId(productIds.get(i))
+                    .setRank(i + 1));
+        }
+        return PredictResponse.newBuilder()
+                .setStatus(Status.newBuilder().setCode(STATUS_CODE_SUCCESS))
+                .setValue(result)
+                .build();
+    }
+
+    public static boolean isFallback(PredictResponse response) {
+        return response.getRequestId().isEmpty();
+    }
+}
@@ -0,0 +1,207 @@
+package byteplus.example.retail;
+
+import byteplus.example.common.FaultInjector;
+import byteplus.example.common.LoadGenerator;
+import byteplus.example.common.MockServer;
+import byteplus.example.common.RequestHelper;
+import byteplus.sdk.core.Option;
+import byteplus.sdk.core.Region;
+import byteplus.sdk.retail.RetailClient;
+import byteplus.sdk.retail.RetailClientBuilder;
+import byteplus.sdk.retail.protocol.ByteplusRetail.AckServerImpressionsRequest;
+import byteplus.sdk.retail.protocol.ByteplusRetail.AckServerImpressionsRequest.AlteredProduct;
+import byteplus.sdk.retail.protocol.ByteplusRetail.DateConfig;
+import byteplus.sdk.retail.protocol.ByteplusRetail.ImportUserEventsRequest;
+import byteplus.sdk.retail.protocol.ByteplusRetail.PredictRequest;
+import byteplus.sdk.retail.protocol.ByteplusRetail.UserEvent;
+import byteplus.sdk.retail.protocol.ByteplusRetail.UserEventsInlineSource;
+import byteplus.sdk.retail.protocol.ByteplusRetail.UserEventsInputConfig;
+import byteplus.sdk.retail.protocol.ByteplusRetail.WriteProductsRequest;
+import byteplus.sdk.retail.protocol.ByteplusRetail.WriteUserEventsRequest;
+import byteplus.sdk.retail.protocol.ByteplusRetail.WriteUsersRequest;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Drive the retail apis at a fixed rate with {@link LoadGenerator}, such as:
+ * <pre>
+ *     --rate 500 --duration 60 --mix user_events=70,predict=20,ack=10 --batch 100
+ * </pre>
+ * The actions are "users", "products", "user_events" (write), "import_user_events",
+ * "predict" and "ack". Only the request creating the import operation is measured,
+ * the operation is not polled.
+ * <p>
+ * With "--mock", the requests are answered by an embedded {@link MockServer} instead
+ * of the real endpoints, the latency of it is set by "--mock_median_ms" and "--mock_p99_ms".
+ * With "--faults", such as "overload=0.05,net_exception=0.01", the failures are injected
+ * into the client by {@link FaultInjector}, and with "--retry 2" the requests are retried by
+ * {@link RequestHelper}, so the goodput and latency under failures are measured.
+ */
+@Slf4j
+public class LoadMain {
+    private final static String DEFAULT_MIX = "user_events=70,predict=20,ack=10";
+
+    // The count of items in a write or import request
+    private final static int DEFAULT_BATCH_SIZE = 10;
+
+    private final static Duration DEFAULT_TIMEOUT = Duration.ofMillis(800);
+
+    private final static String PREDICT_SCENE = "home";
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> arguments = LoadGenerator.parseArguments(args);
+        MockServer mockServer = null;
+        if (arguments.containsKey("mock")) {
+            mockServer = MockServer.builder(MockServerHelper.vertical())
+                    .latency(Duration.ofMillis(Long.parseLong(arguments.getOrDefault("mock_median_ms", "20"))),
+                            Duration.ofMillis(Long.parseLong(arguments.getOrDefault("mock_p99_ms", "100"))))
+                    .build()
+                    .start();
+        }
+        try {
+            RetailClient client = buildClient(mockServer);
+            if (Objects.nonNull(mockServer)) {
+                // Fail fast if a URL built by sdk is answered as another action
+                List<String> mismatches = mockServer.checkRoutes(MockServerHelper.routeCalls(client));
+                if (!mismatches.isEmpty()) {
+                    throw new IllegalStateException("mock server routes mismatch: " + mismatches);
+                }
+            }
+            FaultInjector faultInjector = FaultInjector.fromArguments(arguments);
+            if (Objects.nonNull(faultInjector)) {
+                client = faultInjector.wrapClient(RetailClient.class, client);
+            }
+            // The requests are retried by RequestHelper only with "--retry"
+            RequestHelper requestHelper = arguments.containsKey("retry") ? new RequestHelper(client) : null;
+            int retryTimes = Integer.parseInt(arguments.getOrDefault("retry", "0"));
+            int batchSize = Integer.parseInt(arguments.getOrDefault("batch", String.valueOf(DEFAULT_BATCH_SIZE)));
+            LoadGenerator.Builder builder = LoadGenerator.builder().arguments(arguments);
+            Map<String, Integer> mix = LoadGenerator.parseMix(arguments.getOrDefault("mix", DEFAULT_MIX));
+            for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+                builder.action(entry.getKey(), entry.getValue(),
+                        action(client, requestHelper, retryTimes, entry.getKey(), batchSize));
+            }
+            builder.build().run();
+            if (Objects.nonNull(faultInjector)) {
+                log.info("[LoadMain] injected faults:{}", faultInjector.getInjectedCounts());
+            }
+        } finally {
+            if (Objects.nonNull(mockServer)) {
+                mockServer.close();
+            }
+        }
+    }
+
+    private static RetailClient buildClient(MockServer mockServer) {
+        RetailClientBuilder builder = new RetailClientBuilder()
+                .tenant(Main.TENANT)
+                .tenantId(Main.TENANT_ID)
+                .token(Main.TOKEN)
+                .region(Region.SG);
+        if (Objects.nonNull(mockServer)) {
+            builder.schema("http").hosts(Collections.singletonList(mockServer.getHost()));
+        }
+        return builder.build();
+    }
+
+    // The request of every action is built once, only the request id is new for every call
+    private static LoadGenerator.Action action(RetailClient client, RequestHelper requestHelper, int retryTimes,
+                                                String name, int batchSize) {
+        switch (name) {
+            case "users":
+                WriteUsersRequest writeUsersRequest = WriteUsersRequest.newBuilder()
+                        .addAllUsers(MockHelper.mockUsers(batchSize))
+                        .build();
+                return LoadGenerator.call(requestHelper, retryTimes,
+                        client::writeUsers, writeUsersRequest, LoadMain::options);
+            case "products":
+                WriteProductsRequest writeProductsRequest = WriteProductsRequest.newBuilder()
+                        .addAllProducts(MockHelper.mockProducts(batchSize))
+                        .build();
+                return LoadGenerator.call(requestHelper, retryTimes,
+                        client::writeProducts, writeProductsRequest, LoadMain::options);
+            case "user_events":
+                WriteUserEventsRequest writeUserEventsRequest = WriteUserEventsRequest.newBuilder()
+                        .addAllUserEvents(MockHelper.mockUserEvents(batchSize))
+                        .build();
+                return LoadGenerator.call(requestHelper, retryTimes,
+                        client::writeUserEvents, writeUserEventsRequest, LoadMain::options);
+            case "import_user_events":
+                ImportUserEventsRequest importUserEventsRequest = buildImportUserEventsRequest(batchSize);
+                return LoadGenerator.call(requestHelper, retryTimes,
+                        client::importUserEvents, importUserEventsRequest, LoadMain::options);
+            case "predict":
+                PredictRequest predictRequest = buildPredictRequest();
+                return LoadGenerator.call(requestHelper, retryTimes,
+                        (request, opts) -> client.predict(request, PREDICT_SCENE, opts),
+                        predictRequest, LoadMain::options);
+            case "ack":
+                AckServerImpressionsRequest ackRequest = buildAckRequest();
+                return LoadGenerator.call(requestHelper, retryTimes,
+                        client::ackServerImpressions, ackRequest, LoadMain::options);
+            default:
+                throw new IllegalArgumentException("unknown action:" + name);
+        }
+    }
+
+    private static ImportUserEventsRequest buildImportUserEventsRequest(int count) {
+        UserEventsInlineSource inlineSource = UserEventsInlineSource.newBuilder()
+                .addAllUserEvents(MockHelper.mockUserEvents(count))
+                .build();
+        UserEventsInputConfig inputConfig = UserEventsInputConfig.newBuilder()
+                .setUserEventsInlineSource(inlineSource)
+                .build();
+        DateConfig dateConfig = DateConfig.newBuilder()
+                .setDate(ZonedDateTime.now().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME))
+                .setIsEnd(false)
+                .build();
+        return ImportUserEventsRequest.newBuilder()
+                .setInputConfig(inputConfig)
+                .setDateConfig(dateConfig)
+                .build();
+    }
+
+    private static PredictRequest buildPredictRequest() {
+        PredictRequest.Context context = PredictRequest.Context.newBuilder()
+                .setRootProduct(MockHelper.mockProduct())
+                .setDevice(MockHelper.mockDevice())
+                .build();
+        return PredictRequest.newBuilder()
+                .setUserId("user_id")
+                .setSize(20)
+                .setScene(UserEvent.Scene.newBuilder().setSceneName(PREDICT_SCENE))
+                .setContext(context)
+                .build();
+    }
+
+    private static AckServerImpressionsRequest buildAckRequest() {
+        AlteredProduct alteredProduct = AlteredProduct.newBuilder()
+                .setAlteredReason("kept")
+                .setProductId("product_id")
+                .setRank(1)
+                .build();
+        return AckServerImpressionsRequest.newBuilder()
+                .setPredictRequestId(UUID.randomUUID().toString())
+                .setUserId("user_id")
+                .setScene(UserEvent.Scene.newBuilder().setSceneName(PREDICT_SCENE))
+                .setTrafficSource("byteplus")
+                .addAlteredProducts(alteredProduct)
+                .build();
+    }
+
+    // Every call has its own request id, or the server rejects it as idempotent
+    private static Option[] options() {
+        return new Option[]{
+                Option.withRequestId(UUID.randomUUID().toString()),
+                Option.withTimeout(DEFAULT_TIMEOUT),
+        };
+    }
+}
@@ -0,0 +1,27 @@
+package byteplus.example.retail;
+
+import byteplus.example.common.ValidationHelper.Schema;
+import byteplus.sdk.retail.protocol.ByteplusRetail.Product;
+import byteplus.sdk.retail.protocol.ByteplusRetail.User;
+import byteplus.sdk.retail.protocol.ByteplusRetail.UserEvent;
+
+/**
+ * The client side rules of the entities, checked before they are sent.
+ * Only the rules which surely make the server reject the item are listed here,
+ * add your own rules if needed.
+ */
+public class SchemaHelper {
+    public final static Schema<User> USER = new Schema<User>("user")
+            .required("user_id", User::getUserId)
+            .timestamp("registration_timestamp", User::getRegistrationTimestamp, false);
+
+    public final static Schema<Product> PRODUCT = new Schema<Product>("product")
+            .required("product_id", Product::getProductId)
+            .rule(product -> product.getCategoriesCount() == 0 ? "categories is required" : null)
+            .timestamp("publish_timestamp", product -> product.getProductSpec().getPublishTimestamp(), false);
+
+    public final static Schema<UserEvent> USER_EVENT = new Schema<UserEvent>("user_event")
+            .required("user_id", UserEvent::getUserId)
+            .required("event_type", UserEvent::getEventType)
+            .timestamp("event_timestamp", UserEvent::getEventTimestamp, true);
+}
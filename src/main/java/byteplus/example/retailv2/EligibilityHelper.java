@@ -0,0 +1,70 @@
+package byteplus.example.retailv2;
+
+import byteplus.example.common.EligibilityIndex;
+import byteplus.sdk.retailv2.protocol.ByteplusRetailv2.Product;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keep the {@link EligibilityIndex} of products, so that the candidates out of stock,
+ * not sold in the user's region, or not recommendable are pruned before predict.
+ * <p>
+ * The stock and region are not standard fields of product, they are read from
+ * "extra" here, such as "in_stock" -> "true" and "region" -> "SG,US".
+ */
+public class EligibilityHelper {
+    public final static String ATTRIBUTE_RECOMMENDABLE = "recommendable";
+
+    public final static String ATTRIBUTE_IN_STOCK = "in_stock";
+
+    public final static String ATTRIBUTE_REGION = "region";
+
+    public final static String ATTRIBUTE_CATEGORY = "category";
+
+    private final static String REGION_SEPARATOR = ",";
+
+    // Feed the index with the products which are written successfully
+    public static void recordProducts(EligibilityIndex index, List<Product> products) {
+        for (Product product : products) {
+            index.update(product.getProductId(), productAttributes(product));
+        }
+    }
+
+    public static Map<String, Collection<String>> productAttributes(Product product) {
+        Map<String, Collection<String>> attributes = new HashMap<>();
+        attributes.put(ATTRIBUTE_RECOMMENDABLE, Collections.singletonList(String.valueOf(product.getIsRecommendable())));
+        List<String> categories = new ArrayList<>();
+        for (Product.Category category : product.getCategoriesList()) {
+            for (Product.Category.CategoryNode node : category.getCategoryNodesList()) {
+                categories.add(node.getIdOrName());
+            }
+        }
+        if (!categories.isEmpty()) {
+            attributes.put(ATTRIBUTE_CATEGORY, categories);
+        }
+        String inStock = product.getExtraMap().get(ATTRIBUTE_IN_STOCK);
+        if (inStock != null) {
+            attributes.put(ATTRIBUTE_IN_STOCK, Collections.singletonList(inStock));
+        }
+        String region = product.getExtraMap().get(ATTRIBUTE_REGION);
+        if (region != null) {
+            attributes.put(ATTRIBUTE_REGION, Arrays.asList(region.split(REGION_SEPARATOR)));
+        }
+        return attributes;
+    }
+
+    // The attributes required for the products shown to a user in the region
+    public static Map<String, Collection<String>> sellableIn(String region) {
+        Map<String, Collection<String>> required = new HashMap<>();
+        required.put(ATTRIBUTE_RECOMMENDABLE, Collections.singletonList("true"));
+        required.put(ATTRIBUTE_IN_STOCK, Collections.singletonList("true"));
+        required.put(ATTRIBUTE_REGION, Collections.singletonList(region));
+        return required;
+    }
+}
@@ -8,14 +8,9 @@ import java.util.*;
 
 public class MockHelper {
 
+    // Different users with realistic fields, which are the same for every call
     public static List<User> mockUsers(int count) {
-        List<User> users = new ArrayList<>(count);
-        for (int i = 0; i < count; i++) {
-            User user = mockUser();
-            user = user.toBuilder().setUserId(user.getUserId() + i).build();
-            users.add(user);
-        }
-        return users;
+        return SyntheticHelper.defaultHelper().users(0, count);
     }
 
     public static User mockUser() {
@@ -43,13 +38,7 @@ public class MockHelper {
     }
 
     public static List<Product> mockProducts(int count) {
-        List<Product> products = new ArrayList<>(count);
-        for (int i = 0; i < count; i++) {
-            Product product = mockProduct();
-            product = product.toBuilder().setProductId(product.getProductId() + i).build();
-            products.add(product);
-        }
-        return products;
+        return SyntheticHelper.defaultHelper().products(0, count);
     }
 
     public static Product mockProduct() {
@@ -125,13 +114,9 @@ public class MockHelper {
                 .build();
     }
 
+    // The events of sessions of the synthetic users on the synthetic products
     public static List<UserEvent> mockUserEvents(int count) {
-        List<UserEvent> userEvents = new ArrayList<>(count);
-        for (int i = 0; i < count; i++) {
-            UserEvent userEvent = mockUserEvent();
-            userEvents.add(userEvent);
-        }
-        return userEvents;
+        return SyntheticHelper.defaultHelper().userEvents(0, count);
     }
 
     public static UserEvent mockUserEvent() {
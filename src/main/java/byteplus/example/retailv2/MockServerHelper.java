@@ -0,0 +1,84 @@
+package byteplus.example.retailv2;
+
+import byteplus.example.common.MockServer;
+import byteplus.sdk.common.protocol.ByteplusCommon.GetOperationRequest;
+import byteplus.sdk.common.protocol.ByteplusCommon.ListOperationsRequest;
+import byteplus.sdk.retailv2.RetailClient;
+import byteplus.sdk.retailv2.protocol.ByteplusRetailv2.AckServerImpressionsRequest;
+import byteplus.sdk.retailv2.protocol.ByteplusRetailv2.AckServerImpressionsResponse;
+import byteplus.sdk.retailv2.protocol.ByteplusRetailv2.PredictRequest;
+import byteplus.sdk.retailv2.protocol.ByteplusRetailv2.PredictResponse;
+import byteplus.sdk.retailv2.protocol.ByteplusRetailv2.PredictResult.ResponseProduct;
+import byteplus.sdk.retailv2.protocol.ByteplusRetailv2.PredictResult;
+import byteplus.sdk.retailv2.protocol.ByteplusRetailv2.WriteProductsResponse;
+import byteplus.sdk.retailv2.protocol.ByteplusRetailv2.WriteUserEventsResponse;
+import byteplus.sdk.retailv2.protocol.ByteplusRetailv2.WriteUsersRequest;
+import byteplus.sdk.retailv2.protocol.ByteplusRetailv2.WriteUsersResponse;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The responses of retailv2 answered by {@link MockServer}.
+ */
+public class MockServerHelper {
+    // The name of operation got by the route check, the server answers it as lost
+    private final static String ROUTE_CHECK_OPERATION = "route_check";
+
+    // The count of products returned when the predict request has no size
+    private final static int DEFAULT_PREDICT_SIZE = 10;
+
+    private final static String MOCK_PRODUCT_ID_PREFIX = "mock_product_";
+
+    public static MockServer.Vertical vertical() {
+        return new MockServer.Vertical()
+                .write("users", WriteUsersResponse.getDefaultInstance())
+                .write("products", WriteProductsResponse.getDefaultInstance())
+                .write("user_events", WriteUserEventsResponse.getDefaultInstance())
+                .predict(PredictResponse.getDefaultInstance(), MockServerHelper::predict)
+                .ack(AckServerImpressionsResponse.getDefaultInstance());
+    }
+
+    /**
+     * A call of every action of retailv2 client, used by {@link MockServer#checkRoutes} to find
+     * the URLs built by sdk which don't reach the intended action of the server.
+     */
+    public static Map<String, MockServer.RouteCall> routeCalls(RetailClient client) {
+        Map<String, MockServer.RouteCall> calls = new LinkedHashMap<>();
+        calls.put(MockServer.ACTION_WRITE, () -> client.writeUsers(
+                WriteUsersRequest.newBuilder().addUsers(MockHelper.mockUser()).build()));
+        calls.put(MockServer.ACTION_DONE, () -> client.done(
+                Collections.singletonList(LocalDate.now()), "user"));
+        calls.put(MockServer.ACTION_PREDICT, () -> client.predict(
+                PredictRequest.newBuilder().setUserId("user_id").setSize(1).build(), "home"));
+        calls.put(MockServer.ACTION_ACK, () -> client.ackServerImpressions(
+                AckServerImpressionsRequest.getDefaultInstance()));
+        calls.put(MockServer.ACTION_GET_OPERATION, () -> client.getOperation(
+                GetOperationRequest.newBuilder().setName(ROUTE_CHECK_OPERATION).build()));
+        calls.put(MockServer.ACTION_LIST_OPERATIONS, () -> client.listOperations(
+                ListOperationsRequest.newBuilder().setPageSize(1).build()));
+        return calls;
+    }
+
+    // Rank the candidates in the order of request, or mock products if there is no candidate
+    private static PredictResponse predict(String scene, byte[] body) throws InvalidProtocolBufferException {
+        PredictRequest request = PredictRequest.parseFrom(body);
+        int size = request.getSize() > 0 ? request.getSize() : DEFAULT_PREDICT_SIZE;
+        List<String> candidates = request.getContext().getCandidateProductIdsList();
+        PredictResult.Builder result = PredictResult.newBuilder();
+        for (int i = 0; i < size; i++) {
+            if (!candidates.isEmpty() && i >= candidates.size()) {
+                break;
+            }
+            String productId = candidates.isEmpty() ? MOCK_PRODUCT_ID_PREFIX + i : candidates.get(i);
+            result.addResponseProducts(ResponseProduct.newBuilder().setProductId(productId).setRank(i + 1));
+        }
+        return PredictResponse.newBuilder()
+                .setValue(result)
+                .build();
+    }
+}
@@ -0,0 +1,505 @@
+package byteplus.example.retailv2;
+
+import byteplus.example.common.CorpusGenerator;
+import byteplus.example.common.SyntheticValues;
+import byteplus.example.common.SyntheticValues.Choice;
+import byteplus.example.common.ZipfSampler;
+import byteplus.sdk.retailv2.protocol.ByteplusRetailv2.Product;
+import byteplus.sdk.retailv2.protocol.ByteplusRetailv2.User;
+import byteplus.sdk.retailv2.protocol.ByteplusRetailv2.UserEvent;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Synthetic retail v2 users, products and user events for benchmarks, which look like
+ * the real data: the popularity of products and the activity of users follow Zipf
+ * distributions, the fields have realistic cardinalities (200 categories, thousands
+ * of brands and sellers, tens of cities), and the user events are sessions of a user
+ * browsing a few categories, some impressions turning into clicks, carts and purchases.
+ * <p>
+ * Every user, product and session is generated from its own random derived from the
+ * seed and its index, so any record can be generated alone, and the corpus generated
+ * in parallel by {@link CorpusGenerator} is the same as the one generated one by one.
+ * Product ids are ranked by popularity, "product_0" is the most popular one.
+ */
+public class SyntheticHelper {
+    // The default seed of the records of MockHelper
+    public final static long DEFAULT_SEED = 20210601;
+
+    public final static long DEFAULT_USER_COUNT = 1_000_000;
+
+    public final static long DEFAULT_PRODUCT_COUNT = 100_000;
+
+    // The first session of benchmark corpora starts at 2021-06-01 00:00:00 UTC,
+    // a fixed time so the corpora are reproducible
+    public final static long BENCHMARK_BASE_TIMESTAMP = 1622505600;
+
+    // 10 sessions start every second, 100M events are about 12M sessions in 2 weeks
+    private final static int SESSIONS_PER_SECOND = 10;
+
+    private final static int TOP_CATEGORY_COUNT = 20;
+
+    private final static int CATEGORY_COUNT = 200;
+
+    private final static int BRAND_COUNT = 5000;
+
+    private final static int SELLER_COUNT = 20000;
+
+    private final static int TAG_COUNT = 1000;
+
+    // Sessions mostly view products of the category of the first product
+    private final static double SAME_CATEGORY_PROBABILITY = 0.7;
+
+    private final static double MEAN_EXTRA_VIEWS = 7;
+
+    // The mean seconds between two events of a session
+    private final static double MEAN_EVENT_GAP_SECONDS = 20;
+
+    private final static double CLICK_PROBABILITY = 0.12;
+
+    private final static double ADD_TO_CART_PROBABILITY = 0.2;
+
+    private final static double PURCHASE_PROBABILITY = 0.35;
+
+    private final static String[] TITLE_WORDS = {
+            "new", "classic", "premium", "mini", "pro", "lite", "smart", "wireless", "portable", "organic",
+            "cotton", "leather", "steel", "kids", "women", "men", "summer", "winter", "sport", "home",
+            "shirt", "shoes", "bag", "watch", "phone", "case", "charger", "lamp", "bottle", "cup",
+            "chair", "table", "pillow", "towel", "snack", "coffee", "tea", "cream", "shampoo", "toy",
+            "set", "pack", "edition", "style", "black", "white", "red", "blue", "large", "small",
+    };
+
+    private final static String[][] CITIES = {
+            {"singapore", "singapore"}, {"indonesia", "jakarta"}, {"thailand", "bangkok"},
+            {"philippines", "manila"}, {"vietnam", "ho chi minh"}, {"malaysia", "kuala lumpur"},
+            {"indonesia", "surabaya"}, {"thailand", "chiang mai"}, {"philippines", "cebu"},
+            {"vietnam", "hanoi"}, {"malaysia", "penang"}, {"indonesia", "bandung"},
+            {"india", "mumbai"}, {"india", "delhi"}, {"india", "bangalore"}, {"japan", "tokyo"},
+            {"japan", "osaka"}, {"korea", "seoul"}, {"usa", "new york"}, {"usa", "seattle"},
+            {"uk", "london"}, {"germany", "berlin"}, {"france", "paris"}, {"brazil", "sao paulo"},
+            {"mexico", "mexico city"}, {"australia", "sydney"}, {"canada", "toronto"}, {"egypt", "cairo"},
+    };
+
+    private final static String[] FIRST_NAMES = {
+            "james", "mary", "wei", "li", "siti", "nur", "john", "anna", "budi", "putri",
+            "minh", "linh", "raj", "priya", "kenji", "yuki", "jose", "maria", "ali", "fatima",
+    };
+
+    private final static Choice GENDERS = new Choice(
+            new String[]{"female", "male", "unknown"}, new double[]{48, 47, 5});
+
+    private final static Choice AGES = new Choice(
+            new String[]{"18-24", "25-34", "35-44", "45-54", "55+"}, new double[]{22, 35, 23, 12, 8});
+
+    private final static Choice ACTIVATION_CHANNELS = new Choice(
+            new String[]{"AppStore", "GooglePlay", "Web", "Referral", "Ads"}, new double[]{30, 40, 15, 5, 10});
+
+    private final static Choice MEMBERSHIP_LEVELS = new Choice(
+            new String[]{"none", "silver", "gold", "platinum"}, new double[]{70, 20, 8, 2});
+
+    private final static Choice SELLER_LEVELS = new Choice(
+            new String[]{"level1", "level2", "level3", "level4"}, new double[]{50, 30, 15, 5});
+
+    private final static Choice DISPLAY_TYPES = new Choice(
+            new String[]{"image", "video", "text"}, new double[]{80, 15, 5});
+
+    private final static Choice SOURCES = new Choice(
+            new String[]{"self", "third_party", "byteplus"}, new double[]{70, 25, 5});
+
+    private final static Choice PLATFORMS = new Choice(
+            new String[]{"android", "ios", "web"}, new double[]{60, 30, 10});
+
+    private final static Choice NETWORKS = new Choice(
+            new String[]{"wifi", "4g", "5g", "3g"}, new double[]{55, 35, 7, 3});
+
+    private final static Choice SCENES = new Choice(
+            new String[]{"home", "product_detail", "search", "cart"}, new double[]{55, 25, 15, 5});
+
+    private final static Choice TRAFFIC_SOURCES = new Choice(
+            new String[]{"byteplus", "self", "other"}, new double[]{60, 35, 5});
+
+    private final static String[] ANDROID_BRANDS = {"samsung", "xiaomi", "oppo", "vivo", "huawei", "realme"};
+
+    private final long seed;
+
+    // The seconds since epoch when the first session starts
+    private final long baseTimestamp;
+
+    private final long userCount;
+
+    private final long productCount;
+
+    private final int categoryCount;
+
+    private final long userStreamSeed;
+
+    private final long productStreamSeed;
+
+    private final long sessionStreamSeed;
+
+    private final ZipfSampler userActivity;
+
+    private final ZipfSampler productPopularity;
+
+    // The popularity of products in a category
+    private final ZipfSampler categoryPopularity;
+
+    private final ZipfSampler brands = new ZipfSampler(BRAND_COUNT, 1.1);
+
+    private final ZipfSampler sellers = new ZipfSampler(SELLER_COUNT, 1.0);
+
+    private final ZipfSampler tags = new ZipfSampler(TAG_COUNT, 1.0);
+
+    private final ZipfSampler titleWords = new ZipfSampler(TITLE_WORDS.length, 0.8);
+
+    private final ZipfSampler cities = new ZipfSampler(CITIES.length, 1.0);
+
+    // The records are built on the documented examples, so all the fields are filled
+    private final User userTemplate = MockHelper.mockUser();
+
+    private final Product productTemplate = MockHelper.mockProduct();
+
+    private final UserEvent userEventTemplate = MockHelper.mockUserEvent();
+
+    /**
+     * @param baseTimestamp the seconds since epoch when the first session starts, the users
+     *                      and products are registered or published in the years before it
+     */
+    public SyntheticHelper(long seed, long userCount, long productCount, long baseTimestamp) {
+        this.seed = seed;
+        this.baseTimestamp = baseTimestamp;
+        this.userCount = userCount;
+        this.productCount = productCount;
+        this.categoryCount = (int) Math.min(CATEGORY_COUNT, productCount);
+        this.userStreamSeed = CorpusGenerator.streamSeed(seed, "users");
+        this.productStreamSeed = CorpusGenerator.streamSeed(seed, "products");
+        this.sessionStreamSeed = CorpusGenerator.streamSeed(seed, "sessions");
+        this.userActivity = new ZipfSampler(userCount, 0.8);
+        this.productPopularity = new ZipfSampler(productCount, 1.0);
+        this.categoryPopularity = new ZipfSampler(productCount / categoryCount, 1.0);
+    }
+
+    /**
+     * The helper with the default seed and counts, which is used by MockHelper.
+     * The sessions start at 00:00:00 UTC of yesterday, so the mock user events are
+     * recent enough to be accepted by server.
+     */
+    public static SyntheticHelper defaultHelper() {
+        return DefaultHolder.HELPER;
+    }
+
+    /**
+     * The helper with the default seed and counts, and the fixed {@link #BENCHMARK_BASE_TIMESTAMP},
+     * so a benchmark corpus is the same in every run.
+     */
+    public static SyntheticHelper benchmarkHelper() {
+        return BenchmarkHolder.HELPER;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public User user(long index) {
+        SplittableRandom random = CorpusGenerator.random(userStreamSeed, index);
+        String[] city = CITIES[(int) cities.sample(random)];
+        User.Location location = userTemplate.getLocation().toBuilder()
+                .setCountry(city[0])
+                .setCity(city[1])
+                .setDistrictOrArea("district_" + random.nextInt(20))
+                .setPostcode(String.format("%06d", random.nextInt(1_000_000)))
+                .build();
+        User.Builder builder = userTemplate.toBuilder()
+                .setUserId(userId(index))
+                .setGender(GENDERS.pick(random))
+                .setAge(AGES.pick(random))
+                .clearTags()
+                .setActivationChannel(ACTIVATION_CHANNELS.pick(random))
+                .setMembershipLevel(MEMBERSHIP_LEVELS.pick(random))
+                .setRegistrationTimestamp(baseTimestamp - random.nextLong(3 * 365 * 86400L))
+                .setLocation(location)
+                .putExtra("first_name", FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]);
+        int tagCount = random.nextInt(4);
+        for (int i = 0; i < tagCount; i++) {
+            builder.addTags("tag_" + tags.sample(random));
+        }
+        return builder.build();
+    }
+
+    public Product product(long index) {
+        SplittableRandom random = CorpusGenerator.random(productStreamSeed, index);
+        int category = category(index);
+        String topCategory = "cate_" + (category % TOP_CATEGORY_COUNT);
+        Product.Category category1 = Product.Category.newBuilder()
+                .setCategoryDepth(1)
+                .addCategoryNodes(Product.Category.CategoryNode.newBuilder().setIdOrName(topCategory))
+                .build();
+        Product.Category category2 = Product.Category.newBuilder()
+                .setCategoryDepth(2)
+                .addCategoryNodes(Product.Category.CategoryNode.newBuilder().setIdOrName(topCategory))
+                .addCategoryNodes(Product.Category.CategoryNode.newBuilder().setIdOrName(topCategory + "_" + category))
+                .build();
+
+        long brand = brands.sample(random);
+        Product.Brand brand1 = Product.Brand.newBuilder()
+                .setBrandDepth(1)
+                .setIdOrName("brand_" + brand)
+                .build();
+
+        // The prices are in cents
+        long currentPrice = Math.round(SyntheticValues.logNormal(random, 2500, 1.0));
+        long originPrice = currentPrice;
+        if (random.nextDouble() < 0.3) {
+            originPrice = Math.round(currentPrice * (1.1 + random.nextDouble()));
+        }
+        Product.Price price = Product.Price.newBuilder()
+                .setCurrentPrice(currentPrice)
+                .setOriginPrice(originPrice)
+                .build();
+
+        Product.Display display = productTemplate.getDisplay().toBuilder()
+                .clearDetailPageDisplayTags()
+                .addDetailPageDisplayTags("tag_" + tags.sample(random))
+                .clearListingPageDisplayTags()
+                .addListingPageDisplayTags("tag_" + tags.sample(random))
+                .setListingPageDisplayType(DISPLAY_TYPES.pick(random))
+                .setCoverMultimediaUrl("https://cdn.example.com/products/" + index + ".jpg")
+                .build();
+
+        // Popular products have more comments
+        int commentCount = (int) (SyntheticValues.logNormal(random, 50_000, 1.0) / (index + 1));
+        Product.ProductSpec spec = productTemplate.getProductSpec().toBuilder()
+                .setProductGroupId("group_" + index / 4)
+                .setUserRating(SyntheticValues.uniform(random, 2.5, 5, 1))
+                .setCommentCount(commentCount)
+                .setSource(SOURCES.pick(random))
+                .setPublishTimestamp(baseTimestamp - random.nextLong(2 * 365 * 86400L))
+                .build();
+
+        Product.Seller seller = Product.Seller.newBuilder()
+                .setId("seller_" + sellers.sample(random))
+                .setSellerLevel(SELLER_LEVELS.pick(random))
+                .setSellerRating(SyntheticValues.uniform(random, 3, 5, 1))
+                .build();
+
+        Product.Builder builder = productTemplate.toBuilder()
+                .setProductId(productId(index))
+                .clearCategories()
+                .addCategories(category1)
+                .addCategories(category2)
+                .clearBrands()
+                .addBrands(brand1)
+                .setPrice(price)
+                .setIsRecommendable(random.nextDouble() < 0.98)
+                .setTitle("brand_" + brand + " " + SyntheticValues.words(random, titleWords, TITLE_WORDS,
+                        2 + random.nextInt(5), " "))
+                .setQualityScore(SyntheticValues.uniform(random, 0, 5, 1))
+                .clearTags()
+                .setDisplay(display)
+                .setProductSpec(spec)
+                .setSeller(seller)
+                .putExtra("count", String.valueOf(random.nextInt(500)));
+        int tagCount = 1 + random.nextInt(4);
+        for (int i = 0; i < tagCount; i++) {
+            builder.addTags("tag_" + tags.sample(random));
+        }
+        return builder.build();
+    }
+
+    /**
+     * The events of a session: a user views some products mostly in one category,
+     * and some of the impressions are clicked, added to cart and purchased.
+     */
+    public void session(long sessionIndex, CorpusGenerator.Output<UserEvent> output) {
+        SplittableRandom random = CorpusGenerator.random(sessionStreamSeed, sessionIndex);
+        long userIndex = userActivity.sample(random);
+        String userId = userId(userIndex);
+        UserEvent.Device device = device(userIndex);
+        String trafficSource = TRAFFIC_SOURCES.pick(random);
+        String attributionToken = SyntheticValues.hex(random, 32);
+        double timestamp = baseTimestamp + (double) sessionIndex / SESSIONS_PER_SECOND + random.nextDouble();
+
+        long firstProduct = productPopularity.sample(random);
+        int category = category(firstProduct);
+        int views = 1 + Math.min(50, SyntheticValues.geometric(random, MEAN_EXTRA_VIEWS));
+        for (int i = 0; i < views; i++) {
+            long product = firstProduct;
+            if (i > 0) {
+                product = random.nextDouble() < SAME_CATEGORY_PROBABILITY ?
+                        categoryPopularity.sample(random) * categoryCount + category : productPopularity.sample(random);
+            }
+            UserEvent.Scene scene = UserEvent.Scene.newBuilder()
+                    .setSceneName(SCENES.pick(random))
+                    .setPageNumber(1 + SyntheticValues.geometric(random, 0.5))
+                    .setOffset(1 + random.nextInt(20))
+                    .build();
+            UserEvent.Context context = UserEvent.Context.newBuilder()
+                    .setQuery("search".equals(scene.getSceneName()) ? "cate_" + category : "")
+                    .setRootProductId(i > 0 ? productId(firstProduct) : "")
+                    .build();
+            UserEvent.Builder builder = userEventTemplate.toBuilder()
+                    .setUserId(userId)
+                    .setScene(scene)
+                    .setProductId(productId(product))
+                    .setDevice(device)
+                    .setContext(context)
+                    .setAttributionToken(attributionToken)
+                    .setRecInfo("rec_" + sessionIndex + "_" + i)
+                    .setTrafficSource(trafficSource)
+                    .clearPurchaseCount();
+
+            timestamp += SyntheticValues.exponential(random, MEAN_EVENT_GAP_SECONDS);
+            output.add(builder.setEventType("impression").setEventTimestamp((long) timestamp).build());
+            if (random.nextDouble() >= CLICK_PROBABILITY) {
+                continue;
+            }
+            timestamp += SyntheticValues.exponential(random, MEAN_EVENT_GAP_SECONDS / 4);
+            output.add(builder.setEventType("click").setEventTimestamp((long) timestamp).build());
+            if (random.nextDouble() >= ADD_TO_CART_PROBABILITY) {
+                continue;
+            }
+            timestamp += SyntheticValues.exponential(random, MEAN_EVENT_GAP_SECONDS * 3);
+            output.add(builder.setEventType("add-to-cart").setEventTimestamp((long) timestamp).build());
+            if (random.nextDouble() >= PURCHASE_PROBABILITY) {
+                continue;
+            }
+            timestamp += SyntheticValues.exponential(random, MEAN_EVENT_GAP_SECONDS * 3);
+            output.add(builder.setEventType("purchase")
+                    .setEventTimestamp((long) timestamp)
+                    .setPurchaseCount(1 + SyntheticValues.geometric(random, 0.3))
+                    .build());
+        }
+    }
+
+    public List<User> users(long firstIndex, int count) {
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(user(firstIndex + i));
+        }
+        return users;
+    }
+
+    public List<Product> products(long firstIndex, int count) {
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            products.add(product(firstIndex + i));
+        }
+        return products;
+    }
+
+    /**
+     * The events of the sessions from the first one, the last session is cut at the count.
+     */
+    public List<UserEvent> userEvents(long firstSession, int count) {
+        List<UserEvent> userEvents = new ArrayList<>(count);
+        for (long session = firstSession; userEvents.size() < count; session++) {
+            session(session, userEvent -> {
+                if (userEvents.size() < count) {
+                    userEvents.add(userEvent);
+                }
+            });
+        }
+        return userEvents;
+    }
+
+    public long generateUsers(CorpusGenerator generator, CorpusGenerator.Sink<User> sink)
+            throws InterruptedException, IOException {
+        return generator.generate("users", userCount, (firstUnit, unitCount, random, output) -> {
+            for (long i = firstUnit; i < firstUnit + unitCount; i++) {
+                output.add(user(i));
+            }
+        }, sink);
+    }
+
+    public long generateProducts(CorpusGenerator generator, CorpusGenerator.Sink<Product> sink)
+            throws InterruptedException, IOException {
+        return generator.generate("products", productCount, (firstUnit, unitCount, random, output) -> {
+            for (long i = firstUnit; i < firstUnit + unitCount; i++) {
+                output.add(product(i));
+            }
+        }, sink);
+    }
+
+    /**
+     * Generate the events of the sessions, a session has about 9 events.
+     */
+    public long generateUserEvents(CorpusGenerator generator, long sessionCount, CorpusGenerator.Sink<UserEvent> sink)
+            throws InterruptedException, IOException {
+        return generator.generate("user_events", sessionCount, (firstUnit, unitCount, random, output) -> {
+            for (long i = firstUnit; i < firstUnit + unitCount; i++) {
+                session(i, output);
+            }
+        }, sink);
+    }
+
+    private static class DefaultHolder {
+        // 00:00:00 UTC of yesterday
+        private final static long BASE_TIMESTAMP =
+                Instant.now().truncatedTo(ChronoUnit.DAYS).minus(1, ChronoUnit.DAYS).getEpochSecond();
+
+        private final static SyntheticHelper HELPER =
+                new SyntheticHelper(DEFAULT_SEED, DEFAULT_USER_COUNT, DEFAULT_PRODUCT_COUNT, BASE_TIMESTAMP);
+    }
+
+    private static class BenchmarkHolder {
+        private final static SyntheticHelper HELPER =
+                new SyntheticHelper(DEFAULT_SEED, DEFAULT_USER_COUNT, DEFAULT_PRODUCT_COUNT, BENCHMARK_BASE_TIMESTAMP);
+    }
+
+    public static String userId(long index) {
+        return "user_" + index;
+    }
+
+    public static String productId(long index) {
+        return "product_" + index;
+    }
+
+    // The products of a category are spread over all the popularity ranks
+    private int category(long productIndex) {
+        return (int) (productIndex % categoryCount);
+    }
+
+    // A user always uses the same device
+    private UserEvent.Device device(long userIndex) {
+        SplittableRandom random = CorpusGenerator.random(userStreamSeed ^ 0x5DEECE66DL, userIndex);
+        String platform = PLATFORMS.pick(random);
+        UserEvent.Device.Builder builder = userEventTemplate.getDevice().toBuilder()
+                .setPlatform(platform)
+                .setNetwork(NETWORKS.pick(random));
+        switch (platform) {
+            case "android":
+                String brand = ANDROID_BRANDS[random.nextInt(ANDROID_BRANDS.length)];
+                return builder.setOsType("phone")
+                        .setAppVersion("3." + random.nextInt(10) + ".0")
+                        .setDeviceBrand(brand)
+                        .setDeviceModel(brand + "_" + random.nextInt(30))
+                        .setOsVersion(String.valueOf(8 + random.nextInt(5)))
+                        .setBrowserType("chrome")
+                        .setUserAgent("android/" + brand)
+                        .build();
+            case "ios":
+                return builder.setOsType("phone")
+                        .setAppVersion("3." + random.nextInt(10) + ".0")
+                        .setDeviceBrand("apple")
+                        .setDeviceModel("iphone_" + (8 + random.nextInt(6)))
+                        .setOsVersion(String.valueOf(13 + random.nextInt(3)))
+                        .setBrowserType("safari")
+                        .setUserAgent("ios/apple")
+                        .build();
+            default:
+                return builder.setOsType("pc")
+                        .setAppVersion("")
+                        .setDeviceBrand("")
+                        .setDeviceModel("")
+                        .setOsVersion("")
+                        .setBrowserType(random.nextDouble() < 0.7 ? "chrome" : "firefox")
+                        .setUserAgent("web")
+                        .build();
+        }
+    }
+}